@@ -0,0 +1,197 @@
+package it.units.expressionserver.client;
+
+import it.units.expressionserver.protocol.request.StatRequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The ExpressionClient sends requests to an ExpressionServer over a pool of connections, on which requests are
+ * pipelined: a request is sent at once, on the connection with the fewest requests waiting for their response,
+ * and its result is a CompletableFuture completed when the response arrives.
+ * An error response completes the future exceptionally with the exception reported by the server, e.g., a
+ * DivisionByZeroException or an IllegalArgumentException, or with a ServerErrorException for errors that have no
+ * counterpart on the client; a broken connection completes it with an IOException, and the connection is opened
+ * again for the next requests.
+ *
+ * The futures are completed by the threads reading the responses: stages depending on them should not block,
+ * or should run with the asynchronous methods of CompletableFuture.
+ */
+public class ExpressionClient implements Closeable {
+
+    private static final String QUIT_COMMAND = "BYE";
+    private static final String CANCEL_COMMAND = "CANCEL";
+    private static final String STREAM_PREFIX = "STREAM;";
+    private static final String EXECUTE_PREFIX = "EXECUTE;";
+    private static final String PREPARE_PREFIX = "PREPARE;";
+    private static final String DEALLOCATE_PREFIX = "DEALLOCATE;";
+    private static final char PARTS_SEPARATOR = ';';
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private final InetSocketAddress address;
+    private final PipelinedConnection[] connections;
+    private final boolean[] connecting;
+    private boolean closed;
+
+    /**
+     * Constructs a new ExpressionClient. Connections are opened when they are first needed.
+     *
+     * @param address the address of the server
+     * @param connections the number of connections of the pool
+     * @throws IllegalArgumentException if the number of connections is not positive
+     */
+    public ExpressionClient(InetSocketAddress address, int connections) throws IllegalArgumentException {
+        if (connections <= 0) {
+            throw new IllegalArgumentException("The number of connections must be positive: " + connections);
+        }
+        this.address = address;
+        this.connections = new PipelinedConnection[connections];
+        this.connecting = new boolean[connections];
+    }
+
+    /**
+     * Requests a computation, e.g., {@code compute("MAX_GRID", "x0:0:1:100", "(x0^2)")}.
+     *
+     * @param computationKind the computation and values kinds, e.g., MAX_GRID, AVG~0.01_GRID or ANY>0.5_LIST
+     * @param variableValues the variable values, each as name:lower:step:upper, e.g., x0:0:1:100,x1:-1:0.5:1
+     * @param expressions the expressions
+     * @return the future result, whose values are the result of the computation
+     */
+    public CompletableFuture<ServerResult> compute(String computationKind, String variableValues, String... expressions) {
+        StringBuilder request = new StringBuilder(computationKind).append(PARTS_SEPARATOR).append(variableValues);
+        for (String expression : expressions) {
+            request.append(PARTS_SEPARATOR).append(expression);
+        }
+        return send(request.toString());
+    }
+
+    /**
+     * Requests a statistic of the server.
+     *
+     * @param statType the statistic
+     * @return the future result, whose value is the statistic
+     */
+    public CompletableFuture<ServerResult> stat(StatRequest.StatType statType) {
+        return send(statType.getRequestString());
+    }
+
+    /**
+     * Sends a request line, e.g., a STAT or ADMIN request.
+     * Streamed requests, whose responses span several lines, and the quit and cancel commands, which have no
+     * response, cannot be pipelined and are rejected. Prepared expressions are rejected as well: the server keeps
+     * them per connection, and numbers their handles per connection, while each request is sent on the least
+     * busy connection of the pool, so an EXECUTE could run the expressions prepared on another connection.
+     *
+     * @param request the request line
+     * @return the future result of the request
+     * @throws IllegalArgumentException if the request cannot be pipelined
+     */
+    public CompletableFuture<ServerResult> send(String request) throws IllegalArgumentException {
+        if (request.startsWith(STREAM_PREFIX) || request.equals(QUIT_COMMAND) || request.equals(CANCEL_COMMAND)
+                || request.startsWith(PREPARE_PREFIX) || request.startsWith(EXECUTE_PREFIX) || request.startsWith(DEALLOCATE_PREFIX)
+                || request.indexOf('\n') >= 0 || request.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Request not supported by the client: " + request);
+        }
+        PipelinedConnection connection;
+        try {
+            connection = selectConnection();
+        } catch (IOException e) {
+            CompletableFuture<ServerResult> result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+            return result;
+        }
+        return connection.send(request);
+    }
+
+    /**
+     * Selects the open connection with the fewest pending requests, opening the first missing or broken one if
+     * every open connection is busy. Connections are opened without holding the lock of the client, so that the
+     * other connections keep being used meanwhile; callers wait only when every connection is being opened.
+     */
+    private PipelinedConnection selectConnection() throws IOException {
+        int slot;
+        synchronized (this) {
+            while (true) {
+                if (closed) {
+                    throw new IOException("The client is closed");
+                }
+                PipelinedConnection selected = null;
+                int missing = -1;
+                for (int i = 0; i < connections.length; i++) {
+                    PipelinedConnection connection = connections[i];
+                    if (connecting[i]) {
+                        continue;
+                    }
+                    if (connection == null || connection.isClosed()) {
+                        if (missing < 0) {
+                            missing = i;
+                        }
+                    } else if (selected == null || connection.getPendingRequests() < selected.getPendingRequests()) {
+                        selected = connection;
+                    }
+                }
+                if (missing >= 0 && (selected == null || selected.getPendingRequests() > 0)) {
+                    slot = missing;
+                    connecting[slot] = true;
+                    break;
+                }
+                if (selected != null) {
+                    return selected;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for a connection");
+                }
+            }
+        }
+        PipelinedConnection connection = null;
+        try {
+            connection = new PipelinedConnection(address, CONNECT_TIMEOUT_MILLIS);
+            return connection;
+        } finally {
+            synchronized (this) {
+                connecting[slot] = false;
+                if (connection != null) {
+                    connections[slot] = connection;
+                    if (closed) {
+                        // The client was closed meanwhile: the request fails as the connection is closed
+                        connection.quit();
+                    }
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Closes every connection with the quit command, once the pending requests have been answered.
+     * The connections are closed in parallel, and pending requests fail only if the server stops answering.
+     */
+    @Override
+    public void close() {
+        PipelinedConnection[] openConnections;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            openConnections = connections.clone();
+            notifyAll();
+        }
+        for (PipelinedConnection connection : openConnections) {
+            if (connection != null) {
+                connection.quit();
+            }
+        }
+        for (PipelinedConnection connection : openConnections) {
+            if (connection != null) {
+                connection.awaitClosed();
+            }
+        }
+    }
+}
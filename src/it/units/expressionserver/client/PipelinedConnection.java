@@ -0,0 +1,182 @@
+package it.units.expressionserver.client;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A PipelinedConnection sends requests to an ExpressionServer without waiting for the responses to the previous
+ * ones: the server answers the requests of a connection in order, so a reader thread completes the pending
+ * requests in the order in which they were sent.
+ * When the connection fails, every pending request fails with the IOException of the connection.
+ * Closing the connection sends the quit command and waits for the responses to the requests sent before it,
+ * which the server answers before closing the connection.
+ */
+class PipelinedConnection implements Closeable {
+
+    private static final String QUIT_COMMAND = "BYE";
+    // The default queue timeout of the server, within which it answers each request
+    private static final long RESPONSE_TIMEOUT_MILLIS = 120_000;
+
+    private final Socket socket;
+    private final BufferedWriter writer;
+    private final BufferedReader reader;
+    private final Queue<CompletableFuture<ServerResult>> pendingRequests;
+    private final Thread readerThread;
+    private volatile boolean closed;
+    private volatile long lastActivityTime;
+
+    /**
+     * Opens a connection to the server.
+     *
+     * @param address the address of the server
+     * @param connectTimeoutMillis the maximum time to wait for the connection to be established
+     * @throws IOException if the connection cannot be opened
+     */
+    PipelinedConnection(InetSocketAddress address, int connectTimeoutMillis) throws IOException {
+        this.socket = new Socket();
+        try {
+            socket.connect(address, connectTimeoutMillis);
+            this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        this.pendingRequests = new ConcurrentLinkedQueue<>();
+        this.readerThread = new Thread(this::readResponses, "expression-client-" + address);
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Sends a request.
+     *
+     * @param request the request line
+     * @return the future result of the request, which fails with the exception reported by the server, if any
+     */
+    CompletableFuture<ServerResult> send(String request) {
+        CompletableFuture<ServerResult> result = new CompletableFuture<>();
+        // Requests are queued in the order in which they are written
+        synchronized (writer) {
+            if (closed) {
+                result.completeExceptionally(new IOException("The connection is closed"));
+                return result;
+            }
+            pendingRequests.add(result);
+            try {
+                writer.write(request);
+                writer.newLine();
+                writer.flush();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of requests waiting for their response.
+     */
+    int getPendingRequests() {
+        return pendingRequests.size();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    private void readResponses() {
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lastActivityTime = System.nanoTime();
+                CompletableFuture<ServerResult> result = pendingRequests.poll();
+                if (result == null) {
+                    throw new IOException("Unexpected response: " + line);
+                }
+                try {
+                    result.complete(ResponseDecoder.decode(line));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+            fail(new IOException("The server closed the connection"));
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Closes the connection after a failure, failing every pending request.
+     */
+    private void fail(IOException e) {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException closeException) {
+            // The connection is discarded anyway
+        }
+        CompletableFuture<ServerResult> result;
+        while ((result = pendingRequests.poll()) != null) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Sends the quit command, after which no request can be sent, without waiting for the pending requests.
+     */
+    void quit() {
+        synchronized (writer) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                writer.write(QUIT_COMMAND);
+                writer.newLine();
+                writer.flush();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Waits for the server to close the connection after the quit command, i.e., for the responses to the pending
+     * requests. If no response arrives for {@link #RESPONSE_TIMEOUT_MILLIS}, the requests still pending fail.
+     */
+    void awaitClosed() {
+        lastActivityTime = System.nanoTime();
+        try {
+            while (readerThread.isAlive()) {
+                long remainingMillis = RESPONSE_TIMEOUT_MILLIS - (System.nanoTime() - lastActivityTime) / 1_000_000;
+                if (remainingMillis <= 0) {
+                    break;
+                }
+                readerThread.join(remainingMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        fail(new IOException("The connection is closed"));
+    }
+
+    /**
+     * Closes the connection with the quit command, once the responses to the pending requests have been read.
+     */
+    @Override
+    public void close() {
+        quit();
+        awaitClosed();
+    }
+}
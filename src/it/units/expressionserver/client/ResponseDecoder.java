@@ -0,0 +1,108 @@
+package it.units.expressionserver.client;
+
+import it.units.expressionserver.exceptions.ComputationCancelledException;
+import it.units.expressionserver.exceptions.ComputationException;
+import it.units.expressionserver.exceptions.DatasetException;
+import it.units.expressionserver.exceptions.DivisionByZeroException;
+import it.units.expressionserver.exceptions.ExpressionException;
+import it.units.expressionserver.exceptions.ExpressionParsingException;
+import it.units.expressionserver.exceptions.MemoryBudgetExceededException;
+import it.units.expressionserver.exceptions.NotANumberException;
+import it.units.expressionserver.exceptions.RemoteComputationException;
+import it.units.expressionserver.exceptions.VariableValuesFunctionBuildingException;
+import it.units.expressionserver.exceptions.VariableValuesFunctionException;
+import it.units.expressionserver.exceptions.VariableValuesFunctionParsingException;
+import it.units.expressionserver.exceptions.ZeroOverZeroException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The ResponseDecoder turns the response lines of an ExpressionServer into ServerResults, or into the exceptions
+ * they report: an error "ERR;(ExceptionName) : message" becomes the exception of the server with that name, if any.
+ */
+class ResponseDecoder {
+
+    private static final String OK_PREFIX = "OK;";
+    private static final String ERROR_PREFIX = "ERR;";
+    private static final char FIELDS_SEPARATOR = ';';
+
+    private static final Map<String, Function<String, RuntimeException>> exceptionFactories = new HashMap<>();
+
+    static {
+        exceptionFactories.put("IllegalArgumentException", IllegalArgumentException::new);
+        exceptionFactories.put("ComputationException", ComputationException::new);
+        exceptionFactories.put("ComputationCancelledException", ComputationCancelledException::new);
+        exceptionFactories.put("DivisionByZeroException", DivisionByZeroException::new);
+        exceptionFactories.put("ZeroOverZeroException", ZeroOverZeroException::new);
+        exceptionFactories.put("NotANumberException", NotANumberException::new);
+        exceptionFactories.put("MemoryBudgetExceededException", MemoryBudgetExceededException::new);
+        exceptionFactories.put("RemoteComputationException", RemoteComputationException::new);
+        exceptionFactories.put("ExpressionException", ExpressionException::new);
+        exceptionFactories.put("ExpressionParsingException", ExpressionParsingException::new);
+        exceptionFactories.put("VariableValuesFunctionException", VariableValuesFunctionException::new);
+        exceptionFactories.put("VariableValuesFunctionBuildingException", VariableValuesFunctionBuildingException::new);
+        exceptionFactories.put("VariableValuesFunctionParsingException", VariableValuesFunctionParsingException::new);
+        exceptionFactories.put("DatasetException", DatasetException::new);
+    }
+
+    private ResponseDecoder() {
+    }
+
+    /**
+     * Decodes a response line.
+     *
+     * @param line the response line
+     * @return the result
+     * @throws RuntimeException the exception reported by an error response
+     * @throws ServerErrorException if the response is neither a success nor an error
+     */
+    static ServerResult decode(String line) throws RuntimeException {
+        if (line.startsWith(ERROR_PREFIX)) {
+            throw decodeError(line.substring(ERROR_PREFIX.length()));
+        }
+        if (!line.startsWith(OK_PREFIX)) {
+            throw new ServerErrorException(null, "Unexpected response: " + line);
+        }
+        List<String> fields = new ArrayList<>();
+        int start = OK_PREFIX.length();
+        while (true) {
+            int end = line.indexOf(FIELDS_SEPARATOR, start);
+            fields.add(line.substring(start, end < 0 ? line.length() : end));
+            if (end < 0) {
+                break;
+            }
+            start = end + 1;
+        }
+        double responseTime;
+        try {
+            responseTime = Double.parseDouble(fields.remove(0));
+        } catch (NumberFormatException e) {
+            throw new ServerErrorException(null, "Unexpected response: " + line);
+        }
+        return new ServerResult(responseTime, fields);
+    }
+
+    /**
+     * Decodes the message of an error response, "(ExceptionName) : message" or "(ExceptionName) message",
+     * into the exception it reports.
+     */
+    private static RuntimeException decodeError(String errorMessage) {
+        int typeEnd = errorMessage.startsWith("(") ? errorMessage.indexOf(')') : -1;
+        if (typeEnd < 0) {
+            return new ServerErrorException(null, errorMessage);
+        }
+        String errorType = errorMessage.substring(1, typeEnd);
+        String message = errorMessage.substring(typeEnd + 1);
+        if (message.startsWith(" : ")) {
+            message = message.substring(3);
+        } else if (message.startsWith(" ")) {
+            message = message.substring(1);
+        }
+        Function<String, RuntimeException> exceptionFactory = exceptionFactories.get(errorType);
+        return exceptionFactory == null ? new ServerErrorException(errorType, message) : exceptionFactory.apply(message);
+    }
+}
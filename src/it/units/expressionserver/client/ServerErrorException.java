@@ -0,0 +1,28 @@
+package it.units.expressionserver.client;
+
+/**
+ * A ServerErrorException is an error response of an ExpressionServer whose type has no counterpart among the
+ * exceptions of the server, such as a ComputationTimeoutException, or that has no type at all.
+ */
+public class ServerErrorException extends RuntimeException {
+
+    private final String errorType;
+
+    /**
+     * Constructs a new ServerErrorException.
+     *
+     * @param errorType the type of the error, as named by the server, or null if the error has none
+     * @param message the message of the error
+     */
+    public ServerErrorException(String errorType, String message) {
+        super(errorType == null ? message : "(" + errorType + ") " + message);
+        this.errorType = errorType;
+    }
+
+    /**
+     * Gets the type of the error, e.g., QueueTimeoutException, or null if the error has none.
+     */
+    public String getErrorType() {
+        return errorType;
+    }
+}
@@ -0,0 +1,67 @@
+package it.units.expressionserver.client;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A ServerResult is a successful response of an ExpressionServer, "OK;responseTime;field1;...;fieldn":
+ * the response time measured by the server and the fields of the response, which are values for computations
+ * and stat requests.
+ */
+public class ServerResult {
+
+    private final double responseTime;
+    private final List<String> fields;
+
+    ServerResult(double responseTime, List<String> fields) {
+        this.responseTime = responseTime;
+        this.fields = Collections.unmodifiableList(fields);
+    }
+
+    /**
+     * Gets the time taken by the server to handle the request, in seconds.
+     */
+    public double getResponseTime() {
+        return responseTime;
+    }
+
+    /**
+     * Gets the fields of the response, as sent by the server.
+     */
+    public List<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Gets the values of the response, e.g., the minimum followed by the values of its tuple for ARGMIN.
+     *
+     * @return the values
+     * @throws NumberFormatException if a field of the response is not a value
+     */
+    public double[] getValues() throws NumberFormatException {
+        double[] values = new double[fields.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Double.parseDouble(fields.get(i));
+        }
+        return values;
+    }
+
+    /**
+     * Gets the first value of the response, which is the whole result of most computations.
+     *
+     * @return the first value
+     * @throws NumberFormatException if the response has no values
+     */
+    public double getValue() throws NumberFormatException {
+        if (fields.isEmpty()) {
+            throw new NumberFormatException("The response has no values");
+        }
+        return Double.parseDouble(fields.get(0));
+    }
+
+    @Override
+    public String toString() {
+        return "ServerResult{responseTime=" + responseTime + ", fields=" + Arrays.toString(fields.toArray()) + "}";
+    }
+}
@@ -0,0 +1,163 @@
+package it.units.expressionserver.domain.dataset;
+
+import it.units.expressionserver.exceptions.DatasetException;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Dataset is a named table of doubles stored in a columnar binary file, whose columns are memory-mapped
+ * and read in place by computations, without copying them to the heap.
+ *
+ * The file starts with a 16 bytes header: the ASCII magic "EXDS", the number of columns (int) and the number
+ * of rows (long). The columns follow one after the other, each one made of its values (doubles).
+ * All numbers are little-endian.
+ *
+ * A Dataset is reference-counted: the registry holds one reference as long as the dataset is registered,
+ * and each computation using it holds another. Columns are unmapped when the last reference is released.
+ */
+public class Dataset {
+
+    private static final byte[] MAGIC = "EXDS".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_BYTES = 16;
+    private static final String COLUMN_PREFIX = "col";
+
+    private final String name;
+    private final int rowCount;
+    private final MappedByteBuffer[] mappedColumns;
+    private final DoubleBuffer[] columns;
+    private final AtomicInteger references;
+
+    /**
+     * Loads a dataset, mapping its columns in memory.
+     *
+     * @param name the name of the dataset
+     * @param path the path of the dataset file
+     * @throws DatasetException if the file cannot be read or is not a valid dataset file
+     */
+    Dataset(String name, Path path) throws DatasetException {
+        this.name = name;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Read the whole header
+            }
+            header.flip();
+            for (byte magicByte : MAGIC) {
+                if (!header.hasRemaining() || header.get() != magicByte) {
+                    throw new DatasetException("Invalid dataset file '" + path + "' : missing header");
+                }
+            }
+            int columnCount = header.remaining() >= Integer.BYTES ? header.getInt() : -1;
+            long rows = header.remaining() >= Long.BYTES ? header.getLong() : -1;
+            // Columns are indexed by int, and each column is mapped as a single buffer
+            if (columnCount < 0 || rows < 0 || rows > Integer.MAX_VALUE / Double.BYTES) {
+                throw new DatasetException("Invalid dataset file '" + path + "' : invalid size");
+            }
+            long columnBytes = rows * Double.BYTES;
+            if (channel.size() != HEADER_BYTES + columnBytes * columnCount) {
+                throw new DatasetException("Invalid dataset file '" + path + "' : expected " + columnCount +
+                        " columns of " + rows + " rows");
+            }
+            this.rowCount = (int) rows;
+            this.mappedColumns = new MappedByteBuffer[columnCount];
+            this.columns = new DoubleBuffer[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                mappedColumns[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + columnBytes * i, columnBytes);
+                columns[i] = mappedColumns[i].order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            }
+        } catch (IOException e) {
+            throw new DatasetException("Cannot load dataset '" + name + "' from '" + path + "' : " + e.getMessage());
+        }
+        this.references = new AtomicInteger(1);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * Gets a column by name, in the form "colN", where N is the index of the column.
+     * The column must be read only while a reference to this dataset is held.
+     *
+     * @param columnName the name of the column
+     * @return a read-only view of the values of the column
+     * @throws DatasetException if there is no such column
+     */
+    public DoubleBuffer getColumn(String columnName) throws DatasetException {
+        int column = -1;
+        if (columnName.startsWith(COLUMN_PREFIX)) {
+            try {
+                column = Integer.parseInt(columnName.substring(COLUMN_PREFIX.length()));
+            } catch (NumberFormatException e) {
+                // Reported below
+            }
+        }
+        if (column < 0 || column >= columns.length) {
+            throw new DatasetException("Invalid column '" + columnName + "' of dataset '" + name + "'");
+        }
+        return columns[column].asReadOnlyBuffer();
+    }
+
+    /**
+     * Acquires a reference to this dataset, unless it has been unmapped already.
+     *
+     * @return true if the reference has been acquired
+     */
+    boolean acquire() {
+        while (true) {
+            int count = references.get();
+            if (count == 0) {
+                return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a reference to this dataset, unmapping its columns if it was the last one.
+     */
+    public void release() {
+        if (references.decrementAndGet() == 0) {
+            for (MappedByteBuffer mappedColumn : mappedColumns) {
+                unmap(mappedColumn);
+            }
+        }
+    }
+
+    /**
+     * Unmaps a buffer right away, through the cleaner of the JDK; if the cleaner is not accessible,
+     * the buffer is unmapped when it is garbage collected.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Left to the garbage collector
+        }
+    }
+}
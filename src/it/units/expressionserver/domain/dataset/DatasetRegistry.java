@@ -0,0 +1,118 @@
+package it.units.expressionserver.domain.dataset;
+
+import it.units.expressionserver.exceptions.DatasetException;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * The DatasetRegistry holds the datasets that LIST computations can reference by name, e.g. "x:@sensors.col0".
+ * Datasets are the files with extension ".bin" of the datasets directory, named after the file:
+ * they are registered at startup, and can be loaded again or dropped while the server is running.
+ * Computations hold a reference to the datasets they use, so that a dataset that is dropped or replaced
+ * is unmapped only once the computations using it are over.
+ */
+public class DatasetRegistry {
+
+    private static final String FILE_EXTENSION = ".bin";
+    private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z0-9_]+");
+
+    private final Path directory;
+    private final ConcurrentHashMap<String, Dataset> datasets;
+
+    /**
+     * Constructs a new DatasetRegistry over the given directory.
+     *
+     * @param directory the datasets directory, or null if datasets are not enabled
+     */
+    public DatasetRegistry(Path directory) {
+        this.directory = directory;
+        this.datasets = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Registers every dataset file of the datasets directory.
+     *
+     * @throws DatasetException if the directory or a dataset file cannot be read
+     */
+    public void loadAll() throws DatasetException {
+        if (directory == null) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + FILE_EXTENSION)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                String name = fileName.substring(0, fileName.length() - FILE_EXTENSION.length());
+                if (NAME_PATTERN.matcher(name).matches()) {
+                    load(name);
+                }
+            }
+        } catch (IOException e) {
+            throw new DatasetException("Cannot list the datasets directory '" + directory + "' : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads, or loads again, the dataset with the given name from the datasets directory.
+     *
+     * @param name the name of the dataset
+     * @return the loaded dataset
+     * @throws DatasetException if datasets are not enabled, the name is invalid or the file cannot be loaded
+     */
+    public Dataset load(String name) throws DatasetException {
+        checkName(name);
+        Dataset dataset = new Dataset(name, directory.resolve(name + FILE_EXTENSION));
+        Dataset replaced = datasets.put(name, dataset);
+        if (replaced != null) {
+            replaced.release();
+        }
+        return dataset;
+    }
+
+    /**
+     * Drops the dataset with the given name, which is unmapped once the computations using it are over.
+     *
+     * @param name the name of the dataset
+     * @throws DatasetException if there is no such dataset
+     */
+    public void drop(String name) throws DatasetException {
+        Dataset dataset = datasets.remove(name);
+        if (dataset == null) {
+            throw new DatasetException("Unknown dataset '" + name + "'");
+        }
+        dataset.release();
+    }
+
+    /**
+     * Acquires a reference to the dataset with the given name, to be released once the dataset is not used anymore.
+     *
+     * @param name the name of the dataset
+     * @return the acquired dataset
+     * @throws DatasetException if there is no such dataset
+     */
+    public Dataset acquire(String name) throws DatasetException {
+        while (true) {
+            Dataset dataset = datasets.get(name);
+            if (dataset == null) {
+                throw new DatasetException("Unknown dataset '" + name + "'");
+            }
+            // A dataset can be replaced and unmapped meanwhile: the registry then holds its replacement
+            if (dataset.acquire()) {
+                return dataset;
+            }
+        }
+    }
+
+    private void checkName(String name) throws DatasetException {
+        if (directory == null) {
+            throw new DatasetException("Datasets are not enabled");
+        }
+        if (!NAME_PATTERN.matcher(name).matches()) {
+            throw new DatasetException("Invalid dataset name '" + name + "'");
+        }
+    }
+}
@@ -7,13 +7,15 @@ import it.units.expressionserver.domain.expression.nodes.Variable;
 import it.units.expressionserver.exceptions.ExpressionParsingException;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class ExpressionParser {
 
     // BNF
-    // <e> ::= <n> | <v> | (<e> <o> <e>)
+    // <e> ::= <n> | <v> | (<e> <o> <e>) | -<e> | <f>(<e>) | <f>(<e> <o> <e>)
+    // <f> ::= sqrt | exp | log | sin | cos | abs
 
     private final String string;
     private int cursor = 0;
@@ -71,55 +73,21 @@ public class ExpressionParser {
         token = TokenType.VARIABLE.next(string, cursor);
         if (token != null && token.start == cursor) {
             cursor = token.end;
-            return new Variable(string.substring(token.start, token.end));
+            String name = string.substring(token.start, token.end);
+            if (cursor < string.length() && string.charAt(cursor) == '(') {
+                return parseFunction(name, token.start);
+            }
+            return new Variable(name);
+        }
+        if (string.charAt(cursor) == '-') {
+            cursor++;
+            return new Operator(Operator.Type.NEGATION, Collections.singletonList(parse()));
         }
         token = TokenType.OPEN_BRACKET.next(string, cursor);
         if (token != null && token.start == cursor) {
             cursor = token.end;
             Node child1 = parse();
-            if (cursor >= string.length()) {
-                throw new ExpressionParsingException("Unexpected end of expression.");
-            }
-            Token operatorToken = TokenType.OPERATOR.next(string, cursor);
-            if (operatorToken != null && operatorToken.start == cursor) {
-                cursor = operatorToken.end;
-            } else {
-                throw new ExpressionParsingException(String.format(
-                        "Unexpected char at %d instead of operator: '%s'",
-                        cursor,
-                        string.charAt(cursor)
-                ));
-            }
-            Node child2 = parse();
-            if (cursor >= string.length()) {
-                throw new ExpressionParsingException("Unexpected end of expression.");
-            }
-            Token closedBracketToken = TokenType.CLOSED_BRACKET.next(string, cursor);
-            if (closedBracketToken != null && closedBracketToken.start == cursor) {
-                cursor = closedBracketToken.end;
-            } else {
-                throw new ExpressionParsingException(String.format(
-                        "Unexpected char at %d instead of closed bracket: '%s'",
-                        cursor,
-                        string.charAt(cursor)
-                ));
-            }
-            Operator.Type operatorType = null;
-            String operatorString = string.substring(operatorToken.start, operatorToken.end);
-            for (Operator.Type type : Operator.Type.values()) {
-                if (operatorString.equals(Character.toString(type.getSymbol()))) {
-                    operatorType = type;
-                    break;
-                }
-            }
-            if (operatorType == null) {
-                throw new ExpressionParsingException(String.format(
-                        "Unknown operator at %d: '%s'",
-                        operatorToken.start,
-                        operatorString
-                ));
-            }
-            return new Operator(operatorType, Arrays.asList(child1, child2));
+            return parseBinaryOperation(child1);
         }
         throw new ExpressionParsingException(String.format(
                 "Unexpected char at %d: '%s'",
@@ -128,4 +96,87 @@ public class ExpressionParser {
         ));
     }
 
+    /**
+     * Parses the bracketed operand of a unary function, whose name has just been parsed.
+     * The operand can also be a binary operation without its own brackets, e.g., sqrt(x+1).
+     */
+    private Node parseFunction(String name, int nameStart) throws ExpressionParsingException {
+        Operator.Type functionType = null;
+        for (Operator.Type type : Operator.Type.values()) {
+            if (type.isUnary() && name.equals(type.getSymbol())) {
+                functionType = type;
+                break;
+            }
+        }
+        if (functionType == null) {
+            throw new ExpressionParsingException(String.format(
+                    "Unknown function at %d: '%s'",
+                    nameStart,
+                    name
+            ));
+        }
+        cursor++;
+        Node operand = parse();
+        if (cursor < string.length() && string.charAt(cursor) != ')') {
+            operand = parseBinaryOperation(operand);
+        } else {
+            expectClosedBracket();
+        }
+        return new Operator(functionType, Collections.singletonList(operand));
+    }
+
+    /**
+     * Parses the operator, the second operand and the closed bracket of a binary operation, whose first operand
+     * has just been parsed.
+     */
+    private Node parseBinaryOperation(Node child1) throws ExpressionParsingException {
+        if (cursor >= string.length()) {
+            throw new ExpressionParsingException("Unexpected end of expression.");
+        }
+        Token operatorToken = TokenType.OPERATOR.next(string, cursor);
+        if (operatorToken != null && operatorToken.start == cursor) {
+            cursor = operatorToken.end;
+        } else {
+            throw new ExpressionParsingException(String.format(
+                    "Unexpected char at %d instead of operator: '%s'",
+                    cursor,
+                    string.charAt(cursor)
+            ));
+        }
+        Node child2 = parse();
+        expectClosedBracket();
+        Operator.Type operatorType = null;
+        String operatorString = string.substring(operatorToken.start, operatorToken.end);
+        for (Operator.Type type : Operator.Type.values()) {
+            if (!type.isUnary() && operatorString.equals(type.getSymbol())) {
+                operatorType = type;
+                break;
+            }
+        }
+        if (operatorType == null) {
+            throw new ExpressionParsingException(String.format(
+                    "Unknown operator at %d: '%s'",
+                    operatorToken.start,
+                    operatorString
+            ));
+        }
+        return new Operator(operatorType, Arrays.asList(child1, child2));
+    }
+
+    private void expectClosedBracket() throws ExpressionParsingException {
+        if (cursor >= string.length()) {
+            throw new ExpressionParsingException("Unexpected end of expression.");
+        }
+        Token closedBracketToken = TokenType.CLOSED_BRACKET.next(string, cursor);
+        if (closedBracketToken != null && closedBracketToken.start == cursor) {
+            cursor = closedBracketToken.end;
+        } else {
+            throw new ExpressionParsingException(String.format(
+                    "Unexpected char at %d instead of closed bracket: '%s'",
+                    cursor,
+                    string.charAt(cursor)
+            ));
+        }
+    }
+
 }
@@ -0,0 +1,70 @@
+package it.units.expressionserver.domain.variablevaluesfunction;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * A ValueTupleCursor walks the tuples of a VariableValuesFunction in index order without materializing them.
+ * The same array is reused for every tuple, so callers must copy it if they need to keep a tuple.
+ */
+public class ValueTupleCursor {
+    private final DoubleBuffer[] valueLists;
+    private final boolean grid;
+    private final int[] positions;
+    private final double[] tuple;
+
+    ValueTupleCursor(DoubleBuffer[] valueLists, boolean grid, long tupleIndex) {
+        this.valueLists = valueLists;
+        this.grid = grid;
+        this.positions = new int[valueLists.length];
+        this.tuple = new double[valueLists.length];
+        for (int i = valueLists.length - 1; i >= 0; i--) {
+            if (grid) {
+                int size = valueLists[i].limit();
+                positions[i] = size == 0 ? 0 : (int) (tupleIndex % size);
+                tupleIndex = size == 0 ? 0 : tupleIndex / size;
+            } else {
+                positions[i] = (int) tupleIndex;
+            }
+        }
+        for (int i = 0; i < valueLists.length; i++) {
+            if (positions[i] < valueLists[i].limit()) {
+                tuple[i] = valueLists[i].get(positions[i]);
+            }
+        }
+    }
+
+    /**
+     * Gets the current tuple of variable values.
+     *
+     * @return the current tuple, which is overwritten by {@link #advance()}
+     */
+    public double[] getTuple() {
+        return tuple;
+    }
+
+    /**
+     * Moves the cursor to the tuple following the current one.
+     * Advancing past the last tuple leaves the cursor in an unspecified state.
+     */
+    public void advance() {
+        if (!grid) {
+            for (int i = 0; i < valueLists.length; i++) {
+                int position = ++positions[i];
+                if (position < valueLists[i].limit()) {
+                    tuple[i] = valueLists[i].get(position);
+                }
+            }
+            return;
+        }
+        for (int i = valueLists.length - 1; i >= 0; i--) {
+            int position = positions[i] + 1;
+            if (position < valueLists[i].limit()) {
+                positions[i] = position;
+                tuple[i] = valueLists[i].get(position);
+                return;
+            }
+            positions[i] = 0;
+            tuple[i] = valueLists[i].get(0);
+        }
+    }
+}
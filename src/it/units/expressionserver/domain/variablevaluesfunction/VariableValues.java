@@ -7,6 +7,8 @@ public class VariableValues {
     private final double lower;
     private final double step;
     private final double upper;
+    private final String datasetName;
+    private final String columnName;
 
     public VariableValues(String variable, double lower, double step, double upper) throws VariableValuesFunctionException {
         if (step <= 0) {
@@ -17,6 +19,24 @@ public class VariableValues {
         this.lower = lower;
         this.step = step;
         this.upper = upper;
+        this.datasetName = null;
+        this.columnName = null;
+    }
+
+    /**
+     * Constructs the values of a variable taken from a column of a server-side dataset.
+     *
+     * @param variable the name of the variable
+     * @param datasetName the name of the dataset
+     * @param columnName the name of the column of the dataset
+     */
+    public VariableValues(String variable, String datasetName, String columnName) {
+        this.variable = variable;
+        this.lower = Double.NaN;
+        this.step = Double.NaN;
+        this.upper = Double.NaN;
+        this.datasetName = datasetName;
+        this.columnName = columnName;
     }
     public String getVariable() {
         return variable;
@@ -33,4 +53,19 @@ public class VariableValues {
     public double getUpper() {
         return upper;
     }
+
+    /**
+     * Checks whether the values are taken from a dataset rather than from a range.
+     */
+    public boolean isDatasetColumn() {
+        return datasetName != null;
+    }
+
+    public String getDatasetName() {
+        return datasetName;
+    }
+
+    public String getColumnName() {
+        return columnName;
+    }
 }
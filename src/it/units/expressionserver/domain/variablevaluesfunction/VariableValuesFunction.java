@@ -1,11 +1,21 @@
 package it.units.expressionserver.domain.variablevaluesfunction;
+import it.units.expressionserver.domain.dataset.Dataset;
+import it.units.expressionserver.domain.dataset.DatasetRegistry;
+import it.units.expressionserver.exceptions.DatasetException;
 import it.units.expressionserver.exceptions.VariableValuesFunctionBuildingException;
 import it.units.expressionserver.exceptions.VariableValuesFunctionException;
 import it.units.expressionserver.service.Computer;
+
+import java.nio.DoubleBuffer;
 import java.util.*;
 
 
-public class VariableValuesFunction {
+/**
+ * A VariableValuesFunction maps each variable to its values, which are either a range or a column of a dataset.
+ * Values are held in DoubleBuffers, so that dataset columns are read in place from their memory mapping.
+ * A function referencing datasets holds a reference to them until it is closed.
+ */
+public class VariableValuesFunction implements AutoCloseable {
     private final static int PRECISION = 12;
     public enum ValuesKind {
 
@@ -34,9 +44,15 @@ public class VariableValuesFunction {
             return stringToEnumMap.get(valuesKindString);
         }
     }
-    private final Map<String, List<Double>> functionMap;
+    private final Map<String, DoubleBuffer> functionMap;
     private final ValuesKind valuesKind;
     private final Computer.ComputationKind computationKind;
+    private final List<String> variables;
+    private final List<String> declaredVariables;
+    private final Map<String, Integer> variableIndexes;
+    private final DoubleBuffer[] valueLists;
+    private final List<Dataset> datasets;
+    private final String valuesKey;
 
     /**
      * Constructs a new VariableValuesFunction instance.
@@ -46,25 +62,123 @@ public class VariableValuesFunction {
      * @param computationKind the kind of computation to perform (MIN, MAX, AVG, or COUNT)
      */
     public VariableValuesFunction(List<VariableValues> variableValuesList, ValuesKind valuesKind, Computer.ComputationKind computationKind) {
+        this(variableValuesList, valuesKind, computationKind, null);
+    }
+
+    /**
+     * Constructs a new VariableValuesFunction instance, whose values can be taken from datasets.
+     *
+     * @param variableValuesList list of VariableValues objects specifying the variable names and their ranges or dataset columns
+     * @param valuesKind the kind of values to generate (GRID or LIST)
+     * @param computationKind the kind of computation to perform
+     * @param datasetRegistry the registry of the datasets referenced by the values, or null if datasets are not available
+     * @throws DatasetException if a dataset or a column cannot be found, or datasets are referenced by a GRID
+     */
+    public VariableValuesFunction(List<VariableValues> variableValuesList, ValuesKind valuesKind, Computer.ComputationKind computationKind,
+                                  DatasetRegistry datasetRegistry) throws DatasetException {
         this.functionMap = new HashMap<>();
         this.valuesKind = valuesKind;
         this.computationKind = computationKind;
+        this.datasets = new ArrayList<>();
+        Map<String, String> ranges = new HashMap<>();
         for (VariableValues variableValues : variableValuesList) {
             String variable = variableValues.getVariable();
+            if (variableValues.isDatasetColumn()) {
+                functionMap.put(variable, getDatasetColumn(variableValues, datasetRegistry));
+                ranges.remove(variable);
+                continue;
+            }
             double lower = round(variableValues.getLower());
             double step = round(variableValues.getStep());
             double upper = round(variableValues.getUpper());
+            ranges.put(variable, lower + ":" + step + ":" + upper);
             if (upper < lower) {
                 // Empty set
                 continue;
             }
-            List<Double> values = new ArrayList<>();
+            int size = 0;
             for (double value = lower; value <= upper; value = round(value + step)) {
-                values.add(value);
+                size++;
+            }
+            double[] values = new double[size];
+            int i = 0;
+            for (double value = lower; value <= upper; value = round(value + step)) {
+                values[i++] = value;
+            }
+            functionMap.put(variable, DoubleBuffer.wrap(values));
+        }
+        // Tuples list the variable values in the iteration order of the function map
+        this.variables = new ArrayList<>(functionMap.keySet());
+        Set<String> declaredVariables = new LinkedHashSet<>();
+        for (VariableValues variableValues : variableValuesList) {
+            if (functionMap.containsKey(variableValues.getVariable())) {
+                declaredVariables.add(variableValues.getVariable());
+            }
+        }
+        this.declaredVariables = new ArrayList<>(declaredVariables);
+        this.variableIndexes = new HashMap<>();
+        this.valueLists = new DoubleBuffer[variables.size()];
+        for (int i = 0; i < variables.size(); i++) {
+            variableIndexes.put(variables.get(i), i);
+            valueLists[i] = functionMap.get(variables.get(i));
+        }
+        this.valuesKey = datasets.isEmpty() ? buildValuesKey(ranges) : null;
+    }
+
+    /**
+     * Builds the canonical description of the tuples: the values kind and the range of each variable, in tuple order.
+     * Ranges that turned out to be empty are described as well, since expressions may still reference their variable.
+     */
+    private String buildValuesKey(Map<String, String> ranges) {
+        StringBuilder key = new StringBuilder(valuesKind.getRequestString());
+        for (String variable : variables) {
+            key.append(';').append(variable).append(':').append(ranges.get(variable));
+        }
+        List<String> emptyVariables = new ArrayList<>(ranges.keySet());
+        emptyVariables.removeAll(variables);
+        Collections.sort(emptyVariables);
+        for (String variable : emptyVariables) {
+            key.append(';').append(variable).append(':').append(ranges.get(variable));
+        }
+        return key.toString();
+    }
+    /**
+     * Gets the column of a dataset, acquiring a reference to the dataset if not held yet.
+     * Dataset values are not sorted, hence they can only make LIST tuples.
+     */
+    private DoubleBuffer getDatasetColumn(VariableValues variableValues, DatasetRegistry datasetRegistry) throws DatasetException {
+        try {
+            if (valuesKind != ValuesKind.LIST) {
+                throw new DatasetException("Datasets can only be referenced by LIST values kind.");
+            }
+            if (datasetRegistry == null) {
+                throw new DatasetException("Datasets are not available");
             }
-            functionMap.put(variable, values);
+            for (Dataset dataset : datasets) {
+                if (dataset.getName().equals(variableValues.getDatasetName())) {
+                    return dataset.getColumn(variableValues.getColumnName());
+                }
+            }
+            Dataset dataset = datasetRegistry.acquire(variableValues.getDatasetName());
+            datasets.add(dataset);
+            return dataset.getColumn(variableValues.getColumnName());
+        } catch (DatasetException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Releases the datasets referenced by this function, which must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        for (Dataset dataset : datasets) {
+            dataset.release();
         }
+        datasets.clear();
     }
+
     private double round(double value) {
 
         long factor = (long) Math.pow(10, VariableValuesFunction.PRECISION);
@@ -75,31 +189,136 @@ public class VariableValuesFunction {
     public Computer.ComputationKind getComputationKind() {
         return this.computationKind;
     }
+
+    public ValuesKind getValuesKind() {
+        return valuesKind;
+    }
+
+    /**
+     * Gets the canonical description of the tuples of this function, which is the same for any function
+     * with the same tuples in the same order.
+     *
+     * @return the description, or null if the values are taken from datasets, which can be reloaded
+     */
+    public String getValuesKey() {
+        return valuesKey;
+    }
+
+    /**
+     * Gets the variables of this function, in the order in which their values appear in the tuples.
+     *
+     * @return the list of variable names
+     */
+    public List<String> getVariables() {
+        return Collections.unmodifiableList(variables);
+    }
+
+    /**
+     * Gets the variables of this function, in the order in which they first appear in the request.
+     *
+     * @return the list of variable names
+     */
+    public List<String> getDeclaredVariables() {
+        return Collections.unmodifiableList(declaredVariables);
+    }
+
+    /**
+     * Gets the number of values of a variable.
+     *
+     * @param variableIndex the index of the variable in the tuples
+     * @return the number of values of the variable
+     */
+    public int getValueCount(int variableIndex) {
+        return valueLists[variableIndex].limit();
+    }
+
+    /**
+     * Gets a value of a variable. Values of a variable are sorted in increasing order, unless they come from a dataset.
+     *
+     * @param variableIndex the index of the variable in the tuples
+     * @param valueIndex the index of the value among the values of the variable
+     * @return the value
+     */
+    public double getValue(int variableIndex, int valueIndex) {
+        return valueLists[variableIndex].get(valueIndex);
+    }
+
     /**
-     * Generates a list of tuples of variable values based on the specified values kind.
+     * Gets the number of tuples of variable values, checking that tuples can be built for the specified values kind.
+     * Tuples are identified by their index, from 0 (included) to the returned count (excluded).
      *
-     * @return a list of tuples of variable values
+     * @return the number of tuples of variable values
+     * @throws VariableValuesFunctionException if the tuples cannot be built
      * @throws IllegalArgumentException if an invalid values kind is specified
      */
-    public List<List<Double>> generateValueTuples() throws IllegalArgumentException {
+    public long getTupleCount() throws VariableValuesFunctionException, IllegalArgumentException {
         switch (valuesKind) {
             case GRID:
-                return generateGridValueTuples();
+                return getGridTupleCount();
             case LIST:
-                return generateListValueTuples();
+                return getListTupleCount();
             default:
                 throw new IllegalArgumentException("Invalid values kind: " + valuesKind.valuesKindString);
         }
     }
 
     /**
-     * Generates a list of tuples of variable values for a grid of variables.
+     * Computes the number of tuples of the grid, i.e., the size of the cartesian product of the variable values.
+     *
+     * @return the number of tuples of variable values
+     */
+    private long getGridTupleCount() throws VariableValuesFunctionBuildingException {
+        long count = 1;
+        for (DoubleBuffer values : valueLists) {
+            try {
+                count = Math.multiplyExact(count, values.limit());
+            } catch (ArithmeticException e) {
+                throw new VariableValuesFunctionBuildingException("Too many value tuples for GRID values kind.");
+            }
+        }
+        return count;
+    }
+
+    private long getListTupleCount() throws VariableValuesFunctionBuildingException {
+        List<DoubleBuffer> valueLists = new ArrayList<>(functionMap.values());
+        int size = valueLists.get(0).limit();
+        for (DoubleBuffer list : valueLists) {
+            if (list.limit() != size) {
+                throw new VariableValuesFunctionBuildingException("All variable value lists must have the same length for LIST values kind.");
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Fills the given array with the tuple of variable values having the given index.
+     * Grid tuples are ordered as in the cartesian product of the values, with the last variable varying fastest.
+     *
+     * @param tupleIndex the index of the tuple
+     * @param tuple the array to be filled, with one slot for each variable
+     */
+    public void fillTuple(long tupleIndex, double[] tuple) {
+        if (valuesKind == ValuesKind.LIST) {
+            for (int i = 0; i < valueLists.length; i++) {
+                tuple[i] = valueLists[i].get((int) tupleIndex);
+            }
+            return;
+        }
+        for (int i = valueLists.length - 1; i >= 0; i--) {
+            int size = valueLists[i].limit();
+            tuple[i] = valueLists[i].get((int) (tupleIndex % size));
+            tupleIndex /= size;
+        }
+    }
+
+    /**
+     * Creates a cursor over the tuples of variable values, starting from the tuple with the given index.
      *
-     * @return a list of tuples of variable values
+     * @param tupleIndex the index of the first tuple
+     * @return a new cursor
      */
-    private List<List<Double>> generateGridValueTuples() {
-        List<List<Double>> valueLists = new ArrayList<>(functionMap.values());
-        return cartesianProduct(0, valueLists);
+    public ValueTupleCursor cursor(long tupleIndex) {
+        return new ValueTupleCursor(valueLists, valuesKind == ValuesKind.GRID, tupleIndex);
     }
 
     /**
@@ -110,44 +329,20 @@ public class VariableValuesFunction {
      * @throws VariableValuesFunctionException if the variable is not found
      */
     public int getVariableIndex(String variableName) throws VariableValuesFunctionException{
-        List<String> variables = new ArrayList<>(functionMap.keySet());
-        int variableIndex = variables.indexOf(variableName);
-        if (variableIndex == -1) {
+        Integer variableIndex = variableIndexes.get(variableName);
+        if (variableIndex == null) {
             throw new VariableValuesFunctionException("Invalid variable '" + variableName + "'");
         }
         return variableIndex;
     }
-    private List<List<Double>> cartesianProduct(int index, List<List<Double>> lists) {
-        List<List<Double>> result = new ArrayList<>();
-        if (index == lists.size()) {
-            result.add(new ArrayList<>());
-        } else {
-            for (Double value : lists.get(index)) {
-                for (List<Double> list : cartesianProduct(index + 1, lists)) {
-                    list.add(0, value);
-                    result.add(list);
-                }
-            }
-        }
-        return result;
-    }
-    private List<List<Double>> generateListValueTuples() throws VariableValuesFunctionException {
-        List<List<Double>> valueLists = new ArrayList<>(functionMap.values());
-        int size = valueLists.get(0).size();
-        for (List<Double> list : valueLists) {
-            if (list.size() != size) {
-                throw new VariableValuesFunctionBuildingException("All variable value lists must have the same length for LIST values kind.");
-            }
-        }
 
-        List<List<Double>> result = new ArrayList<>();
-        for (int i = 0; i < size; i++) {
-            List<Double> tuple = new ArrayList<>();
-            for (List<Double> list : valueLists) {
-                tuple.add(list.get(i));
-            }
-            result.add(tuple);
-        }
-        return result;
+    /**
+     * Checks whether a variable belongs to this function.
+     *
+     * @param variableName the name of the variable
+     * @return true if the variable has values in this function
+     */
+    public boolean hasVariable(String variableName) {
+        return variableIndexes.containsKey(variableName);
     }
 }
@@ -8,11 +8,19 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class VariableValuesFunctionParser {
+    private static final char VARIABLE_VALUES_SEPARATOR = ',';
+    private static final char VALUES_PART_SEPARATOR = ':';
+    private static final int VALUES_PARTS = 4;
+    private static final int DATASET_COLUMN_PARTS = 2;
+    private static final char DATASET_PREFIX = '@';
+    private static final char DATASET_COLUMN_SEPARATOR = '.';
+
     /**
      * Parses a string representation of a VariableValuesFunction and returns the corresponding object.
      * The string should have the following format: "VarName:JavaNum:JavaNum:JavaNum",
      * where "VarName" is the name of the variable, and the following numbers represent
      * the lower limit, step size, and upper limit, respectively, of that variable.
+     * The values of a variable can also be a column of a server-side dataset: "VarName:@DatasetName.colN".
      *
      * @param variableValuesFunctionString The string to parse.
      * @param valuesKind The kind of values being parsed.
@@ -21,31 +29,123 @@ public class VariableValuesFunctionParser {
      * @throws VariableValuesFunctionException If an error occurs while parsing the variable values function string.
      */
     public VariableValuesFunction parse(String variableValuesFunctionString, VariableValuesFunction.ValuesKind valuesKind, Computer.ComputationKind computationKind) throws VariableValuesFunctionException {
+        List<VariableValues> variableValuesList = parseVariableValues(variableValuesFunctionString, 0, variableValuesFunctionString.length());
+        return new VariableValuesFunction(variableValuesList, valuesKind, computationKind);
+    }
 
-        String[] variableValuesStrings = variableValuesFunctionString.split(",");
+    /**
+     * Parses the comma separated list of "VarName:JavaNum:JavaNum:JavaNum" items found between
+     * {@code start} (inclusive) and {@code end} (exclusive) of the given string, scanning it only once.
+     * Items are delimited with the same rules as {@link String#split(String)}, so that a request
+     * is accepted or rejected exactly as if it had been split.
+     *
+     * @param string The string containing the variable values function.
+     * @param start The index of the first char of the variable values function.
+     * @param end The index following the last char of the variable values function.
+     * @return The list of parsed VariableValues, in request order.
+     * @throws VariableValuesFunctionException If an item is malformed or describes invalid values.
+     * @throws NumberFormatException If a limit or the step of an item is not a Java number.
+     */
+    public List<VariableValues> parseVariableValues(String string, int start, int end) throws VariableValuesFunctionException {
         List<VariableValues> variableValuesList = new ArrayList<>();
+        int[] itemBounds = splitBounds(string, start, end, VARIABLE_VALUES_SEPARATOR);
+        int[] partBounds = new int[VALUES_PARTS + 1];
 
-        for (String variableValuesString : variableValuesStrings) {
-            String[] valuesParts = variableValuesString.split(":");
-            if (valuesParts.length != 4) {
+        for (int item = 0; item + 1 < itemBounds.length; item++) {
+            int itemStart = itemBounds[item] + (item == 0 ? 0 : 1);
+            int itemEnd = itemBounds[item + 1];
+            VariableValues datasetColumn = parseDatasetColumn(string, itemStart, itemEnd);
+            if (datasetColumn != null) {
+                variableValuesList.add(datasetColumn);
+                continue;
+            }
+            if (!splitValuesParts(string, itemStart, itemEnd, partBounds)) {
                 throw new VariableValuesFunctionParsingException("Invalid variable values function format. " +
                         "Required format for variable values: VarName:JavaNum:JavaNum:JavaNum");
             }
 
-            String variable = valuesParts[0];
-            double lower = Double.parseDouble(valuesParts[1]);
-            double step = Double.parseDouble(valuesParts[2]);
-            double upper = Double.parseDouble(valuesParts[3]);
+            String variable = string.substring(partBounds[0], partBounds[1]);
+            double lower = Double.parseDouble(string.substring(partBounds[1] + 1, partBounds[2]));
+            double step = Double.parseDouble(string.substring(partBounds[2] + 1, partBounds[3]));
+            double upper = Double.parseDouble(string.substring(partBounds[3] + 1, partBounds[4]));
             VariableValues variableValues;
             try {
                 variableValues = new VariableValues(variable, lower, step, upper);
             } catch (VariableValuesFunctionException e) {
-                String errorMessage = String.format("Invalid variable values '%1$s' : %2$s", variableValuesString, e.getMessage());
+                String errorMessage = String.format("Invalid variable values '%1$s' : %2$s", string.substring(itemStart, itemEnd), e.getMessage());
                 throw new VariableValuesFunctionParsingException(errorMessage);
             }
             variableValuesList.add(variableValues);
         }
 
-        return new VariableValuesFunction(variableValuesList, valuesKind, computationKind);
+        return variableValuesList;
+    }
+
+    /**
+     * Parses a "VarName:@DatasetName.colN" item.
+     *
+     * @return the values of the variable, or null if the item does not reference a dataset
+     */
+    private static VariableValues parseDatasetColumn(String string, int start, int end) throws VariableValuesFunctionParsingException {
+        int[] bounds = splitBounds(string, start, end, VALUES_PART_SEPARATOR);
+        if (bounds.length != DATASET_COLUMN_PARTS + 1 || bounds[1] + 1 >= end || string.charAt(bounds[1] + 1) != DATASET_PREFIX) {
+            return null;
+        }
+        int columnSeparator = string.lastIndexOf(DATASET_COLUMN_SEPARATOR, end - 1);
+        if (columnSeparator <= bounds[1] + 1 || bounds[1] == start) {
+            throw new VariableValuesFunctionParsingException("Invalid variable values function format. " +
+                    "Required format for dataset values: VarName:@DatasetName.colN");
+        }
+        return new VariableValues(string.substring(start, bounds[1]), string.substring(bounds[1] + 2, columnSeparator),
+                string.substring(columnSeparator + 1, end));
+    }
+
+    /**
+     * Finds the separators of the given string region, with the semantics of {@link String#split(String)}:
+     * a region without separators is a single item, otherwise trailing empty items are discarded.
+     *
+     * @return the bounds of the items: item i spans from bounds[i] (plus the separator, if i > 0) to bounds[i + 1]
+     */
+    private static int[] splitBounds(String string, int start, int end, char separator) {
+        int separators = 0;
+        for (int i = start; i < end; i++) {
+            if (string.charAt(i) == separator) {
+                separators++;
+            }
+        }
+        int[] bounds = new int[separators + 2];
+        bounds[0] = start;
+        int count = 1;
+        for (int i = start; i < end; i++) {
+            if (string.charAt(i) == separator) {
+                bounds[count++] = i;
+            }
+        }
+        bounds[count] = end;
+        if (separators == 0) {
+            return bounds;
+        }
+        // Discard trailing empty items, as String.split does
+        int items = separators + 1;
+        while (items > 0 && bounds[items] - bounds[items - 1] <= (items == 1 ? 0 : 1)) {
+            items--;
+        }
+        int[] trimmed = new int[items + 1];
+        System.arraycopy(bounds, 0, trimmed, 0, items + 1);
+        return trimmed;
+    }
+
+    /**
+     * Splits a single variable values item on ':' into exactly {@link #VALUES_PARTS} parts.
+     *
+     * @return false if the item does not have exactly four parts
+     */
+    private static boolean splitValuesParts(String string, int start, int end, int[] partBounds) {
+        int[] bounds = splitBounds(string, start, end, VALUES_PART_SEPARATOR);
+        if (bounds.length != VALUES_PARTS + 1) {
+            return false;
+        }
+        System.arraycopy(bounds, 0, partBounds, 0, bounds.length);
+        return true;
     }
 }
@@ -0,0 +1,7 @@
+package it.units.expressionserver.exceptions;
+
+public class ComputationCancelledException extends ComputationException{
+    public ComputationCancelledException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package it.units.expressionserver.exceptions;
+
+public class DatasetException extends VariableValuesFunctionException{
+    public DatasetException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package it.units.expressionserver.exceptions;
+
+public class MemoryBudgetExceededException extends ComputationException{
+    public MemoryBudgetExceededException(String message) {
+        super(message);
+    }
+}
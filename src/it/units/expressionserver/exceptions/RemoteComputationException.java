@@ -0,0 +1,7 @@
+package it.units.expressionserver.exceptions;
+
+public class RemoteComputationException extends ComputationException{
+    public RemoteComputationException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,113 @@
+package it.units.expressionserver.protocol.request;
+
+import it.units.expressionserver.protocol.response.ErrorResponse;
+import it.units.expressionserver.protocol.response.Response;
+import it.units.expressionserver.protocol.response.SettingsResponse;
+import it.units.expressionserver.server.ServerConfiguration;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An AdminRequest reads or changes the settings of the server while it is running:
+ * "ADMIN;token;GET" responds with every setting, while "ADMIN;token;SET;name;value" changes a setting and
+ * responds with its new value. Admin requests are refused unless the server has been given an admin token,
+ * and the request carries the same token. The dataset commands are admin requests as well, see DatasetRequest.
+ */
+public class AdminRequest implements Request {
+
+    public static final String ADMIN_PREFIX = "ADMIN;";
+
+    public enum Action {
+
+        GET("GET"),
+        SET("SET");
+
+        private final String requestString;
+
+        private static final Map<String, Action> stringToEnumMap = new HashMap<>();
+
+        static {
+            for (Action action : Action.values()) {
+                stringToEnumMap.put(action.getRequestString(), action);
+            }
+        }
+
+        Action(String requestString) {
+            this.requestString = requestString;
+        }
+
+        public String getRequestString() {
+            return requestString;
+        }
+
+        public static Action fromRequestString(String requestString) {
+            return stringToEnumMap.get(requestString);
+        }
+    }
+
+    private final String token;
+    private final Action action;
+    private final String name;
+    private final String value;
+    private final ServerConfiguration configuration;
+
+    /**
+     * Constructs a new AdminRequest.
+     *
+     * @param token The admin token sent by the client.
+     * @param action The action on the settings.
+     * @param name The name of the setting to change, or null for a GET request.
+     * @param value The new value of the setting, or null for a GET request.
+     * @param configuration The settings of the server.
+     */
+    public AdminRequest(String token, Action action, String name, String value, ServerConfiguration configuration) {
+        this.token = token;
+        this.action = action;
+        this.name = name;
+        this.value = value;
+        this.configuration = configuration;
+    }
+
+    @Override
+    public Response process(long startTime) {
+        Response refusal = checkToken(token, configuration);
+        if (refusal != null) {
+            return refusal;
+        }
+        switch (action) {
+            case GET:
+                return new SettingsResponse(startTime, configuration.getAll());
+            case SET:
+                configuration.set(name, value);
+                String newValue = configuration.getAll().get(name);
+                System.out.printf("[%1$tY-%1$tm-%1$td %1$tT] Admin set %2$s to %3$s%n", System.currentTimeMillis(), name, newValue);
+                return new SettingsResponse(startTime, Collections.singletonMap(name, newValue));
+            default:
+                throw new IllegalArgumentException(String.format("Invalid admin action: %s", action));
+        }
+    }
+
+    @Override
+    public String getKind() {
+        return "ADMIN_" + action.getRequestString();
+    }
+
+    /**
+     * Checks the token of an admin request.
+     *
+     * @param token The admin token sent by the client.
+     * @param configuration The settings of the server.
+     * @return the error refusing the request, or null if the request is allowed
+     */
+    static Response checkToken(String token, ServerConfiguration configuration) {
+        if (!configuration.isAdminEnabled()) {
+            return new ErrorResponse("(AdminException) : Admin commands are disabled.");
+        }
+        if (!configuration.isAdminToken(token)) {
+            return new ErrorResponse("(AdminException) : Invalid admin token.");
+        }
+        return null;
+    }
+}
@@ -0,0 +1,82 @@
+package it.units.expressionserver.protocol.request;
+
+import it.units.expressionserver.domain.dataset.DatasetRegistry;
+import it.units.expressionserver.server.Coordinator;
+import it.units.expressionserver.server.ServerConfiguration;
+import it.units.expressionserver.service.Computer;
+import it.units.expressionserver.service.MemoryGovernor;
+import it.units.expressionserver.service.ResultCache;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The ComputationContext bundles the server components that computation requests run on.
+ */
+public class ComputationContext {
+
+    private final ExecutorService computationThreadPool;
+    private final Computer computer;
+    private final DatasetRegistry datasetRegistry;
+    private final Coordinator coordinator;
+    private final ResultCache resultCache;
+    private final SingleFlight singleFlight;
+    private final MemoryGovernor memoryGovernor;
+    private final ServerConfiguration configuration;
+
+    /**
+     * Constructs a new ComputationContext.
+     *
+     * @param computationThreadPool the thread pool for computation tasks
+     * @param computer the computer performing the computations
+     * @param datasetRegistry the registry of the datasets that the variable values can reference
+     * @param coordinator the coordinator distributing large computations to workers, or null if computations are local
+     * @param resultCache the cache of the results of deterministic computations
+     * @param singleFlight the registry of the computations in flight, shared by identical requests
+     * @param memoryGovernor the governor of the memory that the running computations take together
+     * @param configuration the settings of the server, such as the limits of the computation queue and the timeouts
+     */
+    public ComputationContext(ExecutorService computationThreadPool, Computer computer, DatasetRegistry datasetRegistry,
+                              Coordinator coordinator, ResultCache resultCache, SingleFlight singleFlight,
+                              MemoryGovernor memoryGovernor, ServerConfiguration configuration) {
+        this.computationThreadPool = computationThreadPool;
+        this.computer = computer;
+        this.datasetRegistry = datasetRegistry;
+        this.coordinator = coordinator;
+        this.resultCache = resultCache;
+        this.singleFlight = singleFlight;
+        this.memoryGovernor = memoryGovernor;
+        this.configuration = configuration;
+    }
+
+    public ExecutorService getComputationThreadPool() {
+        return computationThreadPool;
+    }
+
+    public Computer getComputer() {
+        return computer;
+    }
+
+    public DatasetRegistry getDatasetRegistry() {
+        return datasetRegistry;
+    }
+
+    public Coordinator getCoordinator() {
+        return coordinator;
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    public MemoryGovernor getMemoryGovernor() {
+        return memoryGovernor;
+    }
+
+    public ServerConfiguration getConfiguration() {
+        return configuration;
+    }
+}
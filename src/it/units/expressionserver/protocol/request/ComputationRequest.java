@@ -1,143 +1,466 @@
 package it.units.expressionserver.protocol.request;
 
-import it.units.expressionserver.domain.variablevaluesfunction.VariableValuesFunctionParser;
+import it.units.expressionserver.domain.variablevaluesfunction.VariableValues;
+import it.units.expressionserver.exceptions.ComputationCancelledException;
 import it.units.expressionserver.exceptions.ComputationException;
 import it.units.expressionserver.exceptions.ExpressionException;
 import it.units.expressionserver.exceptions.ExpressionParsingException;
+import it.units.expressionserver.exceptions.MemoryBudgetExceededException;
+import it.units.expressionserver.exceptions.RemoteComputationException;
 import it.units.expressionserver.exceptions.VariableValuesFunctionException;
+import it.units.expressionserver.server.Coordinator;
+import it.units.expressionserver.server.ServerConfiguration;
 import it.units.expressionserver.service.Computer;
+import it.units.expressionserver.service.MemoryGovernor;
+import it.units.expressionserver.service.ProgressListener;
+import it.units.expressionserver.service.ResultCache;
+import it.units.expressionserver.service.ThresholdPredicate;
 import it.units.expressionserver.domain.variablevaluesfunction.VariableValuesFunction;
 import it.units.expressionserver.domain.expression.Expression;
 import it.units.expressionserver.domain.expression.nodes.Node;
 import it.units.expressionserver.domain.expression.ExpressionParser;
 import it.units.expressionserver.protocol.response.ErrorResponse;
 import it.units.expressionserver.protocol.response.OkResponse;
+import it.units.expressionserver.protocol.response.PartialResponse;
 import it.units.expressionserver.protocol.response.Response;
+import it.units.expressionserver.protocol.response.ShardResponse;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 
 public class ComputationRequest implements Request {
 
-    private final String computationString;
+    private final Computer.ComputationKind computationKind;
+    private final VariableValuesFunction.ValuesKind valuesKind;
+    private final List<VariableValues> variableValuesList;
+    private final RuntimeException variableValuesError;
+    private final List<String> expressionStrings;
+    private final List<Expression> preparedExpressions;
+    private final double approximationRelativeError;
+    private final ThresholdPredicate predicate;
+    private final String requestString;
+    private final long shardFrom;
+    private final long shardTo;
     private final ExecutorService computationThreadPool;
     private final Computer computer;
-    private String[] requestParts;
-    private static final int MAX_COMPUTATION_TIME = 10;
-    private static final int MAX_QUEUE_TIME = 120;
+    private final ComputationContext computationContext;
+    private final StreamChannel connection;
+    private final StreamChannel streamChannel;
+    private static final int MAX_MEMORY_WAIT_TIME = 60;
+    private static final long FRAME_INTERVAL_NANOS = 100_000_000L;
+    private static final long DISCONNECTION_CHECK_MILLIS = 100;
 
     /**
-     * Constructs a new ComputationRequest instance.
+     * Constructs a new ComputationRequest instance from the decoded parts of the request.
      *
-     * @param computationString the computation request string
-     * @param computationThreadPool the thread pool for computation tasks
+     * @param computationKind the kind of computation requested
+     * @param valuesKind the kind of values requested
+     * @param variableValuesList the variable values of the request, or null if they could not be decoded
+     * @param variableValuesError the error raised while decoding the variable values, if any
+     * @param expressionStrings the expression slices of the request
+     * @param preparedExpressions the expressions of the request, if it executes prepared expressions, or null to parse them
+     * @param approximationRelativeError the relative error requested for AVG~, or NaN to use the default one
+     * @param predicate the predicate of COUNT_IF, ANY and ALL, or null for the other computation kinds
+     * @param requestString the computation request string, which a coordinator forwards to its workers
+     * @param shardFrom the index of the first tuple of the shard to compute, or -1 to compute all the tuples
+     * @param shardTo the index following the last tuple of the shard to compute, or -1 to compute all the tuples
+     * @param computationContext the server components the computation runs on
+     * @param connection the channel of the connection of the client, or null if the connection is not tracked
+     * @param streamed whether the interim frames of the computation are streamed through the connection
      */
-    public ComputationRequest(String computationString, ExecutorService computationThreadPool, Computer computer) {
-        this.computationThreadPool = computationThreadPool;
-        this.computationString = computationString;
-        this.computer = computer;
+    public ComputationRequest(Computer.ComputationKind computationKind, VariableValuesFunction.ValuesKind valuesKind,
+                              List<VariableValues> variableValuesList, RuntimeException variableValuesError,
+                              List<String> expressionStrings, List<Expression> preparedExpressions,
+                              double approximationRelativeError, ThresholdPredicate predicate, String requestString,
+                              long shardFrom, long shardTo, ComputationContext computationContext, StreamChannel connection, boolean streamed) {
+        this.computationKind = computationKind;
+        this.valuesKind = valuesKind;
+        this.variableValuesList = variableValuesList;
+        this.variableValuesError = variableValuesError;
+        this.expressionStrings = expressionStrings;
+        this.preparedExpressions = preparedExpressions;
+        this.approximationRelativeError = approximationRelativeError;
+        this.predicate = predicate;
+        this.requestString = requestString;
+        this.shardFrom = shardFrom;
+        this.shardTo = shardTo;
+        this.computationThreadPool = computationContext.getComputationThreadPool();
+        this.computer = computationContext.getComputer();
+        this.computationContext = computationContext;
+        this.connection = connection;
+        this.streamChannel = streamed ? connection : null;
     }
 
     /**
      * Processes the computation request.
+     * A repeated deterministic computation is answered from the result cache at once, without waiting for memory
+     * or for a thread of the computation thread pool.
+     * Identical computations in flight at the same time are computed once: their requests share the response,
+     * each with its own response time. While waiting, the connection of the client is checked for disconnection,
+     * in which case the request gives up, and the computation is cancelled unless other requests are waiting for it.
+     * A computation is rejected if the computation queue already holds as many computations as the configuration allows,
+     * while the queue and computation timeouts are those configured when the request is processed.
      *
      * @param startTime the start time of the computation
      * @return a Response object that represents the result of the computation
      */
     @Override
     public Response process(long startTime) {
-        this.requestParts = computationString.split(";");
-        if (requestParts.length < 3) {
-            return new ErrorResponse("Invalid computation request format: request parts < 3");
+        List<Expression> expressions;
+        ExpressionParsingException expressionsError = null;
+        try {
+            expressions = preparedExpressions != null ? preparedExpressions : parseExpressions(expressionStrings);
+        } catch (ExpressionParsingException e) {
+            expressions = null;
+            expressionsError = e;
+        }
+        String requestKey = streamChannel == null && shardFrom < 0 && expressions != null && variableValuesError == null
+                ? buildRequestKey(expressions) : null;
+        if (requestKey != null && isCacheable()) {
+            ResultCache resultCache = computationContext.getResultCache();
+            double[] cachedResult = resultCache.isCacheable(requestKey) ? resultCache.get(requestKey) : null;
+            if (cachedResult != null) {
+                return new OkResponse(startTime, cachedResult);
+            }
         }
+        List<Expression> parsedExpressions = expressions;
+        ExpressionParsingException parsingError = expressionsError;
+        ServerConfiguration configuration = computationContext.getConfiguration();
+        SingleFlight.Flight flight = computationContext.getSingleFlight().join(requestKey, () -> {
+            if (computationThreadPool instanceof ThreadPoolExecutor && ((ThreadPoolExecutor) computationThreadPool).getQueue().size()
+                    + computationContext.getMemoryGovernor().getWaitingComputations() >= configuration.getMaxQueuedComputations()) {
+                return CompletableFuture.completedFuture(new ErrorResponse(String.format("(QueueFullException) : " +
+                        "The computation queue is full, with %d computation requests waiting.", configuration.getMaxQueuedComputations())));
+            }
+            return new MemoryGatedComputation(reserveMemory(parsedExpressions),
+                    reservation -> compute(startTime, parsedExpressions, parsingError, requestKey, reservation));
+        });
 
-        Future<Response> futureResponse = computationThreadPool.submit(() -> {
-            FutureTask<Response> innerTask = new FutureTask<>(() -> {
+        int queueTimeout = configuration.getQueueTimeoutSeconds();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(queueTimeout);
+        try {
+            while (true) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
                 try {
-                    // Parse a variable-values function a from the VariableValuesFunction part of the request
-                    VariableValuesFunction variableValuesFunction = parseVariableValuesFunction();
-
-                    // Build a list T of value tuples from a
-                    List<List<Double>> valueTuples = variableValuesFunction.generateValueTuples();
-
-                    // Parse a non-empty list E=(e1,…,en) of expressions from the Expressions part of the request
-                    List<Expression> expressions = parseExpressions();
-
-                    // Compute a value o on T and E depending on the ComputationKind part of the request
-                    double computationResult = computer.computeResult(valueTuples, variableValuesFunction, expressions);
-
-                    // If everything is successful, return an OkResponse with the computation result
-                    return new OkResponse(startTime, computationResult);
-                } catch (ExpressionException e) {
-                    String errorMessage = "(ExpressionException) : " + e.getMessage();
-                    return new ErrorResponse(errorMessage);
-                } catch (VariableValuesFunctionException e) {
-                    String errorMessage = "(VariableValuesFunctionException) : " + e.getMessage();
-                    return new ErrorResponse(errorMessage);
-                } catch (ComputationException e) {
-                    String errorMessage = "(ComputationException) : " + e.getMessage();
-                    return new ErrorResponse(errorMessage);
+                    Response response = flight.get(Math.max(0, Math.min(remainingMillis, DISCONNECTION_CHECK_MILLIS)), TimeUnit.MILLISECONDS);
+                    if (flight.isShared() && response instanceof OkResponse) {
+                        return new OkResponse(startTime, ((OkResponse) response).getData());
+                    }
+                    return response;
+                } catch (TimeoutException e) {
+                    if (remainingMillis <= 0) {
+                        flight.leave();
+                        String errorMessage = String.format("(QueueTimeoutException) : The computation request stayed in the " +
+                                "queue for more than %d seconds.", queueTimeout);
+                        return new ErrorResponse(errorMessage);
+                    }
+                    if (streamChannel == null && connection != null && connection.isDisconnected()) {
+                        flight.leave();
+                        return new ErrorResponse("(ComputationCancelledException) : The client disconnected.");
+                    }
                 }
-            });
+            }
+        } catch (InterruptedException | ExecutionException | CancellationException e) {
+            flight.leave();
+            System.err.printf("Cannot compute due to %s%n", e);
+            return new ErrorResponse(String.format("Cannot compute due to %s", e));
+        }
+    }
 
-            Thread innerThread = new Thread(innerTask);
-            innerThread.start();
-            try {
-                return innerTask.get(MAX_COMPUTATION_TIME, TimeUnit.SECONDS);
-            } catch (InterruptedException | ExecutionException e) {
-                System.err.printf("Cannot compute due to %s%n", e);
-                return new ErrorResponse(String.format("Cannot compute due to %s", e));
-            } catch (TimeoutException e) {
-                innerThread.interrupt();
-                String errorMessage = String.format("(ComputationTimeoutException) : The computation took longer " +
-                        "than %d seconds.", MAX_COMPUTATION_TIME);
+    /**
+     * Gets the kind of the request, i.e., the kind of computation and the kind of values, e.g., MIN_GRID.
+     */
+    @Override
+    public String getKind() {
+        return computationKind.getRequestString() + "_" + valuesKind.getRequestString();
+    }
+
+    /**
+     * Computes the request on a thread of the computation thread pool, within the maximum computation time.
+     * The estimated footprint of the computation has been reserved from the memory budget before, and is released
+     * when the computation actually ends, which may be after it times out.
+     *
+     * @param startTime the start time of the computation
+     * @param parsedExpressions the expressions of the request, or null if they cannot be parsed
+     * @param parsingError the error raised while parsing the expressions, if any
+     * @param requestKey the canonical key of the request, or null if it has none
+     * @param reservation the memory reserved for the computation, or null if the request is invalid
+     * @return the response of the computation
+     */
+    private Response compute(long startTime, List<Expression> parsedExpressions, ExpressionParsingException parsingError,
+                             String requestKey, MemoryGovernor.Reservation reservation) {
+        FutureTask<Response> innerTask = new FutureTask<>(() -> {
+            StreamingProgressListener progressListener = streamChannel == null ? null : new StreamingProgressListener(startTime);
+            // Build a variable-values function a from the VariableValuesFunction part of the request
+            try (reservation; VariableValuesFunction variableValuesFunction = buildVariableValuesFunction()) {
+                // Check that the value tuples T can be built from a (T is streamed while computing)
+                long tupleCount = variableValuesFunction.getTupleCount();
+
+                // Parse a non-empty list E=(e1,…,en) of expressions from the Expressions part of the request
+                if (parsingError != null) {
+                    throw parsingError;
+                }
+                List<Expression> expressions = parsedExpressions;
+
+                if (shardFrom >= 0) {
+                    if (shardTo > tupleCount) {
+                        return new ErrorResponse(String.format("(IllegalArgumentException) The shard %1$d-%2$d exceeds the %3$d tuples of the computation", shardFrom, shardTo, tupleCount));
+                    }
+                    return new ShardResponse(startTime, computer.computeShard(variableValuesFunction, expressions, shardFrom, shardTo));
+                }
+
+                // Answer from the cache the computations that were completed while this one was waiting
+                ResultCache resultCache = computationContext.getResultCache();
+                String cacheKey = isCacheable() ? requestKey : null;
+                if (cacheKey != null && resultCache.isCacheable(cacheKey)) {
+                    double[] cachedResult = resultCache.get(cacheKey);
+                    if (cachedResult != null) {
+                        return new OkResponse(startTime, cachedResult);
+                    }
+                } else {
+                    cacheKey = null;
+                }
+
+                // Compute a value o on T and E depending on the ComputationKind part of the request
+                double[] computationResult = null;
+                Coordinator coordinator = computationContext.getCoordinator();
+                if (coordinator != null && progressListener == null && coordinator.isDistributable(computationKind, variableValuesList, tupleCount)) {
+                    // Falls back to the local computation if no worker can complete it
+                    computationResult = coordinator.distribute(requestString, computationKind, tupleCount,
+                            computationContext.getConfiguration().getComputationTimeoutSeconds());
+                }
+                if (computationResult == null) {
+                    if (predicate != null) {
+                        computationResult = computer.computePredicate(variableValuesFunction, expressions, predicate);
+                    } else if (!Double.isNaN(approximationRelativeError)) {
+                        computationResult = computer.computeApproximateAvg(variableValuesFunction, expressions, approximationRelativeError);
+                    } else if (progressListener == null) {
+                        computationResult = computer.computeResult(variableValuesFunction, expressions);
+                    } else {
+                        computationResult = computer.computeResult(variableValuesFunction, expressions, progressListener);
+                    }
+                }
+
+                if (cacheKey != null) {
+                    resultCache.put(cacheKey, computationResult);
+                }
+
+                // If everything is successful, return an OkResponse with the computation result
+                return new OkResponse(startTime, computationResult);
+            } catch (ExpressionException e) {
+                String errorMessage = "(ExpressionException) : " + e.getMessage();
+                return new ErrorResponse(errorMessage);
+            } catch (VariableValuesFunctionException e) {
+                String errorMessage = "(VariableValuesFunctionException) : " + e.getMessage();
+                return new ErrorResponse(errorMessage);
+            } catch (RemoteComputationException e) {
+                // The error of the worker already tells its kind
+                return new ErrorResponse(e.getMessage());
+            } catch (ComputationCancelledException e) {
+                // The client keeps the best answer so far: the partial result of the tuples processed before cancelling
+                return progressListener.lastFrame(true);
+            } catch (ComputationException e) {
+                String errorMessage = "(ComputationException) : " + e.getMessage();
                 return new ErrorResponse(errorMessage);
             }
         });
 
+        Thread innerThread = new Thread(innerTask);
+        innerThread.start();
+        int computationTimeout = computationContext.getConfiguration().getComputationTimeoutSeconds();
         try {
-            return futureResponse.get(MAX_QUEUE_TIME, TimeUnit.SECONDS);
-        } catch (InterruptedException | ExecutionException e) {
+            return innerTask.get(computationTimeout, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            // Every request waiting for the computation has given up
+            innerThread.interrupt();
+            return new ErrorResponse("(ComputationCancelledException) : The computation was cancelled.");
+        } catch (ExecutionException e) {
             System.err.printf("Cannot compute due to %s%n", e);
             return new ErrorResponse(String.format("Cannot compute due to %s", e));
         } catch (TimeoutException e) {
-            String errorMessage = String.format("(QueueTimeoutException) : The computation request stayed in the " +
-                    "queue for more than %d seconds.", MAX_QUEUE_TIME);
+            innerThread.interrupt();
+            String errorMessage = String.format("(ComputationTimeoutException) : The computation took longer " +
+                    "than %d seconds.", computationTimeout);
             return new ErrorResponse(errorMessage);
         }
     }
+
     /**
-     * Parses a VariableValuesFunction object from the computation request string.
+     * Reserves the estimated footprint of the computation from the memory budget.
      *
-     * @return a VariableValuesFunction object
+     * @param parsedExpressions the expressions of the request, or null if they cannot be parsed
+     * @return the future reservation, which is null if the request is invalid and fails before taking any memory
      */
-    private VariableValuesFunction parseVariableValuesFunction() throws VariableValuesFunctionException {
-        VariableValuesFunctionParser variableValuesFunctionParser = new VariableValuesFunctionParser();
-        String[] kindParts = requestParts[0].split("_");
-        if (kindParts.length != 2) {
-            throw new IllegalArgumentException("Invalid computation type format.");
+    private CompletableFuture<MemoryGovernor.Reservation> reserveMemory(List<Expression> parsedExpressions) {
+        if (parsedExpressions == null || variableValuesError != null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<Node> roots = new ArrayList<>(parsedExpressions.size());
+        for (Expression expression : parsedExpressions) {
+            roots.add(expression.getRoot());
         }
+        long footprint = MemoryGovernor.estimateFootprint(variableValuesList, valuesKind, roots, computer.getColumnCache());
+        return computationContext.getMemoryGovernor().reserve(footprint, MAX_MEMORY_WAIT_TIME, TimeUnit.SECONDS);
+    }
+
+    /**
+     * A computation submitted to the computation thread pool once its memory is reserved, so that computations
+     * waiting for memory take no thread of the pool, and do not hold up the smaller ones behind them.
+     * Cancelling it cancels the reservation or interrupts the computation; a computation cancelled before starting
+     * releases its memory at once.
+     */
+    private class MemoryGatedComputation implements Future<Response> {
+        private final CompletableFuture<MemoryGovernor.Reservation> reservation;
+        private final CompletableFuture<Response> response = new CompletableFuture<>();
+        private volatile FutureTask<Response> task;
 
-        String computationKindString = kindParts[0];
-        String valuesKindString = kindParts[1];
+        private MemoryGatedComputation(CompletableFuture<MemoryGovernor.Reservation> reservation,
+                                       Function<MemoryGovernor.Reservation, Response> computation) {
+            this.reservation = reservation;
+            reservation.whenComplete((granted, e) -> {
+                if (e instanceof MemoryBudgetExceededException) {
+                    response.complete(new ErrorResponse("(MemoryBudgetExceededException) : " + e.getMessage()));
+                } else if (e == null) {
+                    submit(granted, computation);
+                }
+            });
+        }
 
-        Computer.ComputationKind computationKind = Computer.ComputationKind.fromRequestString(computationKindString);
-        VariableValuesFunction.ValuesKind valuesKind = VariableValuesFunction.ValuesKind.fromRequestString(valuesKindString);
+        private void submit(MemoryGovernor.Reservation granted, Function<MemoryGovernor.Reservation, Response> computation) {
+            AtomicBoolean started = new AtomicBoolean();
+            task = new FutureTask<>(() -> started.compareAndSet(false, true) ? computation.apply(granted) : null) {
+                @Override
+                protected void done() {
+                    if (isCancelled()) {
+                        if (started.compareAndSet(false, true) && granted != null) {
+                            granted.close();
+                        }
+                        return;
+                    }
+                    try {
+                        response.complete(get());
+                    } catch (InterruptedException | ExecutionException e) {
+                        response.completeExceptionally(e instanceof ExecutionException ? e.getCause() : e);
+                    }
+                }
+            };
+            computationThreadPool.execute(task);
+            if (response.isCancelled()) {
+                task.cancel(true);
+            }
+        }
 
-        return variableValuesFunctionParser.parse(requestParts[1], valuesKind, computationKind);
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = response.cancel(mayInterruptIfRunning);
+            reservation.cancel(false);
+            FutureTask<Response> submittedTask = task;
+            if (submittedTask != null) {
+                submittedTask.cancel(mayInterruptIfRunning);
+            }
+            return cancelled;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return response.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return response.isDone();
+        }
+
+        @Override
+        public Response get() throws InterruptedException, ExecutionException {
+            return response.get();
+        }
+
+        @Override
+        public Response get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return response.get(timeout, unit);
+        }
+    }
+
+    /**
+     * Builds the VariableValuesFunction object from the decoded variable values of the request.
+     *
+     * @return a VariableValuesFunction object
+     */
+    private VariableValuesFunction buildVariableValuesFunction() throws VariableValuesFunctionException {
+        if (variableValuesError != null) {
+            throw variableValuesError;
+        }
+        return new VariableValuesFunction(variableValuesList, valuesKind, computationKind, computationContext.getDatasetRegistry());
+    }
+
+    /**
+     * Builds the canonical key of the request: the computation kind, the values kind, the variable values and
+     * the canonical expressions, so that requests differing only in the formatting of the numbers or of
+     * the expressions share their computation and their cached result.
+     *
+     * @param expressions the parsed expressions of the request
+     * @return the key
+     */
+    private String buildRequestKey(List<Expression> expressions) {
+        StringBuilder key = new StringBuilder(computationKind.getRequestString());
+        if (!Double.isNaN(approximationRelativeError)) {
+            key.append(approximationRelativeError);
+        }
+        if (predicate != null) {
+            key.append(predicate);
+        }
+        key.append('_').append(valuesKind.getRequestString());
+        char separator = ';';
+        for (VariableValues variableValues : variableValuesList) {
+            key.append(separator).append(variableValues.getVariable()).append(':');
+            if (variableValues.isDatasetColumn()) {
+                key.append('@').append(variableValues.getDatasetName()).append('.').append(variableValues.getColumnName());
+            } else {
+                key.append(variableValues.getLower()).append(':').append(variableValues.getStep()).append(':').append(variableValues.getUpper());
+            }
+            separator = ',';
+        }
+        for (Expression expression : expressions) {
+            key.append(';').append(expression.getRoot());
+        }
+        return key.toString();
     }
+
     /**
-     * Parses a list of Expression objects from the computation request string.
+     * Checks whether the result of the request can be cached: it cannot if it is approximate or depends on a dataset,
+     * which can be reloaded.
+     */
+    private boolean isCacheable() {
+        switch (computationKind) {
+            case AVG_APPROX:
+            case MIN_APPROX:
+            case MAX_APPROX:
+                return false;
+            default:
+                break;
+        }
+        for (VariableValues variableValues : variableValuesList) {
+            if (variableValues.isDatasetColumn()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a list of Expression objects from the expression slices of a computation request.
      *
+     * @param expressionStrings the expression slices
      * @return a list of Expression objects
      * @throws ExpressionParsingException if the expressions in the computation request string are invalid
      */
-    private List<Expression> parseExpressions() throws ExpressionParsingException {
-        String[] expressionStrings = Arrays.copyOfRange(this.requestParts, 2, this.requestParts.length);
-
+    static List<Expression> parseExpressions(List<String> expressionStrings) throws ExpressionParsingException {
         List<Expression> expressions = new ArrayList<>();
         Node node;
 
@@ -158,5 +481,60 @@ public class ComputationRequest implements Request {
         return expressions;
     }
 
+    /**
+     * The listener of a streamed computation: it sends a frame with the partial aggregates to the client
+     * as soon as the first tuples are processed, and then at most every {@link #FRAME_INTERVAL_NANOS}.
+     * It cancels the computation when the client asks so, when a frame cannot be sent,
+     * and when the computation thread is interrupted because the computation timed out.
+     */
+    private class StreamingProgressListener implements ProgressListener {
+        private final long startTime;
+        private long lastFrameTime;
+        private boolean framesSent;
+        private long processedTuples;
+        private long tupleCount;
+        private double min;
+        private double max;
+        private double avg;
+
+        private StreamingProgressListener(long startTime) {
+            this.startTime = startTime;
+        }
+
+        @Override
+        public boolean onProgress(long processedTuples, long tupleCount, double min, double max, double avg) {
+            this.processedTuples = processedTuples;
+            this.tupleCount = tupleCount;
+            this.min = min;
+            this.max = max;
+            this.avg = avg;
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            // Holding the channel, a timed out computation cannot send frames after the final response
+            synchronized (streamChannel) {
+                if (Thread.currentThread().isInterrupted() || streamChannel.isCancelled()) {
+                    return false;
+                }
+                long now = System.nanoTime();
+                if (framesSent && now - lastFrameTime < FRAME_INTERVAL_NANOS) {
+                    return true;
+                }
+                try {
+                    streamChannel.send(lastFrame(false));
+                } catch (IOException e) {
+                    return false;
+                }
+                framesSent = true;
+                lastFrameTime = now;
+                return true;
+            }
+        }
+
+        private PartialResponse lastFrame(boolean cancelled) {
+            return new PartialResponse(startTime, cancelled, (double) processedTuples / tupleCount, min, max, avg);
+        }
+    }
+
 
 }
@@ -0,0 +1,101 @@
+package it.units.expressionserver.protocol.request;
+
+import it.units.expressionserver.domain.dataset.Dataset;
+import it.units.expressionserver.domain.dataset.DatasetRegistry;
+import it.units.expressionserver.exceptions.DatasetException;
+import it.units.expressionserver.protocol.response.ErrorResponse;
+import it.units.expressionserver.protocol.response.OkResponse;
+import it.units.expressionserver.protocol.response.Response;
+import it.units.expressionserver.server.ServerConfiguration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A DatasetRequest is an admin command managing the datasets of the server:
+ * "ADMIN;token;DATASET_LOAD;name" loads (or loads again) a dataset from the datasets directory and responds with
+ * its number of rows and columns, while "ADMIN;token;DATASET_DROP;name" drops a dataset.
+ * As other admin requests, it is refused unless it carries the admin token of the server.
+ */
+public class DatasetRequest implements Request {
+
+    public enum Action {
+
+        LOAD("DATASET_LOAD"),
+        DROP("DATASET_DROP");
+
+        private final String requestString;
+
+        private static final Map<String, Action> stringToEnumMap = new HashMap<>();
+
+        static {
+            for (Action action : Action.values()) {
+                stringToEnumMap.put(action.getRequestString(), action);
+            }
+        }
+
+        Action(String requestString) {
+            this.requestString = requestString;
+        }
+
+        public String getRequestString() {
+            return requestString;
+        }
+
+        public static Action fromRequestString(String requestString) {
+            return stringToEnumMap.get(requestString);
+        }
+    }
+
+    private final String token;
+    private final Action action;
+    private final String datasetName;
+    private final DatasetRegistry datasetRegistry;
+    private final ServerConfiguration configuration;
+
+    /**
+     * Constructs a new DatasetRequest.
+     *
+     * @param token The admin token sent by the client.
+     * @param action The action on the dataset.
+     * @param datasetName The name of the dataset.
+     * @param datasetRegistry The registry of the datasets.
+     * @param configuration The settings of the server, holding the admin token.
+     */
+    public DatasetRequest(String token, Action action, String datasetName, DatasetRegistry datasetRegistry, ServerConfiguration configuration) {
+        this.token = token;
+        this.action = action;
+        this.datasetName = datasetName;
+        this.datasetRegistry = datasetRegistry;
+        this.configuration = configuration;
+    }
+
+    @Override
+    public Response process(long startTime) {
+        Response refusal = AdminRequest.checkToken(token, configuration);
+        if (refusal != null) {
+            return refusal;
+        }
+        try {
+            switch (action) {
+                case LOAD:
+                    Dataset dataset = datasetRegistry.load(datasetName);
+                    System.out.printf("[%1$tY-%1$tm-%1$td %1$tT] Admin loaded dataset %2$s%n", System.currentTimeMillis(), datasetName);
+                    return new OkResponse(startTime, dataset.getRowCount(), dataset.getColumnCount());
+                case DROP:
+                    datasetRegistry.drop(datasetName);
+                    System.out.printf("[%1$tY-%1$tm-%1$td %1$tT] Admin dropped dataset %2$s%n", System.currentTimeMillis(), datasetName);
+                    return new OkResponse(startTime);
+                default:
+                    throw new IllegalArgumentException(String.format("Invalid dataset action: %s", action));
+            }
+        } catch (DatasetException e) {
+            return new ErrorResponse("(DatasetException) : " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String getKind() {
+        return action.getRequestString();
+    }
+}
@@ -0,0 +1,38 @@
+package it.units.expressionserver.protocol.request;
+
+import it.units.expressionserver.protocol.response.ErrorResponse;
+import it.units.expressionserver.protocol.response.Response;
+
+/**
+ * The InvalidRequest class represents a request that was recognized but turned out to be malformed
+ * while being decoded. Processing it simply reports the decoding error to the client.
+ */
+public class InvalidRequest implements Request {
+
+    private final String errorMessage;
+
+    /**
+     * Constructs a new InvalidRequest with the specified error message.
+     *
+     * @param errorMessage The error message detailing why the request is invalid.
+     */
+    public InvalidRequest(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    /**
+     * Processes the invalid request.
+     *
+     * @param startTime The start time of the request, used to calculate the response time.
+     * @return An ErrorResponse with the decoding error.
+     */
+    @Override
+    public Response process(long startTime) {
+        return new ErrorResponse(errorMessage);
+    }
+
+    @Override
+    public String getKind() {
+        return "INVALID";
+    }
+}
@@ -0,0 +1,120 @@
+package it.units.expressionserver.protocol.request;
+
+import it.units.expressionserver.domain.expression.Expression;
+import it.units.expressionserver.exceptions.ExpressionParsingException;
+import it.units.expressionserver.protocol.response.ErrorResponse;
+import it.units.expressionserver.protocol.response.HandleResponse;
+import it.units.expressionserver.protocol.response.OkResponse;
+import it.units.expressionserver.protocol.response.Response;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A PrepareRequest manages the prepared expressions of a connection:
+ * "PREPARE;e1;...;en" parses the expressions once and responds with the handle with which
+ * "EXECUTE;handle;ComputationKind_ValuesKind;VariableValuesFunction" computes them, while "DEALLOCATE;handle"
+ * forgets them.
+ */
+public class PrepareRequest implements Request {
+
+    public enum Action {
+
+        PREPARE("PREPARE"),
+        DEALLOCATE("DEALLOCATE");
+
+        private final String requestString;
+
+        private static final Map<String, Action> stringToEnumMap = new HashMap<>();
+
+        static {
+            for (Action action : Action.values()) {
+                stringToEnumMap.put(action.getRequestString(), action);
+            }
+        }
+
+        Action(String requestString) {
+            this.requestString = requestString;
+        }
+
+        public String getRequestString() {
+            return requestString;
+        }
+
+        public static Action fromRequestString(String requestString) {
+            return stringToEnumMap.get(requestString);
+        }
+    }
+
+    private final Action action;
+    private final List<String> expressionStrings;
+    private final String argument;
+    private final PreparedExpressions preparedExpressions;
+
+    /**
+     * Constructs a new PrepareRequest.
+     *
+     * @param action The action on the prepared expressions.
+     * @param expressionStrings The expression slices of a PREPARE request.
+     * @param argument The part of the request following the action.
+     * @param preparedExpressions The prepared expressions of the connection.
+     */
+    public PrepareRequest(Action action, List<String> expressionStrings, String argument, PreparedExpressions preparedExpressions) {
+        this.action = action;
+        this.expressionStrings = expressionStrings;
+        this.argument = argument;
+        this.preparedExpressions = preparedExpressions;
+    }
+
+    @Override
+    public Response process(long startTime) {
+        switch (action) {
+            case PREPARE:
+                List<Expression> expressions;
+                try {
+                    expressions = ComputationRequest.parseExpressions(expressionStrings);
+                } catch (ExpressionParsingException e) {
+                    return new ErrorResponse("(ExpressionException) : " + e.getMessage());
+                }
+                return new HandleResponse(startTime, preparedExpressions.prepare(expressions, argument));
+            case DEALLOCATE:
+                if (!preparedExpressions.deallocate(parseHandle(argument))) {
+                    throw new IllegalArgumentException("Unknown prepared expressions: " + argument);
+                }
+                return new OkResponse(startTime);
+            default:
+                throw new IllegalArgumentException(String.format("Invalid prepare action: %s", action));
+        }
+    }
+
+    @Override
+    public String getKind() {
+        return action.getRequestString();
+    }
+
+    /**
+     * Parses the handle of prepared expressions, which is an integer, also accepted as an integral value such as
+     * 1.000000, as clients formatting every response field as a value send it back.
+     *
+     * @param handleString the handle
+     * @return the handle
+     * @throws IllegalArgumentException if the handle is not an integer
+     */
+    static int parseHandle(String handleString) throws IllegalArgumentException {
+        try {
+            return Integer.parseInt(handleString);
+        } catch (NumberFormatException e) {
+            // Not an integer, but maybe an integral value
+        }
+        try {
+            double handle = Double.parseDouble(handleString);
+            if (handle == (int) handle) {
+                return (int) handle;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid prepared expressions handle: " + handleString);
+    }
+}
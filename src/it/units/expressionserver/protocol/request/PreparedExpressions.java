@@ -0,0 +1,105 @@
+package it.units.expressionserver.protocol.request;
+
+import it.units.expressionserver.domain.expression.Expression;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The PreparedExpressions keeps the expressions that the client of a connection has prepared, so that it can
+ * execute them many times, with different computation kinds and variable values, sending only their handle instead
+ * of their text, which is then parsed only once.
+ * The prepared expressions of a connection are bounded both in number and in total length: preparing new expressions
+ * beyond the limits evicts the least recently executed ones, whose handles are no longer valid.
+ * Handles are never reused within a connection, so that an evicted handle cannot silently execute other expressions.
+ */
+public class PreparedExpressions {
+
+    /**
+     * The maximum number of prepared expression lists of a connection.
+     */
+    public static final int MAX_PREPARED = 64;
+    /**
+     * The maximum total length of the prepared expressions of a connection, in characters.
+     */
+    public static final long MAX_PREPARED_CHARACTERS = 1 << 20;
+
+    private final LinkedHashMap<Integer, Prepared> prepared = new LinkedHashMap<>(16, 0.75f, true);
+    private long preparedCharacters;
+    private int nextHandle = 1;
+
+    /**
+     * Prepares a list of parsed expressions, evicting the least recently used ones as needed.
+     *
+     * @param expressions the parsed expressions
+     * @param expressionsString the text of the expressions, separated by ';' as in a computation request
+     * @return the handle of the prepared expressions
+     * @throws IllegalArgumentException if the expressions are longer than all the prepared expressions can be
+     */
+    synchronized int prepare(List<Expression> expressions, String expressionsString) throws IllegalArgumentException {
+        if (expressionsString.length() > MAX_PREPARED_CHARACTERS) {
+            throw new IllegalArgumentException(String.format("The prepared expressions are longer than %d characters", MAX_PREPARED_CHARACTERS));
+        }
+        Iterator<Map.Entry<Integer, Prepared>> eldest = prepared.entrySet().iterator();
+        while ((prepared.size() >= MAX_PREPARED || preparedCharacters + expressionsString.length() > MAX_PREPARED_CHARACTERS) && eldest.hasNext()) {
+            preparedCharacters -= eldest.next().getValue().expressionsString.length();
+            eldest.remove();
+        }
+        int handle = nextHandle++;
+        prepared.put(handle, new Prepared(expressions, expressionsString));
+        preparedCharacters += expressionsString.length();
+        return handle;
+    }
+
+    /**
+     * Gets prepared expressions.
+     *
+     * @param handle the handle of the prepared expressions
+     * @return the prepared expressions, or null if the handle is unknown or has been evicted
+     */
+    synchronized Prepared get(int handle) {
+        return prepared.get(handle);
+    }
+
+    /**
+     * Forgets prepared expressions.
+     *
+     * @param handle the handle of the prepared expressions
+     * @return whether the handle was known
+     */
+    synchronized boolean deallocate(int handle) {
+        Prepared removed = prepared.remove(handle);
+        if (removed == null) {
+            return false;
+        }
+        preparedCharacters -= removed.expressionsString.length();
+        return true;
+    }
+
+    public synchronized int size() {
+        return prepared.size();
+    }
+
+    /**
+     * A list of prepared expressions, with their text.
+     */
+    static class Prepared {
+        private final List<Expression> expressions;
+        private final String expressionsString;
+
+        private Prepared(List<Expression> expressions, String expressionsString) {
+            this.expressions = expressions;
+            this.expressionsString = expressionsString;
+        }
+
+        List<Expression> getExpressions() {
+            return expressions;
+        }
+
+        String getExpressionsString() {
+            return expressionsString;
+        }
+    }
+}
@@ -21,5 +21,12 @@ public interface Request {
      * @return The response produced by processing the request.
      */
     Response process(long startTime);
+
+    /**
+     * Gets the kind of the request, under which its metrics are recorded.
+     *
+     * @return The kind of the request.
+     */
+    String getKind();
 }
 
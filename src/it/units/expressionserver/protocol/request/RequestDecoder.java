@@ -0,0 +1,368 @@
+package it.units.expressionserver.protocol.request;
+
+import it.units.expressionserver.domain.expression.Expression;
+import it.units.expressionserver.domain.variablevaluesfunction.VariableValues;
+import it.units.expressionserver.domain.variablevaluesfunction.VariableValuesFunction;
+import it.units.expressionserver.domain.variablevaluesfunction.VariableValuesFunctionParser;
+import it.units.expressionserver.server.Coordinator;
+import it.units.expressionserver.service.Computer;
+import it.units.expressionserver.service.StatsCollector;
+import it.units.expressionserver.service.ThresholdPredicate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The RequestDecoder turns a raw request line into a typed Request, scanning the line only once.
+ * It replaces the classification of requests through regular expressions followed by repeated
+ * splits of the same line: the computation kind, the values kind, the variable values and the
+ * expression slices are all extracted in a single pass.
+ * A computation request prefixed by "STREAM;" is streamed: interim frames with its partial result
+ * are sent through the stream channel of the connection while it is computed.
+ * A computation request prefixed by "SHARD;from;to;" is a shard of a computation distributed by a coordinator:
+ * only the tuples with index from {@code from} (included) to {@code to} (excluded) are computed.
+ * A computation request "EXECUTE;handle;ComputationKind_ValuesKind;VariableValuesFunction" computes the expressions
+ * prepared on the connection by "PREPARE;e1;...;en", which are kept by the decoder, one per connection.
+ * A request prefixed by "ADMIN;token;" reads or changes the settings of the server, or loads or drops a dataset.
+ * The computation kinds COUNT_IF, ANY and ALL are followed by their predicate, e.g., "ANY>0.5_GRID;x:0:1:10;(x^2)".
+ */
+public class RequestDecoder {
+
+    private static final String STREAM_PREFIX = "STREAM;";
+    private static final String EXECUTE_PREFIX = "EXECUTE;";
+    private static final char PARTS_SEPARATOR = ';';
+    private static final char KINDS_SEPARATOR = '_';
+    private static final int MIN_COMPUTATION_PARTS = 3;
+    private static final List<Computer.ComputationKind> PREDICATE_KINDS = Arrays.asList(
+            Computer.ComputationKind.COUNT_IF, Computer.ComputationKind.ANY, Computer.ComputationKind.ALL);
+
+    private final StatsCollector statsCollector;
+    private final ComputationContext computationContext;
+    private final StreamChannel streamChannel;
+    private final VariableValuesFunctionParser variableValuesFunctionParser;
+    private final PreparedExpressions preparedExpressions;
+
+    /**
+     * Constructs a new RequestDecoder building requests bound to the given server components.
+     *
+     * @param statsCollector the stats collector used by stat requests
+     * @param computationContext the server components used by computation and dataset requests
+     * @param streamChannel the channel of the connection used by streamed requests, or null if streaming is not supported
+     */
+    public RequestDecoder(StatsCollector statsCollector, ComputationContext computationContext, StreamChannel streamChannel) {
+        this.statsCollector = statsCollector;
+        this.computationContext = computationContext;
+        this.streamChannel = streamChannel;
+        this.variableValuesFunctionParser = new VariableValuesFunctionParser();
+        this.preparedExpressions = new PreparedExpressions();
+    }
+
+    /**
+     * Decodes the request string into the corresponding Request object.
+     *
+     * @param requestString The raw request string sent by the client.
+     * @return The decoded Request object.
+     * @throws IllegalArgumentException If the request type is not recognized.
+     */
+    public Request decode(String requestString) throws IllegalArgumentException {
+        if (requestString.startsWith(STREAM_PREFIX)) {
+            if (streamChannel == null) {
+                throw new IllegalArgumentException("Streaming is not supported on this connection");
+            }
+            return decodeComputation(requestString.substring(STREAM_PREFIX.length()), true, -1, -1);
+        }
+        if (requestString.startsWith(Coordinator.SHARD_PREFIX)) {
+            return decodeShard(requestString);
+        }
+
+        if (requestString.startsWith(AdminRequest.ADMIN_PREFIX)) {
+            return decodeAdmin(requestString);
+        }
+
+        StatRequest.StatType statType = StatRequest.StatType.fromRequestString(requestString);
+        if (statType != null) {
+            return new StatRequest(statType, statsCollector, computationContext.getComputer().getTieredEvaluator(),
+                    computationContext.getSingleFlight(), computationContext.getMemoryGovernor());
+        }
+
+        int commandEnd = requestString.indexOf(PARTS_SEPARATOR);
+        PrepareRequest.Action prepareAction = PrepareRequest.Action.fromRequestString(commandEnd < 0 ? requestString : requestString.substring(0, commandEnd));
+        if (prepareAction != null) {
+            return decodePrepare(prepareAction, requestString, commandEnd);
+        }
+        return decodeComputation(requestString, false, -1, -1);
+    }
+
+    /**
+     * Decodes a "SHARD;from;to;request" request string into the corresponding Request object.
+     *
+     * @param requestString The raw request string, including the shard prefix.
+     * @return The decoded Request object.
+     * @throws IllegalArgumentException If the shard bounds or the computation request are not valid.
+     */
+    private Request decodeShard(String requestString) throws IllegalArgumentException {
+        int fromStart = Coordinator.SHARD_PREFIX.length();
+        int fromEnd = requestString.indexOf(PARTS_SEPARATOR, fromStart);
+        int toEnd = fromEnd < 0 ? -1 : requestString.indexOf(PARTS_SEPARATOR, fromEnd + 1);
+        if (toEnd < 0) {
+            throw new IllegalArgumentException("Invalid request format");
+        }
+        long shardFrom;
+        long shardTo;
+        try {
+            shardFrom = Long.parseLong(requestString.substring(fromStart, fromEnd));
+            shardTo = Long.parseLong(requestString.substring(fromEnd + 1, toEnd));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid request format");
+        }
+        if (shardFrom < 0 || shardTo < shardFrom) {
+            throw new IllegalArgumentException("Invalid shard: " + shardFrom + "-" + shardTo);
+        }
+        return decodeComputation(requestString.substring(toEnd + 1), false, shardFrom, shardTo);
+    }
+
+    /**
+     * Decodes an "ADMIN;token;GET", "ADMIN;token;SET;name;value", "ADMIN;token;DATASET_LOAD;name" or
+     * "ADMIN;token;DATASET_DROP;name" request string into the corresponding Request object.
+     *
+     * @param requestString The raw request string, including the admin prefix.
+     * @return The decoded Request object.
+     */
+    private Request decodeAdmin(String requestString) {
+        String[] parts = requestString.split(String.valueOf(PARTS_SEPARATOR), -1);
+        DatasetRequest.Action datasetAction = parts.length < 3 ? null : DatasetRequest.Action.fromRequestString(parts[2]);
+        if (datasetAction != null) {
+            if (parts.length != 4) {
+                return new InvalidRequest(String.format("Invalid ADMIN %s request format: request parts != 4", datasetAction.getRequestString()));
+            }
+            return new DatasetRequest(parts[1], datasetAction, parts[3], computationContext.getDatasetRegistry(), computationContext.getConfiguration());
+        }
+        AdminRequest.Action action = parts.length < 3 ? null : AdminRequest.Action.fromRequestString(parts[2]);
+        if (action == null) {
+            return new InvalidRequest("Invalid ADMIN request format: unknown action");
+        }
+        int expectedParts = action == AdminRequest.Action.SET ? 5 : 3;
+        if (parts.length != expectedParts) {
+            return new InvalidRequest(String.format("Invalid ADMIN %s request format: request parts != %d", action.getRequestString(), expectedParts));
+        }
+        return action == AdminRequest.Action.SET
+                ? new AdminRequest(parts[1], action, parts[3], parts[4], computationContext.getConfiguration())
+                : new AdminRequest(parts[1], action, null, null, computationContext.getConfiguration());
+    }
+
+    /**
+     * Decodes a "PREPARE;e1;...;en" or "DEALLOCATE;handle" request string into the corresponding Request object.
+     *
+     * @param action The action on the prepared expressions.
+     * @param requestString The raw request string.
+     * @param commandEnd The index of the first ';' of the request string, or -1 if it has none.
+     * @return The decoded Request object.
+     */
+    private Request decodePrepare(PrepareRequest.Action action, String requestString, int commandEnd) {
+        if (commandEnd < 0) {
+            return new InvalidRequest("Invalid " + action.getRequestString() + " request format: missing argument");
+        }
+        if (action == PrepareRequest.Action.DEALLOCATE) {
+            return new PrepareRequest(action, null, requestString.substring(commandEnd + 1), preparedExpressions);
+        }
+        int[] partBounds = findParts(requestString, commandEnd);
+        List<String> expressionStrings = new ArrayList<>(partBounds.length - 2);
+        for (int part = 1; part + 1 < partBounds.length; part++) {
+            expressionStrings.add(requestString.substring(partBounds[part] + 1, partBounds[part + 1]));
+        }
+        if (expressionStrings.isEmpty()) {
+            return new InvalidRequest("Invalid PREPARE request format: no expressions");
+        }
+        return new PrepareRequest(action, expressionStrings, String.join(";", expressionStrings), preparedExpressions);
+    }
+
+    /**
+     * Decodes an "EXECUTE;handle;ComputationKind_ValuesKind;VariableValuesFunction" request string into the
+     * corresponding Request object, as if the prepared expressions followed the variable values.
+     *
+     * @param requestString The execute request string, without the stream prefix.
+     * @param streamed Whether the interim frames of the request are streamed through the stream channel.
+     * @return The decoded Request object.
+     * @throws IllegalArgumentException If the handle is not valid or the request type is not recognized.
+     */
+    private Request decodeExecute(String requestString, boolean streamed) throws IllegalArgumentException {
+        int handleEnd = requestString.indexOf(PARTS_SEPARATOR, EXECUTE_PREFIX.length());
+        if (handleEnd < 0) {
+            throw new IllegalArgumentException("Invalid request format");
+        }
+        String handleString = requestString.substring(EXECUTE_PREFIX.length(), handleEnd);
+        PreparedExpressions.Prepared prepared = preparedExpressions.get(PrepareRequest.parseHandle(handleString));
+        if (prepared == null) {
+            throw new IllegalArgumentException("Unknown prepared expressions: " + handleString);
+        }
+        int computationEnd = requestString.length();
+        while (computationEnd > handleEnd + 1 && requestString.charAt(computationEnd - 1) == PARTS_SEPARATOR) {
+            computationEnd--;
+        }
+        String computationString = requestString.substring(handleEnd + 1, computationEnd);
+        int kindsEnd = computationString.indexOf(PARTS_SEPARATOR);
+        if (kindsEnd < 0) {
+            return new InvalidRequest("Invalid EXECUTE request format: request parts < 2");
+        }
+        if (computationString.indexOf(PARTS_SEPARATOR, kindsEnd + 1) >= 0) {
+            return new InvalidRequest("Invalid EXECUTE request format: request parts > 2");
+        }
+        return decodeComputation(computationString + PARTS_SEPARATOR + prepared.getExpressionsString(), streamed, -1, -1,
+                prepared.getExpressions());
+    }
+
+    /**
+     * Decodes a computation request string into the corresponding Request object.
+     *
+     * @param requestString The computation request string, without the stream prefix.
+     * @param streamed Whether the interim frames of the request are streamed through the stream channel.
+     * @param shardFrom The index of the first tuple to compute, or -1 if the request is not a shard.
+     * @param shardTo The index following the last tuple to compute, or -1 if the request is not a shard.
+     * @return The decoded Request object.
+     * @throws IllegalArgumentException If the request type is not recognized.
+     */
+    private Request decodeComputation(String requestString, boolean streamed, long shardFrom, long shardTo) throws IllegalArgumentException {
+        if (requestString.startsWith(EXECUTE_PREFIX)) {
+            if (shardFrom >= 0) {
+                throw new IllegalArgumentException("Shards of prepared expressions are not supported");
+            }
+            return decodeExecute(requestString, streamed);
+        }
+        return decodeComputation(requestString, streamed, shardFrom, shardTo, null);
+    }
+
+    /**
+     * Decodes a computation request string into the corresponding Request object.
+     *
+     * @param requestString The computation request string, without the stream prefix.
+     * @param streamed Whether the interim frames of the request are streamed through the stream channel.
+     * @param shardFrom The index of the first tuple to compute, or -1 if the request is not a shard.
+     * @param shardTo The index following the last tuple to compute, or -1 if the request is not a shard.
+     * @param preparedExpressions The parsed expressions of the request, if it executes prepared expressions, or null.
+     * @return The decoded Request object.
+     * @throws IllegalArgumentException If the request type is not recognized.
+     */
+    private Request decodeComputation(String requestString, boolean streamed, long shardFrom, long shardTo,
+                                      List<Expression> preparedExpressions) throws IllegalArgumentException {
+
+        int kindsEnd = requestString.indexOf(PARTS_SEPARATOR);
+        int kindsSeparator = kindsEnd < 0 ? -1 : requestString.lastIndexOf(KINDS_SEPARATOR, kindsEnd);
+        if (kindsSeparator < 0) {
+            throw new IllegalArgumentException("Invalid request format");
+        }
+        String computationKindString = requestString.substring(0, kindsSeparator);
+        Computer.ComputationKind computationKind = Computer.ComputationKind.fromRequestString(computationKindString);
+        double approximationRelativeError = Double.NaN;
+        String approximateKindString = Computer.ComputationKind.AVG_APPROX.getRequestString();
+        if (computationKind == null && computationKindString.startsWith(approximateKindString)) {
+            // AVG~<relative error>, e.g. AVG~0.01_GRID
+            approximationRelativeError = parseRelativeError(computationKindString.substring(approximateKindString.length()));
+            computationKind = Computer.ComputationKind.AVG_APPROX;
+        }
+        ThresholdPredicate predicate = null;
+        if (computationKind == null) {
+            for (Computer.ComputationKind predicateKind : PREDICATE_KINDS) {
+                String predicateKindString = predicateKind.getRequestString();
+                if (computationKindString.startsWith(predicateKindString) && computationKindString.length() > predicateKindString.length()) {
+                    // COUNT_IF, ANY or ALL followed by a predicate, e.g. ANY>0.5_GRID
+                    predicate = ThresholdPredicate.parse(computationKindString.substring(predicateKindString.length()));
+                    computationKind = predicateKind;
+                    break;
+                }
+            }
+        } else if (PREDICATE_KINDS.contains(computationKind)) {
+            throw new IllegalArgumentException("Missing predicate for computation kind: " + computationKindString);
+        }
+        VariableValuesFunction.ValuesKind valuesKind = VariableValuesFunction.ValuesKind.fromRequestString(requestString.substring(kindsSeparator + 1, kindsEnd));
+        if (computationKind == null || valuesKind == null) {
+            throw new IllegalArgumentException("Invalid request format");
+        }
+        if (shardFrom >= 0 && !isShardable(computationKind)) {
+            throw new IllegalArgumentException("Shards are not supported for computation kind: " + computationKindString);
+        }
+
+        int[] partBounds = findParts(requestString, kindsEnd);
+        if (partBounds.length - 1 < MIN_COMPUTATION_PARTS) {
+            return new InvalidRequest("Invalid computation request format: request parts < 3");
+        }
+
+        // Variable values errors are reported when the computation is run, as they always were
+        List<VariableValues> variableValuesList = null;
+        RuntimeException variableValuesError = null;
+        try {
+            variableValuesList = variableValuesFunctionParser.parseVariableValues(requestString, partBounds[1] + 1, partBounds[2]);
+        } catch (RuntimeException e) {
+            variableValuesError = e;
+        }
+
+        List<String> expressionStrings = new ArrayList<>(partBounds.length - 3);
+        for (int part = 2; part + 1 < partBounds.length; part++) {
+            expressionStrings.add(requestString.substring(partBounds[part] + 1, partBounds[part + 1]));
+        }
+
+        return new ComputationRequest(computationKind, valuesKind, variableValuesList, variableValuesError, expressionStrings,
+                preparedExpressions, approximationRelativeError, predicate, requestString, shardFrom, shardTo, computationContext, streamChannel, streamed);
+    }
+
+    private static boolean isShardable(Computer.ComputationKind computationKind) {
+        switch (computationKind) {
+            case MIN:
+            case MAX:
+            case AVG:
+            case SUM:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static double parseRelativeError(String relativeErrorString) throws IllegalArgumentException {
+        double relativeError;
+        try {
+            relativeError = Double.parseDouble(relativeErrorString);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid request format");
+        }
+        if (!(relativeError > 0) || Double.isInfinite(relativeError)) {
+            throw new IllegalArgumentException("Invalid relative error for AVG~: " + relativeErrorString);
+        }
+        return relativeError;
+    }
+
+    /**
+     * Finds the bounds of the ';' separated parts of the request, discarding trailing empty parts.
+     *
+     * @param requestString the raw request string
+     * @param firstSeparator the index of the first ';' of the request string
+     * @return the bounds of the parts: part i spans from bounds[i] (excluding the separator, if i > 0) to bounds[i + 1]
+     */
+    private static int[] findParts(String requestString, int firstSeparator) {
+        int length = requestString.length();
+        int separators = 0;
+        for (int i = firstSeparator; i < length; i++) {
+            if (requestString.charAt(i) == PARTS_SEPARATOR) {
+                separators++;
+            }
+        }
+        int[] bounds = new int[separators + 2];
+        bounds[0] = -1;
+        int count = 1;
+        for (int i = firstSeparator; i < length; i++) {
+            if (requestString.charAt(i) == PARTS_SEPARATOR) {
+                bounds[count++] = i;
+            }
+        }
+        bounds[count] = length;
+        int parts = separators + 1;
+        while (parts > 1 && bounds[parts] - bounds[parts - 1] == 1) {
+            parts--;
+        }
+        if (parts == separators + 1) {
+            return bounds;
+        }
+        int[] trimmed = new int[parts + 1];
+        System.arraycopy(bounds, 0, trimmed, 0, parts + 1);
+        return trimmed;
+    }
+}
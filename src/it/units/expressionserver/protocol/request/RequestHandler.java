@@ -1,45 +1,54 @@
 package it.units.expressionserver.protocol.request;
 
-import it.units.expressionserver.service.Computer;
-import it.units.expressionserver.domain.variablevaluesfunction.VariableValuesFunction;
 import it.units.expressionserver.protocol.response.ErrorResponse;
 import it.units.expressionserver.protocol.response.Response;
 import it.units.expressionserver.server.ExpressionServer;
+import it.units.expressionserver.service.Metrics;
 import it.units.expressionserver.service.StatsCollector;
 
-import java.util.Arrays;
-import java.util.concurrent.ExecutorService;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-
 
 public class RequestHandler {
 
     private final StatsCollector statsCollector;
-    private final ExecutorService computationThreadPool;
-    private final Computer computer;
+    private final Metrics metrics;
+    private final RequestDecoder requestDecoder;
 
     /**
-     * Constructor for the RequestHandler class.
+     * Constructor for the RequestHandler class, for connections that do not support streamed requests.
      * @param expressionServer The server from which the thread pool and stats collector are obtained.
      */
     public RequestHandler(ExpressionServer expressionServer) {
-        this.computationThreadPool = expressionServer.getComputationThreadPool();
+        this(expressionServer, null);
+    }
+
+    /**
+     * Constructor for the RequestHandler class.
+     * @param expressionServer The server from which the thread pool and stats collector are obtained.
+     * @param streamChannel The channel of the connection used by streamed requests, or null if streaming is not supported.
+     */
+    public RequestHandler(ExpressionServer expressionServer, StreamChannel streamChannel) {
         this.statsCollector = expressionServer.getStatsCollector();
-        this.computer = expressionServer.getComputer();
+        this.metrics = expressionServer.getMetrics();
+        ComputationContext computationContext = new ComputationContext(expressionServer.getComputationThreadPool(),
+                expressionServer.getComputer(), expressionServer.getDatasetRegistry(), expressionServer.getCoordinator(),
+                expressionServer.getResultCache(), expressionServer.getSingleFlight(), expressionServer.getMemoryGovernor(),
+                expressionServer.getConfiguration());
+        this.requestDecoder = new RequestDecoder(statsCollector, computationContext, streamChannel);
     }
 
     /**
      * Handles incoming requests.
+     * Every request is recorded in the metrics of the server, by kind and outcome, including the ones that cannot be decoded.
      * @param requestString The raw request string sent by the client.
      * @return The response object to be sent back to the client.
      */
     public Response handleRequest(String requestString) {
         long startTime = System.nanoTime();
         Response response;
+        String kind = "INVALID";
         try {
-            Request request = parse(requestString);
+            Request request = requestDecoder.decode(requestString);
+            kind = request.getKind();
             response = request.process(startTime);
 
             long responseTime = System.nanoTime() - startTime;
@@ -49,59 +58,35 @@ public class RequestHandler {
             response = new ErrorResponse("(IllegalArgumentException) " + e.getMessage());
         }
 
+        recordMetrics(kind, response, System.nanoTime() - startTime);
         return response;
     }
 
     /**
-     * Parses the request string and creates the appropriate Request object.
-     * @param requestString The raw request string sent by the client.
-     * @return The created Request object.
-     * @throws IllegalArgumentException If the request type is not recognized.
+     * Checks whether a request string decodes to a computation request, without processing it.
+     * @param requestString The raw request string.
+     * @return true if the request is a valid computation request, false otherwise.
      */
-    private Request parse(String requestString) throws IllegalArgumentException {
-        if (isStatRequest(requestString)) {
-            return new StatRequest(requestString, statsCollector);
-        } else if (isComputationRequest(requestString)) {
-            return new ComputationRequest(requestString, computationThreadPool, computer);
-        } else {
-            throw new IllegalArgumentException("Invalid request format");
+    public boolean isComputation(String requestString) {
+        try {
+            return requestDecoder.decode(requestString) instanceof ComputationRequest;
+        } catch (IllegalArgumentException e) {
+            return false;
         }
     }
 
-    /**
-     * Checks if the given request string is a computation request.
-     * @param requestString The raw request string sent by the client.
-     * @return True if the request string is a computation request, false otherwise.
-     */
-    private static boolean isComputationRequest(String requestString) {
-        String computationKinds = Arrays.stream(Computer.ComputationKind.values())
-                .map(Computer.ComputationKind::getRequestString)
-                .collect(Collectors.joining("|"));
-
-        String valuesKinds = Arrays.stream(VariableValuesFunction.ValuesKind.values())
-                .map(VariableValuesFunction.ValuesKind::getRequestString)
-                .collect(Collectors.joining("|"));
-
-        String computationRegex = "^(" + computationKinds + ")_(" + valuesKinds + ");";
-        Pattern pattern = Pattern.compile(computationRegex);
-        Matcher matcher = pattern.matcher(requestString);
-
-        return matcher.find();
-    }
-    /**
-     * Checks if the given request string is a stat request.
-     * @param requestString The raw request string sent by the client.
-     * @return True if the request string is a stat request, false otherwise.
-     */
-    private static boolean isStatRequest(String requestString) {
-        String statTypes = Arrays.stream(StatRequest.StatType.values())
-                .map(StatRequest.StatType::getRequestString)
-                .collect(Collectors.joining("|"));
-
-        String statRegex = "^(" + statTypes + ")$";
-        Pattern pattern = Pattern.compile(statRegex);
-        Matcher matcher = pattern.matcher(requestString);
-
-        return matcher.find();
+    private void recordMetrics(String kind, Response response, long responseTime) {
+        if (!(response instanceof ErrorResponse)) {
+            metrics.recordRequest(kind, Metrics.Outcome.OK, null, responseTime);
+            return;
+        }
+        String errorType = ((ErrorResponse) response).getErrorType();
+        Metrics.Outcome outcome = Metrics.Outcome.ERROR;
+        if ("ComputationTimeoutException".equals(errorType) || "QueueTimeoutException".equals(errorType)) {
+            outcome = Metrics.Outcome.TIMEOUT;
+        } else if ("MemoryBudgetExceededException".equals(errorType) || "QueueFullException".equals(errorType)) {
+            outcome = Metrics.Outcome.REJECTED;
+        }
+        metrics.recordRequest(kind, outcome, errorType, responseTime);
     }
 }
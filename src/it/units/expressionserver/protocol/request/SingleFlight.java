@@ -0,0 +1,135 @@
+package it.units.expressionserver.protocol.request;
+
+import it.units.expressionserver.protocol.response.Response;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The SingleFlight coalesces identical computations that are in flight at the same time: the first request
+ * with a given canonical key starts the computation, and the requests arriving with the same key while it runs
+ * wait for the very same result or error instead of computing it again.
+ * Each computation counts the requests waiting for it, and is cancelled only when all of them have given up,
+ * so that a client disconnecting or timing out does not abort the work for the others.
+ * The lock of the SingleFlight is only held to find or register a flight, never while starting its computation,
+ * which may take long when the queue of the computations is full: the requests joining a flight meanwhile wait for
+ * it to be started, while the requests with other keys go on undisturbed.
+ */
+public class SingleFlight {
+
+    private final Map<String, Flight> flights = new HashMap<>();
+    private final AtomicLong coalescedRequests = new AtomicLong();
+
+    /**
+     * Joins the computation in flight with the given key, starting it if there is none.
+     *
+     * @param key the canonical key of the computation, or null if the computation must not be shared
+     * @param computation the function starting the computation
+     * @return the flight of the computation, which the caller must leave if it gives up waiting for it
+     */
+    Flight join(String key, Supplier<Future<Response>> computation) {
+        Flight flight;
+        synchronized (this) {
+            flight = key == null ? null : flights.get(key);
+            if (flight != null) {
+                coalescedRequests.incrementAndGet();
+                flight.waiters++;
+                return flight;
+            }
+            flight = new Flight(key);
+            flight.waiters++;
+            if (key != null) {
+                flights.put(key, flight);
+            }
+        }
+        // The computation is started by the first request only, after the lock is released
+        try {
+            flight.started.complete(computation.get());
+        } catch (RuntimeException | Error e) {
+            flight.started.completeExceptionally(e);
+            if (key != null) {
+                land(flight);
+            }
+            throw e;
+        }
+        return flight;
+    }
+
+    /**
+     * Gets the number of requests that have been answered by a computation started by another request.
+     */
+    public long getCoalescedRequests() {
+        return coalescedRequests.get();
+    }
+
+    /**
+     * Forgets a computation that is over, so that later requests with its key compute it again.
+     */
+    private synchronized void land(Flight flight) {
+        flights.remove(flight.key, flight);
+    }
+
+    /**
+     * A computation in flight, with the number of requests waiting for it.
+     * The flight is registered before its computation is started, and holds the computation once it has been.
+     */
+    class Flight {
+        private final String key;
+        private final CompletableFuture<Future<Response>> started = new CompletableFuture<>();
+        private int waiters;
+
+        private Flight(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Checks whether other requests may share the response of the computation.
+         */
+        boolean isShared() {
+            return key != null;
+        }
+
+        /**
+         * Waits for the response of the computation.
+         *
+         * @param timeout the maximum time to wait
+         * @param unit the unit of the timeout
+         * @return the response of the computation
+         */
+        Response get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            Future<Response> future = started.get(timeout, unit);
+            Response response = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (key != null) {
+                land(this);
+            }
+            return response;
+        }
+
+        /**
+         * Gives up waiting for the computation, which is cancelled if no other request is waiting for it.
+         */
+        void leave() {
+            synchronized (SingleFlight.this) {
+                if (--waiters > 0) {
+                    return;
+                }
+                if (key != null) {
+                    flights.remove(key, this);
+                }
+            }
+            // The first request has started the computation before joining it, so it is started by the time all leave,
+            // unless starting it has failed
+            if (!started.isCompletedExceptionally()) {
+                started.join().cancel(true);
+            }
+        }
+    }
+}
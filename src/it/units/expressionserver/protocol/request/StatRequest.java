@@ -1,7 +1,9 @@
 package it.units.expressionserver.protocol.request;
 import it.units.expressionserver.protocol.response.OkResponse;
 import it.units.expressionserver.protocol.response.Response;
+import it.units.expressionserver.service.MemoryGovernor;
 import it.units.expressionserver.service.StatsCollector;
+import it.units.expressionserver.service.TieredEvaluator;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -12,7 +14,10 @@ public class StatRequest implements Request {
 
         STAT_REQS("STAT_REQS"),
         STAT_AVG_TIME("STAT_AVG_TIME"),
-        STAT_MAX_TIME("STAT_MAX_TIME");
+        STAT_MAX_TIME("STAT_MAX_TIME"),
+        STAT_TIERS("STAT_TIERS"),
+        STAT_COALESCED("STAT_COALESCED"),
+        STAT_MEMORY("STAT_MEMORY");
 
         private final String requestString;
 
@@ -39,17 +44,27 @@ public class StatRequest implements Request {
 
     private final StatType statType;
     private final StatsCollector statsCollector;
+    private final TieredEvaluator tieredEvaluator;
+    private final SingleFlight singleFlight;
+    private final MemoryGovernor memoryGovernor;
 
     /**
-     * Constructs a new StatRequest with the specified stat type (built from
+     * Constructs a new StatRequest with the specified stat type (decoded from
      * the request string) and stats collector.
      *
-     * @param requestString The stat request string.
+     * @param statType The requested stat type.
      * @param statsCollector The StatsCollector used to gather the requested statistics.
+     * @param tieredEvaluator The TieredEvaluator whose tiers are reported by STAT_TIERS.
+     * @param singleFlight The SingleFlight whose coalesced requests are reported by STAT_COALESCED.
+     * @param memoryGovernor The MemoryGovernor whose reservations are reported by STAT_MEMORY.
      */
-    public StatRequest(String requestString, StatsCollector statsCollector) {
-        this.statType = StatRequest.StatType.fromRequestString(requestString);
+    public StatRequest(StatType statType, StatsCollector statsCollector, TieredEvaluator tieredEvaluator, SingleFlight singleFlight,
+                       MemoryGovernor memoryGovernor) {
+        this.statType = statType;
         this.statsCollector = statsCollector;
+        this.tieredEvaluator = tieredEvaluator;
+        this.singleFlight = singleFlight;
+        this.memoryGovernor = memoryGovernor;
     }
 
     /**
@@ -68,8 +83,25 @@ public class StatRequest implements Request {
                 return new OkResponse(startTime, statsCollector.getAverageResponseTimeNanoseconds() / 1_000_000_000.0);
             case STAT_MAX_TIME:
                 return new OkResponse(startTime, statsCollector.getMaxResponseTimeNanoseconds() / 1_000_000_000.0);
+            case STAT_TIERS:
+                // The number of expressions interpreted, being compiled and compiled
+                return new OkResponse(startTime, tieredEvaluator.countExpressions(TieredEvaluator.Tier.INTERPRETED),
+                        tieredEvaluator.countExpressions(TieredEvaluator.Tier.COMPILING),
+                        tieredEvaluator.countExpressions(TieredEvaluator.Tier.COMPILED));
+            case STAT_COALESCED:
+                // The number of requests answered by the computation of an identical request in flight
+                return new OkResponse(startTime, singleFlight.getCoalescedRequests());
+            case STAT_MEMORY:
+                // The bytes reserved by the running computations, the budget, the reservations and the computations waiting for memory
+                return new OkResponse(startTime, memoryGovernor.getReservedBytes(), memoryGovernor.getBudgetBytes(),
+                        memoryGovernor.getReservations(), memoryGovernor.getWaitingComputations());
             default:
                 throw new IllegalArgumentException(String.format("Invalid stat type: %s", statType));
         }
     }
+
+    @Override
+    public String getKind() {
+        return statType.getRequestString();
+    }
 }
@@ -0,0 +1,36 @@
+package it.units.expressionserver.protocol.request;
+
+import it.units.expressionserver.protocol.response.Response;
+
+import java.io.IOException;
+
+/**
+ * A StreamChannel is the connection through which streamed computation requests send interim frames
+ * to the client before their final response, and learn whether the client cancelled them.
+ * Implementations synchronize sending on themselves, so that callers can make several calls atomically, while
+ * checking for a cancellation or a disconnection never blocks nor waits for the lock of the channel.
+ */
+public interface StreamChannel {
+
+    /**
+     * Sends an interim frame to the client.
+     *
+     * @param frame the frame to send
+     * @throws IOException if the frame cannot be sent
+     */
+    void send(Response frame) throws IOException;
+
+    /**
+     * Checks, without blocking, whether the client has asked to cancel the streamed computation.
+     *
+     * @return true if the computation has been cancelled
+     */
+    boolean isCancelled();
+
+    /**
+     * Checks, without blocking, whether the client has closed the connection.
+     *
+     * @return true if the client is gone
+     */
+    boolean isDisconnected();
+}
@@ -16,6 +16,19 @@ public class ErrorResponse implements Response {
         this.errorMessage = errorMessage;
     }
 
+    /**
+     * Returns the type of the error, i.e., the name of the exception in brackets at the start of the error message.
+     *
+     * @return The type of the error, or null if the error message does not start with one.
+     */
+    public String getErrorType() {
+        int end = errorMessage.indexOf(')');
+        if (!errorMessage.startsWith("(") || end < 0) {
+            return null;
+        }
+        return errorMessage.substring(1, end);
+    }
+
     /**
      * Returns a string representation of the ErrorResponse.
      * The format is "ERR;errorMessage"
@@ -0,0 +1,33 @@
+package it.units.expressionserver.protocol.response;
+
+/**
+ * The HandleResponse class implements the Response interface and represents a successful response carrying
+ * a handle, such as the one of prepared expressions, which the client sends back as it is in later requests.
+ */
+public class HandleResponse implements Response {
+
+    private final int handle;
+    private final double responseTime;
+
+    /**
+     * Constructs a new HandleResponse with the specified start time and handle.
+     *
+     * @param startTime The start time of the request, used to calculate the response time.
+     * @param handle The handle.
+     */
+    public HandleResponse(long startTime, int handle) {
+        this.handle = handle;
+        this.responseTime = (System.nanoTime() - startTime) / 1_000_000_000.0;
+    }
+
+    /**
+     * Returns a string representation of the HandleResponse.
+     * The format is "OK;responseTime;handle", where the handle is an integer.
+     *
+     * @return A string representation of the HandleResponse.
+     */
+    @Override
+    public String toString() {
+        return "OK;" + String.format("%.3f", responseTime) + ';' + handle;
+    }
+}
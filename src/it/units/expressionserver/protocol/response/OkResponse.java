@@ -2,32 +2,43 @@ package it.units.expressionserver.protocol.response;
 
 /**
  * The OkResponse class implements the Response interface and represents a successful response from the server.
- * It includes response time and any data associated with the response.
+ * It includes response time and any data associated with the response, which is made of one or more values.
  */
 public class OkResponse implements Response {
 
-    private final double data;
+    private final double[] data;
     private final double responseTime;
 
     /**
      * Constructs a new OkResponse with the specified start time and data.
      *
      * @param startTime The start time of the request, used to calculate the response time.
-     * @param data The data associated with the response.
+     * @param data The values associated with the response.
      */
-    public OkResponse(long startTime, double data) {
+    public OkResponse(long startTime, double... data) {
         this.data = data;
         this.responseTime = (System.nanoTime() - startTime) / 1_000_000_000.0;
     }
 
+    /**
+     * Returns the values associated with the response.
+     */
+    public double[] getData() {
+        return data;
+    }
+
     /**
      * Returns a string representation of the OkResponse.
-     * The format is "OK;responseTime;result
+     * The format is "OK;responseTime;result", where multiple result values are separated by ';'
      *
      * @return A string representation of the OkResponse.
      */
     @Override
     public String toString() {
-        return "OK;" + String.format("%.3f", responseTime) + ";" + String.format("%.6f", data);
+        StringBuilder sb = new StringBuilder("OK;").append(String.format("%.3f", responseTime));
+        for (double value : data) {
+            sb.append(';').append(String.format("%.6f", value));
+        }
+        return sb.toString();
     }
 }
@@ -0,0 +1,48 @@
+package it.units.expressionserver.protocol.response;
+
+/**
+ * The PartialResponse class implements the Response interface and represents the partial result of a streamed
+ * computation: the fraction of tuples processed so far, and the partial MIN, MAX and AVG over those tuples.
+ * Interim frames are sent while the computation runs; a cancelled computation ends with its last partial result.
+ */
+public class PartialResponse implements Response {
+
+    private final boolean cancelled;
+    private final double responseTime;
+    private final double processedFraction;
+    private final double min;
+    private final double max;
+    private final double avg;
+
+    /**
+     * Constructs a new PartialResponse with the specified start time and partial aggregates.
+     *
+     * @param startTime The start time of the request, used to calculate the elapsed time.
+     * @param cancelled Whether this is the final response of a cancelled computation.
+     * @param processedFraction The fraction of tuples processed so far.
+     * @param min The partial minimum.
+     * @param max The partial maximum.
+     * @param avg The partial average of the first expression.
+     */
+    public PartialResponse(long startTime, boolean cancelled, double processedFraction, double min, double max, double avg) {
+        this.cancelled = cancelled;
+        this.responseTime = (System.nanoTime() - startTime) / 1_000_000_000.0;
+        this.processedFraction = processedFraction;
+        this.min = min;
+        this.max = max;
+        this.avg = avg;
+    }
+
+    /**
+     * Returns a string representation of the PartialResponse.
+     * The format is "PART;elapsedTime;fraction;min;max;avg" for interim frames,
+     * and "CANCELLED;elapsedTime;fraction;min;max;avg" for the final response of a cancelled computation.
+     *
+     * @return A string representation of the PartialResponse.
+     */
+    @Override
+    public String toString() {
+        return String.format("%1$s;%2$.3f;%3$.6f;%4$.6f;%5$.6f;%6$.6f", cancelled ? "CANCELLED" : "PART",
+                responseTime, processedFraction, min, max, avg);
+    }
+}
@@ -0,0 +1,29 @@
+package it.units.expressionserver.protocol.response;
+
+/**
+ * The RelayedResponse class implements the Response interface and represents a response line received from
+ * another server, which is relayed verbatim to the client.
+ */
+public class RelayedResponse implements Response {
+
+    private final String line;
+
+    /**
+     * Constructs a new RelayedResponse with the specified response line.
+     *
+     * @param line The response line, without the line terminator.
+     */
+    public RelayedResponse(String line) {
+        this.line = line;
+    }
+
+    /**
+     * Returns the relayed response line.
+     *
+     * @return The response line as received.
+     */
+    @Override
+    public String toString() {
+        return line;
+    }
+}
@@ -0,0 +1,39 @@
+package it.units.expressionserver.protocol.response;
+
+import java.util.Map;
+
+/**
+ * The SettingsResponse class implements the Response interface and represents a successful response carrying
+ * named settings rather than computed values.
+ */
+public class SettingsResponse implements Response {
+
+    private final Map<String, String> settings;
+    private final double responseTime;
+
+    /**
+     * Constructs a new SettingsResponse with the specified start time and settings.
+     *
+     * @param startTime The start time of the request, used to calculate the response time.
+     * @param settings The settings, by name, in the order in which they are listed.
+     */
+    public SettingsResponse(long startTime, Map<String, String> settings) {
+        this.settings = settings;
+        this.responseTime = (System.nanoTime() - startTime) / 1_000_000_000.0;
+    }
+
+    /**
+     * Returns a string representation of the SettingsResponse.
+     * The format is "OK;responseTime;name=value", where multiple settings are separated by ';'
+     *
+     * @return A string representation of the SettingsResponse.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("OK;").append(String.format("%.3f", responseTime));
+        for (Map.Entry<String, String> setting : settings.entrySet()) {
+            sb.append(';').append(setting.getKey()).append('=').append(setting.getValue());
+        }
+        return sb.toString();
+    }
+}
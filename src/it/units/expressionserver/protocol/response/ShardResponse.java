@@ -0,0 +1,38 @@
+package it.units.expressionserver.protocol.response;
+
+/**
+ * The ShardResponse class implements the Response interface and represents the partial aggregates that a worker
+ * computes over a shard of the tuples of a distributed computation.
+ * Values are printed with full precision, so that the coordinator merges exactly the values the worker computed.
+ */
+public class ShardResponse implements Response {
+
+    private final double responseTime;
+    private final double[] aggregates;
+
+    /**
+     * Constructs a new ShardResponse with the specified start time and partial aggregates.
+     *
+     * @param startTime The start time of the request, used to calculate the response time.
+     * @param aggregates The number of tuples of the shard, and the minimum, maximum and sum over them.
+     */
+    public ShardResponse(long startTime, double[] aggregates) {
+        this.responseTime = (System.nanoTime() - startTime) / 1_000_000_000.0;
+        this.aggregates = aggregates;
+    }
+
+    /**
+     * Returns a string representation of the ShardResponse.
+     * The format is "OK;responseTime;count;min;max;sum"
+     *
+     * @return A string representation of the ShardResponse.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("OK;").append(String.format("%.3f", responseTime));
+        for (double aggregate : aggregates) {
+            sb.append(';').append(aggregate);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,187 @@
+package it.units.expressionserver.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Backend is an ExpressionServer behind the routing proxy, with a pool of idle connections to it
+ * and the number of requests it is computing on behalf of the proxy.
+ */
+class Backend {
+
+    private static final int MAX_IDLE_CONNECTIONS = 16;
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final long RETRY_DELAY_NANOS = 5_000_000_000L;
+
+    private final InetSocketAddress address;
+    private final int readTimeoutMillis;
+    private final Deque<Connection> idleConnections = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger load = new AtomicInteger();
+    private volatile boolean removed;
+    private volatile boolean failed;
+    private volatile long failureTime;
+
+    /**
+     * Constructs a new Backend.
+     *
+     * @param address the address of the backend
+     * @param readTimeoutMillis the maximum time to wait for a response of the backend, in milliseconds
+     */
+    Backend(InetSocketAddress address, int readTimeoutMillis) {
+        this.address = address;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Gets the number of requests the backend is computing on behalf of the proxy.
+     */
+    int getLoad() {
+        return load.get();
+    }
+
+    /**
+     * Checks whether the backend has not failed recently, in which case it is only tried as a last resort.
+     */
+    boolean isAvailable(long now) {
+        return !failed || now - failureTime >= RETRY_DELAY_NANOS;
+    }
+
+    void markFailed() {
+        failureTime = System.nanoTime();
+        failed = true;
+        closeIdleConnections();
+    }
+
+    void beginRequest() {
+        load.incrementAndGet();
+    }
+
+    void endRequest() {
+        load.decrementAndGet();
+    }
+
+    /**
+     * Borrows an idle connection from the pool, or opens a new one if none is idle.
+     *
+     * @return a connection to the backend
+     * @throws IOException if a new connection cannot be opened
+     */
+    Connection borrow() throws IOException {
+        Connection connection = idleConnections.pollFirst();
+        return connection != null ? connection : connect();
+    }
+
+    /**
+     * Opens a new connection, bypassing the pool.
+     *
+     * @return a new connection to the backend
+     * @throws IOException if the connection cannot be opened
+     */
+    Connection connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+            socket.setSoTimeout(readTimeoutMillis);
+            return new Connection(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives back to the pool a connection whose last response has been read entirely.
+     */
+    void release(Connection connection) {
+        if (removed || idleConnections.size() >= MAX_IDLE_CONNECTIONS) {
+            connection.close();
+            return;
+        }
+        connection.pooled = true;
+        idleConnections.offerFirst(connection);
+        if (removed) {
+            closeIdleConnections();
+        }
+    }
+
+    /**
+     * Marks the backend as removed from the proxy, closing its idle connections.
+     * Requests being relayed complete, and then close their connections.
+     */
+    void remove() {
+        removed = true;
+        closeIdleConnections();
+    }
+
+    private void closeIdleConnections() {
+        Connection connection;
+        while ((connection = idleConnections.pollFirst()) != null) {
+            connection.close();
+        }
+    }
+
+    /**
+     * A connection to the backend, exchanging request and response lines.
+     */
+    static class Connection implements Closeable {
+        private final Socket socket;
+        private final BufferedReader reader;
+        private final BufferedWriter writer;
+        private boolean pooled;
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Checks whether the connection has already served requests, in which case the backend may have closed it meanwhile.
+         */
+        boolean isPooled() {
+            return pooled;
+        }
+
+        void send(String line) throws IOException {
+            writer.write(line);
+            writer.newLine();
+            writer.flush();
+        }
+
+        /**
+         * Reads the next response line.
+         *
+         * @throws IOException if the line cannot be read, or the backend closed the connection
+         */
+        String receive() throws IOException {
+            String line = reader.readLine();
+            if (line == null) {
+                throw new IOException("The backend closed the connection");
+            }
+            return line;
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // The connection is discarded anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package it.units.expressionserver.server;
+
+import it.units.expressionserver.protocol.request.StreamChannel;
+import it.units.expressionserver.protocol.response.Response;
+
+import java.io.*;
+import java.util.Iterator;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * The ClientConnection reads the request lines of a client and writes the responses back to it.
+ * It is the stream channel of the connection: while a streamed request is computed, it sends the interim frames
+ * and looks, without blocking, for a cancel command among the lines the client has already sent.
+ * Likewise, while any request is computed, it can tell whether the client has closed the connection.
+ * Other lines sent meanwhile are kept, and handled as requests once the streamed request is over.
+ *
+ * Lines are read off the socket by a reader thread of the connection, which is the only one that blocks on it:
+ * the end of the stream is thus noticed as soon as the client closes the connection, even while a request is being
+ * computed. At most {@link #MAX_RECEIVED_LINES} lines are read ahead of the requests being handled, each stamped
+ * with the time at which it was read, i.e., before it waited for the previous requests to be handled.
+ * Writes are synchronized on the connection, reads are not.
+ */
+class ClientConnection implements StreamChannel, Closeable {
+
+    private static final int MAX_RECEIVED_LINES = 1024;
+    private static final ReceivedLine END_OF_STREAM = new ReceivedLine(null, 0);
+
+    private final BufferedReader reader;
+    private final BufferedWriter writer;
+    private final String cancelCommand;
+    private final BlockingDeque<ReceivedLine> receivedLines = new LinkedBlockingDeque<>(MAX_RECEIVED_LINES);
+    private final Thread readerThread;
+    private long arrivalTime;
+    private volatile boolean endOfStream;
+    private volatile boolean cancelled;
+
+    /**
+     * Constructs a new ClientConnection over the given streams, and starts reading the request lines.
+     *
+     * @param inputStream The stream of the request lines.
+     * @param outputStream The stream of the responses.
+     * @param cancelCommand The line with which the client cancels a streamed request.
+     */
+    ClientConnection(InputStream inputStream, OutputStream outputStream, String cancelCommand) {
+        this.reader = new BufferedReader(new InputStreamReader(inputStream));
+        this.writer = new BufferedWriter(new OutputStreamWriter(outputStream));
+        this.cancelCommand = cancelCommand;
+        this.readerThread = new Thread(this::receiveLines, "client-connection-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Reads the next request line, blocking until it is available.
+     *
+     * @return the next line, or null if the client closed the connection
+     * @throws IOException if the thread is interrupted while waiting for the line
+     */
+    String readLine() throws IOException {
+        cancelled = false;
+        try {
+            // The end of the stream is marked in the received lines, unless they were full when it was reached
+            ReceivedLine receivedLine = endOfStream ? receivedLines.poll() : receivedLines.take();
+            if (receivedLine == null) {
+                return null;
+            }
+            arrivalTime = receivedLine.arrivalTime;
+            return receivedLine.line;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a request");
+        }
+    }
+
+    /**
+     * Gets the time at which the line last returned by {@link #readLine()} was read off the socket.
+     *
+     * @return the arrival time, as given by {@link System#nanoTime()}
+     */
+    long getArrivalTime() {
+        return arrivalTime;
+    }
+
+    /**
+     * Writes a response line and flushes it to the client.
+     *
+     * @param response the response to write
+     * @throws IOException if the response cannot be written
+     */
+    synchronized void write(Response response) throws IOException {
+        writer.write(response.toString() + System.lineSeparator());
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void send(Response frame) throws IOException {
+        write(frame);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        if (!cancelled && (endOfStream || removeCancelCommand())) {
+            cancelled = true;
+        }
+        return cancelled;
+    }
+
+    private boolean removeCancelCommand() {
+        Iterator<ReceivedLine> iterator = receivedLines.iterator();
+        while (iterator.hasNext()) {
+            if (cancelCommand.equals(iterator.next().line)) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isDisconnected() {
+        return endOfStream;
+    }
+
+    /**
+     * Stops reading the request lines. The streams are closed by the owner of the connection.
+     */
+    @Override
+    public void close() {
+        readerThread.interrupt();
+    }
+
+    /**
+     * Reads the request lines until the end of the stream, waiting for room when too many are waiting to be handled.
+     * A failure to read is taken as the end of the stream.
+     */
+    private void receiveLines() {
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                receivedLines.put(new ReceivedLine(line, System.nanoTime()));
+            }
+        } catch (IOException e) {
+            // Taken as the end of the stream
+        } catch (InterruptedException e) {
+            return;
+        }
+        endOfStream = true;
+        receivedLines.offer(END_OF_STREAM);
+    }
+
+    /**
+     * A line read off the socket, with its arrival time; the line is null at the end of the stream.
+     */
+    private static class ReceivedLine {
+        private final String line;
+        private final long arrivalTime;
+
+        private ReceivedLine(String line, long arrivalTime) {
+            this.line = line;
+            this.arrivalTime = arrivalTime;
+        }
+    }
+}
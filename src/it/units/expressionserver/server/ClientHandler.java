@@ -1,20 +1,19 @@
 package it.units.expressionserver.server;
 
+import it.units.expressionserver.protocol.request.AdminRequest;
 import it.units.expressionserver.protocol.request.RequestHandler;
 import it.units.expressionserver.protocol.response.Response;
 
-import java.io.*;
+import java.io.IOException;
 import java.net.Socket;
 
 public class ClientHandler extends Thread {
 
     private final Socket socket;
     private final ExpressionServer expressionServer;
-    private final RequestHandler requestHandler;
 
     /**
      * Constructs a new ClientHandler instance with the given Socket and ExpressionServer.
-     * Initializes a new RequestHandler with the provided ExpressionServer.
      *
      * @param socket           The Socket through which the client is connected.
      * @param expressionServer The ExpressionServer instance associated with this client handler.
@@ -22,20 +21,24 @@ public class ClientHandler extends Thread {
     public ClientHandler(Socket socket, ExpressionServer expressionServer) {
         this.socket = socket;
         this.expressionServer = expressionServer;
-        this.requestHandler = new RequestHandler(expressionServer);
     }
 
     /**
      * The main method for handling client connections and processing requests.
      * Continuously reads requests from the client, processes them, and sends the responses back to the client.
      * If the client sends a quit command or closes the connection abruptly, the connection is terminated.
+     * Cancel commands received when no streamed request is being computed are ignored, as they come too late.
+     * When traffic is captured, each handled request but admin ones is recorded with its response once it has been sent.
      */
     public void run() {
-        try (socket) {
-            BufferedReader br = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+        int connectionId = expressionServer.connectionOpened();
+        try (socket; ClientConnection connection = new ClientConnection(socket.getInputStream(), socket.getOutputStream(),
+                expressionServer.getCancelCommand())) {
+            RequestHandler requestHandler = new RequestHandler(expressionServer, connection);
             while (true) {
-                String line = br.readLine();
+                String line = connection.readLine();
+                // Stamped when the line was read off the socket, so that the time spent waiting counts as well
+                long arrivalTime = connection.getArrivalTime();
                 if (line == null) {
                     System.err.printf("[%1$tY-%1$tm-%1$td %1$tT] Client %2$s abruptly closed connection", System.currentTimeMillis(), socket.getInetAddress());
                     break;
@@ -44,13 +47,21 @@ public class ClientHandler extends Thread {
                 if (line.equals(expressionServer.getQuitCommand())) {
                     break;
                 }
+                if (line.equals(expressionServer.getCancelCommand())) {
+                    continue;
+                }
                 Response response = requestHandler.handleRequest(line);
-                bw.write(response.toString() + System.lineSeparator());
-                bw.flush();
+                connection.write(response);
+                TrafficCapture trafficCapture = expressionServer.getTrafficCapture();
+                // Admin requests carry the admin token, which must not be written to the capture log
+                if (trafficCapture != null && !line.startsWith(AdminRequest.ADMIN_PREFIX)) {
+                    trafficCapture.record(connectionId, arrivalTime, line, response.toString(), System.nanoTime() - arrivalTime);
+                }
             }
         } catch (IOException e) {
             System.err.printf("[%1$tY-%1$tm-%1$td %1$tT] IO error: %2$s%n", System.currentTimeMillis(), e);
         } finally {
+            expressionServer.connectionClosed();
             System.out.printf("[%1$tY-%1$tm-%1$td %1$tT] Client %2$s disconnected from server%n", System.currentTimeMillis(), socket.getInetAddress());
         }
     }
@@ -0,0 +1,79 @@
+package it.units.expressionserver.server;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The thread pool of the computations, which counts its threads and the computations they are running as they start
+ * and end, so that the metrics can read these gauges without taking the lock of the pool, which getPoolSize and
+ * getActiveCount take.
+ * The computations waiting for a thread are counted by the queue itself, whose size is read without locking as well.
+ */
+class ComputationThreadPool extends ThreadPoolExecutor {
+
+    private final AtomicInteger threads;
+    private final AtomicInteger activeComputations = new AtomicInteger();
+
+    /**
+     * Constructs a new ComputationThreadPool with a fixed number of threads, which the configuration can change later.
+     *
+     * @param threads the number of threads
+     */
+    ComputationThreadPool(int threads) {
+        this(threads, new AtomicInteger());
+    }
+
+    private ComputationThreadPool(int threads, AtomicInteger threadCount) {
+        super(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), countingThreadFactory(threadCount));
+        this.threads = threadCount;
+    }
+
+    private static ThreadFactory countingThreadFactory(AtomicInteger threadCount) {
+        ThreadFactory threadFactory = Executors.defaultThreadFactory();
+        return runnable -> threadFactory.newThread(() -> {
+            threadCount.incrementAndGet();
+            try {
+                runnable.run();
+            } finally {
+                threadCount.decrementAndGet();
+            }
+        });
+    }
+
+    @Override
+    protected void beforeExecute(Thread thread, Runnable runnable) {
+        super.beforeExecute(thread, runnable);
+        activeComputations.incrementAndGet();
+    }
+
+    @Override
+    protected void afterExecute(Runnable runnable, Throwable throwable) {
+        activeComputations.decrementAndGet();
+        super.afterExecute(runnable, throwable);
+    }
+
+    /**
+     * Counts the threads of the pool, without locking.
+     */
+    int getThreads() {
+        return threads.get();
+    }
+
+    /**
+     * Counts the threads of the pool running a computation, without locking.
+     */
+    int getActiveComputations() {
+        return activeComputations.get();
+    }
+
+    /**
+     * Counts the computations waiting for a thread of the pool, without locking.
+     */
+    int getQueuedComputations() {
+        return getQueue().size();
+    }
+}
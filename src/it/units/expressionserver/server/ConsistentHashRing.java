@@ -0,0 +1,118 @@
+package it.units.expressionserver.server;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The ConsistentHashRing maps routing keys to backends. Each backend owns many points of a ring of 64-bit hashes,
+ * and a key belongs to the owner of the first point following its hash, so that adding or removing a backend only
+ * moves the keys of the arcs it gains or loses, about 1/n of them.
+ * The ring is copied on write, so that routing never waits for backends being added or removed.
+ */
+class ConsistentHashRing {
+
+    private static final int POINTS_PER_BACKEND = 160;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private volatile NavigableMap<Long, Backend> ring = Collections.emptyNavigableMap();
+    private volatile List<Backend> backends = Collections.emptyList();
+
+    /**
+     * Adds a backend to the ring.
+     *
+     * @return false if a backend with the same address is already in the ring
+     */
+    synchronized boolean add(Backend backend) {
+        if (find(backend.getAddress()) != null) {
+            return false;
+        }
+        NavigableMap<Long, Backend> newRing = new TreeMap<>(ring);
+        for (int point = 0; point < POINTS_PER_BACKEND; point++) {
+            newRing.putIfAbsent(hash(backend.getAddress() + "#" + point), backend);
+        }
+        List<Backend> newBackends = new ArrayList<>(backends);
+        newBackends.add(backend);
+        ring = newRing;
+        backends = Collections.unmodifiableList(newBackends);
+        return true;
+    }
+
+    /**
+     * Removes a backend from the ring.
+     *
+     * @return the removed backend, or null if no backend has the given address
+     */
+    synchronized Backend remove(InetSocketAddress address) {
+        Backend backend = find(address);
+        if (backend == null) {
+            return null;
+        }
+        NavigableMap<Long, Backend> newRing = new TreeMap<>(ring);
+        newRing.values().removeIf(owner -> owner == backend);
+        List<Backend> newBackends = new ArrayList<>(backends);
+        newBackends.remove(backend);
+        ring = newRing;
+        backends = Collections.unmodifiableList(newBackends);
+        return backend;
+    }
+
+    List<Backend> getBackends() {
+        return backends;
+    }
+
+    /**
+     * Gets the distinct backends in the order in which they follow the hash of the key on the ring:
+     * the first one owns the key, the others are its successors when the owner is overloaded or down.
+     */
+    List<Backend> successors(String key) {
+        NavigableMap<Long, Backend> currentRing = ring;
+        int backendCount = backends.size();
+        Set<Backend> successors = new LinkedHashSet<>();
+        long keyHash = hash(key);
+        for (Backend backend : currentRing.tailMap(keyHash, true).values()) {
+            if (successors.add(backend) && successors.size() == backendCount) {
+                return new ArrayList<>(successors);
+            }
+        }
+        for (Backend backend : currentRing.headMap(keyHash, false).values()) {
+            if (successors.add(backend) && successors.size() == backendCount) {
+                break;
+            }
+        }
+        return new ArrayList<>(successors);
+    }
+
+    private Backend find(InetSocketAddress address) {
+        for (Backend backend : backends) {
+            if (backend.getAddress().equals(address)) {
+                return backend;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Hashes a string with 64-bit FNV-1a followed by the finalizer of MurmurHash3, which spreads similar keys apart.
+     */
+    private static long hash(String string) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : string.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
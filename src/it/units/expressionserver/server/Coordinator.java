@@ -0,0 +1,373 @@
+package it.units.expressionserver.server;
+
+import it.units.expressionserver.domain.variablevaluesfunction.VariableValues;
+import it.units.expressionserver.exceptions.RemoteComputationException;
+import it.units.expressionserver.service.Computer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The Coordinator distributes a single large computation across a set of worker ExpressionServers.
+ * The tuple index space of the computation is partitioned into shards of consecutive tuples, which are sent to
+ * the workers as "SHARD;from;to;request" requests; each worker answers with the count, minimum, maximum and sum
+ * over its shard, and the coordinator merges these partials into the result of the whole computation.
+ *
+ * Each worker is served by its own thread and connection, taking shards until none is left, so that faster workers
+ * compute more shards. A worker must answer each shard within half of the computation timeout currently configured,
+ * so that the other half is left to recover from its failure. When a worker fails or does not answer in time, its
+ * shard goes back to the other workers and the worker is left out of the computations of the next
+ * {@link #RETRY_DELAY_NANOS}; if no worker is left, the coordinator computes the request by itself. An error raised
+ * by the evaluation of a shard is final: as in the local computation, the reported error is the one of the first
+ * failing shard. Errors due to the load of a worker, such as a full queue, an exhausted memory budget or a timeout,
+ * are failures of the worker instead.
+ */
+public class Coordinator {
+
+    public static final String SHARD_PREFIX = "SHARD;";
+    private static final int SHARDS_PER_WORKER = 4;
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final int MIN_READ_TIMEOUT_MILLIS = 1000;
+    private static final long RETRY_DELAY_NANOS = 5_000_000_000L;
+    private static final String OK_PREFIX = "OK;";
+    private static final String ERROR_PREFIX = "ERR;";
+    private static final String QUIT_COMMAND = "BYE";
+    private static final int SHARD_RESPONSE_PARTS = 6;
+    private static final Set<String> WORKER_FAILURE_ERRORS = Set.of("QueueFullException", "QueueTimeoutException",
+            "ComputationTimeoutException", "MemoryBudgetExceededException", "ComputationCancelledException");
+
+    private final List<Worker> workers;
+    private final long minTuples;
+
+    /**
+     * Constructs a new Coordinator.
+     *
+     * @param workerAddresses the addresses of the worker servers
+     * @param minTuples the minimum number of tuples of the computations worth distributing
+     * @throws IllegalArgumentException if there are no workers or the minimum number of tuples is not positive
+     */
+    public Coordinator(List<InetSocketAddress> workerAddresses, long minTuples) throws IllegalArgumentException {
+        if (workerAddresses.isEmpty()) {
+            throw new IllegalArgumentException("No workers");
+        }
+        if (minTuples < 1) {
+            throw new IllegalArgumentException("The minimum number of tuples must be positive: " + minTuples);
+        }
+        this.workers = new ArrayList<>();
+        for (InetSocketAddress workerAddress : workerAddresses) {
+            workers.add(new Worker(workerAddress));
+        }
+        this.minTuples = minTuples;
+    }
+
+    /**
+     * Checks whether a computation is worth distributing: only MIN, MAX, AVG and SUM computations over
+     * at least the minimum number of tuples are distributed. COUNT does not evaluate the expressions at all.
+     * Computations over dataset columns are never distributed, as the datasets are loaded on this server only.
+     *
+     * @param computationKind the kind of the computation
+     * @param variableValuesList the variable values of the computation
+     * @param tupleCount the number of tuples of the computation
+     * @return true if the computation should be distributed
+     */
+    public boolean isDistributable(Computer.ComputationKind computationKind, List<VariableValues> variableValuesList, long tupleCount) {
+        for (VariableValues variableValues : variableValuesList) {
+            if (variableValues.isDatasetColumn()) {
+                return false;
+            }
+        }
+        switch (computationKind) {
+            case MIN:
+            case MAX:
+            case AVG:
+            case SUM:
+                return tupleCount >= minTuples;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Distributes a computation across the available workers and merges their partial results.
+     *
+     * @param computationRequestString the computation request, as sent by the client
+     * @param computationKind the kind of the computation
+     * @param tupleCount the number of tuples of the computation
+     * @param timeoutSeconds the computation timeout currently configured, half of which bounds the wait for each shard
+     * @return the result of the computation, or null if no worker could complete it
+     * @throws RemoteComputationException if a worker reports an error, whose message is the whole error of the worker
+     * @throws InterruptedException if the computing thread is interrupted while waiting for the workers
+     */
+    public double[] distribute(String computationRequestString, Computer.ComputationKind computationKind, long tupleCount,
+                               int timeoutSeconds) throws RemoteComputationException, InterruptedException {
+        List<Worker> availableWorkers = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Worker worker : workers) {
+            if (worker.isAvailable(now)) {
+                availableWorkers.add(worker);
+            }
+        }
+        int shards = (int) Math.min(tupleCount, (long) availableWorkers.size() * SHARDS_PER_WORKER);
+        if (shards == 0) {
+            return null;
+        }
+
+        int readTimeoutMillis = (int) Math.min(Integer.MAX_VALUE, Math.max(MIN_READ_TIMEOUT_MILLIS, timeoutSeconds * 1000L / 2));
+        Distribution distribution = new Distribution(computationRequestString, tupleCount, shards, availableWorkers.size(), readTimeoutMillis);
+        for (Worker worker : availableWorkers) {
+            Thread thread = new Thread(() -> distribution.serve(worker), "coordinator-" + worker.address);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        try {
+            if (!distribution.await()) {
+                return null;
+            }
+        } finally {
+            distribution.cancel();
+        }
+        return distribution.merge(computationKind);
+    }
+
+    /**
+     * A worker server, with the time of its last failure.
+     */
+    private static class Worker {
+        private final InetSocketAddress address;
+        private volatile boolean failed;
+        private volatile long failureTime;
+
+        private Worker(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        private boolean isAvailable(long now) {
+            return !failed || now - failureTime >= RETRY_DELAY_NANOS;
+        }
+
+        private void markFailed() {
+            failureTime = System.nanoTime();
+            failed = true;
+        }
+    }
+
+    /**
+     * The state of a distributed computation: the shards still to be computed, and the partial results
+     * and errors of the computed ones. Worker threads and the coordinating thread synchronize on it.
+     */
+    private static class Distribution {
+        private final String computationRequestString;
+        private final int readTimeoutMillis;
+        private final long[] bounds;
+        private final double[][] partials;
+        private final String[] errors;
+        private final Deque<Integer> pendingShards = new ArrayDeque<>();
+        private final Set<Socket> sockets = new HashSet<>();
+        private int remainingShards;
+        private int liveWorkers;
+        private boolean cancelled;
+
+        private Distribution(String computationRequestString, long tupleCount, int shards, int workers, int readTimeoutMillis) {
+            this.computationRequestString = computationRequestString;
+            this.readTimeoutMillis = readTimeoutMillis;
+            this.bounds = new long[shards + 1];
+            this.partials = new double[shards][];
+            this.errors = new String[shards];
+            long shardTuples = tupleCount / shards;
+            long extraTuples = tupleCount % shards;
+            for (int shard = 0; shard < shards; shard++) {
+                bounds[shard + 1] = bounds[shard] + shardTuples + (shard < extraTuples ? 1 : 0);
+                pendingShards.add(shard);
+            }
+            this.remainingShards = shards;
+            this.liveWorkers = workers;
+        }
+
+        /**
+         * Computes shards on a worker until none is left, over a single connection.
+         */
+        private void serve(Worker worker) {
+            int shard = -1;
+            try (Socket socket = new Socket()) {
+                if (!register(socket)) {
+                    return;
+                }
+                socket.connect(worker.address, CONNECT_TIMEOUT_MILLIS);
+                socket.setSoTimeout(readTimeoutMillis);
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+                while ((shard = take()) >= 0) {
+                    out.write(SHARD_PREFIX + bounds[shard] + ';' + bounds[shard + 1] + ';' + computationRequestString);
+                    out.newLine();
+                    out.flush();
+                    String line = in.readLine();
+                    if (line == null) {
+                        throw new IOException("The worker closed the connection");
+                    }
+                    complete(shard, line);
+                    shard = -1;
+                }
+                out.write(QUIT_COMMAND);
+                out.newLine();
+                out.flush();
+            } catch (IOException e) {
+                fail(worker, shard, e);
+            }
+        }
+
+        private synchronized boolean register(Socket socket) {
+            if (cancelled) {
+                return false;
+            }
+            sockets.add(socket);
+            return true;
+        }
+
+        /**
+         * Takes a shard to compute, waiting while the shards being computed by other workers may be given back.
+         *
+         * @return the index of the shard, or -1 if no shard is left
+         */
+        private synchronized int take() {
+            while (!cancelled && pendingShards.isEmpty() && remainingShards > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    return -1;
+                }
+            }
+            if (cancelled || pendingShards.isEmpty()) {
+                return -1;
+            }
+            return pendingShards.poll();
+        }
+
+        /**
+         * Completes a shard with the response of a worker.
+         *
+         * @throws IOException if the response is not valid, or reports a failure of the worker rather than an error
+         *                     of the shard
+         */
+        private synchronized void complete(int shard, String response) throws IOException {
+            if (response.startsWith(ERROR_PREFIX)) {
+                String error = response.substring(ERROR_PREFIX.length());
+                if (isWorkerFailure(error)) {
+                    throw new IOException("The worker could not compute the shard: " + error);
+                }
+                errors[shard] = error;
+            } else {
+                String[] parts = response.split(";");
+                if (!response.startsWith(OK_PREFIX) || parts.length != SHARD_RESPONSE_PARTS) {
+                    throw new IOException("Invalid response from the worker: " + response);
+                }
+                double[] partial = new double[SHARD_RESPONSE_PARTS - 2];
+                try {
+                    for (int i = 0; i < partial.length; i++) {
+                        partial[i] = Double.parseDouble(parts[i + 2]);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid response from the worker: " + response);
+                }
+                partials[shard] = partial;
+            }
+            remainingShards--;
+            notifyAll();
+        }
+
+        /**
+         * Checks whether an error is due to the worker rather than to the shard: an error due to the load of the
+         * worker, or an unexpected one, which has no type.
+         */
+        private static boolean isWorkerFailure(String error) {
+            int typeEnd = error.startsWith("(") ? error.indexOf(')') : -1;
+            return typeEnd < 0 || WORKER_FAILURE_ERRORS.contains(error.substring(1, typeEnd));
+        }
+
+        private synchronized void fail(Worker worker, int shard, IOException e) {
+            if (shard >= 0) {
+                pendingShards.addFirst(shard);
+            }
+            liveWorkers--;
+            if (!cancelled) {
+                worker.markFailed();
+                System.err.printf("[%1$tY-%1$tm-%1$td %1$tT] Worker %2$s failed due to %3$s%n", System.currentTimeMillis(), worker.address, e);
+            }
+            notifyAll();
+        }
+
+        /**
+         * Waits until every shard is computed, or no worker is left.
+         *
+         * @return true if every shard has been computed
+         */
+        private synchronized boolean await() throws InterruptedException {
+            while (remainingShards > 0 && liveWorkers > 0) {
+                wait();
+            }
+            return remainingShards == 0;
+        }
+
+        /**
+         * Stops the workers that are still computing, closing their connections.
+         */
+        private synchronized void cancel() {
+            cancelled = true;
+            for (Socket socket : sockets) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // The worker thread is leaving anyway
+                }
+            }
+            notifyAll();
+        }
+
+        /**
+         * Merges the partials of the shards, in shard order, as the local computation aggregates the tuples.
+         */
+        private synchronized double[] merge(Computer.ComputationKind computationKind) throws RemoteComputationException {
+            double count = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            double sum = 0;
+            for (int shard = 0; shard < partials.length; shard++) {
+                if (errors[shard] != null) {
+                    throw new RemoteComputationException(errors[shard]);
+                }
+                count += partials[shard][0];
+                // Zeros of different sign compare as equal: as in the local computation, the first one wins
+                if (partials[shard][1] < min) {
+                    min = partials[shard][1];
+                }
+                if (partials[shard][2] > max) {
+                    max = partials[shard][2];
+                }
+                sum += partials[shard][3];
+            }
+            switch (computationKind) {
+                case MIN:
+                    return new double[] {Math.min(min, Double.MAX_VALUE)};
+                case MAX:
+                    return new double[] {Math.max(max, Double.MIN_VALUE)};
+                case AVG:
+                    return new double[] {sum / count};
+                case SUM:
+                    return new double[] {sum};
+                default:
+                    throw new IllegalArgumentException("Unknown computation kind: " + computationKind);
+            }
+        }
+    }
+}
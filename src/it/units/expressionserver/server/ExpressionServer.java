@@ -1,23 +1,66 @@
 package it.units.expressionserver.server;
 
+import it.units.expressionserver.domain.dataset.DatasetRegistry;
+import it.units.expressionserver.exceptions.DatasetException;
+import it.units.expressionserver.protocol.request.SingleFlight;
+import it.units.expressionserver.service.ColumnCache;
 import it.units.expressionserver.service.Computer;
+import it.units.expressionserver.service.MemoryGovernor;
+import it.units.expressionserver.service.Metrics;
+import it.units.expressionserver.service.ResultCache;
 import it.units.expressionserver.service.StatsCollector;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class ExpressionServer {
 
     private final int port;
-    private final ExecutorService threadPool;
-    private final ExecutorService computationThreadPool;
+    private final ThreadPoolExecutor threadPool;
+    private final ComputationThreadPool computationThreadPool;
     private final StatsCollector statsCollector;
     private final Computer computer;
+    private final ServerConfiguration configuration;
+    private final DatasetRegistry datasetRegistry;
+    private volatile Coordinator coordinator;
+    private volatile ResultCache resultCache;
+    private final SingleFlight singleFlight;
+    private volatile MemoryGovernor memoryGovernor;
+    private final Metrics metrics;
+    private final AtomicInteger openConnections;
+    private final AtomicInteger connectionIds;
+    private volatile TrafficCapture trafficCapture;
     private static final String QUIT_COMMAND = "BYE";
+    private static final String CANCEL_COMMAND = "CANCEL";
+    private static final String USAGE = "Usage: java ExpressionServer <port> [--config=<file>] [--client-threads=<threads>] [--computation-threads=<threads>]" +
+            " [--max-queued-computations=<computations>] [--queue-timeout=<seconds>] [--computation-timeout=<seconds>] [--admin-token=<token>]" +
+            " [--minmax-engine=ENUMERATION|INTERVAL] [--monotonicity-analysis=true|false]" +
+            " [--polynomial-avg=true|false] [--separable-decomposition=true|false]" +
+            " [--approximation-relative-error=<error>] [--approximation-time-budget=<millis>]" +
+            " [--compilation-threshold=<evaluations>] [--datasets=<directory>]" +
+            " [--workers=<host:port>,...] [--coordinator-min-tuples=<tuples>]" +
+            " [--result-cache-size=<entries>] [--column-cache-size=<bytes>] [--memory-budget=<bytes>] [--snapshot=<file>] [--snapshot-interval=<seconds>]" +
+            " [--warmup=<seconds>] [--warmup-requests=<file>] [--metrics-port=<port>] [--capture=<file>]" +
+            " | <port> --proxy=<host:port>,... [--proxy-load-factor=<factor>] [--proxy-read-timeout=<seconds>] [--admin-token=<token>]";
+    private static final long DEFAULT_COORDINATOR_MIN_TUPLES = 1_000_000L;
+    private static final double DEFAULT_PROXY_LOAD_FACTOR = 1.25;
+    private static final int DEFAULT_PROXY_READ_TIMEOUT_SECONDS = 150;
+    private static final int DEFAULT_RESULT_CACHE_SIZE = 1024;
+    private static final long DEFAULT_SNAPSHOT_INTERVAL_SECONDS = 60;
 
 
     /**
@@ -28,11 +71,29 @@ public class ExpressionServer {
      * @param port The port number on which the server will listen for connections.
      */
     public ExpressionServer(int port) {
+        this(port, null);
+    }
+
+    /**
+     * Constructor for the ExpressionServer, with the directory of the datasets that LIST computations can reference.
+     *
+     * @param port The port number on which the server will listen for connections.
+     * @param datasetsDirectory The directory of the dataset files, or null if datasets are not enabled.
+     */
+    public ExpressionServer(int port, Path datasetsDirectory) {
         this.port = port;
         this.statsCollector = new StatsCollector();
-        this.threadPool = Executors.newFixedThreadPool(10000);
-        this.computationThreadPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        this.threadPool = newFixedThreadPool(ServerConfiguration.DEFAULT_CLIENT_THREADS);
+        this.computationThreadPool = new ComputationThreadPool(Runtime.getRuntime().availableProcessors());
         this.computer = new Computer();
+        this.configuration = new ServerConfiguration(threadPool, computationThreadPool, computer);
+        this.datasetRegistry = new DatasetRegistry(datasetsDirectory);
+        this.resultCache = new ResultCache(DEFAULT_RESULT_CACHE_SIZE);
+        this.singleFlight = new SingleFlight();
+        this.memoryGovernor = new MemoryGovernor(Runtime.getRuntime().maxMemory() / 2);
+        this.metrics = new Metrics();
+        this.openConnections = new AtomicInteger();
+        this.connectionIds = new AtomicInteger();
     }
 
     /**
@@ -43,6 +104,15 @@ public class ExpressionServer {
     public ExecutorService getComputationThreadPool() {
         return computationThreadPool;
     }
+    /**
+     * Getter for the configuration.
+     *
+     * @return The ServerConfiguration holding the settings that can be changed while the server is running.
+     */
+    public ServerConfiguration getConfiguration() {
+        return configuration;
+    }
+
     /**
      * Getter for the computer.
      *
@@ -52,6 +122,128 @@ public class ExpressionServer {
         return computer;
     }
 
+    /**
+     * Getter for the datasetRegistry.
+     *
+     * @return The registry of the datasets that LIST computations can reference.
+     */
+    public DatasetRegistry getDatasetRegistry() {
+        return datasetRegistry;
+    }
+
+    /**
+     * Getter for the coordinator.
+     *
+     * @return The Coordinator distributing large computations to the workers, or null if computations are local.
+     */
+    public Coordinator getCoordinator() {
+        return coordinator;
+    }
+
+    /**
+     * Makes this server the coordinator of a set of workers, or a standalone server.
+     *
+     * @param coordinator The Coordinator distributing large computations to the workers, or null to compute locally.
+     */
+    public void setCoordinator(Coordinator coordinator) {
+        this.coordinator = coordinator;
+    }
+
+    /**
+     * Getter for the resultCache.
+     *
+     * @return The cache of the results of deterministic computations.
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Replaces the cache of the results of deterministic computations.
+     *
+     * @param resultCache The new result cache.
+     */
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Getter for the singleFlight.
+     *
+     * @return The registry of the computations in flight, shared by identical requests.
+     */
+    public SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    /**
+     * Getter for the memoryGovernor.
+     *
+     * @return The governor of the memory that the running computations take together.
+     */
+    public MemoryGovernor getMemoryGovernor() {
+        return memoryGovernor;
+    }
+
+    /**
+     * Replaces the governor of the memory that the running computations take together.
+     *
+     * @param memoryGovernor The new memory governor.
+     */
+    public void setMemoryGovernor(MemoryGovernor memoryGovernor) {
+        this.memoryGovernor = memoryGovernor;
+    }
+
+    /**
+     * Getter for the metrics.
+     *
+     * @return The Metrics of the requests handled by the server.
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the number of client connections currently open.
+     *
+     * @return The number of open connections.
+     */
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    /**
+     * Getter for the trafficCapture.
+     *
+     * @return The TrafficCapture recording the handled requests, or null if traffic is not captured.
+     */
+    public TrafficCapture getTrafficCapture() {
+        return trafficCapture;
+    }
+
+    /**
+     * Starts or stops capturing the handled requests.
+     *
+     * @param trafficCapture The TrafficCapture recording the handled requests, or null to stop capturing.
+     */
+    public void setTrafficCapture(TrafficCapture trafficCapture) {
+        this.trafficCapture = trafficCapture;
+    }
+
+    /**
+     * Records that a client connection has been opened.
+     *
+     * @return The id of the connection, unique within the server.
+     */
+    int connectionOpened() {
+        openConnections.incrementAndGet();
+        return connectionIds.incrementAndGet();
+    }
+
+    void connectionClosed() {
+        openConnections.decrementAndGet();
+    }
+
     /**
      * Returns the command string that signifies a client wishes to disconnect.
      *
@@ -61,6 +253,15 @@ public class ExpressionServer {
         return QUIT_COMMAND;
     }
 
+    /**
+     * Returns the command string with which a client cancels the streamed request being computed.
+     *
+     * @return The CANCEL_COMMAND String.
+     */
+    public String getCancelCommand() {
+        return CANCEL_COMMAND;
+    }
+
     /**
      * Getter for the statsCollector.
      *
@@ -92,20 +293,151 @@ public class ExpressionServer {
     }
 
     /**
-     * The main method for the ExpressionServer class. It parses the command line arguments for the server port number,
-     * instantiates an ExpressionServer, and runs it.
+     * The main method for the ExpressionServer class. It parses the command line arguments for the server port number
+     * and the optional settings, instantiates an ExpressionServer, and runs it.
+     * With the --proxy option, it runs a RoutingProxy in front of the given servers instead.
      *
-     * @param args Command line arguments, expecting the server port number as the first argument.
+     * @param args Command line arguments, expecting the server port number as the first argument,
+     *             followed by optional settings in the form --name=value.
      */
     public static void main(String[] args) {
         if (args.length < 1) {
-            System.err.println("Usage: java ExpressionServer <port>");
+            System.err.println(USAGE);
             return;
         }
 
         int port = Integer.parseInt(args[0]);
-        ExpressionServer server = new ExpressionServer(port);
+        ExpressionServer server;
+        try {
+            Map<String, String> options = parseOptions(Arrays.copyOfRange(args, 1, args.length));
+            String config = options.get("config");
+            if (config != null) {
+                ServerConfiguration.load(Path.of(config)).forEach(options::putIfAbsent);
+            }
+            String proxy = options.get("proxy");
+            if (proxy != null) {
+                String proxyLoadFactor = options.get("proxy-load-factor");
+                double loadFactor = proxyLoadFactor == null ? DEFAULT_PROXY_LOAD_FACTOR : Double.parseDouble(proxyLoadFactor);
+                String proxyReadTimeout = options.get("proxy-read-timeout");
+                int readTimeout = proxyReadTimeout == null ? DEFAULT_PROXY_READ_TIMEOUT_SECONDS : Integer.parseInt(proxyReadTimeout);
+                new RoutingProxy(port, parseAddresses(proxy), loadFactor, readTimeout, options.get("admin-token")).run();
+                return;
+            }
+            String datasets = options.get("datasets");
+            server = new ExpressionServer(port, datasets == null ? null : Path.of(datasets));
+            for (String setting : ServerConfiguration.SETTINGS) {
+                String value = options.get(setting);
+                if (value != null) {
+                    server.getConfiguration().set(setting, value);
+                }
+            }
+            server.getConfiguration().setAdminToken(options.get("admin-token"));
+            String workers = options.get("workers");
+            String coordinatorMinTuples = options.get("coordinator-min-tuples");
+            if (workers != null) {
+                long minTuples = coordinatorMinTuples == null ? DEFAULT_COORDINATOR_MIN_TUPLES : Long.parseLong(coordinatorMinTuples);
+                server.setCoordinator(new Coordinator(parseAddresses(workers), minTuples));
+            }
+            String resultCacheSize = options.get("result-cache-size");
+            if (resultCacheSize != null) {
+                server.setResultCache(new ResultCache(Integer.parseInt(resultCacheSize)));
+            }
+            String columnCacheSize = options.get("column-cache-size");
+            if (columnCacheSize != null) {
+                server.getComputer().setColumnCache(new ColumnCache(Long.parseLong(columnCacheSize)));
+            }
+            String memoryBudget = options.get("memory-budget");
+            if (memoryBudget != null) {
+                server.setMemoryGovernor(new MemoryGovernor(Long.parseLong(memoryBudget)));
+            }
+            server.getDatasetRegistry().loadAll();
+            String snapshot = options.get("snapshot");
+            if (snapshot != null) {
+                String snapshotInterval = options.get("snapshot-interval");
+                SnapshotStore snapshotStore = new SnapshotStore(Path.of(snapshot), server.getResultCache(), server.getComputer().getTieredEvaluator());
+                snapshotStore.restore();
+                snapshotStore.start(snapshotInterval == null ? DEFAULT_SNAPSHOT_INTERVAL_SECONDS : Long.parseLong(snapshotInterval));
+            }
+            String warmUp = options.get("warmup");
+            if (warmUp != null) {
+                String warmUpRequests = options.get("warmup-requests");
+                WarmUp serverWarmUp = warmUpRequests == null ? new WarmUp(server) : new WarmUp(server, Path.of(warmUpRequests));
+                long warmUpStart = System.nanoTime();
+                long handledRequests = serverWarmUp.run((long) (Double.parseDouble(warmUp) * 1000));
+                System.out.printf("[%1$tY-%1$tm-%1$td %1$tT] Warm-up took %2$.3f seconds (%3$d requests)%n",
+                        System.currentTimeMillis(), (System.nanoTime() - warmUpStart) / 1_000_000_000.0, handledRequests);
+            }
+            String metricsPort = options.get("metrics-port");
+            if (metricsPort != null) {
+                new MetricsServer(Integer.parseInt(metricsPort), server).start();
+            }
+            String capture = options.get("capture");
+            if (capture != null) {
+                TrafficCapture trafficCapture = new TrafficCapture(Path.of(capture));
+                trafficCapture.start();
+                server.setTrafficCapture(trafficCapture);
+            }
+        } catch (DatasetException e) {
+            System.err.println("Cannot load datasets: " + e.getMessage());
+            return;
+        } catch (IOException e) {
+            System.err.println("Cannot read configuration or warm-up requests, start the metrics endpoint or capture traffic: " + e.getMessage());
+            return;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid option: " + e.getMessage());
+            System.err.println(USAGE);
+            return;
+        }
         server.run();
     }
 
+    /**
+     * Parses a comma separated list of server addresses in the form host:port.
+     *
+     * @param addressesString the list of addresses
+     * @return the addresses, in list order
+     * @throws IllegalArgumentException if an address is not in the form host:port
+     */
+    static List<InetSocketAddress> parseAddresses(String addressesString) throws IllegalArgumentException {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String addressString : addressesString.split(",")) {
+            int separator = addressString.lastIndexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Invalid server address: " + addressString);
+            }
+            int port = Integer.parseInt(addressString.substring(separator + 1));
+            addresses.add(new InetSocketAddress(addressString.substring(0, separator), port));
+        }
+        return addresses;
+    }
+
+    /**
+     * Creates a thread pool with a fixed number of threads, which the configuration can change later.
+     *
+     * @param threads the number of threads
+     * @return the thread pool
+     */
+    private static ThreadPoolExecutor newFixedThreadPool(int threads) {
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+    }
+
+    /**
+     * Parses command line options in the form --name=value.
+     *
+     * @param args the command line arguments following the port number
+     * @return a map from option names to their values
+     * @throws IllegalArgumentException if an argument is not in the form --name=value
+     */
+    static Map<String, String> parseOptions(String[] args) throws IllegalArgumentException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException(arg);
+            }
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
 }
@@ -0,0 +1,172 @@
+package it.units.expressionserver.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import it.units.expressionserver.service.MemoryGovernor;
+import it.units.expressionserver.service.Metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The MetricsServer exports the metrics of an ExpressionServer over HTTP, on a separate port, in the Prometheus
+ * text format: the requests by kind and outcome with their latency histograms, the errors by type, the timeouts
+ * and the rejections, and gauges of the computation thread pool, the open connections and the memory budget.
+ * Scrapes are served by a single thread of their own, and read only counters that the request path updates
+ * atomically, so that they take none of the locks of the computation thread pool or of the MemoryGovernor and never
+ * delay a request.
+ */
+public class MetricsServer {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final ExpressionServer expressionServer;
+    private final HttpServer httpServer;
+
+    /**
+     * Constructs a new MetricsServer.
+     *
+     * @param port the port of the HTTP endpoint
+     * @param expressionServer the server whose metrics are exported
+     * @throws IOException if the port cannot be bound
+     */
+    public MetricsServer(int port, ExpressionServer expressionServer) throws IOException {
+        this.expressionServer = expressionServer;
+        this.httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        httpServer.createContext("/metrics", this::handle);
+        ExecutorService scrapeThread = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        httpServer.setExecutor(scrapeThread);
+    }
+
+    /**
+     * Starts serving the metrics at /metrics.
+     */
+    public void start() {
+        httpServer.start();
+        System.out.printf("[%1$tY-%1$tm-%1$td %1$tT] Metrics exported on port %2$d%n", System.currentTimeMillis(),
+                httpServer.getAddress().getPort());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Renders the metrics in the Prometheus text format.
+     */
+    String render() {
+        StringBuilder text = new StringBuilder();
+        Metrics metrics = expressionServer.getMetrics();
+        Map<String, Metrics.KindMetrics> kinds = metrics.getKinds();
+
+        header(text, "expressionserver_requests_total", "counter", "Requests handled, by kind and outcome.");
+        for (Map.Entry<String, Metrics.KindMetrics> kind : kinds.entrySet()) {
+            for (Metrics.Outcome outcome : Metrics.Outcome.values()) {
+                sample(text, "expressionserver_requests_total", "kind=\"" + escape(kind.getKey()) + "\",outcome=\"" + outcome.getLabel() + "\"",
+                        kind.getValue().getCount(outcome));
+            }
+        }
+
+        header(text, "expressionserver_request_duration_seconds", "histogram", "Time taken to handle requests, by kind.");
+        for (Map.Entry<String, Metrics.KindMetrics> kind : kinds.entrySet()) {
+            String kindLabel = "kind=\"" + escape(kind.getKey()) + "\"";
+            long[] bucketCounts = kind.getValue().getBucketCounts();
+            long cumulative = 0;
+            for (int i = 0; i < Metrics.LATENCY_BUCKETS.length; i++) {
+                cumulative += bucketCounts[i];
+                sample(text, "expressionserver_request_duration_seconds_bucket", kindLabel + ",le=\"" + Metrics.LATENCY_BUCKETS[i] + "\"", cumulative);
+            }
+            cumulative += bucketCounts[Metrics.LATENCY_BUCKETS.length];
+            sample(text, "expressionserver_request_duration_seconds_bucket", kindLabel + ",le=\"+Inf\"", cumulative);
+            sample(text, "expressionserver_request_duration_seconds_sum", kindLabel, kind.getValue().getLatencySumSeconds());
+            sample(text, "expressionserver_request_duration_seconds_count", kindLabel, cumulative);
+        }
+
+        header(text, "expressionserver_errors_total", "counter", "Failed requests, by error type.");
+        for (Map.Entry<String, Long> error : metrics.getErrors().entrySet()) {
+            sample(text, "expressionserver_errors_total", "type=\"" + escape(error.getKey()) + "\"", error.getValue());
+        }
+
+        long timeouts = 0;
+        long rejections = 0;
+        for (Metrics.KindMetrics kind : kinds.values()) {
+            timeouts += kind.getCount(Metrics.Outcome.TIMEOUT);
+            rejections += kind.getCount(Metrics.Outcome.REJECTED);
+        }
+        header(text, "expressionserver_timeouts_total", "counter", "Requests that timed out in the queue or while computing.");
+        sample(text, "expressionserver_timeouts_total", null, timeouts);
+        header(text, "expressionserver_rejections_total", "counter", "Requests rejected for lack of resources.");
+        sample(text, "expressionserver_rejections_total", null, rejections);
+
+        if (expressionServer.getComputationThreadPool() instanceof ComputationThreadPool) {
+            ComputationThreadPool pool = (ComputationThreadPool) expressionServer.getComputationThreadPool();
+            header(text, "expressionserver_computation_pool_threads", "gauge", "Threads of the computation thread pool.");
+            sample(text, "expressionserver_computation_pool_threads", null, pool.getThreads());
+            header(text, "expressionserver_computation_pool_active", "gauge", "Threads of the computation thread pool running a computation.");
+            sample(text, "expressionserver_computation_pool_active", null, pool.getActiveComputations());
+            header(text, "expressionserver_computation_pool_queued", "gauge", "Computations waiting for a thread of the computation thread pool.");
+            sample(text, "expressionserver_computation_pool_queued", null, pool.getQueuedComputations());
+        }
+
+        header(text, "expressionserver_open_connections", "gauge", "Open client connections.");
+        sample(text, "expressionserver_open_connections", null, expressionServer.getOpenConnections());
+
+        MemoryGovernor memoryGovernor = expressionServer.getMemoryGovernor();
+        header(text, "expressionserver_memory_reserved_bytes", "gauge", "Memory reserved by the running computations.");
+        sample(text, "expressionserver_memory_reserved_bytes", null, memoryGovernor.getReservedBytes());
+        header(text, "expressionserver_memory_budget_bytes", "gauge", "Memory budget of the running computations.");
+        sample(text, "expressionserver_memory_budget_bytes", null, memoryGovernor.getBudgetBytes());
+        header(text, "expressionserver_memory_waiting", "gauge", "Computations waiting for memory.");
+        sample(text, "expressionserver_memory_waiting", null, memoryGovernor.getWaitingComputations());
+
+        header(text, "expressionserver_coalesced_requests_total", "counter", "Requests answered by the computation of an identical request in flight.");
+        sample(text, "expressionserver_coalesced_requests_total", null, expressionServer.getSingleFlight().getCoalescedRequests());
+        return text.toString();
+    }
+
+    private static void header(StringBuilder text, String name, String type, String help) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder text, String name, String labels, double value) {
+        text.append(name);
+        if (labels != null) {
+            text.append('{').append(labels).append('}');
+        }
+        text.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            text.append((long) value);
+        } else {
+            text.append(String.format(Locale.ROOT, "%.9f", value));
+        }
+        text.append('\n');
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
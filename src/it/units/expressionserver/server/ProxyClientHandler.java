@@ -0,0 +1,195 @@
+package it.units.expressionserver.server;
+
+import it.units.expressionserver.protocol.request.AdminRequest;
+import it.units.expressionserver.protocol.request.PrepareRequest;
+import it.units.expressionserver.protocol.response.ErrorResponse;
+import it.units.expressionserver.protocol.response.OkResponse;
+import it.units.expressionserver.protocol.response.RelayedResponse;
+import it.units.expressionserver.protocol.response.Response;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+
+/**
+ * The ProxyClientHandler relays the requests of a client of the routing proxy to the backends, and their
+ * responses back to the client. Frames of streamed requests are relayed as they arrive, and a cancel command
+ * sent by the client meanwhile is forwarded to the backend computing the request.
+ * A request is retried on the next backend if its backend cannot be reached, unless part of its response
+ * has already been relayed.
+ * The admin commands changing the backends are handled by the proxy itself, other admin requests are relayed.
+ * Prepared expressions are refused: they are kept by each backend connection, while the requests of a client are
+ * relayed over whichever pooled connection is free, so a handle could name the expressions of another client.
+ */
+class ProxyClientHandler implements Runnable {
+
+    private static final String QUIT_COMMAND = "BYE";
+    private static final String CANCEL_COMMAND = "CANCEL";
+    private static final String STREAM_PREFIX = "STREAM;";
+    private static final String FRAME_PREFIX = "PART;";
+    private static final String EXECUTE_PREFIX = "EXECUTE;";
+    private static final char PARTS_SEPARATOR = ';';
+    private static final String ADD_BACKEND_ACTION = "PROXY_ADD";
+    private static final String REMOVE_BACKEND_ACTION = "PROXY_REMOVE";
+    private static final int ADMIN_BACKEND_PARTS = 4;
+
+    private final Socket socket;
+    private final RoutingProxy proxy;
+
+    ProxyClientHandler(Socket socket, RoutingProxy proxy) {
+        this.socket = socket;
+        this.proxy = proxy;
+    }
+
+    @Override
+    public void run() {
+        try (socket; ClientConnection connection = new ClientConnection(socket.getInputStream(), socket.getOutputStream(), CANCEL_COMMAND)) {
+            while (true) {
+                String line = connection.readLine();
+                if (line == null || line.equals(QUIT_COMMAND)) {
+                    break;
+                }
+                if (line.equals(CANCEL_COMMAND)) {
+                    continue;
+                }
+                long startTime = System.nanoTime();
+                String[] adminParts = line.startsWith(AdminRequest.ADMIN_PREFIX)
+                        ? line.split(String.valueOf(PARTS_SEPARATOR), ADMIN_BACKEND_PARTS) : null;
+                if (adminParts != null && adminParts.length == ADMIN_BACKEND_PARTS
+                        && (adminParts[2].equals(ADD_BACKEND_ACTION) || adminParts[2].equals(REMOVE_BACKEND_ACTION))) {
+                    connection.write(updateBackends(adminParts, startTime));
+                } else if (isPrepared(line)) {
+                    connection.write(new ErrorResponse("(ProxyException) Prepared expressions are not supported by the routing proxy"));
+                } else {
+                    relay(line, connection);
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.printf("[%1$tY-%1$tm-%1$td %1$tT] IO error: %2$s%n", System.currentTimeMillis(), e);
+        }
+    }
+
+    /**
+     * Adds or removes a backend with an "ADMIN;token;PROXY_ADD;host:port" or "ADMIN;token;PROXY_REMOVE;host:port" command.
+     *
+     * @param adminParts the token, the action and the address, following the admin prefix
+     */
+    private Response updateBackends(String[] adminParts, long startTime) {
+        if (!proxy.isAdminEnabled()) {
+            return new ErrorResponse("(AdminException) : Admin commands are disabled.");
+        }
+        if (!proxy.isAdminToken(adminParts[1])) {
+            return new ErrorResponse("(AdminException) : Invalid admin token.");
+        }
+        boolean add = adminParts[2].equals(ADD_BACKEND_ACTION);
+        String addressString = adminParts[3];
+        InetSocketAddress address;
+        try {
+            address = ExpressionServer.parseAddresses(addressString).get(0);
+        } catch (IllegalArgumentException e) {
+            return new ErrorResponse("(IllegalArgumentException) " + e.getMessage());
+        }
+        boolean updated = add ? proxy.addBackend(address) : proxy.removeBackend(address);
+        if (!updated) {
+            return new ErrorResponse(String.format("(IllegalArgumentException) Backend %s is %s in the pool", addressString, add ? "already" : "not"));
+        }
+        System.out.printf("[%1$tY-%1$tm-%1$td %1$tT] Admin %2$s backend %3$s%n", System.currentTimeMillis(), add ? "added" : "removed", address);
+        return new OkResponse(startTime);
+    }
+
+    /**
+     * Checks whether a request prepares, executes or deallocates prepared expressions.
+     */
+    private static boolean isPrepared(String line) {
+        String request = line.startsWith(STREAM_PREFIX) ? line.substring(STREAM_PREFIX.length()) : line;
+        int commandEnd = request.indexOf(PARTS_SEPARATOR);
+        return request.startsWith(EXECUTE_PREFIX)
+                || PrepareRequest.Action.fromRequestString(commandEnd < 0 ? request : request.substring(0, commandEnd)) != null;
+    }
+
+    /**
+     * Relays a request to the first backend that can be reached, and its response back to the client.
+     */
+    private void relay(String line, ClientConnection connection) throws IOException {
+        List<Backend> backends = proxy.route(line);
+        for (Backend backend : backends) {
+            proxy.beginRequest(backend);
+            try {
+                if (relay(line, backend, connection)) {
+                    return;
+                }
+            } finally {
+                proxy.endRequest(backend);
+            }
+        }
+        connection.write(new ErrorResponse("(ProxyException) No backend is available"));
+    }
+
+    /**
+     * Relays a request to a backend, retrying once on a new connection if a pooled one turns out to be closed.
+     *
+     * @return false if the backend cannot be reached, and nothing has been relayed to the client
+     * @throws UncheckedIOException if the response cannot be relayed to the client
+     */
+    private boolean relay(String line, Backend backend, ClientConnection connection) {
+        boolean streamed = line.startsWith(STREAM_PREFIX);
+        Backend.Connection backendConnection = null;
+        boolean relaying = false;
+        try {
+            backendConnection = backend.borrow();
+            String response;
+            try {
+                backendConnection.send(line);
+                response = backendConnection.receive();
+            } catch (IOException e) {
+                if (!backendConnection.isPooled()) {
+                    throw e;
+                }
+                backendConnection.close();
+                backendConnection = backend.connect();
+                backendConnection.send(line);
+                response = backendConnection.receive();
+            }
+            boolean cancelForwarded = false;
+            while (streamed && response.startsWith(FRAME_PREFIX)) {
+                relaying = true;
+                write(connection, new RelayedResponse(response));
+                if (!cancelForwarded && connection.isCancelled()) {
+                    backendConnection.send(CANCEL_COMMAND);
+                    cancelForwarded = true;
+                }
+                response = backendConnection.receive();
+            }
+            write(connection, new RelayedResponse(response));
+            backend.release(backendConnection);
+            return true;
+        } catch (IOException e) {
+            if (backendConnection != null) {
+                backendConnection.close();
+            }
+            backend.markFailed();
+            System.err.printf("[%1$tY-%1$tm-%1$td %1$tT] Backend %2$s failed due to %3$s%n", System.currentTimeMillis(), backend.getAddress(), e);
+            if (relaying) {
+                write(connection, new ErrorResponse("(ProxyException) The backend failed while streaming the response"));
+                return true;
+            }
+            return false;
+        } catch (UncheckedIOException e) {
+            backendConnection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes a response to the client, telling failures apart from the failures of the backend.
+     */
+    private static void write(ClientConnection connection, Response response) {
+        try {
+            connection.write(response);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
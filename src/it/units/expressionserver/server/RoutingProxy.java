@@ -0,0 +1,204 @@
+package it.units.expressionserver.server;
+
+import it.units.expressionserver.domain.expression.ExpressionParser;
+import it.units.expressionserver.domain.expression.nodes.Node;
+import it.units.expressionserver.exceptions.ExpressionParsingException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The RoutingProxy sits in front of a pool of ExpressionServers and sends identical requests to the same backend,
+ * so that per-server caches and compiled expressions keep working when the service is scaled out.
+ *
+ * A request is routed by its computation kind and its canonical expressions, i.e., the expressions as the server
+ * prints them after parsing, over a consistent hash ring of the backends. Routing uses consistent hashing with
+ * bounded loads: a backend may not take more than the load factor times the average number of requests in flight,
+ * and a request finding its owner at capacity goes to the next backend along the ring. The connections to the
+ * backends are pooled, and backends can be added and removed with the "ADMIN;token;PROXY_ADD;host:port" and
+ * "ADMIN;token;PROXY_REMOVE;host:port" commands, which move only the keys of the arcs of the ring that the backend
+ * gains or loses. As for the admin requests of a server, these commands are refused unless the proxy has been given
+ * an admin token, and the command carries the same token.
+ */
+public class RoutingProxy {
+
+    private static final String STREAM_PREFIX = "STREAM;";
+    private static final char PARTS_SEPARATOR = ';';
+    private static final char KINDS_SEPARATOR = '_';
+    private static final int EXPRESSIONS_PART = 2;
+
+    private final int port;
+    private final double loadFactor;
+    private final int readTimeoutMillis;
+    private final ConsistentHashRing ring = new ConsistentHashRing();
+    private final AtomicInteger requestsInFlight = new AtomicInteger();
+    private final ExecutorService threadPool;
+    private final byte[] adminToken;
+
+    /**
+     * Constructs a new RoutingProxy.
+     *
+     * @param port the port number on which the proxy listens for connections
+     * @param backendAddresses the addresses of the backend servers
+     * @param loadFactor how many times the average load a backend may take, at least 1
+     * @param readTimeoutSeconds the maximum time to wait for a response of a backend, which should exceed the queue
+     *                           and computation timeouts of the backends
+     * @param adminToken the token of the commands changing the backends, or null to disable them
+     * @throws IllegalArgumentException if the load factor is less than 1, or the read timeout is not positive
+     */
+    public RoutingProxy(int port, List<InetSocketAddress> backendAddresses, double loadFactor, int readTimeoutSeconds,
+                        String adminToken) throws IllegalArgumentException {
+        if (!(loadFactor >= 1)) {
+            throw new IllegalArgumentException("The load factor must be at least 1: " + loadFactor);
+        }
+        if (readTimeoutSeconds <= 0) {
+            throw new IllegalArgumentException("The read timeout must be positive: " + readTimeoutSeconds);
+        }
+        this.port = port;
+        this.loadFactor = loadFactor;
+        this.readTimeoutMillis = (int) Math.min(Integer.MAX_VALUE, readTimeoutSeconds * 1000L);
+        this.threadPool = Executors.newFixedThreadPool(10000);
+        this.adminToken = adminToken == null ? null : adminToken.getBytes(StandardCharsets.UTF_8);
+        for (InetSocketAddress backendAddress : backendAddresses) {
+            addBackend(backendAddress);
+        }
+    }
+
+    /**
+     * Checks whether the commands changing the backends are enabled.
+     */
+    boolean isAdminEnabled() {
+        return adminToken != null;
+    }
+
+    /**
+     * Checks an admin token, in a time independent of the position of the first mismatching character.
+     *
+     * @param token the token sent by the client
+     * @return true if admin commands are enabled and the token is the admin token
+     */
+    boolean isAdminToken(String token) {
+        return adminToken != null && MessageDigest.isEqual(adminToken, token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Adds a backend to the pool.
+     *
+     * @param address the address of the backend
+     * @return false if the backend is already in the pool
+     */
+    public boolean addBackend(InetSocketAddress address) {
+        return ring.add(new Backend(address, readTimeoutMillis));
+    }
+
+    /**
+     * Removes a backend from the pool. The requests it is computing complete.
+     *
+     * @param address the address of the backend
+     * @return false if the backend is not in the pool
+     */
+    public boolean removeBackend(InetSocketAddress address) {
+        Backend backend = ring.remove(address);
+        if (backend == null) {
+            return false;
+        }
+        backend.remove();
+        return true;
+    }
+
+    /**
+     * Gets the backends to which a request can be sent, in order of preference: the first backend along the ring
+     * that is not at capacity, followed by the others as fallbacks when it is down.
+     * Backends that failed recently come last.
+     *
+     * @param requestString the raw request string
+     * @return the backends, or an empty list if the pool is empty
+     */
+    List<Backend> route(String requestString) {
+        List<Backend> successors = new ArrayList<>();
+        List<Backend> failedBackends = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Backend backend : ring.successors(routingKey(requestString))) {
+            (backend.isAvailable(now) ? successors : failedBackends).add(backend);
+        }
+        if (!successors.isEmpty()) {
+            // Counting the request being routed, so that an idle pool has capacity 1 per backend
+            double capacity = Math.ceil(loadFactor * (requestsInFlight.get() + 1) / successors.size());
+            for (int i = 0; i < successors.size(); i++) {
+                if (successors.get(i).getLoad() < capacity) {
+                    successors.add(0, successors.remove(i));
+                    break;
+                }
+            }
+        }
+        successors.addAll(failedBackends);
+        return successors;
+    }
+
+    void beginRequest(Backend backend) {
+        requestsInFlight.incrementAndGet();
+        backend.beginRequest();
+    }
+
+    void endRequest(Backend backend) {
+        backend.endRequest();
+        requestsInFlight.decrementAndGet();
+    }
+
+    /**
+     * Builds the routing key of a request: its computation kind followed by its canonical expressions, so that
+     * requests differing only in the variable values or in the formatting of the expressions share a backend.
+     * Requests that are not computations are routed by their whole string.
+     *
+     * @param requestString the raw request string
+     * @return the routing key
+     */
+    static String routingKey(String requestString) {
+        String request = requestString.startsWith(STREAM_PREFIX) ? requestString.substring(STREAM_PREFIX.length()) : requestString;
+        String[] parts = request.split(String.valueOf(PARTS_SEPARATOR));
+        int kindsSeparator = parts[0].lastIndexOf(KINDS_SEPARATOR);
+        if (parts.length <= EXPRESSIONS_PART || kindsSeparator < 0) {
+            return request;
+        }
+        StringBuilder key = new StringBuilder(parts[0].substring(0, kindsSeparator));
+        for (int part = EXPRESSIONS_PART; part < parts.length; part++) {
+            key.append(PARTS_SEPARATOR);
+            ExpressionParser expressionParser = new ExpressionParser(parts[part]);
+            try {
+                Node node = expressionParser.parse();
+                key.append(expressionParser.isValidExpression() ? node.toString() : parts[part]);
+            } catch (ExpressionParsingException e) {
+                key.append(parts[part]);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Starts the proxy, accepting client connections. Each connection is handled in a separate thread.
+     */
+    public void run() {
+        try (ServerSocket serverSocket = new ServerSocket(port)) {
+            System.out.printf("[%1$tY-%1$tm-%1$td %1$tT] RoutingProxy started on port %2$d with %3$d backends%n", System.currentTimeMillis(), port, ring.getBackends().size());
+            while (true) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    threadPool.execute(new ProxyClientHandler(socket, this));
+                } catch (IOException e) {
+                    System.err.printf("Cannot accept connection due to %s\n", e);
+                }
+            }
+        } catch (IOException e) {
+            System.err.printf("Error starting the proxy on port %1$s due to %2$s", port, e.getMessage());
+        }
+    }
+}
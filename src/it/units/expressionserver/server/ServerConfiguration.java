@@ -0,0 +1,238 @@
+package it.units.expressionserver.server;
+
+import it.units.expressionserver.service.Computer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * The ServerConfiguration holds the settings of an ExpressionServer that can be changed while it is running:
+ * the sizes of the thread pools, the limits of the computation queue, the timeouts of computations and the
+ * engines of the Computer. Settings are named like the command line options that set them at startup, and
+ * can be changed later through the admin commands of the clients that know the admin token.
+ * Settings can also be read from a properties file, in which command line options take precedence.
+ */
+public class ServerConfiguration {
+
+    /**
+     * The names of the settings that can be changed while the server is running, in display order.
+     */
+    public static final List<String> SETTINGS = Collections.unmodifiableList(Arrays.asList(
+            "client-threads", "computation-threads", "max-queued-computations", "queue-timeout", "computation-timeout",
+            "minmax-engine", "monotonicity-analysis", "polynomial-avg", "separable-decomposition",
+            "approximation-relative-error", "approximation-time-budget", "compilation-threshold"));
+
+    static final int DEFAULT_CLIENT_THREADS = 10000;
+    private static final int DEFAULT_QUEUE_TIMEOUT_SECONDS = 120;
+    private static final int DEFAULT_COMPUTATION_TIMEOUT_SECONDS = 10;
+
+    private final ThreadPoolExecutor clientThreadPool;
+    private final ThreadPoolExecutor computationThreadPool;
+    private final Computer computer;
+    private volatile int maxQueuedComputations;
+    private volatile int queueTimeoutSeconds;
+    private volatile int computationTimeoutSeconds;
+    private volatile byte[] adminToken;
+
+    /**
+     * Constructs a new ServerConfiguration with the default limits and timeouts, and admin commands disabled.
+     *
+     * @param clientThreadPool the thread pool handling client connections
+     * @param computationThreadPool the thread pool for computation tasks
+     * @param computer the computer performing the computations
+     */
+    ServerConfiguration(ThreadPoolExecutor clientThreadPool, ThreadPoolExecutor computationThreadPool, Computer computer) {
+        this.clientThreadPool = clientThreadPool;
+        this.computationThreadPool = computationThreadPool;
+        this.computer = computer;
+        this.maxQueuedComputations = Integer.MAX_VALUE;
+        this.queueTimeoutSeconds = DEFAULT_QUEUE_TIMEOUT_SECONDS;
+        this.computationTimeoutSeconds = DEFAULT_COMPUTATION_TIMEOUT_SECONDS;
+    }
+
+    /**
+     * Gets the maximum number of computations waiting for a thread of the computation thread pool:
+     * computation requests arriving when the queue is full are rejected.
+     */
+    public int getMaxQueuedComputations() {
+        return maxQueuedComputations;
+    }
+
+    /**
+     * Gets the maximum time that a computation request waits for its result, in seconds.
+     */
+    public int getQueueTimeoutSeconds() {
+        return queueTimeoutSeconds;
+    }
+
+    /**
+     * Gets the maximum time that a computation runs, in seconds.
+     */
+    public int getComputationTimeoutSeconds() {
+        return computationTimeoutSeconds;
+    }
+
+    /**
+     * Enables admin commands for the clients that know the given token.
+     *
+     * @param adminToken the admin token, or null to disable admin commands
+     */
+    void setAdminToken(String adminToken) {
+        this.adminToken = adminToken == null ? null : adminToken.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks whether admin commands are enabled.
+     */
+    public boolean isAdminEnabled() {
+        return adminToken != null;
+    }
+
+    /**
+     * Checks an admin token, in a time independent of the position of the first mismatching character.
+     *
+     * @param token the token sent by the client
+     * @return true if admin commands are enabled and the token is the admin token
+     */
+    public boolean isAdminToken(String token) {
+        byte[] expected = adminToken;
+        return expected != null && MessageDigest.isEqual(expected, token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Changes a setting.
+     *
+     * @param name the name of the setting
+     * @param value the new value
+     * @throws IllegalArgumentException if the setting does not exist or the value is not valid for it
+     */
+    public synchronized void set(String name, String value) throws IllegalArgumentException {
+        try {
+            switch (name) {
+                case "client-threads":
+                    resize(clientThreadPool, parsePositiveInt(name, value));
+                    break;
+                case "computation-threads":
+                    resize(computationThreadPool, parsePositiveInt(name, value));
+                    break;
+                case "max-queued-computations":
+                    maxQueuedComputations = parsePositiveInt(name, value);
+                    break;
+                case "queue-timeout":
+                    queueTimeoutSeconds = parsePositiveInt(name, value);
+                    break;
+                case "computation-timeout":
+                    computationTimeoutSeconds = parsePositiveInt(name, value);
+                    break;
+                case "minmax-engine":
+                    computer.setMinMaxEngine(Computer.MinMaxEngine.valueOf(value.toUpperCase()));
+                    break;
+                case "monotonicity-analysis":
+                    computer.setMonotonicityAnalysisEnabled(parseBoolean(name, value));
+                    break;
+                case "polynomial-avg":
+                    computer.setPolynomialAvgEnabled(parseBoolean(name, value));
+                    break;
+                case "separable-decomposition":
+                    computer.setSeparableDecompositionEnabled(parseBoolean(name, value));
+                    break;
+                case "approximation-relative-error":
+                    computer.setApproximationRelativeError(Double.parseDouble(value));
+                    break;
+                case "approximation-time-budget":
+                    computer.setApproximationTimeBudgetMillis(Long.parseLong(value));
+                    break;
+                case "compilation-threshold":
+                    computer.getTieredEvaluator().setCompilationThreshold(Long.parseLong(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown setting: " + name);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Invalid value for %s: %s", name, value));
+        }
+    }
+
+    /**
+     * Gets the current value of every setting.
+     *
+     * @return a map from the names of the settings to their values, in display order
+     */
+    public synchronized Map<String, String> getAll() {
+        Map<String, String> settings = new LinkedHashMap<>();
+        settings.put("client-threads", Integer.toString(clientThreadPool.getMaximumPoolSize()));
+        settings.put("computation-threads", Integer.toString(computationThreadPool.getMaximumPoolSize()));
+        settings.put("max-queued-computations", Integer.toString(maxQueuedComputations));
+        settings.put("queue-timeout", Integer.toString(queueTimeoutSeconds));
+        settings.put("computation-timeout", Integer.toString(computationTimeoutSeconds));
+        settings.put("minmax-engine", computer.getMinMaxEngine().name());
+        settings.put("monotonicity-analysis", Boolean.toString(computer.isMonotonicityAnalysisEnabled()));
+        settings.put("polynomial-avg", Boolean.toString(computer.isPolynomialAvgEnabled()));
+        settings.put("separable-decomposition", Boolean.toString(computer.isSeparableDecompositionEnabled()));
+        settings.put("approximation-relative-error", Double.toString(computer.getApproximationRelativeError()));
+        settings.put("approximation-time-budget", Long.toString(computer.getApproximationTimeBudgetMillis()));
+        settings.put("compilation-threshold", Long.toString(computer.getTieredEvaluator().getCompilationThreshold()));
+        return settings;
+    }
+
+    /**
+     * Reads the options of a configuration file, a properties file whose keys are the names of the command line
+     * options without the leading dashes, e.g., computation-threads=8.
+     *
+     * @param file the configuration file
+     * @return a map from option names to their values
+     * @throws IOException if the file cannot be read
+     */
+    static Map<String, String> load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+        Map<String, String> options = new HashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            options.put(name, properties.getProperty(name).trim());
+        }
+        return options;
+    }
+
+    /**
+     * Resizes a fixed-size thread pool. Threads in excess finish their current task before terminating.
+     */
+    private static void resize(ThreadPoolExecutor threadPool, int threads) {
+        // The core size can never exceed the maximum size
+        if (threads > threadPool.getMaximumPoolSize()) {
+            threadPool.setMaximumPoolSize(threads);
+            threadPool.setCorePoolSize(threads);
+        } else {
+            threadPool.setCorePoolSize(threads);
+            threadPool.setMaximumPoolSize(threads);
+        }
+    }
+
+    private static int parsePositiveInt(String name, String value) throws IllegalArgumentException {
+        int parsed = Integer.parseInt(value);
+        if (parsed <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid value for %s: %s", name, value));
+        }
+        return parsed;
+    }
+
+    private static boolean parseBoolean(String name, String value) throws IllegalArgumentException {
+        if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+            return Boolean.parseBoolean(value);
+        }
+        throw new IllegalArgumentException(String.format("Invalid value for %s: %s", name, value));
+    }
+}
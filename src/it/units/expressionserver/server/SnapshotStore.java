@@ -0,0 +1,229 @@
+package it.units.expressionserver.server;
+
+import it.units.expressionserver.domain.expression.ExpressionParser;
+import it.units.expressionserver.domain.expression.nodes.Node;
+import it.units.expressionserver.exceptions.ExpressionParsingException;
+import it.units.expressionserver.service.ResultCache;
+import it.units.expressionserver.service.TieredEvaluator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * The SnapshotStore saves the hot state of the server to a local file, and restores it at startup, so that
+ * a restarted server answers the hot requests from the result cache and evaluates the hot expressions compiled
+ * from the very first requests.
+ * A snapshot holds the hottest cached results with their hits, and the hottest expressions with their evaluation
+ * counts, in a compact binary format ending with the CRC-32 of its content. It is written to a temporary file
+ * that then replaces the previous snapshot atomically, so that a crash while saving never leaves a broken file.
+ * A missing, unreadable or corrupt snapshot is reported and ignored: it never prevents the server from starting.
+ */
+public class SnapshotStore {
+
+    private static final int MAGIC = 0x45585353; // EXSS
+    private static final int VERSION = 1;
+    private static final int MAX_RESULTS = 1000;
+    private static final int MAX_EXPRESSIONS = 1000;
+    private static final int MAX_VALUES = 1 << 10;
+    private static final long MAX_SNAPSHOT_BYTES = 1 << 26;
+
+    private final Path file;
+    private final ResultCache resultCache;
+    private final TieredEvaluator tieredEvaluator;
+    private final ScheduledExecutorService snapshotThread;
+
+    /**
+     * Constructs a new SnapshotStore.
+     *
+     * @param file the snapshot file
+     * @param resultCache the result cache to save and restore
+     * @param tieredEvaluator the evaluator whose expression profiles are saved and restored
+     */
+    public SnapshotStore(Path file, ResultCache resultCache, TieredEvaluator tieredEvaluator) {
+        this.file = file;
+        this.resultCache = resultCache;
+        this.tieredEvaluator = tieredEvaluator;
+        this.snapshotThread = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Restores the snapshot, if any. Failures are reported and otherwise ignored.
+     *
+     * @return true if a snapshot has been restored
+     */
+    public boolean restore() {
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try {
+            int[] restored = read();
+            System.out.printf("[%1$tY-%1$tm-%1$td %1$tT] Restored %2$d results and %3$d expressions from snapshot %4$s%n",
+                    System.currentTimeMillis(), restored[0], restored[1], file);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.err.printf("[%1$tY-%1$tm-%1$td %1$tT] Ignoring snapshot %2$s due to %3$s%n", System.currentTimeMillis(), file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Saves a snapshot every given interval, and once more when the server shuts down.
+     *
+     * @param intervalSeconds the interval between snapshots, in seconds
+     * @throws IllegalArgumentException if the interval is not positive
+     */
+    public void start(long intervalSeconds) throws IllegalArgumentException {
+        if (intervalSeconds <= 0) {
+            throw new IllegalArgumentException("The snapshot interval must be positive: " + intervalSeconds);
+        }
+        snapshotThread.scheduleWithFixedDelay(this::saveQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::saveQuietly, "snapshot-on-shutdown"));
+    }
+
+    /**
+     * Saves a snapshot of the hot state, replacing the previous one.
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    public synchronized void save() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        List<ResultCache.Entry> entries = resultCache.getHottestEntries(MAX_RESULTS);
+        out.writeInt(entries.size());
+        for (ResultCache.Entry entry : entries) {
+            writeString(out, entry.getKey());
+            out.writeLong(entry.getHits());
+            out.writeInt(entry.getValues().length);
+            for (double value : entry.getValues()) {
+                out.writeDouble(value);
+            }
+        }
+        Map<String, Long> expressions = tieredEvaluator.getHottestExpressions(MAX_EXPRESSIONS);
+        out.writeInt(expressions.size());
+        for (Map.Entry<String, Long> expression : expressions.entrySet()) {
+            writeString(out, expression.getKey());
+            out.writeLong(expression.getValue());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporaryFile, bytes.toByteArray());
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException | RuntimeException e) {
+            System.err.printf("[%1$tY-%1$tm-%1$td %1$tT] Cannot save snapshot %2$s due to %3$s%n", System.currentTimeMillis(), file, e);
+        }
+    }
+
+    /**
+     * Reads the snapshot, checking it entirely before restoring anything.
+     *
+     * @return the number of restored results and expressions
+     */
+    private int[] read() throws IOException {
+        if (Files.size(file) > MAX_SNAPSHOT_BYTES) {
+            throw new IOException("The snapshot is too large");
+        }
+        byte[] content = Files.readAllBytes(file);
+        if (content.length < Long.BYTES) {
+            throw new IOException("The snapshot is truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length - Long.BYTES);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(content));
+        in.skipNBytes(content.length - Long.BYTES);
+        if (in.readLong() != crc.getValue()) {
+            throw new IOException("The snapshot is corrupt: CRC mismatch");
+        }
+
+        in = new DataInputStream(new ByteArrayInputStream(content, 0, content.length - Long.BYTES));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a snapshot, or a snapshot of an unsupported version");
+        }
+        int resultCount = readCount(in, MAX_RESULTS);
+        String[] keys = new String[resultCount];
+        long[] hits = new long[resultCount];
+        double[][] values = new double[resultCount][];
+        for (int i = 0; i < resultCount; i++) {
+            keys[i] = readString(in);
+            hits[i] = in.readLong();
+            values[i] = new double[readCount(in, MAX_VALUES)];
+            for (int j = 0; j < values[i].length; j++) {
+                values[i][j] = in.readDouble();
+            }
+        }
+        int expressionCount = readCount(in, MAX_EXPRESSIONS);
+        String[] expressions = new String[expressionCount];
+        long[] evaluations = new long[expressionCount];
+        for (int i = 0; i < expressionCount; i++) {
+            expressions[i] = readString(in);
+            evaluations[i] = in.readLong();
+        }
+
+        for (int i = 0; i < resultCount; i++) {
+            resultCache.put(keys[i], values[i], hits[i]);
+        }
+        int restoredExpressions = 0;
+        for (int i = 0; i < expressionCount; i++) {
+            ExpressionParser expressionParser = new ExpressionParser(expressions[i]);
+            try {
+                Node root = expressionParser.parse();
+                if (expressionParser.isValidExpression()) {
+                    tieredEvaluator.restoreProfile(root, evaluations[i]);
+                    restoredExpressions++;
+                }
+            } catch (ExpressionParsingException e) {
+                // Canonical forms with constants in scientific notation cannot be parsed back: they are left cold
+            }
+        }
+        return new int[] {resultCount, restoredExpressions};
+    }
+
+    private static int readCount(DataInputStream in, int max) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > max) {
+            throw new IOException("The snapshot is corrupt: invalid count " + count);
+        }
+        return count;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("The snapshot is corrupt: invalid string length " + length);
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,226 @@
+package it.units.expressionserver.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The TrafficCapture records the requests that clients send to the server in a binary log, to be replayed later
+ * against another server with the TrafficReplay, e.g., to validate a performance change on the real request mix.
+ * Each record holds the connection of the request, its arrival time, its line, the response sent back and the time
+ * taken to handle it.
+ * Records are handed to a writer thread through a bounded queue, so that capturing never makes a request wait for
+ * the disk: when the queue is full, records are dropped and counted instead.
+ * The log starts with a header with the format version and the time at which the capture started, and records
+ * follow in the order in which requests complete.
+ */
+public class TrafficCapture {
+
+    private static final int MAGIC = 0x45584341; // EXCA
+    private static final int VERSION = 1;
+    private static final int QUEUE_CAPACITY = 1 << 16;
+    private static final long FLUSH_INTERVAL_MILLIS = 100;
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    private final Path file;
+    private final BlockingQueue<CapturedRequest> queue;
+    private final AtomicLong droppedRequests;
+    private final long startNanos;
+    private final Thread writerThread;
+    private volatile boolean closed;
+    private DataOutputStream out;
+
+    /**
+     * Constructs a new TrafficCapture.
+     *
+     * @param file the capture log, which is overwritten
+     */
+    public TrafficCapture(Path file) {
+        this.file = file;
+        this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.droppedRequests = new AtomicLong();
+        this.startNanos = System.nanoTime();
+        this.writerThread = new Thread(this::writeRecords, "traffic-capture");
+        writerThread.setDaemon(true);
+    }
+
+    /**
+     * Opens the capture log and starts writing records to it, until the server shuts down.
+     *
+     * @throws IOException if the capture log cannot be created
+     */
+    public void start() throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(System.currentTimeMillis());
+        out.flush();
+        writerThread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "traffic-capture-on-shutdown"));
+        System.out.printf("[%1$tY-%1$tm-%1$td %1$tT] Capturing traffic to %2$s%n", System.currentTimeMillis(), file);
+    }
+
+    /**
+     * Records a handled request, unless the writer is too far behind.
+     *
+     * @param connectionId the id of the connection of the request
+     * @param arrivalNanos the time at which the request arrived, as given by {@link System#nanoTime()}
+     * @param request the request line
+     * @param response the response line
+     * @param latencyNanos the time taken to handle the request, in nanoseconds
+     */
+    public void record(int connectionId, long arrivalNanos, String request, String response, long latencyNanos) {
+        if (closed || !queue.offer(new CapturedRequest(connectionId, arrivalNanos - startNanos, request, response, latencyNanos))) {
+            droppedRequests.incrementAndGet();
+        }
+    }
+
+    /**
+     * Gets the number of requests that have not been captured because the writer was too far behind.
+     */
+    public long getDroppedRequests() {
+        return droppedRequests.get();
+    }
+
+    /**
+     * Writes the pending records and closes the capture log.
+     */
+    public void close() {
+        closed = true;
+        try {
+            writerThread.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long dropped = droppedRequests.get();
+        if (dropped > 0) {
+            System.err.printf("[%1$tY-%1$tm-%1$td %1$tT] %2$d requests were not captured%n", System.currentTimeMillis(), dropped);
+        }
+    }
+
+    private void writeRecords() {
+        try (DataOutputStream out = this.out) {
+            while (!closed || !queue.isEmpty()) {
+                CapturedRequest capturedRequest = queue.poll(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (capturedRequest == null) {
+                    out.flush();
+                    continue;
+                }
+                out.writeInt(capturedRequest.connectionId);
+                out.writeLong(capturedRequest.arrivalNanos);
+                out.writeLong(capturedRequest.latencyNanos);
+                writeString(out, capturedRequest.request);
+                writeString(out, capturedRequest.response);
+            }
+        } catch (IOException e) {
+            closed = true;
+            System.err.printf("[%1$tY-%1$tm-%1$td %1$tT] Cannot capture traffic to %2$s: %3$s%n", System.currentTimeMillis(), file, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupt capture log");
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a capture log. A record truncated by a crash at the end of the log is ignored.
+     *
+     * @param file the capture log
+     * @return the captured requests, in arrival order
+     * @throws IOException if the log cannot be read or is not a capture log
+     */
+    static List<CapturedRequest> read(Path file) throws IOException {
+        List<CapturedRequest> capturedRequests = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a capture log: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported capture log version: " + version);
+            }
+            in.readLong();
+            while (true) {
+                try {
+                    int connectionId = in.readInt();
+                    long arrivalNanos = in.readLong();
+                    long latencyNanos = in.readLong();
+                    String request = readString(in);
+                    String response = readString(in);
+                    capturedRequests.add(new CapturedRequest(connectionId, arrivalNanos, request, response, latencyNanos));
+                } catch (EOFException e) {
+                    break;
+                }
+            }
+        }
+        capturedRequests.sort(Comparator.comparingLong(CapturedRequest::getArrivalNanos));
+        return capturedRequests;
+    }
+
+    /**
+     * A captured request, with its response.
+     */
+    static class CapturedRequest {
+        private final int connectionId;
+        private final long arrivalNanos;
+        private final String request;
+        private final String response;
+        private final long latencyNanos;
+
+        private CapturedRequest(int connectionId, long arrivalNanos, String request, String response, long latencyNanos) {
+            this.connectionId = connectionId;
+            this.arrivalNanos = arrivalNanos;
+            this.request = request;
+            this.response = response;
+            this.latencyNanos = latencyNanos;
+        }
+
+        int getConnectionId() {
+            return connectionId;
+        }
+
+        /**
+         * Gets the arrival time of the request, in nanoseconds since the capture started.
+         */
+        long getArrivalNanos() {
+            return arrivalNanos;
+        }
+
+        String getRequest() {
+            return request;
+        }
+
+        String getResponse() {
+            return response;
+        }
+
+        long getLatencyNanos() {
+            return latencyNanos;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package it.units.expressionserver.server;
+
+import it.units.expressionserver.server.TrafficCapture.CapturedRequest;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The TrafficReplay sends the requests of a capture log of the TrafficCapture to a server, and compares the
+ * responses and the latencies with the captured ones.
+ * Each captured connection is replayed on its own connection, with its requests in order: a request is sent at its
+ * captured arrival time, scaled by the speed, but never before the response to the previous request of its
+ * connection, like a client would. With the max speed, requests are sent as soon as possible.
+ * Responses are compared without their response time: streamed frames are skipped, only final responses are compared.
+ */
+public class TrafficReplay {
+
+    private static final String USAGE = "Usage: java TrafficReplay <capture file> <host:port> [--speed=<factor>|max]";
+    private static final String QUIT_COMMAND = "BYE";
+    private static final String FRAME_PREFIX = "PART;";
+    private static final int MAX_REPORTED_MISMATCHES = 10;
+    private static final double[] PERCENTILES = {50, 90, 99, 100};
+
+    private final InetSocketAddress address;
+    private final double speed;
+    private final List<String> mismatches;
+    private final AtomicLong mismatchCount;
+    private final AtomicLong failedRequests;
+    private final long[] replayedLatencies;
+
+    /**
+     * Constructs a new TrafficReplay.
+     *
+     * @param address the address of the server
+     * @param speed the factor by which captured times are divided, or infinity to send requests as soon as possible
+     * @param requests the number of captured requests
+     */
+    TrafficReplay(InetSocketAddress address, double speed, int requests) {
+        this.address = address;
+        this.speed = speed;
+        this.mismatches = Collections.synchronizedList(new ArrayList<>());
+        this.mismatchCount = new AtomicLong();
+        this.failedRequests = new AtomicLong();
+        this.replayedLatencies = new long[requests];
+        // Requests that get no response keep a negative latency, and are left out of the distribution
+        Arrays.fill(replayedLatencies, -1);
+    }
+
+    /**
+     * Replays the captured requests, each captured connection on its own thread.
+     *
+     * @param capturedRequests the captured requests, in arrival order
+     * @return the time taken by the replay, in nanoseconds
+     */
+    long replay(List<CapturedRequest> capturedRequests) throws InterruptedException {
+        Map<Integer, List<Integer>> connections = new LinkedHashMap<>();
+        for (int i = 0; i < capturedRequests.size(); i++) {
+            connections.computeIfAbsent(capturedRequests.get(i).getConnectionId(), id -> new ArrayList<>()).add(i);
+        }
+        long firstArrival = capturedRequests.isEmpty() ? 0 : capturedRequests.get(0).getArrivalNanos();
+        long startTime = System.nanoTime();
+        List<Thread> threads = new ArrayList<>();
+        for (Map.Entry<Integer, List<Integer>> connection : connections.entrySet()) {
+            Thread thread = new Thread(() -> replayConnection(capturedRequests, connection.getValue(), firstArrival, startTime),
+                    "replay-" + connection.getKey());
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    private void replayConnection(List<CapturedRequest> capturedRequests, List<Integer> indexes, long firstArrival, long startTime) {
+        int answeredRequests = 0;
+        try (Socket socket = new Socket(address.getHostString(), address.getPort())) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            for (int index : indexes) {
+                CapturedRequest capturedRequest = capturedRequests.get(index);
+                if (Double.isFinite(speed)) {
+                    long sendTime = startTime + (long) ((capturedRequest.getArrivalNanos() - firstArrival) / speed);
+                    long delay = sendTime - System.nanoTime();
+                    if (delay > 0) {
+                        TimeUnit.NANOSECONDS.sleep(delay);
+                    }
+                }
+                long sentTime = System.nanoTime();
+                out.write(capturedRequest.getRequest());
+                out.newLine();
+                out.flush();
+                String response = in.readLine();
+                while (response != null && response.startsWith(FRAME_PREFIX)) {
+                    response = in.readLine();
+                }
+                if (response == null) {
+                    throw new IOException("Server closed the connection");
+                }
+                replayedLatencies[index] = System.nanoTime() - sentTime;
+                answeredRequests++;
+                if (!withoutResponseTime(response).equals(withoutResponseTime(capturedRequest.getResponse()))) {
+                    if (mismatchCount.incrementAndGet() <= MAX_REPORTED_MISMATCHES) {
+                        mismatches.add(String.format("%s%n  captured: %s%n  replayed: %s",
+                                capturedRequest.getRequest(), capturedRequest.getResponse(), response));
+                    }
+                }
+            }
+            out.write(QUIT_COMMAND);
+            out.newLine();
+            out.flush();
+        } catch (IOException e) {
+            failedRequests.addAndGet(indexes.size() - answeredRequests);
+            System.err.printf("Cannot replay connection: %s%n", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Removes the response time from a response, i.e., its second field, unless it is an error.
+     */
+    private static String withoutResponseTime(String response) {
+        if (response.startsWith("ERR;")) {
+            return response;
+        }
+        int first = response.indexOf(';');
+        if (first < 0) {
+            return response;
+        }
+        int second = response.indexOf(';', first + 1);
+        return response.substring(0, first) + (second < 0 ? "" : response.substring(second));
+    }
+
+    /**
+     * Prints the mismatching responses, and the captured and replayed latency distributions.
+     */
+    void printReport(List<CapturedRequest> capturedRequests, long replayNanos) {
+        for (String mismatch : mismatches) {
+            System.out.println("Mismatch: " + mismatch);
+        }
+        long[] capturedLatencies = new long[capturedRequests.size()];
+        for (int i = 0; i < capturedLatencies.length; i++) {
+            capturedLatencies[i] = capturedRequests.get(i).getLatencyNanos();
+        }
+        System.out.printf("Requests: %d, mismatches: %d, failed: %d%n", capturedRequests.size(), mismatchCount.get(), failedRequests.get());
+        if (!capturedRequests.isEmpty()) {
+            long capturedNanos = capturedRequests.get(capturedRequests.size() - 1).getArrivalNanos() - capturedRequests.get(0).getArrivalNanos();
+            System.out.printf("Duration: captured %.3f s, replayed %.3f s (%.1f requests/s)%n",
+                    capturedNanos / 1e9, replayNanos / 1e9, capturedRequests.size() / (replayNanos / 1e9));
+        }
+        printPercentiles("Captured latency", capturedLatencies);
+        printPercentiles("Replayed latency", replayedLatencies);
+    }
+
+    private static void printPercentiles(String label, long[] latencies) {
+        long[] sorted = Arrays.stream(latencies).filter(latency -> latency >= 0).sorted().toArray();
+        if (sorted.length == 0) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder(label).append(" (ms):");
+        for (double percentile : PERCENTILES) {
+            int index = Math.max(0, (int) Math.ceil(percentile / 100 * sorted.length) - 1);
+            sb.append(percentile == 100 ? " max=" : String.format(" p%.0f=", percentile))
+                    .append(String.format("%.3f", sorted[index] / 1e6));
+        }
+        System.out.println(sb);
+    }
+
+    /**
+     * The main method of the TrafficReplay.
+     *
+     * @param args the capture log and the address of the server, followed by optional settings in the form --name=value
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println(USAGE);
+            return;
+        }
+        InetSocketAddress address;
+        double speed;
+        try {
+            address = ExpressionServer.parseAddresses(args[1]).get(0);
+            String speedString = ExpressionServer.parseOptions(Arrays.copyOfRange(args, 2, args.length)).getOrDefault("speed", "1");
+            speed = speedString.equals("max") ? Double.POSITIVE_INFINITY : Double.parseDouble(speedString);
+            if (!(speed > 0)) {
+                throw new IllegalArgumentException("Invalid speed: " + speedString);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid option: " + e.getMessage());
+            System.err.println(USAGE);
+            return;
+        }
+        List<CapturedRequest> capturedRequests;
+        try {
+            capturedRequests = TrafficCapture.read(Path.of(args[0]));
+        } catch (IOException e) {
+            System.err.println("Cannot read capture log: " + e.getMessage());
+            return;
+        }
+        TrafficReplay trafficReplay = new TrafficReplay(address, speed, capturedRequests.size());
+        try {
+            long replayNanos = trafficReplay.replay(capturedRequests);
+            trafficReplay.printReport(capturedRequests, replayNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package it.units.expressionserver.server;
+
+import it.units.expressionserver.protocol.request.RequestHandler;
+import it.units.expressionserver.protocol.request.StreamChannel;
+import it.units.expressionserver.protocol.response.Response;
+import it.units.expressionserver.service.ColumnCache;
+import it.units.expressionserver.service.Computer;
+import it.units.expressionserver.service.ResultCache;
+import it.units.expressionserver.service.TieredEvaluator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The WarmUp runs a mix of requests through the whole request path of a server before it starts accepting
+ * connections, so that the JIT compiler has compiled the parser, the evaluator and the response path by the time
+ * the first clients arrive.
+ * The mix is either recorded, i.e., read from a file with one request per line, or synthetic: random expressions
+ * over small GRID and LIST computations of every kind. Only the computation requests of a recorded mix are kept, so
+ * that the warm-up does not replay requests with side effects, such as the dataset, prepared expression and admin ones.
+ * Synthetic expressions are many and their computations small, so that each of them stays on the interpreter, which
+ * is the path that cold requests take.
+ * Results are not cached meanwhile, so that repeated requests are computed every time, and the stats and the metrics
+ * of the server are reset at the end, so that the warm-up requests are not reported.
+ * Likewise, the columns evaluated meanwhile go to a column cache of their own, which is discarded at the end, and the
+ * expressions profiled by the tiered evaluator during the warm-up are forgotten, so that they neither take the room
+ * of the expressions of the clients nor are saved as hot by the snapshots.
+ */
+public class WarmUp {
+
+    private static final String[] COMPUTATION_KINDS = {"MIN", "MAX", "AVG", "COUNT", "SUM", "STDDEV", "ARGMIN", "ARGMAX", "MULTI"};
+    private static final String[] OPERATORS = {"+", "-", "*", "/", "^"};
+    private static final String[] VARIABLES = {"x", "y"};
+    private static final String GRID_VALUES = "x:-1:0.1:1,y:0:0.25:3";
+    private static final String LIST_VALUES = "x:-1:0.1:1,y:0:0.15:3";
+    private static final int MAX_DEPTH = 4;
+    private static final int SYNTHETIC_REQUESTS = 4096;
+
+    private final ExpressionServer expressionServer;
+    private final List<String> requests;
+
+    /**
+     * Constructs a new WarmUp with a synthetic request mix.
+     *
+     * @param expressionServer the server to warm up
+     */
+    public WarmUp(ExpressionServer expressionServer) {
+        this.expressionServer = expressionServer;
+        this.requests = generateRequests(new Random(0));
+    }
+
+    /**
+     * Constructs a new WarmUp with a recorded request mix, keeping only its computation requests.
+     *
+     * @param expressionServer the server to warm up
+     * @param requestsFile the file with the requests, one per line
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file has no computation requests
+     */
+    public WarmUp(ExpressionServer expressionServer, Path requestsFile) throws IOException, IllegalArgumentException {
+        this.expressionServer = expressionServer;
+        this.requests = new ArrayList<>();
+        RequestHandler requestHandler = new RequestHandler(expressionServer, new DiscardingChannel());
+        for (String line : Files.readAllLines(requestsFile)) {
+            if (requestHandler.isComputation(line)) {
+                requests.add(line);
+            }
+        }
+        if (requests.isEmpty()) {
+            throw new IllegalArgumentException("No warm-up computation requests in " + requestsFile);
+        }
+    }
+
+    /**
+     * Runs the request mix, over and over, for the given duration, from as many threads as the available processors.
+     *
+     * @param durationMillis the duration of the warm-up, in milliseconds
+     * @return the number of requests handled
+     */
+    public long run(long durationMillis) {
+        long deadline = System.nanoTime() + durationMillis * 1_000_000L;
+        AtomicLong handledRequests = new AtomicLong();
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        List<Thread> threads = new ArrayList<>(threadCount);
+        ResultCache resultCache = expressionServer.getResultCache();
+        expressionServer.setResultCache(new ResultCache(0));
+        Computer computer = expressionServer.getComputer();
+        ColumnCache columnCache = computer.getColumnCache();
+        computer.setColumnCache(new ColumnCache(columnCache.getBudgetBytes()));
+        TieredEvaluator tieredEvaluator = computer.getTieredEvaluator();
+        Set<String> profiledExpressions = tieredEvaluator.getProfiledExpressions();
+        try {
+            for (int t = 0; t < threadCount; t++) {
+                int firstRequest = t * requests.size() / threadCount;
+                Thread thread = new Thread(() -> handleRequests(firstRequest, deadline, handledRequests), "warm-up-" + t);
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            expressionServer.setResultCache(resultCache);
+            computer.setColumnCache(columnCache);
+            tieredEvaluator.retainProfiles(profiledExpressions);
+        }
+        expressionServer.getStatsCollector().reset();
+        expressionServer.getMetrics().reset();
+        return handledRequests.get();
+    }
+
+    private void handleRequests(int firstRequest, long deadline, AtomicLong handledRequests) {
+        // Responses are written to a channel that discards them, to warm up the response path as well
+        DiscardingChannel channel = new DiscardingChannel();
+        RequestHandler requestHandler = new RequestHandler(expressionServer, channel);
+        for (int i = firstRequest; System.nanoTime() < deadline; i = (i + 1) % requests.size()) {
+            Response response = requestHandler.handleRequest(requests.get(i));
+            try {
+                channel.send(response);
+            } catch (IOException e) {
+                return;
+            }
+            handledRequests.incrementAndGet();
+        }
+    }
+
+    private static List<String> generateRequests(Random random) {
+        List<String> requests = new ArrayList<>(SYNTHETIC_REQUESTS);
+        for (int i = 0; i < SYNTHETIC_REQUESTS; i++) {
+            boolean grid = random.nextBoolean();
+            StringBuilder request = new StringBuilder(COMPUTATION_KINDS[random.nextInt(COMPUTATION_KINDS.length)])
+                    .append(grid ? "_GRID;" : "_LIST;").append(grid ? GRID_VALUES : LIST_VALUES);
+            int expressions = 1 + random.nextInt(2);
+            for (int e = 0; e < expressions; e++) {
+                request.append(';');
+                appendExpression(request, random, MAX_DEPTH);
+            }
+            requests.add(request.toString());
+        }
+        return requests;
+    }
+
+    private static void appendExpression(StringBuilder expression, Random random, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            if (random.nextBoolean()) {
+                expression.append(VARIABLES[random.nextInt(VARIABLES.length)]);
+            } else {
+                expression.append(random.nextInt(10));
+                if (random.nextBoolean()) {
+                    expression.append('.').append(random.nextInt(100));
+                }
+            }
+            return;
+        }
+        expression.append('(');
+        appendExpression(expression, random, depth - 1);
+        expression.append(OPERATORS[random.nextInt(OPERATORS.length)]);
+        appendExpression(expression, random, depth - 1);
+        expression.append(')');
+    }
+
+    /**
+     * The channel of the warm-up requests: it writes the responses and the frames as a connection does, and then
+     * discards them. Its client never cancels a request nor goes away.
+     */
+    private static class DiscardingChannel implements StreamChannel {
+        private final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(OutputStream.nullOutputStream()));
+
+        @Override
+        public synchronized void send(Response frame) throws IOException {
+            writer.write(frame.toString() + System.lineSeparator());
+            writer.flush();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDisconnected() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package it.units.expressionserver.service;
+
+/**
+ * An Aggregator collects, in a single streaming pass over the tuples, all the aggregates that computations report:
+ * the minimum and maximum value over all the evaluated expressions, with the indexes of the tuples attaining them,
+ * and the sum, mean and variance of the values of the first expression.
+ * The variance is accumulated with Welford's online algorithm, which is numerically stable.
+ * NaN values are ignored by the minimum and maximum, as they never compare as smaller or greater.
+ */
+class Aggregator {
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private long minTupleIndex = -1;
+    private long maxTupleIndex = -1;
+    private double sum;
+    private double mean;
+    private double squaredDeviationsSum;
+
+    /**
+     * Adds a value of an expression on the tuple with the given index.
+     *
+     * @param value the value of the expression
+     * @param tupleIndex the index of the tuple
+     */
+    void add(double value, long tupleIndex) {
+        if (value < min) {
+            min = value;
+            minTupleIndex = tupleIndex;
+        }
+        if (value > max) {
+            max = value;
+            maxTupleIndex = tupleIndex;
+        }
+    }
+
+    /**
+     * Adds a value of the first expression on the tuple with the given index.
+     *
+     * @param value the value of the first expression
+     * @param tupleIndex the index of the tuple
+     */
+    void addFirst(double value, long tupleIndex) {
+        add(value, tupleIndex);
+        count++;
+        sum += value;
+        double delta = value - mean;
+        mean += delta / count;
+        squaredDeviationsSum += delta * (value - mean);
+    }
+
+    /**
+     * Gets the minimum as computed by MIN, which never exceeds the largest double.
+     */
+    double getMin() {
+        return Math.min(min, Double.MAX_VALUE);
+    }
+
+    /**
+     * Gets the maximum as computed by MAX, which is never below the smallest positive double.
+     */
+    double getMax() {
+        return Math.max(max, Double.MIN_VALUE);
+    }
+
+    /**
+     * Gets the actual minimum value, or +Infinity if no value has been added.
+     */
+    double getArgMinValue() {
+        return min;
+    }
+
+    /**
+     * Gets the actual maximum value, or -Infinity if no value has been added.
+     */
+    double getArgMaxValue() {
+        return max;
+    }
+
+    /**
+     * Gets the index of the first tuple attaining the minimum, or -1 if no value has been added.
+     */
+    long getMinTupleIndex() {
+        return minTupleIndex;
+    }
+
+    /**
+     * Gets the index of the first tuple attaining the maximum, or -1 if no value has been added.
+     */
+    long getMaxTupleIndex() {
+        return maxTupleIndex;
+    }
+
+    double getSum() {
+        return sum;
+    }
+
+    /**
+     * Gets the average of the values of the first expression, computed as their sum divided by their count, as AVG does.
+     */
+    double getAvg() {
+        return sum / count;
+    }
+
+    /**
+     * Gets the population standard deviation of the values of the first expression.
+     */
+    double getStdDev() {
+        return Math.sqrt(squaredDeviationsSum / count);
+    }
+}
@@ -0,0 +1,281 @@
+package it.units.expressionserver.service;
+
+import it.units.expressionserver.domain.expression.Expression;
+import it.units.expressionserver.domain.variablevaluesfunction.VariableValuesFunction;
+import it.units.expressionserver.exceptions.DivisionByZeroException;
+import it.units.expressionserver.exceptions.NotANumberException;
+import it.units.expressionserver.exceptions.ZeroOverZeroException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The CoarseToFineMinMaxEngine searches an approximate MIN or MAX of the expressions, trading exactness for latency.
+ *
+ * The index space of the tuples (one axis per variable for a GRID, a single axis for a LIST) is first sampled with
+ * a coarse subgrid of evenly spaced points. Starting from the most promising points of the subgrid, a pattern search
+ * then moves to the best neighbouring point along the axes while this improves the value, halving the distance
+ * between neighbours whenever no neighbour improves it, down to adjacent points.
+ * The search stops when every starting point has reached a local optimum of the full grid, or when the time budget is over.
+ */
+class CoarseToFineMinMaxEngine {
+
+    private static final long COARSE_POINTS = 4096;
+    private static final int STARTING_POINTS = 8;
+    private static final int DEADLINE_CHECK_POINTS = 64;
+
+    private final Computer computer;
+
+    CoarseToFineMinMaxEngine(Computer computer) {
+        this.computer = computer;
+    }
+
+    /**
+     * Searches the minimum of the expressions (of their opposite, if maximizing).
+     *
+     * @param deadline the value of {@link System#nanoTime()} at which the search stops
+     * @return the best value found (NaN values are ignored, as MIN and MAX do) and the index of its tuple,
+     * or -1 if every evaluated value is NaN
+     */
+    Result search(VariableValuesFunction variableValuesFunction, List<Expression> expressions, boolean maximize, long deadline) throws DivisionByZeroException, ZeroOverZeroException, NotANumberException {
+        Search search = new Search(variableValuesFunction, expressions, maximize, deadline);
+        if (variableValuesFunction.getTupleCount() > 0) {
+            List<int[]> startingPoints = search.evaluateCoarseGrid();
+            for (int[] startingPoint : startingPoints) {
+                if (search.isOutOfTime()) {
+                    break;
+                }
+                search.refine(startingPoint);
+            }
+        }
+        double value = maximize ? -search.bestValue : search.bestValue;
+        return new Result(value, search.bestTupleIndex);
+    }
+
+    static class Result {
+        private final double value;
+        private final long tupleIndex;
+
+        private Result(double value, long tupleIndex) {
+            this.value = value;
+            this.tupleIndex = tupleIndex;
+        }
+
+        double getValue() {
+            return value;
+        }
+
+        long getTupleIndex() {
+            return tupleIndex;
+        }
+    }
+
+    private class Search {
+        private final VariableValuesFunction variableValuesFunction;
+        private final List<Expression> expressions;
+        private final boolean maximize;
+        private final long deadline;
+        private final boolean grid;
+        private final int[] sizes;
+        private final long[] strides;
+        private final int[][] coarseIndexes;
+        private final double[] tuple;
+        private long evaluations;
+        private boolean outOfTime;
+        private double bestValue = Double.POSITIVE_INFINITY;
+        private long bestTupleIndex = -1;
+
+        private Search(VariableValuesFunction variableValuesFunction, List<Expression> expressions, boolean maximize, long deadline) {
+            this.variableValuesFunction = variableValuesFunction;
+            this.expressions = expressions;
+            this.maximize = maximize;
+            this.deadline = deadline;
+            this.grid = variableValuesFunction.getValuesKind() == VariableValuesFunction.ValuesKind.GRID;
+            int variables = variableValuesFunction.getVariables().size();
+            this.tuple = new double[variables];
+            if (grid) {
+                this.sizes = new int[variables];
+                for (int i = 0; i < variables; i++) {
+                    sizes[i] = variableValuesFunction.getValueCount(i);
+                }
+            } else {
+                this.sizes = new int[] {(int) variableValuesFunction.getTupleCount()};
+            }
+            this.strides = new long[sizes.length];
+            long stride = 1;
+            for (int i = sizes.length - 1; i >= 0; i--) {
+                strides[i] = stride;
+                stride *= sizes[i];
+            }
+            this.coarseIndexes = coarseIndexes();
+        }
+
+        /**
+         * Evaluates the points of the coarse subgrid.
+         *
+         * @return the most promising points of the subgrid, best first
+         */
+        private List<int[]> evaluateCoarseGrid() throws DivisionByZeroException, ZeroOverZeroException, NotANumberException {
+            PriorityQueue<Candidate> candidates = new PriorityQueue<>(Comparator.comparingDouble((Candidate candidate) -> candidate.value).reversed());
+            int[] counters = new int[sizes.length];
+            int[] positions = new int[sizes.length];
+            while (!isOutOfTime()) {
+                for (int i = 0; i < sizes.length; i++) {
+                    positions[i] = coarseIndexes[i][counters[i]];
+                }
+                double value = evaluate(positions);
+                if (!Double.isNaN(value) && (candidates.size() < STARTING_POINTS || value < candidates.peek().value)) {
+                    candidates.add(new Candidate(positions.clone(), value));
+                    if (candidates.size() > STARTING_POINTS) {
+                        candidates.poll();
+                    }
+                }
+                int i = sizes.length - 1;
+                while (i >= 0 && counters[i] == coarseIndexes[i].length - 1) {
+                    counters[i] = 0;
+                    i--;
+                }
+                if (i < 0) {
+                    break;
+                }
+                counters[i]++;
+            }
+            List<int[]> startingPoints = new ArrayList<>();
+            while (!candidates.isEmpty()) {
+                startingPoints.add(0, candidates.poll().positions);
+            }
+            return startingPoints;
+        }
+
+        /**
+         * Chooses evenly spaced indexes along each axis, giving more points to the axes with fewer points so far,
+         * while the subgrid has at most COARSE_POINTS points.
+         */
+        private int[][] coarseIndexes() {
+            int[] lengths = new int[sizes.length];
+            long points = 1;
+            for (int i = 0; i < sizes.length; i++) {
+                lengths[i] = 1;
+            }
+            boolean grown = true;
+            while (grown) {
+                grown = false;
+                for (int i = 0; i < sizes.length; i++) {
+                    if (lengths[i] < sizes[i] && points / lengths[i] * (lengths[i] + 1) <= COARSE_POINTS) {
+                        points = points / lengths[i] * (lengths[i] + 1);
+                        lengths[i]++;
+                        grown = true;
+                    }
+                }
+            }
+            int[][] indexes = new int[sizes.length][];
+            for (int i = 0; i < sizes.length; i++) {
+                indexes[i] = new int[lengths[i]];
+                for (int j = 0; j < lengths[i]; j++) {
+                    indexes[i][j] = lengths[i] == 1 ? (sizes[i] - 1) / 2 : (int) Math.round((double) j * (sizes[i] - 1) / (lengths[i] - 1));
+                }
+            }
+            return indexes;
+        }
+
+        /**
+         * Refines the search from a starting point of the coarse subgrid, with a pattern search
+         * whose initial steps are the spacing of the subgrid.
+         */
+        private void refine(int[] startingPoint) throws DivisionByZeroException, ZeroOverZeroException, NotANumberException {
+            int[] steps = new int[sizes.length];
+            for (int i = 0; i < sizes.length; i++) {
+                steps[i] = Math.max(1, coarseIndexes[i].length == 1 ? sizes[i] / 2 : (sizes[i] + coarseIndexes[i].length - 2) / (coarseIndexes[i].length - 1));
+            }
+            int[] center = startingPoint.clone();
+            double centerValue = evaluate(center);
+            int[] neighbour = new int[sizes.length];
+            while (!isOutOfTime()) {
+                int[] bestNeighbour = null;
+                double bestNeighbourValue = centerValue;
+                for (int i = 0; i < sizes.length; i++) {
+                    for (int direction = -1; direction <= 1; direction += 2) {
+                        int position = center[i] + direction * steps[i];
+                        if (position < 0 || position >= sizes[i]) {
+                            continue;
+                        }
+                        System.arraycopy(center, 0, neighbour, 0, center.length);
+                        neighbour[i] = position;
+                        double value = evaluate(neighbour);
+                        // NaN never compares as better, while any value is better than a NaN center
+                        if (value < bestNeighbourValue || (Double.isNaN(bestNeighbourValue) && !Double.isNaN(value))) {
+                            bestNeighbour = neighbour.clone();
+                            bestNeighbourValue = value;
+                        }
+                    }
+                }
+                if (bestNeighbour != null) {
+                    center = bestNeighbour;
+                    centerValue = bestNeighbourValue;
+                    continue;
+                }
+                boolean adjacent = true;
+                for (int i = 0; i < sizes.length; i++) {
+                    if (steps[i] > 1) {
+                        steps[i] = (steps[i] + 1) / 2;
+                        adjacent = false;
+                    }
+                }
+                if (adjacent) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Evaluates the expressions at a point, updating the best value.
+         *
+         * @return the minimum value of the expressions (of their opposite, if maximizing) at the point, ignoring NaN values
+         */
+        private double evaluate(int[] positions) throws DivisionByZeroException, ZeroOverZeroException, NotANumberException {
+            long tupleIndex = 0;
+            for (int i = 0; i < positions.length; i++) {
+                tupleIndex += positions[i] * strides[i];
+            }
+            if (grid) {
+                for (int i = 0; i < positions.length; i++) {
+                    tuple[i] = variableValuesFunction.getValue(i, positions[i]);
+                }
+            } else {
+                variableValuesFunction.fillTuple(tupleIndex, tuple);
+            }
+            double pointValue = Double.NaN;
+            for (Expression expression : expressions) {
+                double value = computer.evaluateReportingExpression(expression, variableValuesFunction, tuple);
+                value = maximize ? -value : value;
+                if (value < pointValue || Double.isNaN(pointValue)) {
+                    pointValue = value;
+                }
+            }
+            if (pointValue < bestValue) {
+                bestValue = pointValue;
+                bestTupleIndex = tupleIndex;
+            }
+            if (++evaluations % DEADLINE_CHECK_POINTS == 0) {
+                outOfTime = System.nanoTime() - deadline >= 0 || Thread.currentThread().isInterrupted();
+            }
+            return pointValue;
+        }
+
+        private boolean isOutOfTime() {
+            return outOfTime;
+        }
+    }
+
+    private static class Candidate {
+        private final int[] positions;
+        private final double value;
+
+        private Candidate(int[] positions, double value) {
+            this.positions = positions;
+            this.value = value;
+        }
+    }
+}
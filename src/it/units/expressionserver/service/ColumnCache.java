@@ -0,0 +1,126 @@
+package it.units.expressionserver.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The ColumnCache keeps the values of expressions evaluated over the tuples of recent computations, so that
+ * computations of another kind over the same expression and the same tuples, e.g., MAX after MIN, scan the cached
+ * values instead of evaluating the expression again.
+ * A column is keyed by the canonical expression and the canonical description of the tuples, and holds the value of
+ * the expression on each tuple, in tuple order. Columns are kept off-heap, in direct buffers, so that they do not
+ * weigh on the garbage collector, and only columns evaluated without errors are kept.
+ * The cache is bounded by a size budget, in bytes: a column larger than a quarter of the budget is never kept,
+ * and the least recently used columns are evicted to make room for a new one.
+ * A column is allocated only if it is neither cached nor being filled by another computation, so that no off-heap
+ * memory is spent on columns that the cache would refuse.
+ */
+public class ColumnCache {
+
+    private final long budgetBytes;
+    private final LinkedHashMap<String, DoubleBuffer> columns;
+    private final Set<String> fillingKeys;
+    private long usedBytes;
+
+    /**
+     * Constructs a new ColumnCache.
+     *
+     * @param budgetBytes the maximum size of the cached columns, in bytes, 0 to disable the cache
+     * @throws IllegalArgumentException if the budget is negative
+     */
+    public ColumnCache(long budgetBytes) throws IllegalArgumentException {
+        if (budgetBytes < 0) {
+            throw new IllegalArgumentException("The column cache size must not be negative: " + budgetBytes);
+        }
+        this.budgetBytes = budgetBytes;
+        this.columns = new LinkedHashMap<>(16, 0.75f, true);
+        this.fillingKeys = new HashSet<>();
+    }
+
+    /**
+     * Checks whether a column with the given number of values fits the cache.
+     */
+    public boolean isCacheable(long valueCount) {
+        return valueCount > 0 && valueCount * Double.BYTES <= budgetBytes / 4;
+    }
+
+    /**
+     * Gets a cached column.
+     *
+     * @param key the canonical expression and tuples of the column
+     * @return a read-only view of the column, or null if it is not cached
+     */
+    public synchronized DoubleBuffer get(String key) {
+        DoubleBuffer column = columns.get(key);
+        return column == null ? null : column.asReadOnlyBuffer();
+    }
+
+    /**
+     * Allocates a column to be filled and then cached with {@link #put(String, DoubleBuffer)}, or given up with
+     * {@link #release(String)}. Until then, the key is reserved for the caller.
+     *
+     * @param key the canonical expression and tuples of the column
+     * @param valueCount the number of values of the column
+     * @return a new column, or null if the column does not fit the cache, is cached already or is being filled
+     */
+    public DoubleBuffer allocate(String key, long valueCount) {
+        synchronized (this) {
+            if (!isCacheable(valueCount) || columns.containsKey(key) || !fillingKeys.add(key)) {
+                return null;
+            }
+        }
+        try {
+            return ByteBuffer.allocateDirect((int) (valueCount * Double.BYTES)).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        } catch (OutOfMemoryError e) {
+            release(key);
+            throw e;
+        }
+    }
+
+    /**
+     * Gives up a column allocated with {@link #allocate(String, long)} and not cached, e.g., as its computation failed.
+     *
+     * @param key the canonical expression and tuples of the column
+     */
+    public synchronized void release(String key) {
+        fillingKeys.remove(key);
+    }
+
+    /**
+     * Caches a column allocated with {@link #allocate(String, long)}, evicting the least recently used columns as needed.
+     *
+     * @param key the canonical expression and tuples of the column
+     * @param column the values of the column
+     */
+    public synchronized void put(String key, DoubleBuffer column) {
+        long columnBytes = (long) column.capacity() * Double.BYTES;
+        if (!fillingKeys.remove(key)) {
+            return;
+        }
+        Iterator<Map.Entry<String, DoubleBuffer>> eldest = columns.entrySet().iterator();
+        while (usedBytes + columnBytes > budgetBytes && eldest.hasNext()) {
+            usedBytes -= (long) eldest.next().getValue().capacity() * Double.BYTES;
+            eldest.remove();
+        }
+        columns.put(key, column);
+        usedBytes += columnBytes;
+    }
+
+    public synchronized int size() {
+        return columns.size();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+}
@@ -5,25 +5,55 @@ import it.units.expressionserver.domain.expression.nodes.Constant;
 import it.units.expressionserver.domain.expression.nodes.Node;
 import it.units.expressionserver.domain.expression.nodes.Operator;
 import it.units.expressionserver.domain.expression.nodes.Variable;
+import it.units.expressionserver.domain.variablevaluesfunction.ValueTupleCursor;
 import it.units.expressionserver.domain.variablevaluesfunction.VariableValuesFunction;
+import it.units.expressionserver.exceptions.ComputationCancelledException;
 import it.units.expressionserver.exceptions.ComputationException;
 import it.units.expressionserver.exceptions.DivisionByZeroException;
 import it.units.expressionserver.exceptions.NotANumberException;
 import it.units.expressionserver.exceptions.ZeroOverZeroException;
 
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.OptionalLong;
 
 public class Computer {
-    private static final int MIN_INDEX = 0;
-    private static final int MAX_INDEX = 1;
+    /**
+     * The kinds of computation. MIN, MAX, ARGMIN and ARGMAX consider all the expressions, while
+     * AVG, SUM and STDDEV (population standard deviation) consider only the first expression.
+     * ARGMIN and ARGMAX give the actual minimum (maximum) followed by the values of the tuple attaining it,
+     * in the order in which the variables appear in the request.
+     * MULTI gives MIN, MAX, AVG, SUM, STDDEV and COUNT, in this order, computed in a single pass over the tuples.
+     * AVG~ estimates AVG by sampling the tuples, and gives the estimate, the number of sampled tuples and
+     * the half-width of its 95% confidence interval.
+     * MIN~ and MAX~ search an approximate minimum (maximum) with a coarse-to-fine search, and give the value found
+     * followed by the values of its tuple, as ARGMIN and ARGMAX do.
+     * COUNT_IF, ANY and ALL test the first expression with a predicate comparing it with a threshold, carried by
+     * the computation kind of the request, e.g., ANY>0.5_GRID. COUNT_IF gives the number of tuples satisfying
+     * the predicate. ANY gives 1 followed by the values of a tuple satisfying it, or 0 if there is none; ALL gives 1,
+     * or 0 followed by the values of a tuple not satisfying it. ANY and ALL stop as soon as the answer is known.
+     */
     public enum ComputationKind {
 
         MIN("MIN"),
         MAX("MAX"),
         AVG("AVG"),
-        COUNT("COUNT");
+        COUNT("COUNT"),
+        SUM("SUM"),
+        STDDEV("STDDEV"),
+        ARGMIN("ARGMIN"),
+        ARGMAX("ARGMAX"),
+        MULTI("MULTI"),
+        AVG_APPROX("AVG~"),
+        MIN_APPROX("MIN~"),
+        MAX_APPROX("MAX~"),
+        COUNT_IF("COUNT_IF"),
+        ANY("ANY"),
+        ALL("ALL");
 
         private final String computationKindString;
 
@@ -48,95 +78,758 @@ public class Computer {
         }
     }
     /**
-     * The Computer class is implemented as a single instance in this program, even though it's stateless.
-     * This design choice is driven by the potential future need to maintain some state in the Computer.
-     * If such need arises, having a single instance will prevent the need for refactoring existing code.
+     * The engines available for MIN and MAX computations over a GRID.
+     * ENUMERATION evaluates every tuple; INTERVAL prunes the sub-grids that cannot contain the result,
+     * bounding the expressions with interval arithmetic, and evaluates only the tuples of the remaining sub-grids.
+     */
+    public enum MinMaxEngine {
+        ENUMERATION,
+        INTERVAL
+    }
+
+    private static final long PROGRESS_CHUNK_TUPLES = 1 << 12;
+    private static final long DEFAULT_COLUMN_CACHE_BYTES = 64L << 20;
+
+    private volatile MinMaxEngine minMaxEngine;
+    private volatile boolean monotonicityAnalysisEnabled;
+    private volatile boolean polynomialAvgEnabled;
+    private volatile boolean separableDecompositionEnabled;
+    private volatile double approximationRelativeError;
+    private volatile long approximationTimeBudgetMillis;
+    private final IntervalMinMaxEngine intervalMinMaxEngine;
+    private final MonotonicMinMaxEngine monotonicMinMaxEngine;
+    private final PolynomialAvgEngine polynomialAvgEngine;
+    private final SeparableGridEngine separableGridEngine;
+    private final QuasiMonteCarloAvgEstimator avgEstimator;
+    private final CoarseToFineMinMaxEngine coarseToFineMinMaxEngine;
+    private final PredicateGridEngine predicateGridEngine;
+    private final TieredEvaluator tieredEvaluator;
+    private volatile ColumnCache columnCache;
+
+    /**
+     * The Computer class is implemented as a single instance in this program.
+     * It holds the configuration of the engines used for computations, which can be changed while the server is running.
+     */
+    public Computer() {
+        this.minMaxEngine = MinMaxEngine.ENUMERATION;
+        this.monotonicityAnalysisEnabled = true;
+        this.polynomialAvgEnabled = true;
+        this.separableDecompositionEnabled = true;
+        this.approximationRelativeError = 0.001;
+        this.approximationTimeBudgetMillis = 1000;
+        this.intervalMinMaxEngine = new IntervalMinMaxEngine(this);
+        this.monotonicMinMaxEngine = new MonotonicMinMaxEngine(this);
+        this.polynomialAvgEngine = new PolynomialAvgEngine();
+        this.separableGridEngine = new SeparableGridEngine(this);
+        this.avgEstimator = new QuasiMonteCarloAvgEstimator(this);
+        this.coarseToFineMinMaxEngine = new CoarseToFineMinMaxEngine(this);
+        this.predicateGridEngine = new PredicateGridEngine(this);
+        this.tieredEvaluator = new TieredEvaluator(this);
+        this.columnCache = new ColumnCache(DEFAULT_COLUMN_CACHE_BYTES);
+    }
+
+    public MinMaxEngine getMinMaxEngine() {
+        return minMaxEngine;
+    }
+
+    public void setMinMaxEngine(MinMaxEngine minMaxEngine) {
+        this.minMaxEngine = minMaxEngine;
+    }
+
+    public boolean isMonotonicityAnalysisEnabled() {
+        return monotonicityAnalysisEnabled;
+    }
+
+    /**
+     * Enables or disables answering MIN and MAX over a GRID from the corners of the grid,
+     * for expressions that are proven to be monotonic in each variable.
+     *
+     * @param monotonicityAnalysisEnabled true to enable the monotonicity analysis
+     */
+    public void setMonotonicityAnalysisEnabled(boolean monotonicityAnalysisEnabled) {
+        this.monotonicityAnalysisEnabled = monotonicityAnalysisEnabled;
+    }
+
+    public boolean isPolynomialAvgEnabled() {
+        return polynomialAvgEnabled;
+    }
+
+    /**
+     * Enables or disables answering AVG over a GRID in closed form, without evaluating the tuples,
+     * for expressions that are polynomials in their variables.
+     *
+     * @param polynomialAvgEnabled true to enable the closed-form AVG
+     */
+    public void setPolynomialAvgEnabled(boolean polynomialAvgEnabled) {
+        this.polynomialAvgEnabled = polynomialAvgEnabled;
+    }
+
+    public boolean isSeparableDecompositionEnabled() {
+        return separableDecompositionEnabled;
+    }
+
+    /**
+     * Enables or disables answering MIN, MAX and AVG over a GRID from the values of each variable only,
+     * for expressions that are sums of terms depending on a single variable each.
+     *
+     * @param separableDecompositionEnabled true to enable the separable decomposition
+     */
+    public void setSeparableDecompositionEnabled(boolean separableDecompositionEnabled) {
+        this.separableDecompositionEnabled = separableDecompositionEnabled;
+    }
+
+    /**
+     * Gets the manager of the tiers on which expressions are evaluated.
+     *
+     * @return the tiered evaluator
+     */
+    public TieredEvaluator getTieredEvaluator() {
+        return tieredEvaluator;
+    }
+
+    public ColumnCache getColumnCache() {
+        return columnCache;
+    }
+
+    /**
+     * Replaces the cache of the values of the expressions evaluated over the tuples of recent computations.
+     *
+     * @param columnCache the new column cache
+     */
+    public void setColumnCache(ColumnCache columnCache) {
+        this.columnCache = columnCache;
+    }
+
+    public double getApproximationRelativeError() {
+        return approximationRelativeError;
+    }
+
+    /**
+     * Sets the relative error at which AVG~ stops sampling, when the request does not state it.
+     *
+     * @param approximationRelativeError the relative half-width of the confidence interval, greater than 0
+     * @throws IllegalArgumentException if the relative error is not positive
+     */
+    public void setApproximationRelativeError(double approximationRelativeError) throws IllegalArgumentException {
+        if (!(approximationRelativeError > 0)) {
+            throw new IllegalArgumentException("The relative error must be positive: " + approximationRelativeError);
+        }
+        this.approximationRelativeError = approximationRelativeError;
+    }
+
+    public long getApproximationTimeBudgetMillis() {
+        return approximationTimeBudgetMillis;
+    }
+
+    /**
+     * Sets the time after which AVG~ stops sampling, even if the relative error has not been reached,
+     * and MIN~ and MAX~ stop searching.
+     *
+     * @param approximationTimeBudgetMillis the time budget, in milliseconds
+     * @throws IllegalArgumentException if the time budget is negative
      */
-    public Computer() {}
+    public void setApproximationTimeBudgetMillis(long approximationTimeBudgetMillis) throws IllegalArgumentException {
+        if (approximationTimeBudgetMillis < 0) {
+            throw new IllegalArgumentException("The time budget must not be negative: " + approximationTimeBudgetMillis);
+        }
+        this.approximationTimeBudgetMillis = approximationTimeBudgetMillis;
+    }
 
     /**
      * Computes the result based on the computation kind specified in the variableValuesFunction.
      *
-     * @return the result of the computation
+     * @return the values resulting from the computation: a single value, except for ARGMIN, ARGMAX and MULTI
      * @throws DivisionByZeroException if a division by 0 is attempted
      * @throws ZeroOverZeroException if a division 0 / 0 is attempted
      * @throws NotANumberException if a NaN is found
      */
-    public double computeResult(List<List<Double>> valueTuples, VariableValuesFunction variableValuesFunction, List<Expression> expressions) throws IllegalArgumentException, DivisionByZeroException, ZeroOverZeroException, NotANumberException {
+    public double[] computeResult(VariableValuesFunction variableValuesFunction, List<Expression> expressions) throws IllegalArgumentException, DivisionByZeroException, ZeroOverZeroException, NotANumberException {
+        return computeResult(variableValuesFunction, expressions, ProgressListener.NONE);
+    }
+
+    /**
+     * Computes the result based on the computation kind specified in the variableValuesFunction,
+     * reporting the partial aggregates to the given listener while the tuples are processed.
+     * MIN and MAX over a GRID are then computed by enumeration, unless the monotonicity analysis answers them at once,
+     * since the INTERVAL engine cannot tell how much of the grid it has explored.
+     *
+     * @param progressListener the listener notified of the progress of the computation, which can cancel it
+     * @return the values resulting from the computation: a single value, except for ARGMIN, ARGMAX and MULTI
+     * @throws DivisionByZeroException if a division by 0 is attempted
+     * @throws ZeroOverZeroException if a division 0 / 0 is attempted
+     * @throws NotANumberException if a NaN is found
+     * @throws ComputationCancelledException if the listener cancels the computation
+     */
+    public double[] computeResult(VariableValuesFunction variableValuesFunction, List<Expression> expressions, ProgressListener progressListener) throws IllegalArgumentException, DivisionByZeroException, ZeroOverZeroException, NotANumberException, ComputationCancelledException {
+        List<Expression> tieredExpressions = tieredEvaluator.prepare(expressions, variableValuesFunction);
+        try {
+            return computeKind(variableValuesFunction, tieredExpressions, progressListener);
+        } finally {
+            tieredEvaluator.complete(tieredExpressions);
+        }
+    }
+
+    private double[] computeKind(VariableValuesFunction variableValuesFunction, List<Expression> expressions, ProgressListener progressListener) throws IllegalArgumentException, DivisionByZeroException, ZeroOverZeroException, NotANumberException, ComputationCancelledException {
         ComputationKind computationKind = variableValuesFunction.getComputationKind();
         switch (computationKind) {
             case MIN:
-                return computeMin(valueTuples, variableValuesFunction, expressions);
+                return new double[] {computeMin(variableValuesFunction, expressions, progressListener)};
             case MAX:
-                return computeMax(valueTuples, variableValuesFunction, expressions);
+                return new double[] {computeMax(variableValuesFunction, expressions, progressListener)};
             case AVG:
-                return computeAvg(valueTuples, variableValuesFunction, expressions);
+                return new double[] {computeAvg(variableValuesFunction, expressions, progressListener)};
             case COUNT:
-                return valueTuples.size();
+                return new double[] {variableValuesFunction.getTupleCount()};
+            case SUM:
+                return new double[] {aggregateFirst(variableValuesFunction, expressions, computationKind, progressListener).getSum()};
+            case STDDEV:
+                return new double[] {aggregateFirst(variableValuesFunction, expressions, computationKind, progressListener).getStdDev()};
+            case ARGMIN: {
+                Aggregator aggregator = aggregateAll(variableValuesFunction, expressions, progressListener);
+                return withTuple(aggregator.getArgMinValue(), aggregator.getMinTupleIndex(), variableValuesFunction);
+            }
+            case ARGMAX: {
+                Aggregator aggregator = aggregateAll(variableValuesFunction, expressions, progressListener);
+                return withTuple(aggregator.getArgMaxValue(), aggregator.getMaxTupleIndex(), variableValuesFunction);
+            }
+            case MULTI: {
+                Aggregator aggregator = aggregateAll(variableValuesFunction, expressions, progressListener);
+                return new double[] {aggregator.getMin(), aggregator.getMax(), aggregator.getAvg(),
+                        aggregator.getSum(), aggregator.getStdDev(), variableValuesFunction.getTupleCount()};
+            }
+            case AVG_APPROX:
+                return approximateAvg(variableValuesFunction, expressions, approximationRelativeError);
+            case MIN_APPROX:
+            case MAX_APPROX: {
+                long deadline = System.nanoTime() + approximationTimeBudgetMillis * 1_000_000L;
+                CoarseToFineMinMaxEngine.Result result = coarseToFineMinMaxEngine.search(variableValuesFunction, expressions,
+                        computationKind == ComputationKind.MAX_APPROX, deadline);
+                return withTuple(result.getValue(), result.getTupleIndex(), variableValuesFunction);
+            }
             default:
                 throw new IllegalArgumentException("Unknown computation kind: " + computationKind);
         }
     }
 
     /**
-     * Private helper function to calculate min and max of the provided expressions
-     * for all tuples of variable values, for avoiding redundant code lines.
+     * Computes the partial aggregates of a MIN, MAX, AVG or SUM computation over a shard of the tuples, i.e.,
+     * the tuples with index from {@code from} (included) to {@code to} (excluded).
+     * Partial aggregates of consecutive shards merge into the aggregates of the whole computation, and the error
+     * raised by a shard, if any, is the error that the whole computation raises if no earlier shard raises one.
      *
-     * @param valueTuples list of tuples of variable values
-     * @param variableValuesFunction the function containing the variable names and their corresponding indices
+     * @param variableValuesFunction the function providing the tuples of variable values
      * @param expressions the expressions to compute
-     * @return the minimum value
-     */
-    private double[] computeMinMax(List<List<Double>> valueTuples, VariableValuesFunction variableValuesFunction, List<Expression> expressions) throws DivisionByZeroException, ZeroOverZeroException, NotANumberException {
-        double min = Double.MAX_VALUE;
-        double max = Double.MIN_VALUE;
-        double result;
-        for (List<Double> tuple : valueTuples) {
-            for (Expression expression : expressions) {
-                try {
-                    result = evaluateExpression(expression, variableValuesFunction, tuple);
-                } catch (ZeroOverZeroException e) {
-                    throw new ZeroOverZeroException("A 0 / 0 division occurred while evaluating " +
-                            "the expression '" + expression.toString() + "' : " + e.getMessage());
-                } catch (DivisionByZeroException e) {
-                    throw new DivisionByZeroException("A division by 0 occurred while evaluating " +
-                            "the expression '" + expression.toString() + "' : " + e.getMessage());
-                } catch (NotANumberException e) {
-                    throw new NotANumberException("NaN found while evaluating " +
-                            "the expression '" + expression.toString() + "' : " + e.getMessage());
+     * @param from the index of the first tuple of the shard
+     * @param to the index following the last tuple of the shard
+     * @return the number of tuples, the minimum and the maximum (infinite if every value is NaN), and the sum
+     * of the values of the first expression (all the expressions, for the minimum and maximum)
+     * @throws IllegalArgumentException if the computation kind cannot be computed by shards
+     * @throws ComputationException if the evaluation of a tuple fails
+     */
+    public double[] computeShard(VariableValuesFunction variableValuesFunction, List<Expression> expressions, long from, long to) throws IllegalArgumentException, ComputationException {
+        ComputationKind computationKind = variableValuesFunction.getComputationKind();
+        List<Expression> tieredExpressions = tieredEvaluator.prepare(expressions, variableValuesFunction);
+        try {
+            Aggregator aggregator;
+            switch (computationKind) {
+                case MIN:
+                case MAX:
+                    aggregator = aggregateAll(variableValuesFunction, tieredExpressions, from, to, ProgressListener.NONE);
+                    break;
+                case AVG:
+                case SUM:
+                    aggregator = aggregateFirst(variableValuesFunction, tieredExpressions, computationKind, from, to, ProgressListener.NONE);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Shards are not supported for computation kind: " + computationKind.getRequestString());
+            }
+            return new double[] {to - from, aggregator.getArgMinValue(), aggregator.getArgMaxValue(), aggregator.getSum()};
+        } finally {
+            tieredEvaluator.complete(tieredExpressions);
+        }
+    }
+
+    /**
+     * Estimates the average of the first expression over the tuples by sampling them, until the half-width of
+     * the 95% confidence interval is within the given relative error or the time budget is over.
+     * Only the sampled tuples are evaluated, hence errors are reported only if they occur on a sampled tuple.
+     * When sampling would evaluate as many tuples as the exact computation, the exact average is computed instead.
+     *
+     * @param variableValuesFunction the function providing the tuples of variable values
+     * @param expressions the expressions to compute, of which only the first one is evaluated
+     * @param relativeError the relative half-width of the confidence interval at which sampling stops
+     * @return the estimate, the number of evaluated tuples and the half-width of the confidence interval
+     * @throws ComputationException if the evaluation of a tuple fails
+     */
+    public double[] computeApproximateAvg(VariableValuesFunction variableValuesFunction, List<Expression> expressions, double relativeError) throws ComputationException {
+        List<Expression> tieredExpressions = tieredEvaluator.prepare(expressions, variableValuesFunction);
+        try {
+            return approximateAvg(variableValuesFunction, tieredExpressions, relativeError);
+        } finally {
+            tieredEvaluator.complete(tieredExpressions);
+        }
+    }
+
+    private double[] approximateAvg(VariableValuesFunction variableValuesFunction, List<Expression> expressions, double relativeError) throws ComputationException {
+        long deadline = System.nanoTime() + approximationTimeBudgetMillis * 1_000_000L;
+        double[] estimate;
+        try {
+            estimate = avgEstimator.estimate(variableValuesFunction, expressions.get(0), relativeError, deadline);
+        } catch (ZeroOverZeroException | DivisionByZeroException | NotANumberException e) {
+            throw new ComputationException("An error occurred while computing " + ComputationKind.AVG_APPROX.getRequestString() +
+                    " for the first expression : " + e.getMessage());
+        }
+        if (estimate != null) {
+            return estimate;
+        }
+        Aggregator aggregator = aggregateFirst(variableValuesFunction, expressions, ComputationKind.AVG_APPROX, ProgressListener.NONE);
+        return new double[] {aggregator.getAvg(), variableValuesFunction.getTupleCount(), 0};
+    }
+
+    /**
+     * Computes COUNT_IF, ANY or ALL, depending on the computation kind specified in the variableValuesFunction,
+     * testing the first expression with the given predicate.
+     * Over a GRID, the tuples are searched with interval arithmetic, which skips the boxes of the grid where the
+     * answer is known without evaluating them and explores first those most likely to contain a witness; otherwise,
+     * the tuples are scanned in order. ANY and ALL report the error of a tuple only if it is evaluated before the
+     * answer is known, while COUNT_IF reports the first error, in tuple order, as SUM does.
+     *
+     * @param variableValuesFunction the function providing the tuples of variable values
+     * @param expressions the expressions to compute, of which only the first one is evaluated
+     * @param predicate the predicate
+     * @return the count for COUNT_IF; for ANY and ALL, the answer, followed by the values of the witness if any
+     * @throws IllegalArgumentException if the computation kind does not take a predicate
+     * @throws ComputationException if the evaluation of a tuple fails
+     */
+    public double[] computePredicate(VariableValuesFunction variableValuesFunction, List<Expression> expressions, ThresholdPredicate predicate) throws IllegalArgumentException, ComputationException {
+        List<Expression> tieredExpressions = tieredEvaluator.prepare(expressions, variableValuesFunction);
+        try {
+            ComputationKind computationKind = variableValuesFunction.getComputationKind();
+            Expression expression = tieredExpressions.get(0);
+            switch (computationKind) {
+                case COUNT_IF:
+                    return new double[] {countIf(variableValuesFunction, expression, predicate)};
+                case ANY: {
+                    long witness = findWitness(variableValuesFunction, expression, predicate, computationKind);
+                    return witness < 0 ? new double[] {0} : withTuple(1, witness, variableValuesFunction);
                 }
-                if (result > max) {
-                    max = result;
+                case ALL: {
+                    long counterexample = findWitness(variableValuesFunction, expression, predicate.negate(), computationKind);
+                    return counterexample < 0 ? new double[] {1} : withTuple(0, counterexample, variableValuesFunction);
+                }
+                default:
+                    throw new IllegalArgumentException("Predicates are not supported for computation kind: " + computationKind.getRequestString());
+            }
+        } finally {
+            tieredEvaluator.complete(tieredExpressions);
+        }
+    }
+
+    private long countIf(VariableValuesFunction variableValuesFunction, Expression expression, ThresholdPredicate predicate) throws ComputationException {
+        if (isPredicateSearchApplicable(variableValuesFunction)) {
+            OptionalLong count = predicateGridEngine.count(variableValuesFunction, expression, predicate);
+            if (count.isPresent()) {
+                return count.getAsLong();
+            }
+        }
+        long count = 0;
+        long tupleCount = variableValuesFunction.getTupleCount();
+        ValueTupleCursor cursor = variableValuesFunction.cursor(0);
+        try {
+            for (long i = 0; i < tupleCount; i++, cursor.advance()) {
+                if (predicate.test(evaluateExpression(expression, variableValuesFunction, cursor.getTuple()))) {
+                    count++;
                 }
-                if (result < min) {
-                    min = result;
+            }
+        } catch (ZeroOverZeroException | DivisionByZeroException | NotANumberException e) {
+            throw new ComputationException("An error occurred while computing " + ComputationKind.COUNT_IF.getRequestString() +
+                    " for the first expression : " + e.getMessage());
+        }
+        return count;
+    }
+
+    /**
+     * Finds a tuple on which the expression satisfies the predicate.
+     *
+     * @return the index of the tuple, or -1 if there is none
+     */
+    private long findWitness(VariableValuesFunction variableValuesFunction, Expression expression, ThresholdPredicate predicate, ComputationKind computationKind) throws ComputationException {
+        if (isPredicateSearchApplicable(variableValuesFunction)) {
+            OptionalLong witness = predicateGridEngine.findWitness(variableValuesFunction, expression, predicate);
+            if (witness.isPresent()) {
+                return witness.getAsLong();
+            }
+        }
+        long tupleCount = variableValuesFunction.getTupleCount();
+        ValueTupleCursor cursor = variableValuesFunction.cursor(0);
+        try {
+            for (long i = 0; i < tupleCount; i++, cursor.advance()) {
+                if (predicate.test(evaluateExpression(expression, variableValuesFunction, cursor.getTuple()))) {
+                    return i;
                 }
             }
+        } catch (ZeroOverZeroException | DivisionByZeroException | NotANumberException e) {
+            throw new ComputationException("An error occurred while computing " + computationKind.getRequestString() +
+                    " for the first expression : " + e.getMessage());
+        }
+        return -1;
+    }
+
+    /**
+     * Evaluates all the expressions on all the tuples of variable values, in a single pass,
+     * collecting the aggregates of their values.
+     *
+     * @param variableValuesFunction the function providing the tuples of variable values
+     * @param expressions the expressions to compute
+     * @param progressListener the listener notified of the progress of the computation
+     * @return the aggregates of the values of the expressions
+     */
+    private Aggregator aggregateAll(VariableValuesFunction variableValuesFunction, List<Expression> expressions, ProgressListener progressListener) throws DivisionByZeroException, ZeroOverZeroException, NotANumberException, ComputationCancelledException {
+        long tupleCount = variableValuesFunction.getTupleCount();
+        ColumnCache columnCache = this.columnCache;
+        String[] columnKeys = getColumnKeys(columnCache, variableValuesFunction, expressions, expressions.size(), tupleCount);
+        if (columnKeys == null) {
+            return aggregateAll(variableValuesFunction, expressions, 0, tupleCount, progressListener, null);
+        }
+        DoubleBuffer[] columns = getColumns(columnCache, columnKeys);
+        if (columns != null) {
+            return aggregateColumns(columns, tupleCount, progressListener);
+        }
+        columns = allocateColumns(columnCache, columnKeys, tupleCount);
+        boolean cached = false;
+        try {
+            Aggregator aggregator = aggregateAll(variableValuesFunction, expressions, 0, tupleCount, progressListener, columns);
+            putColumns(columnCache, columnKeys, columns);
+            cached = true;
+            return aggregator;
+        } finally {
+            if (!cached) {
+                releaseColumns(columnCache, columnKeys, columns);
+            }
         }
+    }
 
-        return new double[] {min, max};
+    /**
+     * Evaluates all the expressions on the tuples with index from {@code from} (included) to {@code to} (excluded).
+     */
+    private Aggregator aggregateAll(VariableValuesFunction variableValuesFunction, List<Expression> expressions, long from, long to, ProgressListener progressListener) throws DivisionByZeroException, ZeroOverZeroException, NotANumberException, ComputationCancelledException {
+        return aggregateAll(variableValuesFunction, expressions, from, to, progressListener, null);
     }
-    private double computeMax(List<List<Double>> valueTuples, VariableValuesFunction variableValuesFunction, List<Expression> expressions) throws DivisionByZeroException, ZeroOverZeroException, NotANumberException {
-        double[] minMax = computeMinMax(valueTuples, variableValuesFunction, expressions);
-        return minMax[MAX_INDEX]; // Max
+
+    /**
+     * Evaluates all the expressions on the tuples with index from {@code from} (included) to {@code to} (excluded),
+     * storing the value of each expression on each tuple in its column, if columns are given and the column is not null.
+     */
+    private Aggregator aggregateAll(VariableValuesFunction variableValuesFunction, List<Expression> expressions, long from, long to, ProgressListener progressListener, DoubleBuffer[] columns) throws DivisionByZeroException, ZeroOverZeroException, NotANumberException, ComputationCancelledException {
+        Aggregator aggregator = new Aggregator();
+        ValueTupleCursor cursor = variableValuesFunction.cursor(from);
+        for (long i = from; i < to; i++, cursor.advance()) {
+            if (i > from && (i - from) % PROGRESS_CHUNK_TUPLES == 0) {
+                reportProgress(progressListener, i - from, to - from, aggregator);
+            }
+            double[] tuple = cursor.getTuple();
+            for (int e = 0; e < expressions.size(); e++) {
+                double value = evaluateReportingExpression(expressions.get(e), variableValuesFunction, tuple);
+                if (e == 0) {
+                    aggregator.addFirst(value, i);
+                } else {
+                    aggregator.add(value, i);
+                }
+                if (columns != null && columns[e] != null) {
+                    columns[e].put((int) i, value);
+                }
+            }
+        }
+        return aggregator;
     }
-    private double computeMin(List<List<Double>> valueTuples, VariableValuesFunction variableValuesFunction, List<Expression> expressions) throws DivisionByZeroException, ZeroOverZeroException, NotANumberException {
-        double[] minMax = computeMinMax(valueTuples, variableValuesFunction, expressions);
-        return minMax[MIN_INDEX];
+
+    /**
+     * Evaluates the first expression on all the tuples of variable values, in a single pass,
+     * collecting the aggregates of its values.
+     *
+     * @param variableValuesFunction the function providing the tuples of variable values
+     * @param expressions the expressions to compute, of which only the first one is evaluated
+     * @param computationKind the kind of computation, reported in error messages
+     * @param progressListener the listener notified of the progress of the computation
+     * @return the aggregates of the values of the first expression
+     */
+    private Aggregator aggregateFirst(VariableValuesFunction variableValuesFunction, List<Expression> expressions, ComputationKind computationKind, ProgressListener progressListener) throws ComputationException {
+        long tupleCount = variableValuesFunction.getTupleCount();
+        ColumnCache columnCache = this.columnCache;
+        String[] columnKeys = getColumnKeys(columnCache, variableValuesFunction, expressions, 1, tupleCount);
+        if (columnKeys == null) {
+            return aggregateFirst(variableValuesFunction, expressions, computationKind, 0, tupleCount, progressListener, null);
+        }
+        DoubleBuffer[] columns = getColumns(columnCache, columnKeys);
+        if (columns != null) {
+            return aggregateColumns(columns, tupleCount, progressListener);
+        }
+        columns = allocateColumns(columnCache, columnKeys, tupleCount);
+        boolean cached = false;
+        try {
+            Aggregator aggregator = aggregateFirst(variableValuesFunction, expressions, computationKind, 0, tupleCount, progressListener, columns[0]);
+            putColumns(columnCache, columnKeys, columns);
+            cached = true;
+            return aggregator;
+        } finally {
+            if (!cached) {
+                releaseColumns(columnCache, columnKeys, columns);
+            }
+        }
+    }
+
+    /**
+     * Evaluates the first expression on the tuples with index from {@code from} (included) to {@code to} (excluded).
+     */
+    private Aggregator aggregateFirst(VariableValuesFunction variableValuesFunction, List<Expression> expressions, ComputationKind computationKind, long from, long to, ProgressListener progressListener) throws ComputationException {
+        return aggregateFirst(variableValuesFunction, expressions, computationKind, from, to, progressListener, null);
     }
-    private double computeAvg(List<List<Double>> valueTuples, VariableValuesFunction variableValuesFunction, List<Expression> expressions) throws DivisionByZeroException, ZeroOverZeroException, NotANumberException {
-        double sum = 0;
+
+    /**
+     * Evaluates the first expression on the tuples with index from {@code from} (included) to {@code to} (excluded),
+     * storing its value on each tuple in the given column, if any.
+     */
+    private Aggregator aggregateFirst(VariableValuesFunction variableValuesFunction, List<Expression> expressions, ComputationKind computationKind, long from, long to, ProgressListener progressListener, DoubleBuffer column) throws ComputationException {
+        Aggregator aggregator = new Aggregator();
         Expression expression = expressions.get(0);
+        ValueTupleCursor cursor = variableValuesFunction.cursor(from);
         try {
-            for (List<Double> tuple : valueTuples) {
-                sum += evaluateExpression(expression, variableValuesFunction, tuple);
+            for (long i = from; i < to; i++, cursor.advance()) {
+                if (i > from && (i - from) % PROGRESS_CHUNK_TUPLES == 0) {
+                    reportProgress(progressListener, i - from, to - from, aggregator);
+                }
+                double value = evaluateExpression(expression, variableValuesFunction, cursor.getTuple());
+                aggregator.addFirst(value, i);
+                if (column != null) {
+                    column.put((int) i, value);
+                }
             }
         } catch (ZeroOverZeroException | DivisionByZeroException | NotANumberException e) {
-            throw new ComputationException("An error occurred while computing AVG for " +
-                    "the first expression : " + e.getMessage());
+            throw new ComputationException("An error occurred while computing " + computationKind.getRequestString() +
+                    " for the first expression : " + e.getMessage());
         }
+        return aggregator;
+    }
 
-        return sum / valueTuples.size();
+    /**
+     * Scans cached columns of values, collecting the aggregates of their values as if the expressions were evaluated:
+     * the first column is the first expression.
+     */
+    private static Aggregator aggregateColumns(DoubleBuffer[] columns, long tupleCount, ProgressListener progressListener) throws ComputationCancelledException {
+        Aggregator aggregator = new Aggregator();
+        for (int i = 0; i < tupleCount; i++) {
+            if (i > 0 && i % PROGRESS_CHUNK_TUPLES == 0) {
+                reportProgress(progressListener, i, tupleCount, aggregator);
+            }
+            aggregator.addFirst(columns[0].get(i), i);
+            for (int e = 1; e < columns.length; e++) {
+                aggregator.add(columns[e].get(i), i);
+            }
+        }
+        return aggregator;
+    }
+
+    /**
+     * Builds the keys of the columns of the first expressions in the column cache.
+     *
+     * @return the keys, or null if the columns cannot be cached
+     */
+    private static String[] getColumnKeys(ColumnCache columnCache, VariableValuesFunction variableValuesFunction, List<Expression> expressions, int expressionCount, long tupleCount) {
+        String valuesKey = variableValuesFunction.getValuesKey();
+        if (valuesKey == null || !columnCache.isCacheable(tupleCount)) {
+            return null;
+        }
+        String[] columnKeys = new String[expressionCount];
+        for (int e = 0; e < expressionCount; e++) {
+            columnKeys[e] = expressions.get(e).getRoot() + "@" + valuesKey;
+        }
+        return columnKeys;
+    }
+
+    /**
+     * Gets the cached columns with the given keys.
+     *
+     * @return the columns, or null unless all of them are cached
+     */
+    private static DoubleBuffer[] getColumns(ColumnCache columnCache, String[] columnKeys) {
+        DoubleBuffer[] columns = new DoubleBuffer[columnKeys.length];
+        for (int e = 0; e < columnKeys.length; e++) {
+            columns[e] = columnCache.get(columnKeys[e]);
+            if (columns[e] == null) {
+                return null;
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Allocates the columns with the given keys that are neither cached nor being filled by another computation.
+     *
+     * @return the columns, null for those that are not to be filled
+     */
+    private static DoubleBuffer[] allocateColumns(ColumnCache columnCache, String[] columnKeys, long tupleCount) {
+        DoubleBuffer[] columns = new DoubleBuffer[columnKeys.length];
+        for (int e = 0; e < columnKeys.length; e++) {
+            columns[e] = columnCache.allocate(columnKeys[e], tupleCount);
+        }
+        return columns;
+    }
+
+    private static void putColumns(ColumnCache columnCache, String[] columnKeys, DoubleBuffer[] columns) {
+        for (int e = 0; e < columnKeys.length; e++) {
+            if (columns[e] != null) {
+                columnCache.put(columnKeys[e], columns[e]);
+            }
+        }
+    }
+
+    /**
+     * Gives up the allocated columns, as the computation failed before they could be cached.
+     */
+    private static void releaseColumns(ColumnCache columnCache, String[] columnKeys, DoubleBuffer[] columns) {
+        for (int e = 0; e < columnKeys.length; e++) {
+            if (columns[e] != null) {
+                columnCache.release(columnKeys[e]);
+            }
+        }
+    }
+
+    /**
+     * Reports the partial aggregates of a computation to its listener.
+     *
+     * @throws ComputationCancelledException if the listener cancels the computation
+     */
+    private static void reportProgress(ProgressListener progressListener, long processedTuples, long tupleCount, Aggregator aggregator) throws ComputationCancelledException {
+        if (!progressListener.onProgress(processedTuples, tupleCount, aggregator.getMin(), aggregator.getMax(), aggregator.getAvg())) {
+            throw new ComputationCancelledException("The computation was cancelled after " + processedTuples +
+                    " of " + tupleCount + " tuples.");
+        }
+    }
+
+    /**
+     * Builds the result of ARGMIN, ARGMAX, MIN~, MAX~, ANY and ALL: the value followed by the values of the tuple with the given index,
+     * in the order in which the variables appear in the request (NaN if there is no such tuple).
+     */
+    private static double[] withTuple(double value, long tupleIndex, VariableValuesFunction variableValuesFunction) {
+        List<String> variables = variableValuesFunction.getDeclaredVariables();
+        double[] result = new double[variables.size() + 1];
+        result[0] = value;
+        if (tupleIndex < 0) {
+            Arrays.fill(result, 1, result.length, Double.NaN);
+            return result;
+        }
+        double[] tuple = new double[variableValuesFunction.getVariables().size()];
+        variableValuesFunction.fillTuple(tupleIndex, tuple);
+        for (int i = 0; i < variables.size(); i++) {
+            result[i + 1] = tuple[variableValuesFunction.getVariableIndex(variables.get(i))];
+        }
+        return result;
+    }
+
+    private double computeMax(VariableValuesFunction variableValuesFunction, List<Expression> expressions, ProgressListener progressListener) throws DivisionByZeroException, ZeroOverZeroException, NotANumberException, ComputationCancelledException {
+        if (isMonotonicityAnalysisApplicable(variableValuesFunction)) {
+            OptionalDouble max = monotonicMinMaxEngine.computeMax(variableValuesFunction, expressions);
+            if (max.isPresent()) {
+                return Math.max(max.getAsDouble(), Double.MIN_VALUE);
+            }
+        }
+        if (isSeparableDecompositionApplicable(variableValuesFunction)) {
+            OptionalDouble max = separableGridEngine.computeMax(variableValuesFunction, expressions);
+            if (max.isPresent()) {
+                return Math.max(max.getAsDouble(), Double.MIN_VALUE);
+            }
+        }
+        if (progressListener == ProgressListener.NONE && isIntervalEngineApplicable(variableValuesFunction)) {
+            OptionalDouble max = intervalMinMaxEngine.computeMax(variableValuesFunction, expressions);
+            if (max.isPresent()) {
+                return Math.max(max.getAsDouble(), Double.MIN_VALUE);
+            }
+        }
+        return aggregateAll(variableValuesFunction, expressions, progressListener).getMax();
+    }
+    private double computeMin(VariableValuesFunction variableValuesFunction, List<Expression> expressions, ProgressListener progressListener) throws DivisionByZeroException, ZeroOverZeroException, NotANumberException, ComputationCancelledException {
+        if (isMonotonicityAnalysisApplicable(variableValuesFunction)) {
+            OptionalDouble min = monotonicMinMaxEngine.computeMin(variableValuesFunction, expressions);
+            if (min.isPresent()) {
+                return Math.min(min.getAsDouble(), Double.MAX_VALUE);
+            }
+        }
+        if (isSeparableDecompositionApplicable(variableValuesFunction)) {
+            OptionalDouble min = separableGridEngine.computeMin(variableValuesFunction, expressions);
+            if (min.isPresent()) {
+                return Math.min(min.getAsDouble(), Double.MAX_VALUE);
+            }
+        }
+        if (progressListener == ProgressListener.NONE && isIntervalEngineApplicable(variableValuesFunction)) {
+            OptionalDouble min = intervalMinMaxEngine.computeMin(variableValuesFunction, expressions);
+            if (min.isPresent()) {
+                return Math.min(min.getAsDouble(), Double.MAX_VALUE);
+            }
+        }
+        return aggregateAll(variableValuesFunction, expressions, progressListener).getMin();
+    }
+    private double computeAvg(VariableValuesFunction variableValuesFunction, List<Expression> expressions, ProgressListener progressListener) throws ComputationException {
+        if (isPolynomialAvgApplicable(variableValuesFunction)) {
+            OptionalDouble avg = polynomialAvgEngine.computeAvg(variableValuesFunction, expressions);
+            if (avg.isPresent()) {
+                return avg.getAsDouble();
+            }
+        }
+        if (isSeparableDecompositionApplicable(variableValuesFunction)) {
+            OptionalDouble avg = separableGridEngine.computeAvg(variableValuesFunction, expressions);
+            if (avg.isPresent()) {
+                return avg.getAsDouble();
+            }
+        }
+        return aggregateFirst(variableValuesFunction, expressions, ComputationKind.AVG, progressListener).getAvg();
+    }
+    private boolean isPolynomialAvgApplicable(VariableValuesFunction variableValuesFunction) {
+        return polynomialAvgEnabled
+                && variableValuesFunction.getValuesKind() == VariableValuesFunction.ValuesKind.GRID
+                && variableValuesFunction.getTupleCount() > 0;
+    }
+    private boolean isSeparableDecompositionApplicable(VariableValuesFunction variableValuesFunction) {
+        return separableDecompositionEnabled
+                && variableValuesFunction.getValuesKind() == VariableValuesFunction.ValuesKind.GRID
+                && variableValuesFunction.getTupleCount() > 0;
+    }
+    private boolean isMonotonicityAnalysisApplicable(VariableValuesFunction variableValuesFunction) {
+        return monotonicityAnalysisEnabled
+                && variableValuesFunction.getValuesKind() == VariableValuesFunction.ValuesKind.GRID
+                && variableValuesFunction.getTupleCount() > 0;
+    }
+    private boolean isPredicateSearchApplicable(VariableValuesFunction variableValuesFunction) {
+        return variableValuesFunction.getValuesKind() == VariableValuesFunction.ValuesKind.GRID
+                && variableValuesFunction.getTupleCount() > 0;
+    }
+    private boolean isIntervalEngineApplicable(VariableValuesFunction variableValuesFunction) {
+        return minMaxEngine == MinMaxEngine.INTERVAL
+                && variableValuesFunction.getValuesKind() == VariableValuesFunction.ValuesKind.GRID
+                && variableValuesFunction.getTupleCount() > 0;
+    }
+
+    /**
+     * Evaluates a given mathematical expression for a specific tuple of variable values,
+     * reporting the expression in the message of computation errors as MIN and MAX do.
+     *
+     * @param expression the mathematical expression to evaluate
+     * @param variableValuesFunction the function containing the variable names and their corresponding indices
+     * @param tuple a tuple of variable values
+     * @return the result of the evaluation
+     */
+    double evaluateReportingExpression(Expression expression, VariableValuesFunction variableValuesFunction, double[] tuple) throws DivisionByZeroException, ZeroOverZeroException, NotANumberException {
+        try {
+            return evaluateExpression(expression, variableValuesFunction, tuple);
+        } catch (ZeroOverZeroException e) {
+            throw new ZeroOverZeroException("A 0 / 0 division occurred while evaluating " +
+                    "the expression '" + expression.toString() + "' : " + e.getMessage());
+        } catch (DivisionByZeroException e) {
+            throw new DivisionByZeroException("A division by 0 occurred while evaluating " +
+                    "the expression '" + expression.toString() + "' : " + e.getMessage());
+        } catch (NotANumberException e) {
+            throw new NotANumberException("NaN found while evaluating " +
+                    "the expression '" + expression.toString() + "' : " + e.getMessage());
+        }
     }
 
     /**
@@ -147,24 +840,37 @@ public class Computer {
      * @param tuple a tuple of variable values
      * @return the result of the evaluation
      */
-    private double evaluateExpression(Expression expression, VariableValuesFunction variableValuesFunction, List<Double> tuple) throws DivisionByZeroException, ZeroOverZeroException, NotANumberException {
+    double evaluateExpression(Expression expression, VariableValuesFunction variableValuesFunction, double[] tuple) throws DivisionByZeroException, ZeroOverZeroException, NotANumberException {
+        if (expression instanceof TieredEvaluator.TieredExpression) {
+            return ((TieredEvaluator.TieredExpression) expression).evaluate(tuple);
+        }
         return evaluateNode(expression.getRoot(), variableValuesFunction, tuple);
     }
-    private double evaluateNode(Node node, VariableValuesFunction variableValuesFunction, List<Double> tuple) throws DivisionByZeroException, ZeroOverZeroException, NotANumberException {
+
+    /**
+     * Evaluates a node with the tree interpreter, the first tier of evaluation.
+     * Unary functions fail with a NotANumberException where they are undefined, e.g., sqrt(-1) or log(-1),
+     * while binary operators giving NaN only fail when their result is an operand.
+     */
+    double evaluateNode(Node node, VariableValuesFunction variableValuesFunction, double[] tuple) throws DivisionByZeroException, ZeroOverZeroException, NotANumberException {
         if (node instanceof Constant) {
             return ((Constant) node).getValue();
         }
         else if (node instanceof Variable) {
             String variableName = ((Variable) node).getName();
             int variableIndex = variableValuesFunction.getVariableIndex(variableName);
-            return tuple.get(variableIndex);
+            return tuple[variableIndex];
         }
         else {
             Operator operator = (Operator) node;
             List<Node> children = operator.getChildren();
-            double[] childValues = children.stream()
-                    .mapToDouble(child -> evaluateNode(child, variableValuesFunction, tuple))
-                    .toArray();
+            double[] childValues = new double[children.size()];
+            for (int i = 0; i < childValues.length; i++) {
+                childValues[i] = evaluateNode(children.get(i), variableValuesFunction, tuple);
+            }
+            if (operator.getType().isUnary()) {
+                return applyFunction(operator, childValues[0]);
+            }
             if (Double.isNaN(childValues[0]) || Double.isNaN(childValues[1])) {
                 throw new NotANumberException("NaN obtained during computation");
             }
@@ -175,7 +881,26 @@ public class Computer {
                     throw new DivisionByZeroException("Division by zero at node '" + node + "'");
                 }
             }
+            if (operator.getType() == Operator.Type.POWER) {
+                return Operator.power(childValues[0], childValues[1]);
+            }
             return operator.getType().getFunction().apply(childValues);
         }
     }
+
+    /**
+     * Applies the unary function of a node to the value of its operand.
+     *
+     * @throws NotANumberException if the operand is NaN, or the function is undefined at the operand
+     */
+    static double applyFunction(Operator operator, double operand) throws NotANumberException {
+        if (Double.isNaN(operand)) {
+            throw new NotANumberException("NaN obtained during computation");
+        }
+        double value = operator.getType().getFunction().apply(new double[] {operand});
+        if (Double.isNaN(value)) {
+            throw new NotANumberException("Domain error at node '" + operator + "'");
+        }
+        return value;
+    }
 }
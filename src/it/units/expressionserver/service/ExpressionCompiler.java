@@ -0,0 +1,297 @@
+package it.units.expressionserver.service;
+
+import it.units.expressionserver.domain.expression.nodes.Constant;
+import it.units.expressionserver.domain.expression.nodes.Node;
+import it.units.expressionserver.domain.expression.nodes.Operator;
+import it.units.expressionserver.domain.expression.nodes.Variable;
+import it.units.expressionserver.domain.variablevaluesfunction.VariableValuesFunction;
+import it.units.expressionserver.exceptions.DivisionByZeroException;
+import it.units.expressionserver.exceptions.NotANumberException;
+import it.units.expressionserver.exceptions.VariableValuesFunctionException;
+import it.units.expressionserver.exceptions.ZeroOverZeroException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The ExpressionCompiler turns the tree of an expression into a tree of closures, which evaluates much faster
+ * than the interpreter of the Computer: variables are read from precomputed slots of the tuple instead of
+ * being looked up by name, and operators neither allocate arrays nor box their results.
+ *
+ * Compiled expressions fail exactly where the interpreter fails, with the same messages: children are evaluated
+ * left to right, NaN operands are rejected before divisions are checked, and unknown variables are reported
+ * only when evaluated. Constant subtrees are folded, unless their evaluation fails.
+ * Powers with a constant exponent are specialized: small integer exponents multiply, and the exponent 0.5
+ * takes the square root.
+ */
+class ExpressionCompiler {
+
+    /**
+     * A compiled node, reading the value of the i-th variable of the expression from tuple[slots[i]].
+     */
+    interface CompiledNode {
+        double evaluate(double[] tuple, int[] slots) throws DivisionByZeroException, ZeroOverZeroException, NotANumberException, VariableValuesFunctionException;
+    }
+
+    /**
+     * A compiled expression, not yet bound to the tuples of a VariableValuesFunction.
+     */
+    static class CompiledExpression {
+        private final CompiledNode root;
+        private final List<String> variableNames;
+
+        private CompiledExpression(CompiledNode root, List<String> variableNames) {
+            this.root = root;
+            this.variableNames = variableNames;
+        }
+
+        CompiledNode getRoot() {
+            return root;
+        }
+
+        /**
+         * Finds the slots of the tuples of the given function from which the variables of the expression are read.
+         *
+         * @return the slot of each variable of the expression, -1 for variables without values
+         */
+        int[] bind(VariableValuesFunction variableValuesFunction) {
+            int[] slots = new int[variableNames.size()];
+            for (int i = 0; i < slots.length; i++) {
+                String variableName = variableNames.get(i);
+                slots[i] = variableValuesFunction.hasVariable(variableName) ? variableValuesFunction.getVariableIndex(variableName) : -1;
+            }
+            return slots;
+        }
+    }
+
+    /**
+     * Compiles the tree of an expression.
+     *
+     * @param root the root of the tree
+     * @return the compiled expression
+     */
+    CompiledExpression compile(Node root) {
+        List<String> variableNames = new ArrayList<>();
+        CompiledNode compiledRoot = compileNode(root, variableNames);
+        return new CompiledExpression(compiledRoot, variableNames);
+    }
+
+    private CompiledNode compileNode(Node node, List<String> variableNames) {
+        if (node instanceof Constant) {
+            return new ConstantNode(((Constant) node).getValue());
+        }
+        if (node instanceof Variable) {
+            String variableName = ((Variable) node).getName();
+            int variable = variableNames.indexOf(variableName);
+            if (variable < 0) {
+                variable = variableNames.size();
+                variableNames.add(variableName);
+            }
+            int slotIndex = variable;
+            return (tuple, slots) -> {
+                int slot = slots[slotIndex];
+                if (slot < 0) {
+                    throw new VariableValuesFunctionException("Invalid variable '" + variableName + "'");
+                }
+                return tuple[slot];
+            };
+        }
+        Operator operator = (Operator) node;
+        if (operator.getType().isUnary()) {
+            CompiledNode operand = compileNode(operator.getChildren().get(0), variableNames);
+            CompiledNode compiled = compileFunction(operator, operand);
+            if (operand instanceof ConstantNode) {
+                try {
+                    return new ConstantNode(compiled.evaluate(null, null));
+                } catch (NotANumberException e) {
+                    // The error is raised whenever the subtree is evaluated, as the interpreter does
+                }
+            }
+            return compiled;
+        }
+        CompiledNode left = compileNode(operator.getChildren().get(0), variableNames);
+        CompiledNode right = compileNode(operator.getChildren().get(1), variableNames);
+        CompiledNode compiled = compileOperator(operator, left, right);
+        if (left instanceof ConstantNode && right instanceof ConstantNode) {
+            try {
+                return new ConstantNode(compiled.evaluate(null, null));
+            } catch (DivisionByZeroException | ZeroOverZeroException | NotANumberException e) {
+                // The error is raised whenever the subtree is evaluated, as the interpreter does
+            }
+        }
+        return compiled;
+    }
+
+    private static CompiledNode compileOperator(Operator operator, CompiledNode left, CompiledNode right) {
+        switch (operator.getType()) {
+            case SUM:
+                return (tuple, slots) -> {
+                    double a = left.evaluate(tuple, slots);
+                    double b = right.evaluate(tuple, slots);
+                    checkOperands(a, b);
+                    return a + b;
+                };
+            case SUBTRACTION:
+                return (tuple, slots) -> {
+                    double a = left.evaluate(tuple, slots);
+                    double b = right.evaluate(tuple, slots);
+                    checkOperands(a, b);
+                    return a - b;
+                };
+            case MULTIPLICATION:
+                return (tuple, slots) -> {
+                    double a = left.evaluate(tuple, slots);
+                    double b = right.evaluate(tuple, slots);
+                    checkOperands(a, b);
+                    return a * b;
+                };
+            case DIVISION: {
+                String nodeString = operator.toString();
+                return (tuple, slots) -> {
+                    double a = left.evaluate(tuple, slots);
+                    double b = right.evaluate(tuple, slots);
+                    checkOperands(a, b);
+                    if (b == 0) {
+                        if (a == 0) {
+                            throw new ZeroOverZeroException("Undefined result at node '" + nodeString + "'");
+                        }
+                        throw new DivisionByZeroException("Division by zero at node '" + nodeString + "'");
+                    }
+                    return a / b;
+                };
+            }
+            case POWER:
+                if (right instanceof ConstantNode) {
+                    return compilePower(left, ((ConstantNode) right).value);
+                }
+                return (tuple, slots) -> {
+                    double a = left.evaluate(tuple, slots);
+                    double b = right.evaluate(tuple, slots);
+                    checkOperands(a, b);
+                    return Operator.power(a, b);
+                };
+            default:
+                throw new IllegalArgumentException("Unknown operator: " + operator.getType());
+        }
+    }
+
+    private static CompiledNode compilePower(CompiledNode base, double exponent) {
+        if (Double.isNaN(exponent)) {
+            return (tuple, slots) -> {
+                checkOperands(base.evaluate(tuple, slots), exponent);
+                return Double.NaN;
+            };
+        }
+        if (exponent == 2) {
+            return (tuple, slots) -> {
+                double a = base.evaluate(tuple, slots);
+                checkOperand(a);
+                return a * a;
+            };
+        }
+        if (exponent == 3) {
+            return (tuple, slots) -> {
+                double a = base.evaluate(tuple, slots);
+                checkOperand(a);
+                return a * a * a;
+            };
+        }
+        if (exponent == 0.5) {
+            return (tuple, slots) -> {
+                double a = base.evaluate(tuple, slots);
+                checkOperand(a);
+                return Operator.sqrt(a);
+            };
+        }
+        return (tuple, slots) -> {
+            double a = base.evaluate(tuple, slots);
+            checkOperand(a);
+            return Operator.power(a, exponent);
+        };
+    }
+
+    /**
+     * Compiles a unary function, which fails where it is undefined, as the interpreter does.
+     */
+    private static CompiledNode compileFunction(Operator operator, CompiledNode operand) {
+        String nodeString = operator.toString();
+        switch (operator.getType()) {
+            case NEGATION:
+                return (tuple, slots) -> {
+                    double a = operand.evaluate(tuple, slots);
+                    checkOperand(a);
+                    return -a;
+                };
+            case ABS:
+                return (tuple, slots) -> {
+                    double a = operand.evaluate(tuple, slots);
+                    checkOperand(a);
+                    return Math.abs(a);
+                };
+            case EXP:
+                return (tuple, slots) -> {
+                    double a = operand.evaluate(tuple, slots);
+                    checkOperand(a);
+                    return Math.exp(a);
+                };
+            case SQRT:
+                return (tuple, slots) -> {
+                    double a = operand.evaluate(tuple, slots);
+                    checkOperand(a);
+                    return checkDomain(Math.sqrt(a), nodeString);
+                };
+            case LOG:
+                return (tuple, slots) -> {
+                    double a = operand.evaluate(tuple, slots);
+                    checkOperand(a);
+                    return checkDomain(Math.log(a), nodeString);
+                };
+            case SIN:
+                return (tuple, slots) -> {
+                    double a = operand.evaluate(tuple, slots);
+                    checkOperand(a);
+                    return checkDomain(Math.sin(a), nodeString);
+                };
+            case COS:
+                return (tuple, slots) -> {
+                    double a = operand.evaluate(tuple, slots);
+                    checkOperand(a);
+                    return checkDomain(Math.cos(a), nodeString);
+                };
+            default:
+                throw new IllegalArgumentException("Unknown function: " + operator.getType());
+        }
+    }
+
+    private static void checkOperand(double a) throws NotANumberException {
+        if (Double.isNaN(a)) {
+            throw new NotANumberException("NaN obtained during computation");
+        }
+    }
+
+    private static double checkDomain(double value, String nodeString) throws NotANumberException {
+        if (Double.isNaN(value)) {
+            throw new NotANumberException("Domain error at node '" + nodeString + "'");
+        }
+        return value;
+    }
+
+    private static void checkOperands(double a, double b) throws NotANumberException {
+        if (Double.isNaN(a) || Double.isNaN(b)) {
+            throw new NotANumberException("NaN obtained during computation");
+        }
+    }
+
+    private static class ConstantNode implements CompiledNode {
+        private final double value;
+
+        private ConstantNode(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double evaluate(double[] tuple, int[] slots) {
+            return value;
+        }
+    }
+}
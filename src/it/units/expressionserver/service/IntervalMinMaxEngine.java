@@ -0,0 +1,271 @@
+package it.units.expressionserver.service;
+
+import it.units.expressionserver.domain.expression.Expression;
+import it.units.expressionserver.domain.expression.nodes.Node;
+import it.units.expressionserver.domain.expression.nodes.Variable;
+import it.units.expressionserver.domain.variablevaluesfunction.VariableValuesFunction;
+import it.units.expressionserver.service.analysis.Interval;
+import it.units.expressionserver.service.analysis.IntervalEvaluator;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.OptionalDouble;
+
+/**
+ * The IntervalMinMaxEngine computes MIN and MAX over a GRID with a branch-and-bound search.
+ * The grid is recursively split into sub-grids (boxes of value indexes); the expressions are bounded over
+ * each box with interval arithmetic, and boxes whose bound cannot beat the best value found so far are pruned.
+ * Only the grid points of the surviving small boxes are actually evaluated.
+ *
+ * Boxes in which an expression may fail or give NaN are never pruned. If the evaluation of a grid point fails,
+ * the search is abandoned, so that the caller can enumerate the grid and report the very same error that
+ * the exhaustive computation reports.
+ */
+class IntervalMinMaxEngine {
+
+    private static final long LEAF_TUPLES = 64;
+    private static final double UNBOUNDED = Double.NEGATIVE_INFINITY;
+
+    private final Computer computer;
+
+    IntervalMinMaxEngine(Computer computer) {
+        this.computer = computer;
+    }
+
+    /**
+     * Computes the minimum of the expressions over all the tuples of the grid.
+     *
+     * @return the minimum (+Infinity if every value is NaN), or an empty optional if the grid must be enumerated
+     */
+    OptionalDouble computeMin(VariableValuesFunction variableValuesFunction, List<Expression> expressions) {
+        return search(variableValuesFunction, expressions, false);
+    }
+
+    /**
+     * Computes the maximum of the expressions over all the tuples of the grid.
+     *
+     * @return the maximum (-Infinity if every value is NaN), or an empty optional if the grid must be enumerated
+     */
+    OptionalDouble computeMax(VariableValuesFunction variableValuesFunction, List<Expression> expressions) {
+        OptionalDouble negatedMax = search(variableValuesFunction, expressions, true);
+        return negatedMax.isPresent() ? OptionalDouble.of(-negatedMax.getAsDouble()) : negatedMax;
+    }
+
+    /**
+     * Searches the minimum of the expressions (of their opposite, if maximizing).
+     */
+    private OptionalDouble search(VariableValuesFunction variableValuesFunction, List<Expression> expressions, boolean maximize) {
+        int variables = variableValuesFunction.getVariables().size();
+        boolean[] used = findUsedVariables(variableValuesFunction, expressions);
+        Search search = new Search(variableValuesFunction, expressions, maximize);
+
+        int[] first = new int[variables];
+        int[] last = new int[variables];
+        for (int i = 0; i < variables; i++) {
+            // Unused variables do not change the values of the expressions: their first value represents them all
+            last[i] = used[i] ? variableValuesFunction.getValueCount(i) - 1 : 0;
+        }
+        Deque<Box> boxes = new ArrayDeque<>();
+        boxes.push(new Box(first, last, search.bound(first, last)));
+
+        while (!boxes.isEmpty()) {
+            Box box = boxes.pop();
+            if (search.canPrune(box.bound)) {
+                continue;
+            }
+            if (countTuples(box.from, box.to) <= LEAF_TUPLES) {
+                try {
+                    search.enumerate(box.from, box.to);
+                } catch (RuntimeException e) {
+                    return OptionalDouble.empty();
+                }
+                continue;
+            }
+            // Split the box in halves along its widest side, exploring first the most promising half
+            int side = widestSide(box.from, box.to);
+            int middle = box.from[side] + (box.to[side] - box.from[side]) / 2;
+            int[] lowerHalfTo = box.to.clone();
+            lowerHalfTo[side] = middle;
+            int[] upperHalfFrom = box.from.clone();
+            upperHalfFrom[side] = middle + 1;
+            Box lowerHalf = new Box(box.from, lowerHalfTo, search.bound(box.from, lowerHalfTo));
+            Box upperHalf = new Box(upperHalfFrom, box.to, search.bound(upperHalfFrom, box.to));
+            if (lowerHalf.bound <= upperHalf.bound) {
+                boxes.push(upperHalf);
+                boxes.push(lowerHalf);
+            } else {
+                boxes.push(lowerHalf);
+                boxes.push(upperHalf);
+            }
+        }
+        return OptionalDouble.of(search.best);
+    }
+
+    private static boolean[] findUsedVariables(VariableValuesFunction variableValuesFunction, List<Expression> expressions) {
+        boolean[] used = new boolean[variableValuesFunction.getVariables().size()];
+        for (Expression expression : expressions) {
+            markUsedVariables(expression.getRoot(), variableValuesFunction, used);
+        }
+        return used;
+    }
+
+    private static void markUsedVariables(Node node, VariableValuesFunction variableValuesFunction, boolean[] used) {
+        if (node instanceof Variable) {
+            String variableName = ((Variable) node).getName();
+            if (variableValuesFunction.hasVariable(variableName)) {
+                used[variableValuesFunction.getVariableIndex(variableName)] = true;
+            }
+        }
+        for (Node child : node.getChildren()) {
+            markUsedVariables(child, variableValuesFunction, used);
+        }
+    }
+
+    private static long countTuples(int[] from, int[] to) {
+        long count = 1;
+        for (int i = 0; i < from.length; i++) {
+            count *= to[i] - from[i] + 1;
+            if (count > LEAF_TUPLES) {
+                return count;
+            }
+        }
+        return count;
+    }
+
+    private static int widestSide(int[] from, int[] to) {
+        int side = 0;
+        for (int i = 1; i < from.length; i++) {
+            if (to[i] - from[i] > to[side] - from[side]) {
+                side = i;
+            }
+        }
+        return side;
+    }
+
+    /**
+     * A box of the grid: for each variable, the range of indexes from[i]..to[i] (both included) of its values.
+     */
+    private static class Box {
+        private final int[] from;
+        private final int[] to;
+        private final double bound;
+
+        private Box(int[] from, int[] to, double bound) {
+            this.from = from;
+            this.to = to;
+            this.bound = bound;
+        }
+    }
+
+    /**
+     * The state of a search: the best value found so far, and the position of its first occurrence
+     * in the order in which the exhaustive computation evaluates tuples and expressions.
+     * The position tells apart zeros of different sign, which compare as equal:
+     * as in the exhaustive computation, the first one found wins.
+     */
+    private class Search {
+        private final VariableValuesFunction variableValuesFunction;
+        private final List<Expression> expressions;
+        private final boolean maximize;
+        private final IntervalEvaluator intervalEvaluator;
+        private final double[] lowers;
+        private final double[] uppers;
+        private final double[] tuple;
+        private final long[] strides;
+        private double best = Double.POSITIVE_INFINITY;
+        private long bestTupleIndex = Long.MAX_VALUE;
+        private int bestExpressionIndex = Integer.MAX_VALUE;
+
+        private Search(VariableValuesFunction variableValuesFunction, List<Expression> expressions, boolean maximize) {
+            int variables = variableValuesFunction.getVariables().size();
+            this.variableValuesFunction = variableValuesFunction;
+            this.expressions = expressions;
+            this.maximize = maximize;
+            this.intervalEvaluator = new IntervalEvaluator(variableValuesFunction);
+            this.lowers = new double[variables];
+            this.uppers = new double[variables];
+            this.tuple = new double[variables];
+            this.strides = new long[variables];
+            long stride = 1;
+            for (int i = variables - 1; i >= 0; i--) {
+                strides[i] = stride;
+                stride *= variableValuesFunction.getValueCount(i);
+            }
+        }
+
+        /**
+         * Bounds from below the values of the expressions (of their opposite, if maximizing) over a box.
+         *
+         * @return the bound, or UNBOUNDED if some expression may fail or give NaN within the box
+         */
+        private double bound(int[] from, int[] to) {
+            for (int i = 0; i < from.length; i++) {
+                lowers[i] = variableValuesFunction.getValue(i, from[i]);
+                uppers[i] = variableValuesFunction.getValue(i, to[i]);
+            }
+            double bound = Double.POSITIVE_INFINITY;
+            for (Expression expression : expressions) {
+                Interval interval = intervalEvaluator.evaluate(expression.getRoot(), lowers, uppers);
+                if (!interval.isBounded()) {
+                    return UNBOUNDED;
+                }
+                bound = Math.min(bound, maximize ? -interval.getUpper() : interval.getLower());
+            }
+            return bound;
+        }
+
+        /**
+         * Checks whether a box with the given bound cannot change the result of the search.
+         * Boxes that are not bounded may raise errors, and are never pruned.
+         */
+        private boolean canPrune(double bound) {
+            if (bound == UNBOUNDED) {
+                return false;
+            }
+            // A box bounded by a zero may still contain an earlier zero of the other sign
+            return bound > best || (bound == best && best != 0);
+        }
+
+        /**
+         * Evaluates the expressions on every grid point of a box, updating the best value.
+         * NaN values are ignored, as the exhaustive computation does.
+         */
+        private void enumerate(int[] from, int[] to) {
+            int[] positions = from.clone();
+            long tupleIndex = 0;
+            for (int i = 0; i < positions.length; i++) {
+                tuple[i] = variableValuesFunction.getValue(i, positions[i]);
+                tupleIndex += positions[i] * strides[i];
+            }
+            while (true) {
+                for (int e = 0; e < expressions.size(); e++) {
+                    double value = computer.evaluateExpression(expressions.get(e), variableValuesFunction, tuple);
+                    value = maximize ? -value : value;
+                    if (value < best || (value == best && isBefore(tupleIndex, e))) {
+                        best = value;
+                        bestTupleIndex = tupleIndex;
+                        bestExpressionIndex = e;
+                    }
+                }
+                int i = positions.length - 1;
+                while (i >= 0 && positions[i] == to[i]) {
+                    tupleIndex -= (positions[i] - from[i]) * strides[i];
+                    positions[i] = from[i];
+                    tuple[i] = variableValuesFunction.getValue(i, positions[i]);
+                    i--;
+                }
+                if (i < 0) {
+                    return;
+                }
+                positions[i]++;
+                tupleIndex += strides[i];
+                tuple[i] = variableValuesFunction.getValue(i, positions[i]);
+            }
+        }
+
+        private boolean isBefore(long tupleIndex, int expressionIndex) {
+            return tupleIndex < bestTupleIndex || (tupleIndex == bestTupleIndex && expressionIndex < bestExpressionIndex);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package it.units.expressionserver.service;
+
+import it.units.expressionserver.domain.expression.nodes.Node;
+import it.units.expressionserver.domain.variablevaluesfunction.VariableValues;
+import it.units.expressionserver.domain.variablevaluesfunction.VariableValuesFunction;
+import it.units.expressionserver.exceptions.MemoryBudgetExceededException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The MemoryGovernor bounds the memory that concurrent computations take together, so that a few large requests
+ * cannot exhaust the heap and bring the server down for every client.
+ * Before running, each computation reserves its estimated peak footprint from a global budget, and releases it
+ * when it ends. A computation whose reservation does not fit the budget left by the running ones waits for them,
+ * in arrival order and without taking a thread, and is rejected if it waits too long; a computation larger than
+ * the whole budget is rejected at once.
+ * Footprints are estimated from the request alone, before anything is built: the values of the variables,
+ * the columns of values recorded for the column cache, and the expression trees with their compiled forms.
+ * The reserved memory and the counts of the reservations and of the waiting computations are changed under the lock
+ * of the governor, but published through atomics, so that they are read without taking it.
+ */
+public class MemoryGovernor {
+
+    private static final long VALUE_BYTES = Double.BYTES;
+    private static final long NODE_BYTES = 256;
+    private static final long REQUEST_BYTES = 16 * 1024;
+
+    private final long budgetBytes;
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final AtomicInteger reservations = new AtomicInteger();
+    private final AtomicInteger waitingComputations = new AtomicInteger();
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+
+    /**
+     * Constructs a new MemoryGovernor.
+     *
+     * @param budgetBytes the memory that the running computations can take together, in bytes
+     * @throws IllegalArgumentException if the budget is not positive
+     */
+    public MemoryGovernor(long budgetBytes) throws IllegalArgumentException {
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("The memory budget must be positive: " + budgetBytes);
+        }
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Estimates the peak footprint of a computation.
+     *
+     * @param variableValuesList the values of the variables of the computation
+     * @param valuesKind the kind of tuples built from the values
+     * @param roots the roots of the expressions of the computation
+     * @param columnCache the column cache in which the values of the expressions may be recorded
+     * @return the estimated footprint, in bytes
+     */
+    public static long estimateFootprint(List<VariableValues> variableValuesList, VariableValuesFunction.ValuesKind valuesKind,
+                                         List<Node> roots, ColumnCache columnCache) {
+        double valueCount = 0;
+        double tupleCount = valuesKind == VariableValuesFunction.ValuesKind.GRID ? 1 : 0;
+        for (VariableValues variableValues : variableValuesList) {
+            if (variableValues.isDatasetColumn()) {
+                // Dataset columns are read in place from their memory mapping
+                continue;
+            }
+            double count = variableValues.getUpper() < variableValues.getLower() ? 0
+                    : Math.floor((variableValues.getUpper() - variableValues.getLower()) / variableValues.getStep()) + 1;
+            valueCount += count;
+            tupleCount = valuesKind == VariableValuesFunction.ValuesKind.GRID ? tupleCount * count : Math.max(tupleCount, count);
+        }
+        double footprint = REQUEST_BYTES + valueCount * VALUE_BYTES;
+        if (tupleCount <= Long.MAX_VALUE && columnCache.isCacheable((long) tupleCount)) {
+            footprint += roots.size() * tupleCount * VALUE_BYTES;
+        }
+        for (Node root : roots) {
+            footprint += countNodes(root) * NODE_BYTES;
+        }
+        return footprint >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) footprint;
+    }
+
+    private static long countNodes(Node node) {
+        long count = 1;
+        for (Node child : node.getChildren()) {
+            count += countNodes(child);
+        }
+        return count;
+    }
+
+    /**
+     * Reserves memory for a computation, once the running computations release enough of it. Waiting takes no thread:
+     * the reservation is a future, completed by the computation that releases the memory.
+     * Reservations are granted in arrival order, so that large computations are not starved by small ones.
+     * A reservation cancelled while waiting gives its turn to the next computation.
+     *
+     * @param bytes the memory to reserve, in bytes
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return the future reservation, to be closed when the computation ends, which fails with a
+     *         MemoryBudgetExceededException if the memory exceeds the whole budget, or it is not available in time
+     */
+    public CompletableFuture<Reservation> reserve(long bytes, long timeout, TimeUnit unit) {
+        CompletableFuture<Reservation> reservation = new CompletableFuture<>();
+        if (bytes > budgetBytes) {
+            reservation.completeExceptionally(new MemoryBudgetExceededException(String.format("The computation needs an " +
+                    "estimated %d bytes of memory, more than the memory budget of %d bytes.", bytes, budgetBytes)));
+            return reservation;
+        }
+        Waiter waiter = new Waiter(bytes, reservation);
+        synchronized (this) {
+            waiters.add(waiter);
+            waitingComputations.set(waiters.size());
+        }
+        grantReservations();
+        if (!reservation.isDone()) {
+            CompletableFuture.runAsync(() -> expire(waiter, timeout, unit), CompletableFuture.delayedExecutor(timeout, unit));
+            reservation.whenComplete((granted, e) -> {
+                if (reservation.isCancelled()) {
+                    forget(waiter);
+                }
+            });
+        }
+        return reservation;
+    }
+
+    /**
+     * Grants the reservations that fit the budget left, in arrival order. The reservations are completed without
+     * holding the lock of the governor, as completing them submits their computations.
+     */
+    private void grantReservations() {
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            while (!waiters.isEmpty() && reservedBytes.get() + waiters.peekFirst().bytes <= budgetBytes) {
+                Waiter waiter = waiters.removeFirst();
+                reservedBytes.addAndGet(waiter.bytes);
+                reservations.incrementAndGet();
+                granted.add(waiter);
+            }
+            waitingComputations.set(waiters.size());
+        }
+        for (Waiter waiter : granted) {
+            Reservation reservation = new Reservation(waiter.bytes);
+            if (!waiter.reservation.complete(reservation)) {
+                // Cancelled meanwhile
+                reservation.close();
+            }
+        }
+    }
+
+    private void expire(Waiter waiter, long timeout, TimeUnit unit) {
+        if (forget(waiter)) {
+            waiter.reservation.completeExceptionally(new MemoryBudgetExceededException(String.format("The computation " +
+                    "waited more than %d milliseconds for %d bytes of memory.", unit.toMillis(timeout), waiter.bytes)));
+        }
+    }
+
+    /**
+     * Removes a waiting reservation, passing the turn to the next one.
+     *
+     * @return true if the reservation was waiting
+     */
+    private boolean forget(Waiter waiter) {
+        boolean removed;
+        synchronized (this) {
+            removed = waiters.remove(waiter);
+            waitingComputations.set(waiters.size());
+        }
+        if (removed) {
+            grantReservations();
+        }
+        return removed;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    public int getReservations() {
+        return reservations.get();
+    }
+
+    /**
+     * Counts the computations waiting for memory.
+     */
+    public int getWaitingComputations() {
+        return waitingComputations.get();
+    }
+
+    /**
+     * A computation waiting for its reservation.
+     */
+    private static class Waiter {
+        private final long bytes;
+        private final CompletableFuture<Reservation> reservation;
+
+        private Waiter(long bytes, CompletableFuture<Reservation> reservation) {
+            this.bytes = bytes;
+            this.reservation = reservation;
+        }
+    }
+
+    /**
+     * The memory reserved by a running computation.
+     */
+    public class Reservation implements AutoCloseable {
+        private final long bytes;
+        private boolean released;
+
+        private Reservation(long bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * Releases the memory, once.
+         */
+        @Override
+        public void close() {
+            synchronized (MemoryGovernor.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                reservedBytes.addAndGet(-bytes);
+                reservations.decrementAndGet();
+            }
+            grantReservations();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package it.units.expressionserver.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Metrics counts the requests handled by the server by kind and outcome, with a histogram of their latencies,
+ * and the errors by type, for the monitoring system to scrape.
+ * Unlike the StatsCollector, the Metrics never locks: requests only add to striped counters, and reading them
+ * sums the stripes, so that scraping never slows down the requests.
+ */
+public class Metrics {
+
+    /**
+     * The outcomes of requests.
+     */
+    public enum Outcome {
+        OK,
+        ERROR,
+        TIMEOUT,
+        REJECTED;
+
+        public String getLabel() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * The upper bounds of the latency buckets, in seconds.
+     */
+    public static final double[] LATENCY_BUCKETS = {0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10, 30, 120};
+
+    private final ConcurrentHashMap<String, KindMetrics> kinds = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    /**
+     * Records a handled request.
+     *
+     * @param kind the kind of the request
+     * @param outcome the outcome of the request
+     * @param errorType the type of the error of the request, or null if it did not fail
+     * @param latencyNanos the time taken to handle the request, in nanoseconds
+     */
+    public void recordRequest(String kind, Outcome outcome, String errorType, long latencyNanos) {
+        kinds.computeIfAbsent(kind, k -> new KindMetrics()).record(outcome, latencyNanos);
+        if (errorType != null) {
+            errors.computeIfAbsent(errorType, t -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Forgets all the requests recorded so far.
+     */
+    public void reset() {
+        kinds.clear();
+        errors.clear();
+    }
+
+    /**
+     * Gets the metrics of each kind of request, in kind order.
+     */
+    public Map<String, KindMetrics> getKinds() {
+        return new TreeMap<>(kinds);
+    }
+
+    /**
+     * Gets the number of errors of each type, in type order.
+     */
+    public Map<String, Long> getErrors() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : errors.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts;
+    }
+
+    /**
+     * The counters of a kind of request.
+     */
+    public static class KindMetrics {
+        private final LongAdder[] outcomes = new LongAdder[Outcome.values().length];
+        private final LongAdder[] buckets = new LongAdder[LATENCY_BUCKETS.length + 1];
+        private final LongAdder latencyNanos = new LongAdder();
+
+        private KindMetrics() {
+            for (int i = 0; i < outcomes.length; i++) {
+                outcomes[i] = new LongAdder();
+            }
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void record(Outcome outcome, long nanos) {
+            outcomes[outcome.ordinal()].increment();
+            double seconds = nanos / 1_000_000_000.0;
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKETS.length && seconds > LATENCY_BUCKETS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            latencyNanos.add(nanos);
+        }
+
+        public long getCount(Outcome outcome) {
+            return outcomes[outcome.ordinal()].sum();
+        }
+
+        /**
+         * Gets the number of requests in each latency bucket, the last one being the bucket of the latencies
+         * above the largest bound. Counts are not cumulative.
+         */
+        public long[] getBucketCounts() {
+            long[] counts = new long[buckets.length];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets[i].sum();
+            }
+            return counts;
+        }
+
+        public double getLatencySumSeconds() {
+            return latencyNanos.sum() / 1_000_000_000.0;
+        }
+    }
+}
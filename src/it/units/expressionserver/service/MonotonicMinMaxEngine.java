@@ -0,0 +1,82 @@
+package it.units.expressionserver.service;
+
+import it.units.expressionserver.domain.expression.Expression;
+import it.units.expressionserver.domain.variablevaluesfunction.VariableValuesFunction;
+import it.units.expressionserver.service.analysis.MonotonicityAnalyzer;
+
+import java.util.List;
+import java.util.OptionalDouble;
+
+/**
+ * The MonotonicMinMaxEngine computes MIN and MAX over a GRID for expressions that are provably monotonic
+ * in each variable over the box of the grid. The minimum (maximum) of such an expression is attained at the
+ * corner of the box where every variable takes its lowest or highest value, depending on the direction of
+ * monotonicity, so a single tuple per expression is evaluated.
+ *
+ * The analysis fails, and the grid must be evaluated normally, whenever the monotonicity of an expression
+ * cannot be proven or an expression may fail (e.g., a division may hit zero) somewhere in the box.
+ * Zero results are not answered either, as zeros of different sign may be attained at different tuples.
+ */
+class MonotonicMinMaxEngine {
+
+    private final Computer computer;
+
+    MonotonicMinMaxEngine(Computer computer) {
+        this.computer = computer;
+    }
+
+    /**
+     * Computes the minimum of the expressions over all the tuples of the grid.
+     *
+     * @return the minimum, or an empty optional if the grid must be evaluated normally
+     */
+    OptionalDouble computeMin(VariableValuesFunction variableValuesFunction, List<Expression> expressions) {
+        return compute(variableValuesFunction, expressions, false);
+    }
+
+    /**
+     * Computes the maximum of the expressions over all the tuples of the grid.
+     *
+     * @return the maximum, or an empty optional if the grid must be evaluated normally
+     */
+    OptionalDouble computeMax(VariableValuesFunction variableValuesFunction, List<Expression> expressions) {
+        return compute(variableValuesFunction, expressions, true);
+    }
+
+    private OptionalDouble compute(VariableValuesFunction variableValuesFunction, List<Expression> expressions, boolean maximize) {
+        MonotonicityAnalyzer monotonicityAnalyzer = new MonotonicityAnalyzer(variableValuesFunction);
+        int variables = variableValuesFunction.getVariables().size();
+        double[][] corners = new double[expressions.size()][variables];
+        for (int e = 0; e < expressions.size(); e++) {
+            MonotonicityAnalyzer.Monotonicity[] monotonicities = monotonicityAnalyzer.analyze(expressions.get(e).getRoot());
+            if (monotonicities == null) {
+                return OptionalDouble.empty();
+            }
+            for (int i = 0; i < variables; i++) {
+                boolean lowest;
+                switch (monotonicities[i]) {
+                    case CONSTANT:
+                    case INCREASING:
+                        lowest = !maximize;
+                        break;
+                    case DECREASING:
+                        lowest = maximize;
+                        break;
+                    default:
+                        return OptionalDouble.empty();
+                }
+                corners[e][i] = variableValuesFunction.getValue(i, lowest ? 0 : variableValuesFunction.getValueCount(i) - 1);
+            }
+        }
+
+        double result = maximize ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        for (int e = 0; e < expressions.size(); e++) {
+            double value = computer.evaluateExpression(expressions.get(e), variableValuesFunction, corners[e]);
+            result = maximize ? Math.max(result, value) : Math.min(result, value);
+        }
+        if (result == 0) {
+            return OptionalDouble.empty();
+        }
+        return OptionalDouble.of(result);
+    }
+}
@@ -0,0 +1,99 @@
+package it.units.expressionserver.service;
+
+import it.units.expressionserver.domain.expression.Expression;
+import it.units.expressionserver.domain.expression.nodes.Node;
+import it.units.expressionserver.domain.variablevaluesfunction.VariableValuesFunction;
+import it.units.expressionserver.service.analysis.IntervalEvaluator;
+import it.units.expressionserver.service.analysis.Polynomial;
+
+import java.util.List;
+import java.util.OptionalDouble;
+
+/**
+ * The PolynomialAvgEngine computes AVG over a GRID in closed form for expressions that are polynomials in their
+ * variables, without evaluating any tuple. The expression is expanded into a sparse polynomial, and since every tuple
+ * of a grid combines every value of each variable, the mean of each monomial is the product of the means of
+ * the powers of its variables over their values: the cost grows with the number of values of each variable,
+ * not with their product.
+ *
+ * The analysis fails, and the grid must be evaluated normally, whenever the expression is not a polynomial, its
+ * expansion has too many terms or too high a degree, some node may overflow somewhere in the box of the grid, which
+ * would make the evaluation fail, or the terms of the mean cancel out so much that its rounding error could show.
+ */
+class PolynomialAvgEngine {
+
+    /**
+     * The maximum number of terms of the expansion of an expression, and of each of its subtrees.
+     */
+    static final int MAX_TERMS = 4096;
+    /**
+     * The maximum exponent of a variable in the expansion of an expression.
+     */
+    static final int MAX_DEGREE = 64;
+    /**
+     * The maximum rounding error of the mean, relative to the mean or to 1, whichever is larger.
+     */
+    private static final double MAX_RELATIVE_ERROR = 1e-12;
+
+    /**
+     * Computes the average of the first expression over all the tuples of the grid.
+     *
+     * @return the average, or an empty optional if the grid must be evaluated normally
+     */
+    OptionalDouble computeAvg(VariableValuesFunction variableValuesFunction, List<Expression> expressions) {
+        Node root = expressions.get(0).getRoot();
+        int variables = variableValuesFunction.getVariables().size();
+        double[] lowers = new double[variables];
+        double[] uppers = new double[variables];
+        double[] centers = new double[variables];
+        for (int i = 0; i < variables; i++) {
+            int valueCount = variableValuesFunction.getValueCount(i);
+            lowers[i] = variableValuesFunction.getValue(i, 0);
+            uppers[i] = variableValuesFunction.getValue(i, valueCount - 1);
+            double sum = 0;
+            for (int v = 0; v < valueCount; v++) {
+                sum += variableValuesFunction.getValue(i, v);
+            }
+            centers[i] = sum / valueCount;
+        }
+        // Every node is finite on every tuple, hence the evaluation cannot fail
+        if (!new IntervalEvaluator(variableValuesFunction).evaluate(root, lowers, uppers).isBounded()) {
+            return OptionalDouble.empty();
+        }
+        Polynomial polynomial = Polynomial.expand(root, variableValuesFunction, centers, MAX_TERMS, MAX_DEGREE);
+        if (polynomial == null) {
+            return OptionalDouble.empty();
+        }
+
+        double[][] offsetPowerMeans = new double[variables][];
+        double[][] offsetAbsolutePowerMeans = new double[variables][];
+        for (int i = 0; i < variables; i++) {
+            int degree = polynomial.getDegree(i);
+            offsetPowerMeans[i] = new double[degree + 1];
+            offsetAbsolutePowerMeans[i] = new double[degree + 1];
+            int valueCount = variableValuesFunction.getValueCount(i);
+            for (int v = 0; v < valueCount; v++) {
+                double offset = variableValuesFunction.getValue(i, v) - centers[i];
+                double power = 1;
+                for (int p = 0; p <= degree; p++) {
+                    offsetPowerMeans[i][p] += power;
+                    offsetAbsolutePowerMeans[i][p] += Math.abs(power);
+                    power *= offset;
+                }
+            }
+            for (int p = 0; p <= degree; p++) {
+                offsetPowerMeans[i][p] /= valueCount;
+                offsetAbsolutePowerMeans[i][p] /= valueCount;
+            }
+        }
+
+        double mean = polynomial.mean(offsetPowerMeans);
+        double absoluteMean = polynomial.absoluteMean(offsetAbsolutePowerMeans);
+        double roundingError = absoluteMean * (polynomial.getTermCount() + MAX_DEGREE) * Math.ulp(1.0);
+        if (!Double.isFinite(mean) || !Double.isFinite(absoluteMean)
+                || roundingError > MAX_RELATIVE_ERROR * Math.max(1, Math.abs(mean))) {
+            return OptionalDouble.empty();
+        }
+        return OptionalDouble.of(mean);
+    }
+}
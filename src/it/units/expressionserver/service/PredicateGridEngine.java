@@ -0,0 +1,251 @@
+package it.units.expressionserver.service;
+
+import it.units.expressionserver.domain.expression.Expression;
+import it.units.expressionserver.domain.expression.nodes.Node;
+import it.units.expressionserver.domain.expression.nodes.Variable;
+import it.units.expressionserver.domain.variablevaluesfunction.VariableValuesFunction;
+import it.units.expressionserver.service.analysis.Interval;
+import it.units.expressionserver.service.analysis.IntervalEvaluator;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.OptionalLong;
+
+/**
+ * The PredicateGridEngine computes COUNT_IF, ANY and ALL over a GRID with a branch-and-bound search, as the
+ * IntervalMinMaxEngine does for MIN and MAX: the grid is recursively split into boxes, and the expression is
+ * bounded over each box with interval arithmetic.
+ * A box in which the predicate holds for no tuple is skipped, and a box in which it holds for every tuple is
+ * counted at once, or gives a witness at once. When searching a witness, the most promising half of each box is
+ * explored first, e.g., the half with the highest upper bound for a predicate such as {@code >t}, so that
+ * witnesses are usually found after exploring a small part of the grid.
+ *
+ * Only bounded boxes, in which the expression can neither fail nor give NaN, are skipped or counted at once.
+ * If the evaluation of a grid point fails, the search is abandoned, so that the caller can scan the tuples
+ * in order and report the very same error that the scan reports.
+ */
+class PredicateGridEngine {
+
+    private static final long LEAF_TUPLES = 64;
+
+    private final Computer computer;
+
+    PredicateGridEngine(Computer computer) {
+        this.computer = computer;
+    }
+
+    /**
+     * Searches a tuple of the grid on which the expression satisfies the predicate.
+     *
+     * @return the index of the tuple, -1 if there is none, or an empty optional if the tuples must be scanned
+     */
+    OptionalLong findWitness(VariableValuesFunction variableValuesFunction, Expression expression, ThresholdPredicate predicate) {
+        return new Search(variableValuesFunction, expression, predicate, false).run();
+    }
+
+    /**
+     * Counts the tuples of the grid on which the expression satisfies the predicate.
+     *
+     * @return the count, or an empty optional if the tuples must be scanned
+     */
+    OptionalLong count(VariableValuesFunction variableValuesFunction, Expression expression, ThresholdPredicate predicate) {
+        return new Search(variableValuesFunction, expression, predicate, true).run();
+    }
+
+    private static void markUsedVariables(Node node, VariableValuesFunction variableValuesFunction, boolean[] used) {
+        if (node instanceof Variable) {
+            String variableName = ((Variable) node).getName();
+            if (variableValuesFunction.hasVariable(variableName)) {
+                used[variableValuesFunction.getVariableIndex(variableName)] = true;
+            }
+        }
+        for (Node child : node.getChildren()) {
+            markUsedVariables(child, variableValuesFunction, used);
+        }
+    }
+
+    private static long countTuples(int[] from, int[] to) {
+        long count = 1;
+        for (int i = 0; i < from.length; i++) {
+            count *= to[i] - from[i] + 1;
+        }
+        return count;
+    }
+
+    private static int widestSide(int[] from, int[] to) {
+        int side = 0;
+        for (int i = 1; i < from.length; i++) {
+            if (to[i] - from[i] > to[side] - from[side]) {
+                side = i;
+            }
+        }
+        return side;
+    }
+
+    /**
+     * A box of the grid: for each variable, the range of indexes from[i]..to[i] (both included) of its values.
+     */
+    private static class Box {
+        private final int[] from;
+        private final int[] to;
+        private final Interval interval;
+
+        private Box(int[] from, int[] to, Interval interval) {
+            this.from = from;
+            this.to = to;
+            this.interval = interval;
+        }
+    }
+
+    /**
+     * The state of a search: the number of tuples satisfying the predicate found so far.
+     * Variables that the expression does not use are fixed to their first value, which represents them all:
+     * each tuple of a box then stands for as many tuples as the combinations of the values of those variables.
+     */
+    private class Search {
+        private final VariableValuesFunction variableValuesFunction;
+        private final Expression expression;
+        private final ThresholdPredicate predicate;
+        private final boolean counting;
+        private final IntervalEvaluator intervalEvaluator;
+        private final double[] lowers;
+        private final double[] uppers;
+        private final double[] tuple;
+        private final long[] strides;
+        private final int[] last;
+        private long multiplicity;
+        private long count;
+
+        private Search(VariableValuesFunction variableValuesFunction, Expression expression, ThresholdPredicate predicate, boolean counting) {
+            int variables = variableValuesFunction.getVariables().size();
+            this.variableValuesFunction = variableValuesFunction;
+            this.expression = expression;
+            this.predicate = predicate;
+            this.counting = counting;
+            this.intervalEvaluator = new IntervalEvaluator(variableValuesFunction);
+            this.lowers = new double[variables];
+            this.uppers = new double[variables];
+            this.tuple = new double[variables];
+            this.strides = new long[variables];
+            this.last = new int[variables];
+            boolean[] used = new boolean[variables];
+            markUsedVariables(expression.getRoot(), variableValuesFunction, used);
+            long stride = 1;
+            multiplicity = 1;
+            for (int i = variables - 1; i >= 0; i--) {
+                strides[i] = stride;
+                int valueCount = variableValuesFunction.getValueCount(i);
+                stride *= valueCount;
+                if (used[i]) {
+                    last[i] = valueCount - 1;
+                } else {
+                    multiplicity *= valueCount;
+                }
+            }
+        }
+
+        /**
+         * Runs the search.
+         *
+         * @return the count, or the index of the witness (-1 if none), or an empty optional if an evaluation failed
+         */
+        private OptionalLong run() {
+            int[] first = new int[last.length];
+            Deque<Box> boxes = new ArrayDeque<>();
+            boxes.push(new Box(first, last, bound(first, last)));
+
+            while (!boxes.isEmpty()) {
+                Box box = boxes.pop();
+                if (predicate.holdsForNone(box.interval)) {
+                    continue;
+                }
+                if (predicate.holdsForAll(box.interval)) {
+                    if (!counting) {
+                        return OptionalLong.of(tupleIndex(box.from));
+                    }
+                    count += countTuples(box.from, box.to) * multiplicity;
+                    continue;
+                }
+                if (countTuples(box.from, box.to) <= LEAF_TUPLES) {
+                    long witness;
+                    try {
+                        witness = enumerate(box.from, box.to);
+                    } catch (RuntimeException e) {
+                        return OptionalLong.empty();
+                    }
+                    if (witness >= 0) {
+                        return OptionalLong.of(witness);
+                    }
+                    continue;
+                }
+                // Split the box in halves along its widest side, exploring first the most promising half
+                int side = widestSide(box.from, box.to);
+                int middle = box.from[side] + (box.to[side] - box.from[side]) / 2;
+                int[] lowerHalfTo = box.to.clone();
+                lowerHalfTo[side] = middle;
+                int[] upperHalfFrom = box.from.clone();
+                upperHalfFrom[side] = middle + 1;
+                Box lowerHalf = new Box(box.from, lowerHalfTo, bound(box.from, lowerHalfTo));
+                Box upperHalf = new Box(upperHalfFrom, box.to, bound(upperHalfFrom, box.to));
+                if (predicate.promise(lowerHalf.interval) >= predicate.promise(upperHalf.interval)) {
+                    boxes.push(upperHalf);
+                    boxes.push(lowerHalf);
+                } else {
+                    boxes.push(lowerHalf);
+                    boxes.push(upperHalf);
+                }
+            }
+            return OptionalLong.of(counting ? count : -1);
+        }
+
+        private Interval bound(int[] from, int[] to) {
+            for (int i = 0; i < from.length; i++) {
+                lowers[i] = variableValuesFunction.getValue(i, from[i]);
+                uppers[i] = variableValuesFunction.getValue(i, to[i]);
+            }
+            return intervalEvaluator.evaluate(expression.getRoot(), lowers, uppers);
+        }
+
+        private long tupleIndex(int[] positions) {
+            long tupleIndex = 0;
+            for (int i = 0; i < positions.length; i++) {
+                tupleIndex += positions[i] * strides[i];
+            }
+            return tupleIndex;
+        }
+
+        /**
+         * Evaluates the expression on every grid point of a box, counting the tuples satisfying the predicate.
+         *
+         * @return the index of the first tuple of the box satisfying the predicate when searching a witness, or -1
+         */
+        private long enumerate(int[] from, int[] to) {
+            int[] positions = from.clone();
+            long tupleIndex = tupleIndex(positions);
+            for (int i = 0; i < positions.length; i++) {
+                tuple[i] = variableValuesFunction.getValue(i, positions[i]);
+            }
+            while (true) {
+                if (predicate.test(computer.evaluateExpression(expression, variableValuesFunction, tuple))) {
+                    if (!counting) {
+                        return tupleIndex;
+                    }
+                    count += multiplicity;
+                }
+                int i = positions.length - 1;
+                while (i >= 0 && positions[i] == to[i]) {
+                    tupleIndex -= (positions[i] - from[i]) * strides[i];
+                    positions[i] = from[i];
+                    tuple[i] = variableValuesFunction.getValue(i, positions[i]);
+                    i--;
+                }
+                if (i < 0) {
+                    return -1;
+                }
+                positions[i]++;
+                tupleIndex += strides[i];
+                tuple[i] = variableValuesFunction.getValue(i, positions[i]);
+            }
+        }
+    }
+}
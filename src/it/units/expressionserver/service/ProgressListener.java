@@ -0,0 +1,26 @@
+package it.units.expressionserver.service;
+
+/**
+ * A ProgressListener is notified by the Computer, at regular intervals, of the partial aggregates
+ * of a computation that evaluates the expressions on every tuple.
+ * The partial aggregates are those of the tuples processed so far, in the order in which tuples are enumerated.
+ */
+public interface ProgressListener {
+
+    /**
+     * The listener of computations whose progress is not reported.
+     */
+    ProgressListener NONE = (processedTuples, tupleCount, min, max, avg) -> true;
+
+    /**
+     * Notifies the progress of a computation.
+     *
+     * @param processedTuples the number of tuples processed so far
+     * @param tupleCount the total number of tuples
+     * @param min the minimum value found so far, as MIN computes it
+     * @param max the maximum value found so far, as MAX computes it
+     * @param avg the average of the values of the first expression found so far
+     * @return true to continue the computation, false to cancel it
+     */
+    boolean onProgress(long processedTuples, long tupleCount, double min, double max, double avg);
+}
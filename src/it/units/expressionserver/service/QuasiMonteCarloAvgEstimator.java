@@ -0,0 +1,145 @@
+package it.units.expressionserver.service;
+
+import it.units.expressionserver.domain.expression.Expression;
+import it.units.expressionserver.domain.variablevaluesfunction.VariableValuesFunction;
+import it.units.expressionserver.exceptions.DivisionByZeroException;
+import it.units.expressionserver.exceptions.NotANumberException;
+import it.units.expressionserver.exceptions.ZeroOverZeroException;
+
+import java.util.SplittableRandom;
+
+/**
+ * The QuasiMonteCarloAvgEstimator estimates the average of an expression over the tuples of a VariableValuesFunction
+ * by sampling them with randomized quasi-Monte-Carlo.
+ *
+ * The index space of the tuples (one axis per variable for a GRID, a single axis for a LIST) is sampled with
+ * the R_d low-discrepancy sequence, whose points cover the space far more evenly than random points do.
+ * The sequence is replicated with independent random shifts (modulo 1), so that the replicate means are
+ * independent, unbiased estimates of the average: their spread gives a Student's t confidence interval.
+ * The number of points of each replicate is doubled until the requested relative error or the time budget is reached.
+ */
+class QuasiMonteCarloAvgEstimator {
+
+    private static final int REPLICATES = 10;
+    // The 97.5% quantile of Student's t distribution with REPLICATES - 1 degrees of freedom, for 95% confidence
+    private static final double T_QUANTILE = 2.262;
+    private static final long INITIAL_POINTS = 64;
+    private static final long DEADLINE_CHECK_POINTS = 256;
+
+    private final Computer computer;
+
+    QuasiMonteCarloAvgEstimator(Computer computer) {
+        this.computer = computer;
+    }
+
+    /**
+     * Estimates the average of an expression over the tuples of a function.
+     *
+     * @param variableValuesFunction the function providing the tuples of variable values
+     * @param expression the expression to average
+     * @param relativeError the relative half-width of the confidence interval at which sampling stops
+     * @param deadline the value of {@link System#nanoTime()} at which sampling stops
+     * @return the estimate, the number of sampled tuples and the half-width of the 95% confidence interval,
+     * or null if sampling would evaluate at least as many tuples as the exact computation
+     */
+    double[] estimate(VariableValuesFunction variableValuesFunction, Expression expression, double relativeError, long deadline) throws DivisionByZeroException, ZeroOverZeroException, NotANumberException {
+        long tupleCount = variableValuesFunction.getTupleCount();
+        if (REPLICATES * INITIAL_POINTS >= tupleCount) {
+            return null;
+        }
+        boolean grid = variableValuesFunction.getValuesKind() == VariableValuesFunction.ValuesKind.GRID;
+        int dimensions = grid ? variableValuesFunction.getVariables().size() : 1;
+        double[] alphas = sequenceGenerators(dimensions);
+        double[][] shifts = new double[REPLICATES][dimensions];
+        SplittableRandom random = new SplittableRandom();
+        for (double[] shift : shifts) {
+            for (int i = 0; i < dimensions; i++) {
+                shift[i] = random.nextDouble();
+            }
+        }
+
+        double[] tuple = new double[variableValuesFunction.getVariables().size()];
+        double[] sums = new double[REPLICATES];
+        long points = 0;
+        double[] result = new double[3];
+        while (true) {
+            long target = points == 0 ? INITIAL_POINTS : 2 * points;
+            if (REPLICATES * target >= tupleCount) {
+                return null;
+            }
+            boolean outOfTime = false;
+            // All the replicates advance together, so that they always have the same number of points
+            for (; points < target && !outOfTime; points++) {
+                for (int r = 0; r < REPLICATES; r++) {
+                    fillSampledTuple(variableValuesFunction, grid, alphas, shifts[r], points + 1, tupleCount, tuple);
+                    sums[r] += computer.evaluateExpression(expression, variableValuesFunction, tuple);
+                }
+                outOfTime = (points + 1) % DEADLINE_CHECK_POINTS == 0 && isOutOfTime(deadline);
+            }
+
+            double estimate = 0;
+            for (double sum : sums) {
+                estimate += sum / points;
+            }
+            estimate /= REPLICATES;
+            double squaredDeviationsSum = 0;
+            for (double sum : sums) {
+                double deviation = sum / points - estimate;
+                squaredDeviationsSum += deviation * deviation;
+            }
+            double halfWidth = T_QUANTILE * Math.sqrt(squaredDeviationsSum / (REPLICATES - 1) / REPLICATES);
+            result[0] = estimate;
+            result[1] = REPLICATES * points;
+            result[2] = halfWidth;
+            // Non-finite estimates cannot improve with more samples
+            if (!Double.isFinite(estimate) || halfWidth <= relativeError * Math.abs(estimate) || outOfTime || isOutOfTime(deadline)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Fills the tuple at the given point of a shifted R_d sequence, mapping each coordinate in [0, 1)
+     * to an index of the corresponding axis.
+     */
+    private static void fillSampledTuple(VariableValuesFunction variableValuesFunction, boolean grid, double[] alphas,
+                                         double[] shift, long point, long tupleCount, double[] tuple) {
+        if (!grid) {
+            long tupleIndex = toIndex(fraction(shift[0] + point * alphas[0]), tupleCount);
+            variableValuesFunction.fillTuple(tupleIndex, tuple);
+            return;
+        }
+        for (int i = 0; i < alphas.length; i++) {
+            int valueIndex = (int) toIndex(fraction(shift[i] + point * alphas[i]), variableValuesFunction.getValueCount(i));
+            tuple[i] = variableValuesFunction.getValue(i, valueIndex);
+        }
+    }
+
+    private static long toIndex(double coordinate, long size) {
+        return Math.min((long) (coordinate * size), size - 1);
+    }
+
+    private static double fraction(double value) {
+        return value - Math.floor(value);
+    }
+
+    /**
+     * Computes the generators of the R_d sequence: alpha_i = 1 / phi^(i + 1), where phi is the unique
+     * positive root of x^(d + 1) = x + 1 (the golden ratio when d = 1).
+     */
+    private static double[] sequenceGenerators(int dimensions) {
+        double phi = 2;
+        for (int i = 0; i < 32; i++) {
+            phi = Math.pow(1 + phi, 1.0 / (dimensions + 1));
+        }
+        double[] alphas = new double[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            alphas[i] = fraction(1 / Math.pow(phi, i + 1));
+        }
+        return alphas;
+    }
+
+    private static boolean isOutOfTime(long deadline) {
+        return System.nanoTime() - deadline >= 0 || Thread.currentThread().isInterrupted();
+    }
+}
@@ -0,0 +1,134 @@
+package it.units.expressionserver.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ResultCache keeps the results of the most recently used computations, keyed by their canonical request,
+ * so that repeated requests are answered without computing them again.
+ * Only deterministic computations are cached: their results never change, hence entries never expire,
+ * and the least recently used entry is evicted when the cache is full.
+ * Each entry counts its hits, so that the hottest entries can be saved and restored across restarts.
+ */
+public class ResultCache {
+
+    private static final int MAX_KEY_LENGTH = 4096;
+
+    private final int capacity;
+    private final LinkedHashMap<String, Entry> entries;
+
+    /**
+     * Constructs a new ResultCache.
+     *
+     * @param capacity the maximum number of entries, 0 to disable the cache
+     * @throws IllegalArgumentException if the capacity is negative
+     */
+    public ResultCache(int capacity) throws IllegalArgumentException {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The result cache size must not be negative: " + capacity);
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ResultCache.Entry> eldest) {
+                return size() > ResultCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Checks whether results with the given key can be cached: keys of very long requests are not kept.
+     */
+    public boolean isCacheable(String key) {
+        return capacity > 0 && key.length() <= MAX_KEY_LENGTH;
+    }
+
+    /**
+     * Gets the result of a computation, counting the hit.
+     *
+     * @param key the canonical request of the computation
+     * @return a copy of the result, or null if it is not cached
+     */
+    public synchronized double[] get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.hits++;
+        return entry.values.clone();
+    }
+
+    /**
+     * Caches the result of a computation.
+     *
+     * @param key the canonical request of the computation
+     * @param values the result of the computation
+     */
+    public void put(String key, double[] values) {
+        put(key, values, 0);
+    }
+
+    /**
+     * Caches the result of a computation with the given number of past hits, as restored from a snapshot.
+     * A result already cached keeps its hits.
+     *
+     * @param key the canonical request of the computation
+     * @param values the result of the computation
+     * @param hits the number of past hits
+     */
+    public synchronized void put(String key, double[] values, long hits) {
+        if (!isCacheable(key) || entries.containsKey(key)) {
+            return;
+        }
+        entries.put(key, new Entry(key, values.clone(), hits));
+    }
+
+    /**
+     * Gets the entries with the most hits.
+     *
+     * @param count the maximum number of entries
+     * @return copies of the entries, hottest first
+     */
+    public synchronized List<Entry> getHottestEntries(int count) {
+        List<Entry> hottest = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            hottest.add(new Entry(entry.key, entry.values.clone(), entry.hits));
+        }
+        hottest.sort(Comparator.comparingLong(Entry::getHits).reversed());
+        return hottest.size() > count ? new ArrayList<>(hottest.subList(0, count)) : hottest;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * A cached result, with the number of times it has been served.
+     */
+    public static class Entry {
+        private final String key;
+        private final double[] values;
+        private long hits;
+
+        private Entry(String key, double[] values, long hits) {
+            this.key = key;
+            this.values = values;
+            this.hits = hits;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public double[] getValues() {
+            return values;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+    }
+}
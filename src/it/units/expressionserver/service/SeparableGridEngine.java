@@ -0,0 +1,265 @@
+package it.units.expressionserver.service;
+
+import it.units.expressionserver.domain.expression.Expression;
+import it.units.expressionserver.domain.expression.nodes.Node;
+import it.units.expressionserver.domain.expression.nodes.Operator;
+import it.units.expressionserver.domain.expression.nodes.Variable;
+import it.units.expressionserver.domain.variablevaluesfunction.VariableValuesFunction;
+import it.units.expressionserver.exceptions.ComputationException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalDouble;
+
+/**
+ * The SeparableGridEngine computes MIN, MAX and AVG over a GRID for expressions that are additively separable,
+ * i.e., sums and differences of terms each depending on at most one variable, such as ((x^2)+(y^2)).
+ * Since every tuple of a grid combines every value of each variable, each term is evaluated only on the values of
+ * its variable: the cost grows with the number of values of each variable, not with their product.
+ *
+ * The minimum (maximum) is attained at the tuple combining, for each variable, the value where its term is the
+ * lowest (highest), or the highest (lowest) for subtracted terms: as long as each variable has a single term,
+ * floating point sums are monotonic in each term, so the expression evaluated at that tuple is exactly the minimum
+ * (maximum) that enumerating the grid would find. The average is the sum of the averages of the terms.
+ *
+ * The decomposition fails, and the grid must be evaluated normally, whenever a term depends on several variables,
+ * a term fails or is not finite on some value, since enumerating the grid reports the error of the first failing
+ * tuple, or the sum of the terms may overflow. MIN and MAX also fail for zero results, as zeros of different sign
+ * may be attained at different tuples.
+ */
+class SeparableGridEngine {
+
+    private final Computer computer;
+
+    SeparableGridEngine(Computer computer) {
+        this.computer = computer;
+    }
+
+    /**
+     * Computes the minimum of the expressions over all the tuples of the grid.
+     *
+     * @return the minimum, or an empty optional if the grid must be evaluated normally
+     */
+    OptionalDouble computeMin(VariableValuesFunction variableValuesFunction, List<Expression> expressions) {
+        return computeExtreme(variableValuesFunction, expressions, false);
+    }
+
+    /**
+     * Computes the maximum of the expressions over all the tuples of the grid.
+     *
+     * @return the maximum, or an empty optional if the grid must be evaluated normally
+     */
+    OptionalDouble computeMax(VariableValuesFunction variableValuesFunction, List<Expression> expressions) {
+        return computeExtreme(variableValuesFunction, expressions, true);
+    }
+
+    /**
+     * Computes the average of the first expression over all the tuples of the grid.
+     *
+     * @return the average, or an empty optional if the grid must be evaluated normally
+     */
+    OptionalDouble computeAvg(VariableValuesFunction variableValuesFunction, List<Expression> expressions) {
+        List<Term> terms = decompose(expressions.get(0).getRoot(), variableValuesFunction, false);
+        if (terms == null) {
+            return OptionalDouble.empty();
+        }
+        double[][] termValues = evaluateTerms(terms, variableValuesFunction);
+        if (termValues == null) {
+            return OptionalDouble.empty();
+        }
+        double avg = 0;
+        for (int t = 0; t < terms.size(); t++) {
+            double sum = 0;
+            for (double value : termValues[t]) {
+                sum += value;
+            }
+            avg += terms.get(t).sign * (sum / termValues[t].length);
+        }
+        return OptionalDouble.of(avg);
+    }
+
+    private OptionalDouble computeExtreme(VariableValuesFunction variableValuesFunction, List<Expression> expressions, boolean maximize) {
+        int variables = variableValuesFunction.getVariables().size();
+        double[][] tuples = new double[expressions.size()][variables];
+        for (int e = 0; e < expressions.size(); e++) {
+            List<Term> terms = decompose(expressions.get(e).getRoot(), variableValuesFunction, true);
+            if (terms == null) {
+                return OptionalDouble.empty();
+            }
+            double[][] termValues = evaluateTerms(terms, variableValuesFunction);
+            if (termValues == null) {
+                return OptionalDouble.empty();
+            }
+            for (int i = 0; i < variables; i++) {
+                tuples[e][i] = variableValuesFunction.getValue(i, 0);
+            }
+            for (int t = 0; t < terms.size(); t++) {
+                Term term = terms.get(t);
+                if (term.variableIndex < 0) {
+                    continue;
+                }
+                // A subtracted term is the highest where the expression is the lowest
+                boolean highest = maximize == (term.sign > 0);
+                int extremeIndex = 0;
+                for (int v = 1; v < termValues[t].length; v++) {
+                    if (highest ? termValues[t][v] > termValues[t][extremeIndex] : termValues[t][v] < termValues[t][extremeIndex]) {
+                        extremeIndex = v;
+                    }
+                }
+                tuples[e][term.variableIndex] = variableValuesFunction.getValue(term.variableIndex, extremeIndex);
+            }
+        }
+
+        double result = maximize ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        try {
+            for (int e = 0; e < expressions.size(); e++) {
+                double value = computer.evaluateExpression(expressions.get(e), variableValuesFunction, tuples[e]);
+                result = maximize ? Math.max(result, value) : Math.min(result, value);
+            }
+        } catch (ComputationException e) {
+            return OptionalDouble.empty();
+        }
+        if (result == 0 || !Double.isFinite(result)) {
+            return OptionalDouble.empty();
+        }
+        return OptionalDouble.of(result);
+    }
+
+    /**
+     * Decomposes an expression into its additive terms.
+     *
+     * @param root the root of the expression
+     * @param variableValuesFunction the function mapping variable names to tuple indexes
+     * @param singleTermPerVariable whether each variable must appear in a single term
+     * @return the terms, or null if the expression is not separable
+     */
+    private static List<Term> decompose(Node root, VariableValuesFunction variableValuesFunction, boolean singleTermPerVariable) {
+        List<Term> terms = new ArrayList<>();
+        if (!collectTerms(root, 1, variableValuesFunction, terms)) {
+            return null;
+        }
+        if (singleTermPerVariable) {
+            boolean[] seen = new boolean[variableValuesFunction.getVariables().size()];
+            for (Term term : terms) {
+                if (term.variableIndex >= 0) {
+                    if (seen[term.variableIndex]) {
+                        return null;
+                    }
+                    seen[term.variableIndex] = true;
+                }
+            }
+        }
+        return terms;
+    }
+
+    private static boolean collectTerms(Node node, int sign, VariableValuesFunction variableValuesFunction, List<Term> terms) {
+        if (node instanceof Operator) {
+            Operator operator = (Operator) node;
+            List<Node> children = operator.getChildren();
+            switch (operator.getType()) {
+                case SUM:
+                    return collectTerms(children.get(0), sign, variableValuesFunction, terms)
+                            && collectTerms(children.get(1), sign, variableValuesFunction, terms);
+                case SUBTRACTION:
+                    return collectTerms(children.get(0), sign, variableValuesFunction, terms)
+                            && collectTerms(children.get(1), -sign, variableValuesFunction, terms);
+                case NEGATION:
+                    return collectTerms(children.get(0), -sign, variableValuesFunction, terms);
+                default:
+                    break;
+            }
+        }
+        int variableIndex = findVariable(node, variableValuesFunction, -1);
+        if (variableIndex == -2) {
+            return false;
+        }
+        terms.add(new Term(node, sign, variableIndex));
+        return true;
+    }
+
+    /**
+     * Finds the only variable of a term.
+     *
+     * @return the index of the variable, -1 if the term has none, or -2 if it has several or unknown ones
+     */
+    private static int findVariable(Node node, VariableValuesFunction variableValuesFunction, int variableIndex) {
+        if (node instanceof Variable) {
+            String variableName = ((Variable) node).getName();
+            if (!variableValuesFunction.hasVariable(variableName)) {
+                return -2;
+            }
+            int index = variableValuesFunction.getVariableIndex(variableName);
+            return variableIndex >= 0 && variableIndex != index ? -2 : index;
+        }
+        if (node instanceof Operator) {
+            for (Node child : ((Operator) node).getChildren()) {
+                variableIndex = findVariable(child, variableValuesFunction, variableIndex);
+                if (variableIndex == -2) {
+                    return -2;
+                }
+            }
+        }
+        return variableIndex;
+    }
+
+    /**
+     * Evaluates each term on the values of its variable, or once if it has no variable.
+     *
+     * @return the values of each term, or null if a term fails or is not finite on some value,
+     * or if the sum of the terms may overflow
+     */
+    private double[][] evaluateTerms(List<Term> terms, VariableValuesFunction variableValuesFunction) {
+        int variables = variableValuesFunction.getVariables().size();
+        double[] tuple = new double[variables];
+        for (int i = 0; i < variables; i++) {
+            tuple[i] = variableValuesFunction.getValue(i, 0);
+        }
+        double[][] termValues = new double[terms.size()][];
+        double maxAbsoluteSum = 0;
+        try {
+            for (int t = 0; t < terms.size(); t++) {
+                Term term = terms.get(t);
+                int valueCount = term.variableIndex < 0 ? 1 : variableValuesFunction.getValueCount(term.variableIndex);
+                termValues[t] = new double[valueCount];
+                double maxAbsolute = 0;
+                for (int v = 0; v < valueCount; v++) {
+                    if (term.variableIndex >= 0) {
+                        tuple[term.variableIndex] = variableValuesFunction.getValue(term.variableIndex, v);
+                    }
+                    double value = computer.evaluateNode(term.node, variableValuesFunction, tuple);
+                    if (!Double.isFinite(value)) {
+                        return null;
+                    }
+                    termValues[t][v] = value;
+                    maxAbsolute = Math.max(maxAbsolute, Math.abs(value));
+                }
+                if (term.variableIndex >= 0) {
+                    tuple[term.variableIndex] = variableValuesFunction.getValue(term.variableIndex, 0);
+                }
+                maxAbsoluteSum += maxAbsolute;
+            }
+        } catch (ComputationException e) {
+            return null;
+        }
+        // Partial sums are bounded by the sum of the largest absolute values, with room for rounding
+        if (!(maxAbsoluteSum < Double.MAX_VALUE / 2)) {
+            return null;
+        }
+        return termValues;
+    }
+
+    /**
+     * An additive term of an expression, with its sign and its only variable, if any.
+     */
+    private static class Term {
+        private final Node node;
+        private final int sign;
+        private final int variableIndex;
+
+        private Term(Node node, int sign, int variableIndex) {
+            this.node = node;
+            this.sign = sign;
+            this.variableIndex = variableIndex;
+        }
+    }
+}
@@ -14,6 +14,14 @@ public class StatsCollector {
         totalResponseTime += responseTime;
         maxResponseTime = Math.max(maxResponseTime, responseTime);
     }
+    /**
+     * Forgets all the responses collected so far.
+     */
+    public synchronized void reset() {
+        totalResponses = 0;
+        totalResponseTime = 0;
+        maxResponseTime = 0;
+    }
     public synchronized int getTotalResponses() {
         return totalResponses;
     }
@@ -0,0 +1,191 @@
+package it.units.expressionserver.service;
+
+import it.units.expressionserver.service.analysis.Interval;
+
+/**
+ * A ThresholdPredicate compares the value of an expression with a threshold, e.g., {@code >0.5}.
+ * It is the predicate of the COUNT_IF, ANY and ALL computations, which carry it in their computation kind,
+ * e.g., ANY>0.5_GRID.
+ * A NaN value, which an expression gives e.g. when two of its terms overflow, satisfies no comparison: it is
+ * counted by no COUNT_IF and is a witness for no ANY, while it is a counterexample for every ALL, whose
+ * counterexamples are the witnesses of the negated predicate.
+ */
+public class ThresholdPredicate {
+
+    /**
+     * The comparison operators, in the order in which they are parsed: two-character operators come first.
+     */
+    public enum Comparison {
+
+        LESS_OR_EQUAL("<="),
+        GREATER_OR_EQUAL(">="),
+        NOT_EQUAL("!="),
+        LESS("<"),
+        GREATER(">"),
+        EQUAL("=");
+
+        private final String operatorString;
+
+        Comparison(String operatorString) {
+            this.operatorString = operatorString;
+        }
+
+        public String getOperatorString() {
+            return operatorString;
+        }
+
+        /**
+         * Gets the comparison that holds exactly when this one does not.
+         */
+        private Comparison negate() {
+            switch (this) {
+                case LESS_OR_EQUAL:
+                    return GREATER;
+                case GREATER_OR_EQUAL:
+                    return LESS;
+                case NOT_EQUAL:
+                    return EQUAL;
+                case LESS:
+                    return GREATER_OR_EQUAL;
+                case GREATER:
+                    return LESS_OR_EQUAL;
+                default:
+                    return NOT_EQUAL;
+            }
+        }
+    }
+
+    private final Comparison comparison;
+    private final double threshold;
+    private final boolean negated;
+
+    /**
+     * Constructs a new ThresholdPredicate.
+     *
+     * @param comparison the comparison operator
+     * @param threshold the threshold, which is finite
+     */
+    public ThresholdPredicate(Comparison comparison, double threshold) {
+        this(comparison, threshold, false);
+    }
+
+    private ThresholdPredicate(Comparison comparison, double threshold, boolean negated) {
+        this.comparison = comparison;
+        this.threshold = threshold;
+        this.negated = negated;
+    }
+
+    /**
+     * Parses a predicate in the form operator followed by threshold, e.g., {@code >=-1.5}.
+     *
+     * @param predicateString the predicate
+     * @return the predicate
+     * @throws IllegalArgumentException if the operator is unknown or the threshold is not a finite number
+     */
+    public static ThresholdPredicate parse(String predicateString) throws IllegalArgumentException {
+        for (Comparison comparison : Comparison.values()) {
+            if (predicateString.startsWith(comparison.getOperatorString())) {
+                String thresholdString = predicateString.substring(comparison.getOperatorString().length());
+                double threshold;
+                try {
+                    threshold = Double.parseDouble(thresholdString);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid predicate threshold: " + thresholdString);
+                }
+                if (!Double.isFinite(threshold)) {
+                    throw new IllegalArgumentException("Invalid predicate threshold: " + thresholdString);
+                }
+                return new ThresholdPredicate(comparison, threshold);
+            }
+        }
+        throw new IllegalArgumentException("Invalid predicate: " + predicateString);
+    }
+
+    public Comparison getComparison() {
+        return comparison;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Gets the predicate that holds exactly when this one does not, NaN values included.
+     */
+    ThresholdPredicate negate() {
+        return new ThresholdPredicate(comparison.negate(), threshold, !negated);
+    }
+
+    /**
+     * Tests a value.
+     *
+     * @param value the value of an expression, which may be NaN
+     * @return true if the value satisfies the predicate
+     */
+    boolean test(double value) {
+        if (Double.isNaN(value)) {
+            return negated;
+        }
+        switch (comparison) {
+            case LESS_OR_EQUAL:
+                return value <= threshold;
+            case GREATER_OR_EQUAL:
+                return value >= threshold;
+            case NOT_EQUAL:
+                return value != threshold;
+            case LESS:
+                return value < threshold;
+            case GREATER:
+                return value > threshold;
+            default:
+                return value == threshold;
+        }
+    }
+
+    /**
+     * Checks whether every value within a bounded interval satisfies the predicate.
+     */
+    boolean holdsForAll(Interval interval) {
+        return interval.isBounded() && test(interval.getLower()) && test(interval.getUpper())
+                && (comparison != Comparison.NOT_EQUAL || threshold < interval.getLower() || threshold > interval.getUpper());
+    }
+
+    /**
+     * Checks whether no value within a bounded interval satisfies the predicate.
+     */
+    boolean holdsForNone(Interval interval) {
+        return interval.isBounded() && negate().holdsForAll(interval);
+    }
+
+    /**
+     * Gets how promising an interval is for finding a value that satisfies the predicate: the higher the better.
+     * Unbounded intervals come last, as the expression may fail within them.
+     */
+    double promise(Interval interval) {
+        if (!interval.isBounded()) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        switch (comparison) {
+            case LESS_OR_EQUAL:
+            case LESS:
+                return threshold - interval.getLower();
+            case GREATER_OR_EQUAL:
+            case GREATER:
+                return interval.getUpper() - threshold;
+            case NOT_EQUAL:
+                return interval.getUpper() - interval.getLower();
+            default:
+                // The narrower the interval around the threshold, the more of its values may be the threshold
+                return -(interval.getUpper() - interval.getLower());
+        }
+    }
+
+    /**
+     * Returns the predicate as it appears in computation kinds, e.g., {@code >0.5}.
+     * A negated predicate appears as its comparison alone, although it also holds for NaN values.
+     */
+    @Override
+    public String toString() {
+        return comparison.getOperatorString() + threshold;
+    }
+}
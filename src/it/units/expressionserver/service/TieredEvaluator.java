@@ -0,0 +1,286 @@
+package it.units.expressionserver.service;
+
+import it.units.expressionserver.domain.expression.Expression;
+import it.units.expressionserver.domain.expression.nodes.Node;
+import it.units.expressionserver.domain.variablevaluesfunction.VariableValuesFunction;
+import it.units.expressionserver.exceptions.DivisionByZeroException;
+import it.units.expressionserver.exceptions.NotANumberException;
+import it.units.expressionserver.exceptions.ZeroOverZeroException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The TieredEvaluator chooses how the expressions of the computations are evaluated.
+ * Expressions start on the tree interpreter of the Computer, which costs nothing to set up.
+ * The evaluations of each expression (identified by its canonical form) are counted across requests, and an expression
+ * that exceeds the compilation threshold is compiled in the background by the ExpressionCompiler.
+ * The compiled form is then published atomically, and used by the computations that evaluate the expression from then on,
+ * including the running ones, which check for it whenever they report their evaluation count.
+ * At most {@link #MAX_PROFILES} expressions are tracked: when a new one comes, the least recently used tenth of them
+ * is forgotten. An expression that cannot be compiled stays on the interpreter, and is not compiled again.
+ */
+public class TieredEvaluator {
+
+    public enum Tier {
+        INTERPRETED,
+        COMPILING,
+        COMPILED
+    }
+
+    private static final int MAX_PROFILES = 10_000;
+    private static final int EVICTED_PROFILES = MAX_PROFILES / 10;
+    private static final long REPORT_EVALUATIONS = 1 << 16;
+
+    private final Computer computer;
+    private final ExpressionCompiler expressionCompiler;
+    private final ConcurrentHashMap<String, Profile> profiles;
+    private final AtomicLong useClock = new AtomicLong();
+    private final ExecutorService compilerThread;
+    private volatile long compilationThreshold;
+
+    TieredEvaluator(Computer computer) {
+        this.computer = computer;
+        this.expressionCompiler = new ExpressionCompiler();
+        this.profiles = new ConcurrentHashMap<>();
+        this.compilerThread = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "expression-compiler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.compilationThreshold = 100_000;
+    }
+
+    public long getCompilationThreshold() {
+        return compilationThreshold;
+    }
+
+    /**
+     * Sets the number of evaluations after which an expression is compiled.
+     *
+     * @param compilationThreshold the number of evaluations, 0 to compile every expression at its first report
+     * @throws IllegalArgumentException if the threshold is negative
+     */
+    public void setCompilationThreshold(long compilationThreshold) throws IllegalArgumentException {
+        if (compilationThreshold < 0) {
+            throw new IllegalArgumentException("The compilation threshold must not be negative: " + compilationThreshold);
+        }
+        this.compilationThreshold = compilationThreshold;
+    }
+
+    /**
+     * Counts the tracked expressions in the given tier.
+     *
+     * @param tier the tier
+     * @return the number of expressions in the tier
+     */
+    public int countExpressions(Tier tier) {
+        int count = 0;
+        for (Profile profile : profiles.values()) {
+            if (profile.getTier() == tier) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the expressions evaluated the most, by their canonical form.
+     *
+     * @param count the maximum number of expressions
+     * @return the evaluation count of each expression, hottest first
+     */
+    public Map<String, Long> getHottestExpressions(int count) {
+        List<Map.Entry<String, Profile>> hottest = new ArrayList<>(profiles.entrySet());
+        hottest.sort(Comparator.comparingLong((Map.Entry<String, Profile> entry) -> entry.getValue().evaluations.get()).reversed());
+        Map<String, Long> evaluations = new LinkedHashMap<>();
+        for (Map.Entry<String, Profile> entry : hottest.subList(0, Math.min(count, hottest.size()))) {
+            evaluations.put(entry.getKey(), entry.getValue().evaluations.get());
+        }
+        return evaluations;
+    }
+
+    /**
+     * Gets the canonical forms of the tracked expressions.
+     */
+    public Set<String> getProfiledExpressions() {
+        return new HashSet<>(profiles.keySet());
+    }
+
+    /**
+     * Stops tracking every expression but the given ones, e.g., the expressions profiled during a warm-up.
+     *
+     * @param expressions the canonical forms of the expressions to keep tracking
+     */
+    public void retainProfiles(Set<String> expressions) {
+        profiles.keySet().retainAll(expressions);
+    }
+
+    /**
+     * Restores the evaluations of an expression counted before a restart, compiling it right away
+     * if they exceed the compilation threshold.
+     *
+     * @param root the root of the expression
+     * @param evaluations the number of evaluations
+     */
+    public void restoreProfile(Node root, long evaluations) {
+        String key = root.toString();
+        Profile profile = getProfile(key);
+        long totalEvaluations = profile.evaluations.addAndGet(evaluations);
+        if (totalEvaluations >= compilationThreshold && profile.compilationRequested.compareAndSet(false, true)) {
+            compile(new Expression(root, key), profile);
+        }
+    }
+
+    /**
+     * Prepares the expressions of a computation, wrapping them so that their evaluations are counted
+     * and run on the best available tier.
+     *
+     * @param expressions the expressions of the computation
+     * @param variableValuesFunction the function providing the tuples on which the expressions are evaluated
+     * @return the prepared expressions, to be evaluated by a single thread
+     */
+    List<Expression> prepare(List<Expression> expressions, VariableValuesFunction variableValuesFunction) {
+        List<Expression> preparedExpressions = new ArrayList<>(expressions.size());
+        for (Expression expression : expressions) {
+            Profile profile = getProfile(expression.getRoot().toString());
+            preparedExpressions.add(new TieredExpression(expression, profile, variableValuesFunction));
+        }
+        return preparedExpressions;
+    }
+
+    /**
+     * Reports the evaluations not reported yet by the prepared expressions of a computation that is over.
+     *
+     * @param preparedExpressions the expressions returned by {@link #prepare(List, VariableValuesFunction)}
+     */
+    void complete(List<Expression> preparedExpressions) {
+        for (Expression expression : preparedExpressions) {
+            if (expression instanceof TieredExpression) {
+                ((TieredExpression) expression).report();
+            }
+        }
+    }
+
+    /**
+     * Gets the profile of an expression, tracking the expression if it is not tracked yet.
+     *
+     * @param key the canonical form of the expression
+     * @return the profile
+     */
+    private Profile getProfile(String key) {
+        Profile profile = profiles.get(key);
+        if (profile == null) {
+            if (profiles.size() >= MAX_PROFILES) {
+                evictColdProfiles();
+            }
+            profile = profiles.computeIfAbsent(key, k -> new Profile());
+        }
+        profile.lastUse = useClock.incrementAndGet();
+        return profile;
+    }
+
+    /**
+     * Forgets the least recently used profiles. Computations already evaluating their expressions keep counting
+     * their evaluations on the forgotten profiles, which are then discarded.
+     */
+    private synchronized void evictColdProfiles() {
+        if (profiles.size() < MAX_PROFILES) {
+            return;
+        }
+        // The last uses are read once, as they keep changing while the profiles are used
+        long[] lastUses = profiles.values().stream().mapToLong(profile -> profile.lastUse).sorted().toArray();
+        if (lastUses.length < EVICTED_PROFILES) {
+            return;
+        }
+        long coldestLastUse = lastUses[EVICTED_PROFILES - 1];
+        profiles.values().removeIf(profile -> profile.lastUse <= coldestLastUse);
+    }
+
+    private void compile(Expression expression, Profile profile) {
+        compilerThread.execute(() -> {
+            try {
+                profile.compiled = expressionCompiler.compile(expression.getRoot());
+            } catch (RuntimeException | StackOverflowError e) {
+                // The expression stays on the interpreter
+                profile.compilationFailed = true;
+                // The expression is not printed, as printing a too deep expression fails as well
+                System.err.printf("[%1$tY-%1$tm-%1$td %1$tT] Cannot compile an expression due to %2$s%n",
+                        System.currentTimeMillis(), e);
+            }
+        });
+    }
+
+    private static class Profile {
+        private final AtomicLong evaluations = new AtomicLong();
+        private final AtomicBoolean compilationRequested = new AtomicBoolean();
+        private volatile ExpressionCompiler.CompiledExpression compiled;
+        private volatile boolean compilationFailed;
+        private volatile long lastUse;
+
+        private Tier getTier() {
+            if (compiled != null) {
+                return Tier.COMPILED;
+            }
+            return compilationRequested.get() && !compilationFailed ? Tier.COMPILING : Tier.INTERPRETED;
+        }
+    }
+
+    /**
+     * An expression evaluated on the best tier available, counting its evaluations. It is used by a single thread.
+     */
+    class TieredExpression extends Expression {
+        private final Profile profile;
+        private final VariableValuesFunction variableValuesFunction;
+        private ExpressionCompiler.CompiledNode compiledRoot;
+        private int[] slots;
+        private long unreportedEvaluations;
+
+        private TieredExpression(Expression expression, Profile profile, VariableValuesFunction variableValuesFunction) {
+            super(expression.getRoot(), expression.toString());
+            this.profile = profile;
+            this.variableValuesFunction = variableValuesFunction;
+            useCompiledForm();
+        }
+
+        double evaluate(double[] tuple) throws DivisionByZeroException, ZeroOverZeroException, NotANumberException {
+            if (++unreportedEvaluations == REPORT_EVALUATIONS) {
+                report();
+            }
+            if (compiledRoot != null) {
+                return compiledRoot.evaluate(tuple, slots);
+            }
+            return computer.evaluateNode(getRoot(), variableValuesFunction, tuple);
+        }
+
+        private void report() {
+            long evaluations = profile.evaluations.addAndGet(unreportedEvaluations);
+            unreportedEvaluations = 0;
+            if (compiledRoot != null) {
+                return;
+            }
+            if (evaluations >= compilationThreshold && profile.compilationRequested.compareAndSet(false, true)) {
+                compile(this, profile);
+            }
+            useCompiledForm();
+        }
+
+        private void useCompiledForm() {
+            ExpressionCompiler.CompiledExpression compiled = profile.compiled;
+            if (compiled != null) {
+                slots = compiled.bind(variableValuesFunction);
+                compiledRoot = compiled.getRoot();
+            }
+        }
+    }
+}
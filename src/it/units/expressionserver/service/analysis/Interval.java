@@ -0,0 +1,71 @@
+package it.units.expressionserver.service.analysis;
+
+/**
+ * An Interval bounds the values that an expression takes over a set of tuples of variable values.
+ * A bounded interval guarantees that evaluating the expression on any of those tuples gives a finite value
+ * between its lower and upper bounds, without raising any computation error.
+ * The unbounded interval carries no guarantee at all: the expression may even fail or give NaN.
+ */
+public class Interval {
+
+    public static final Interval UNBOUNDED = new Interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, false);
+
+    private final double lower;
+    private final double upper;
+    private final boolean bounded;
+
+    private Interval(double lower, double upper, boolean bounded) {
+        this.lower = lower;
+        this.upper = upper;
+        this.bounded = bounded;
+    }
+
+    /**
+     * Creates the interval between the given bounds.
+     * If any bound is not finite, the unbounded interval is returned.
+     *
+     * Bounds computed by applying an operation to the bounds of its operands need no widening: floating point
+     * rounding is monotonic, so the value of the operation on any operands between those bounds is rounded
+     * to a value between the rounded results at the bounds.
+     *
+     * @param lower the lower bound
+     * @param upper the upper bound
+     * @return the interval
+     */
+    public static Interval of(double lower, double upper) {
+        if (!Double.isFinite(lower) || !Double.isFinite(upper)) {
+            return UNBOUNDED;
+        }
+        return new Interval(lower, upper, true);
+    }
+
+    public double getLower() {
+        return lower;
+    }
+
+    public double getUpper() {
+        return upper;
+    }
+
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    /**
+     * Checks whether the interval may contain zero.
+     *
+     * @return true if zero is between the bounds, or if the interval is unbounded
+     */
+    public boolean containsZero() {
+        return lower <= 0 && upper >= 0;
+    }
+
+    public boolean isDegenerate() {
+        return bounded && lower == upper;
+    }
+
+    @Override
+    public String toString() {
+        return bounded ? "[" + lower + ", " + upper + "]" : "(unbounded)";
+    }
+}
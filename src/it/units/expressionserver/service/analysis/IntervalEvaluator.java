@@ -0,0 +1,202 @@
+package it.units.expressionserver.service.analysis;
+
+import it.units.expressionserver.domain.expression.nodes.Constant;
+import it.units.expressionserver.domain.expression.nodes.Node;
+import it.units.expressionserver.domain.expression.nodes.Operator;
+import it.units.expressionserver.domain.expression.nodes.Variable;
+import it.units.expressionserver.domain.variablevaluesfunction.VariableValuesFunction;
+
+import java.util.List;
+
+/**
+ * The IntervalEvaluator evaluates expression trees with interval arithmetic, over boxes of variable values.
+ * A box assigns to each variable of a VariableValuesFunction an interval of values, given by its lower and upper values.
+ * Results are conservative: whenever an operation may fail (e.g., a division by an interval containing 0)
+ * or may give NaN or infinite values, the result is the unbounded interval.
+ */
+public class IntervalEvaluator {
+
+    private final VariableValuesFunction variableValuesFunction;
+
+    /**
+     * Constructs a new IntervalEvaluator for the variables of the given function.
+     *
+     * @param variableValuesFunction the function mapping variable names to tuple indexes
+     */
+    public IntervalEvaluator(VariableValuesFunction variableValuesFunction) {
+        this.variableValuesFunction = variableValuesFunction;
+    }
+
+    /**
+     * Evaluates a node over a box of variable values.
+     *
+     * @param node the node to evaluate
+     * @param lowers the lower value of each variable, indexed as in the tuples
+     * @param uppers the upper value of each variable, indexed as in the tuples
+     * @return an interval containing every value of the node over the box
+     */
+    public Interval evaluate(Node node, double[] lowers, double[] uppers) {
+        if (node instanceof Constant) {
+            double value = ((Constant) node).getValue();
+            return Interval.of(value, value);
+        }
+        if (node instanceof Variable) {
+            String variableName = ((Variable) node).getName();
+            if (!variableValuesFunction.hasVariable(variableName)) {
+                return Interval.UNBOUNDED;
+            }
+            int variableIndex = variableValuesFunction.getVariableIndex(variableName);
+            return Interval.of(lowers[variableIndex], uppers[variableIndex]);
+        }
+        Operator operator = (Operator) node;
+        List<Node> children = operator.getChildren();
+        Interval left = evaluate(children.get(0), lowers, uppers);
+        if (!left.isBounded()) {
+            return Interval.UNBOUNDED;
+        }
+        if (operator.getType().isUnary()) {
+            return apply(operator.getType(), left);
+        }
+        Interval right = evaluate(children.get(1), lowers, uppers);
+        if (!right.isBounded()) {
+            return Interval.UNBOUNDED;
+        }
+        return apply(operator.getType(), left, right);
+    }
+
+    /**
+     * Applies a binary operator to two bounded intervals.
+     *
+     * @param type the operator type
+     * @param left the interval of the first operand
+     * @param right the interval of the second operand
+     * @return an interval containing every result of the operator
+     */
+    public static Interval apply(Operator.Type type, Interval left, Interval right) {
+        double a = left.getLower();
+        double b = left.getUpper();
+        double c = right.getLower();
+        double d = right.getUpper();
+        switch (type) {
+            case SUM:
+                return Interval.of(a + c, b + d);
+            case SUBTRACTION:
+                return Interval.of(a - d, b - c);
+            case MULTIPLICATION:
+                return hull(a * c, a * d, b * c, b * d);
+            case DIVISION:
+                if (right.containsZero()) {
+                    return Interval.UNBOUNDED;
+                }
+                return hull(a / c, a / d, b / c, b / d);
+            case POWER:
+                return power(left, right);
+            default:
+                return Interval.UNBOUNDED;
+        }
+    }
+
+    /**
+     * Applies a unary function to a bounded interval.
+     *
+     * @param type the function type
+     * @param operand the interval of the operand
+     * @return an interval containing every result of the function, or the unbounded interval if the function
+     * may be undefined over the operand
+     */
+    public static Interval apply(Operator.Type type, Interval operand) {
+        double a = operand.getLower();
+        double b = operand.getUpper();
+        switch (type) {
+            case NEGATION:
+                return Interval.of(-b, -a);
+            case ABS:
+                if (a >= 0) {
+                    return operand;
+                }
+                return b <= 0 ? Interval.of(-b, -a) : Interval.of(0, Math.max(-a, b));
+            case SQRT:
+                return a < 0 ? Interval.UNBOUNDED : Interval.of(Math.sqrt(a), Math.sqrt(b));
+            case EXP:
+                return Interval.of(Math.exp(a), Math.exp(b));
+            case LOG:
+                return a <= 0 ? Interval.UNBOUNDED : Interval.of(Math.log(a), Math.log(b));
+            case SIN:
+                // sin reaches 1 at pi/2 + 2k pi and -1 at 3pi/2 + 2k pi
+                return periodic(Math.sin(a), Math.sin(b), a, b, Math.PI / 2, 3 * Math.PI / 2);
+            case COS:
+                // cos reaches 1 at 2k pi and -1 at pi + 2k pi
+                return periodic(Math.cos(a), Math.cos(b), a, b, 0, Math.PI);
+            default:
+                return Interval.UNBOUNDED;
+        }
+    }
+
+    /**
+     * Bounds a function with period 2 pi over [a, b], given its values at the bounds and the points where
+     * it reaches its maximum 1 and its minimum -1. Points that lie on the bounds up to rounding are included.
+     */
+    private static Interval periodic(double valueA, double valueB, double a, double b, double maximumAt, double minimumAt) {
+        double margin = 1e-12 * Math.max(1, Math.max(Math.abs(a), Math.abs(b)));
+        double lower = containsPeriodicPoint(a - margin, b + margin, minimumAt) ? -1 : Math.min(valueA, valueB);
+        double upper = containsPeriodicPoint(a - margin, b + margin, maximumAt) ? 1 : Math.max(valueA, valueB);
+        return Interval.of(lower, upper);
+    }
+
+    private static boolean containsPeriodicPoint(double a, double b, double point) {
+        double period = 2 * Math.PI;
+        if (b - a >= period) {
+            return true;
+        }
+        double first = point + Math.ceil((a - point) / period) * period;
+        return first <= b;
+    }
+
+    private static Interval power(Interval base, Interval exponent) {
+        double a = base.getLower();
+        double b = base.getUpper();
+        if (exponent.isDegenerate()) {
+            double n = exponent.getLower();
+            if (n == 0) {
+                return Interval.of(1, 1);
+            }
+            boolean integer = n == Math.rint(n);
+            if (!integer && a < 0) {
+                // Negative bases with fractional exponents give NaN
+                return Interval.UNBOUNDED;
+            }
+            if (n < 0 && base.containsZero()) {
+                // Zero bases with negative exponents give infinite values
+                return Interval.UNBOUNDED;
+            }
+            double powA = Operator.power(a, n);
+            double powB = Operator.power(b, n);
+            if (integer && n > 0 && Math.abs(n % 2) == 0 && a < 0 && b > 0) {
+                return Interval.of(0, Math.max(powA, powB));
+            }
+            // Otherwise the power is monotonic in the base over the interval
+            return Interval.of(Math.min(powA, powB), Math.max(powA, powB));
+        }
+        if (a <= 0) {
+            // Non-constant exponents are handled only for positive bases
+            return Interval.UNBOUNDED;
+        }
+        double c = exponent.getLower();
+        double d = exponent.getUpper();
+        // With positive bases the power is monotonic in each operand, hence extremes lie at the corners
+        Interval corners = hull(Operator.power(a, c), Operator.power(a, d), Operator.power(b, c), Operator.power(b, d));
+        if (corners == Interval.UNBOUNDED) {
+            return corners;
+        }
+        // Operator.power multiplies out some integral exponents, which rounds differently from Math.pow
+        // at the exponents next to them: the bounds are widened by one ulp to hold for those as well
+        return Interval.of(Math.nextDown(corners.getLower()), Math.nextUp(corners.getUpper()));
+    }
+
+    private static Interval hull(double v1, double v2, double v3, double v4) {
+        if (Double.isNaN(v1) || Double.isNaN(v2) || Double.isNaN(v3) || Double.isNaN(v4)) {
+            return Interval.UNBOUNDED;
+        }
+        return Interval.of(Math.min(Math.min(v1, v2), Math.min(v3, v4)), Math.max(Math.max(v1, v2), Math.max(v3, v4)));
+    }
+}
@@ -0,0 +1,279 @@
+package it.units.expressionserver.service.analysis;
+
+import it.units.expressionserver.domain.expression.nodes.Constant;
+import it.units.expressionserver.domain.expression.nodes.Node;
+import it.units.expressionserver.domain.expression.nodes.Operator;
+import it.units.expressionserver.domain.expression.nodes.Variable;
+import it.units.expressionserver.domain.variablevaluesfunction.VariableValuesFunction;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The MonotonicityAnalyzer proves, when possible, that an expression is monotonic in each variable
+ * over the whole box of values of a VariableValuesFunction.
+ *
+ * The analysis combines the monotonicity of the operands of each operator with the signs of their values,
+ * which are bounded with interval arithmetic. For instance, a product a * b is non-decreasing in a variable
+ * if a is non-decreasing and b is non-negative, and b is non-decreasing and a is non-negative, since
+ * a2 * b2 - a1 * b1 = (a2 - a1) * b2 + a1 * (b2 - b1).
+ * Monotonicity is never strict, as these rules only track the sign of differences.
+ */
+public class MonotonicityAnalyzer {
+
+    public enum Monotonicity {
+        CONSTANT,
+        INCREASING,
+        DECREASING,
+        UNKNOWN;
+
+        private Monotonicity negate() {
+            switch (this) {
+                case INCREASING:
+                    return DECREASING;
+                case DECREASING:
+                    return INCREASING;
+                default:
+                    return this;
+            }
+        }
+
+        /**
+         * Gets the monotonicity of the sum of two functions with this and the other monotonicity.
+         */
+        private Monotonicity plus(Monotonicity other) {
+            if (this == CONSTANT) {
+                return other;
+            }
+            if (other == CONSTANT || other == this) {
+                return this;
+            }
+            return UNKNOWN;
+        }
+
+        /**
+         * Gets the monotonicity of the product of a function with this monotonicity and a factor with the given sign.
+         */
+        private Monotonicity times(Sign sign) {
+            if (this == CONSTANT) {
+                return CONSTANT;
+            }
+            switch (sign) {
+                case NON_NEGATIVE:
+                    return this;
+                case NON_POSITIVE:
+                    return negate();
+                default:
+                    return UNKNOWN;
+            }
+        }
+    }
+
+    private enum Sign {
+        NON_NEGATIVE,
+        NON_POSITIVE,
+        MIXED;
+
+        private static Sign of(Interval interval) {
+            if (interval.getLower() >= 0) {
+                return NON_NEGATIVE;
+            }
+            if (interval.getUpper() <= 0) {
+                return NON_POSITIVE;
+            }
+            return MIXED;
+        }
+    }
+
+    private final VariableValuesFunction variableValuesFunction;
+    private final double[] lowers;
+    private final double[] uppers;
+
+    /**
+     * Constructs a new MonotonicityAnalyzer over the box of all the values of the given function.
+     *
+     * @param variableValuesFunction the function whose values make the box; every variable must have some values
+     */
+    public MonotonicityAnalyzer(VariableValuesFunction variableValuesFunction) {
+        int variables = variableValuesFunction.getVariables().size();
+        this.variableValuesFunction = variableValuesFunction;
+        this.lowers = new double[variables];
+        this.uppers = new double[variables];
+        for (int i = 0; i < variables; i++) {
+            lowers[i] = variableValuesFunction.getValue(i, 0);
+            uppers[i] = variableValuesFunction.getValue(i, variableValuesFunction.getValueCount(i) - 1);
+        }
+    }
+
+    /**
+     * Analyzes the monotonicity of a node in each variable.
+     *
+     * @param node the node to analyze
+     * @return the monotonicity in each variable, indexed as in the tuples, or null if the node may fail
+     * or give NaN somewhere in the box, in which case no monotonicity is proven
+     */
+    public Monotonicity[] analyze(Node node) {
+        Analysis analysis = analyzeNode(node);
+        return analysis == null ? null : analysis.monotonicities;
+    }
+
+    private Analysis analyzeNode(Node node) {
+        if (node instanceof Constant) {
+            double value = ((Constant) node).getValue();
+            Interval interval = Interval.of(value, value);
+            return interval.isBounded() ? new Analysis(interval, constant()) : null;
+        }
+        if (node instanceof Variable) {
+            String variableName = ((Variable) node).getName();
+            if (!variableValuesFunction.hasVariable(variableName)) {
+                return null;
+            }
+            int variableIndex = variableValuesFunction.getVariableIndex(variableName);
+            Monotonicity[] monotonicities = constant();
+            monotonicities[variableIndex] = Monotonicity.INCREASING;
+            return new Analysis(Interval.of(lowers[variableIndex], uppers[variableIndex]), monotonicities);
+        }
+        Operator operator = (Operator) node;
+        List<Node> children = operator.getChildren();
+        Analysis left = analyzeNode(children.get(0));
+        if (left == null) {
+            return null;
+        }
+        if (operator.getType().isUnary()) {
+            Interval interval = IntervalEvaluator.apply(operator.getType(), left.interval);
+            if (!interval.isBounded()) {
+                return null;
+            }
+            Monotonicity[] monotonicities = new Monotonicity[lowers.length];
+            for (int i = 0; i < monotonicities.length; i++) {
+                monotonicities[i] = combineFunction(operator.getType(), left, i);
+            }
+            return new Analysis(interval, monotonicities);
+        }
+        Analysis right = analyzeNode(children.get(1));
+        if (right == null) {
+            return null;
+        }
+        Interval interval = IntervalEvaluator.apply(operator.getType(), left.interval, right.interval);
+        if (!interval.isBounded()) {
+            return null;
+        }
+        Monotonicity[] monotonicities = new Monotonicity[lowers.length];
+        for (int i = 0; i < monotonicities.length; i++) {
+            monotonicities[i] = combine(operator.getType(), left, right, i);
+        }
+        return new Analysis(interval, monotonicities);
+    }
+
+    private static Monotonicity combine(Operator.Type type, Analysis left, Analysis right, int variableIndex) {
+        Monotonicity a = left.monotonicities[variableIndex];
+        Monotonicity b = right.monotonicities[variableIndex];
+        switch (type) {
+            case SUM:
+                return a.plus(b);
+            case SUBTRACTION:
+                return a.plus(b.negate());
+            case MULTIPLICATION:
+                // a2 * b2 - a1 * b1 = (a2 - a1) * b2 + a1 * (b2 - b1)
+                return a.times(Sign.of(right.interval)).plus(b.times(Sign.of(left.interval)));
+            case DIVISION:
+                // a2 / b2 - a1 / b1 = (a2 - a1) / b2 + a1 * (1 / b2 - 1 / b1), where b has a constant sign
+                return a.times(Sign.of(right.interval)).plus(b.negate().times(Sign.of(left.interval)));
+            case POWER:
+                return combinePower(left, right, a, b);
+            default:
+                return Monotonicity.UNKNOWN;
+        }
+    }
+
+    private static Monotonicity combineFunction(Operator.Type type, Analysis operand, int variableIndex) {
+        Monotonicity a = operand.monotonicities[variableIndex];
+        switch (type) {
+            case NEGATION:
+                return a.negate();
+            case SQRT:
+            case EXP:
+            case LOG:
+                // Increasing functions, defined over the whole interval of the operand
+                return a;
+            case ABS:
+                return a.times(Sign.of(operand.interval));
+            case SIN:
+                // The derivative of sin(u) is cos(u) * u'
+                return a.times(Sign.of(IntervalEvaluator.apply(Operator.Type.COS, operand.interval)));
+            case COS:
+                // The derivative of cos(u) is -sin(u) * u'
+                return a.times(Sign.of(IntervalEvaluator.apply(Operator.Type.SIN, operand.interval))).negate();
+            default:
+                return Monotonicity.UNKNOWN;
+        }
+    }
+
+    private static Monotonicity combinePower(Analysis base, Analysis exponent, Monotonicity a, Monotonicity b) {
+        if (b == Monotonicity.CONSTANT) {
+            if (a == Monotonicity.CONSTANT) {
+                return Monotonicity.CONSTANT;
+            }
+            Monotonicity power = powerMonotonicity(base.interval, exponent.interval);
+            switch (power) {
+                case INCREASING:
+                    return a;
+                case DECREASING:
+                    return a.negate();
+                default:
+                    return power;
+            }
+        }
+        if (base.interval.getLower() <= 0) {
+            return Monotonicity.UNKNOWN;
+        }
+        // With positive bases a ^ b = exp(b * ln(a)), where ln(a) is non-negative when a >= 1
+        Sign logarithmSign = base.interval.getLower() >= 1 ? Sign.NON_NEGATIVE
+                : base.interval.getUpper() <= 1 ? Sign.NON_POSITIVE : Sign.MIXED;
+        return b.times(logarithmSign).plus(a.times(Sign.of(exponent.interval)));
+    }
+
+    /**
+     * Gets the monotonicity of t ^ n as a function of t over the base interval, for each exponent n in the exponent interval.
+     * The intervals are known to be bounded, hence the power never fails over them.
+     */
+    private static Monotonicity powerMonotonicity(Interval base, Interval exponent) {
+        if (!exponent.isDegenerate()) {
+            // Non-constant exponents are bounded only over positive bases
+            return Monotonicity.INCREASING.times(Sign.of(exponent));
+        }
+        double n = exponent.getLower();
+        if (n == 0) {
+            return Monotonicity.CONSTANT;
+        }
+        boolean integer = n == Math.rint(n);
+        if (!integer) {
+            // The base is non-negative, otherwise the power would give NaN
+            return n > 0 ? Monotonicity.INCREASING : Monotonicity.DECREASING;
+        }
+        boolean even = Math.abs(n % 2) == 0;
+        if (!even) {
+            // Odd powers are increasing, odd powers with negative exponent are decreasing on each side of 0
+            return n > 0 ? Monotonicity.INCREASING : Monotonicity.DECREASING;
+        }
+        // Even powers decrease for negative bases and increase for positive bases (the other way round if n < 0)
+        Monotonicity positiveSide = n > 0 ? Monotonicity.INCREASING : Monotonicity.DECREASING;
+        return positiveSide.times(Sign.of(base));
+    }
+
+    private Monotonicity[] constant() {
+        Monotonicity[] monotonicities = new Monotonicity[lowers.length];
+        Arrays.fill(monotonicities, Monotonicity.CONSTANT);
+        return monotonicities;
+    }
+
+    private static class Analysis {
+        private final Interval interval;
+        private final Monotonicity[] monotonicities;
+
+        private Analysis(Interval interval, Monotonicity[] monotonicities) {
+            this.interval = interval;
+            this.monotonicities = monotonicities;
+        }
+    }
+}
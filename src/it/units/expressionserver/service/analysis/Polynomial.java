@@ -0,0 +1,322 @@
+package it.units.expressionserver.service.analysis;
+
+import it.units.expressionserver.domain.expression.nodes.Constant;
+import it.units.expressionserver.domain.expression.nodes.Node;
+import it.units.expressionserver.domain.expression.nodes.Operator;
+import it.units.expressionserver.domain.expression.nodes.Variable;
+import it.units.expressionserver.domain.variablevaluesfunction.VariableValuesFunction;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Polynomial is a sparse polynomial in the variables of a VariableValuesFunction: a map from monomials,
+ * i.e., the exponent of each variable, indexed as in the tuples, to their coefficients.
+ * Expression trees made only of constants, variables, +, -, *, negation, divisions by constants and powers
+ * with constant non-negative integer exponents are expanded into polynomials.
+ *
+ * Variables are expanded around a center, i.e., the variable x is expanded as c + t, where c is the center of x
+ * and t the offset of x from it: constants such as the 1000 in (x - 1000) then cancel with the centers before
+ * the polynomial is expanded, which keeps the coefficients of the offsets small when values are far from 0.
+ */
+public class Polynomial {
+
+    private final int variables;
+    private final Map<Monomial, Double> terms;
+
+    private Polynomial(int variables, Map<Monomial, Double> terms) {
+        this.variables = variables;
+        this.terms = terms;
+    }
+
+    /**
+     * Expands an expression tree into a polynomial in the offsets of the variables from their centers.
+     *
+     * @param node the root of the expression tree
+     * @param variableValuesFunction the function mapping variable names to tuple indexes
+     * @param centers the center of each variable, indexed as in the tuples
+     * @param maxTerms the maximum number of terms of the polynomial and of the polynomials of its subtrees
+     * @param maxDegree the maximum exponent of a variable
+     * @return the polynomial, or null if the tree is not a polynomial in the variables of the function,
+     * or if its expansion exceeds the limits
+     */
+    public static Polynomial expand(Node node, VariableValuesFunction variableValuesFunction, double[] centers, int maxTerms, int maxDegree) {
+        return new Expansion(variableValuesFunction, centers, maxTerms, maxDegree).expand(node);
+    }
+
+    public int getTermCount() {
+        return terms.size();
+    }
+
+    /**
+     * Gets the maximum exponent of a variable among the terms.
+     *
+     * @param variableIndex the index of the variable in the tuples
+     * @return the degree of the polynomial in the variable
+     */
+    public int getDegree(int variableIndex) {
+        int degree = 0;
+        for (Monomial monomial : terms.keySet()) {
+            degree = Math.max(degree, monomial.exponents[variableIndex]);
+        }
+        return degree;
+    }
+
+    /**
+     * Computes the mean of the polynomial over a grid, from the mean of each power of the offset of each variable
+     * over its values: since every tuple of the grid combines every value of each variable, the mean of a monomial
+     * is the product of the means of the powers of its variables.
+     *
+     * @param offsetPowerMeans the mean of each power of the offset of each variable, from the power 0
+     * @return the mean of the polynomial
+     */
+    public double mean(double[][] offsetPowerMeans) {
+        double mean = 0;
+        for (Map.Entry<Monomial, Double> term : terms.entrySet()) {
+            mean += term.getValue() * term.getKey().evaluate(offsetPowerMeans);
+        }
+        return mean;
+    }
+
+    /**
+     * Computes the sum of the absolute values of the terms of {@link #mean(double[][])}, which bounds the rounding
+     * error of the mean: the error is small with respect to the mean unless its terms cancel out.
+     *
+     * @param offsetAbsolutePowerMeans the mean of each power of the absolute offset of each variable, from the power 0
+     * @return the sum of the absolute values of the terms of the mean
+     */
+    public double absoluteMean(double[][] offsetAbsolutePowerMeans) {
+        double mean = 0;
+        for (Map.Entry<Monomial, Double> term : terms.entrySet()) {
+            mean += Math.abs(term.getValue()) * term.getKey().evaluate(offsetAbsolutePowerMeans);
+        }
+        return mean;
+    }
+
+    private Polynomial plus(Polynomial other, double sign) {
+        Map<Monomial, Double> sum = new HashMap<>(terms);
+        for (Map.Entry<Monomial, Double> term : other.terms.entrySet()) {
+            sum.merge(term.getKey(), sign * term.getValue(), Double::sum);
+        }
+        return new Polynomial(variables, sum);
+    }
+
+    private Polynomial times(Polynomial other) {
+        Map<Monomial, Double> product = new HashMap<>();
+        for (Map.Entry<Monomial, Double> term : terms.entrySet()) {
+            for (Map.Entry<Monomial, Double> otherTerm : other.terms.entrySet()) {
+                product.merge(term.getKey().times(otherTerm.getKey()), term.getValue() * otherTerm.getValue(), Double::sum);
+            }
+        }
+        return new Polynomial(variables, product);
+    }
+
+    private Polynomial scale(double factor) {
+        Map<Monomial, Double> scaled = new HashMap<>();
+        for (Map.Entry<Monomial, Double> term : terms.entrySet()) {
+            scaled.put(term.getKey(), factor * term.getValue());
+        }
+        return new Polynomial(variables, scaled);
+    }
+
+    /**
+     * Gets the value of a polynomial without variables.
+     *
+     * @return the value, or NaN if the polynomial has variables
+     */
+    private double getConstantValue() {
+        double value = 0;
+        for (Map.Entry<Monomial, Double> term : terms.entrySet()) {
+            if (term.getKey().getDegree() > 0) {
+                if (term.getValue() != 0) {
+                    return Double.NaN;
+                }
+                continue;
+            }
+            value += term.getValue();
+        }
+        return value;
+    }
+
+    private int getMaxDegree() {
+        int degree = 0;
+        for (int i = 0; i < variables; i++) {
+            degree = Math.max(degree, getDegree(i));
+        }
+        return degree;
+    }
+
+    private static Polynomial constant(int variables, double value) {
+        Map<Monomial, Double> terms = new HashMap<>();
+        terms.put(new Monomial(new int[variables]), value);
+        return new Polynomial(variables, terms);
+    }
+
+    /**
+     * The expansion of an expression tree, within the limits on the number of terms and the degree.
+     */
+    private static class Expansion {
+        private final VariableValuesFunction variableValuesFunction;
+        private final double[] centers;
+        private final int variables;
+        private final int maxTerms;
+        private final int maxDegree;
+
+        private Expansion(VariableValuesFunction variableValuesFunction, double[] centers, int maxTerms, int maxDegree) {
+            this.variableValuesFunction = variableValuesFunction;
+            this.centers = centers;
+            this.variables = centers.length;
+            this.maxTerms = maxTerms;
+            this.maxDegree = maxDegree;
+        }
+
+        private Polynomial expand(Node node) {
+            if (node instanceof Constant) {
+                return constant(variables, ((Constant) node).getValue());
+            }
+            if (node instanceof Variable) {
+                String variableName = ((Variable) node).getName();
+                if (!variableValuesFunction.hasVariable(variableName)) {
+                    return null;
+                }
+                int variableIndex = variableValuesFunction.getVariableIndex(variableName);
+                Polynomial variable = constant(variables, centers[variableIndex]);
+                int[] exponents = new int[variables];
+                exponents[variableIndex] = 1;
+                variable.terms.put(new Monomial(exponents), 1.0);
+                return variable;
+            }
+            Operator operator = (Operator) node;
+            List<Node> children = operator.getChildren();
+            Polynomial left = expand(children.get(0));
+            if (left == null) {
+                return null;
+            }
+            if (operator.getType() == Operator.Type.NEGATION) {
+                return left.scale(-1);
+            }
+            if (operator.getType().isUnary()) {
+                return null;
+            }
+            Polynomial right = expand(children.get(1));
+            if (right == null) {
+                return null;
+            }
+            Polynomial result;
+            switch (operator.getType()) {
+                case SUM:
+                    result = left.plus(right, 1);
+                    break;
+                case SUBTRACTION:
+                    result = left.plus(right, -1);
+                    break;
+                case MULTIPLICATION:
+                    result = multiply(left, right);
+                    break;
+                case DIVISION: {
+                    double divisor = right.getConstantValue();
+                    if (Double.isNaN(divisor) || divisor == 0) {
+                        return null;
+                    }
+                    result = left.scale(1 / divisor);
+                    break;
+                }
+                case POWER: {
+                    double exponent = right.getConstantValue();
+                    if (!(exponent >= 0) || exponent != Math.rint(exponent) || exponent > Integer.MAX_VALUE
+                            || exponent * left.getMaxDegree() > maxDegree) {
+                        return null;
+                    }
+                    result = power(left, (int) exponent);
+                    break;
+                }
+                default:
+                    return null;
+            }
+            return result == null || result.getTermCount() > maxTerms ? null : result;
+        }
+
+        private Polynomial multiply(Polynomial left, Polynomial right) {
+            if ((long) left.getTermCount() * right.getTermCount() > (long) maxTerms * maxTerms) {
+                return null;
+            }
+            for (int i = 0; i < variables; i++) {
+                if (left.getDegree(i) + right.getDegree(i) > maxDegree) {
+                    return null;
+                }
+            }
+            Polynomial product = left.times(right);
+            return product.getTermCount() > maxTerms ? null : product;
+        }
+
+        private Polynomial power(Polynomial base, int exponent) {
+            Polynomial result = constant(variables, 1);
+            Polynomial square = base;
+            while (exponent > 0) {
+                if ((exponent & 1) == 1) {
+                    result = multiply(result, square);
+                    if (result == null) {
+                        return null;
+                    }
+                }
+                exponent >>= 1;
+                if (exponent > 0) {
+                    square = multiply(square, square);
+                    if (square == null) {
+                        return null;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A monomial, i.e., the exponent of each variable, indexed as in the tuples.
+     */
+    private static class Monomial {
+        private final int[] exponents;
+        private final int hashCode;
+
+        private Monomial(int[] exponents) {
+            this.exponents = exponents;
+            this.hashCode = Arrays.hashCode(exponents);
+        }
+
+        private Monomial times(Monomial other) {
+            int[] product = new int[exponents.length];
+            for (int i = 0; i < exponents.length; i++) {
+                product[i] = exponents[i] + other.exponents[i];
+            }
+            return new Monomial(product);
+        }
+
+        private int getDegree() {
+            int degree = 0;
+            for (int exponent : exponents) {
+                degree += exponent;
+            }
+            return degree;
+        }
+
+        private double evaluate(double[][] powers) {
+            double value = 1;
+            for (int i = 0; i < exponents.length; i++) {
+                value *= powers[i][exponents[i]];
+            }
+            return value;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Monomial && Arrays.equals(exponents, ((Monomial) other).exponents);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}